@@ -20,23 +20,28 @@
 package edu.snu.csne.forage;
 
 //Imports
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.jme3.math.Vector3f;
+import ec.util.MersenneTwisterFast;
 import edu.snu.csne.forage.decision.AgentDecisionMaker;
 import edu.snu.csne.forage.decision.Decision;
+import edu.snu.csne.forage.decision.DecisionCandidates;
 import edu.snu.csne.forage.decision.DecisionType;
 import edu.snu.csne.forage.event.DecisionEvent;
 import edu.snu.csne.forage.sensor.AgentSensor;
 import edu.snu.csne.forage.sensor.PatchSensor;
+import edu.snu.csne.forage.util.AgentStateStore;
+import edu.snu.csne.forage.util.NeighborKernel;
 import edu.snu.csne.forage.util.PatchValue;
 import edu.snu.csne.forage.util.PatchDepletionCalculator;
+import edu.snu.csne.forage.util.SensedSlots;
 import edu.snu.csne.mates.math.NavigationalVector;
 
 
@@ -54,6 +59,9 @@ public class Agent
     /** Maximum strength of the separation force */
     private static final float _MAX_SEPARATION_STRENGTH = 0.000001f;
     
+    /** The default initial capacity of the known team arrays */
+    private static final int _DEFAULT_TEAM_CAPACITY = 4;
+    
     /** This agent's unique ID */
     private String _id = null;
     
@@ -66,21 +74,56 @@ public class Agent
     /** This agent's current decision */
     private Decision _decision = null;
     
+    /** The decision made this step that hasn't been committed yet */
+    private Decision _pendingDecision = null;
+    
+    /** The number of steps until the next scheduled decision (0 if none) */
+    private long _pendingDecisionDelay = 0;
+    
+    /** The switch probability of the next scheduled decision (0 if none) */
+    private float _pendingDecisionSwitchHazard = 0.0f;
+    
+    /** Signature of the decision inputs when this agent last decided */
+    private long _decisionInputsSignature = 0;
+    
+    /** The candidate decisions planned this step */
+    private final DecisionCandidates _plannedCandidates =
+            new DecisionCandidates();
+    
+    /** Flag denoting that a decision was planned this step and still has
+     *  to be chosen */
+    private boolean _decisionPlanned = false;
+    
     /** The decision-maker for this agent */
     private AgentDecisionMaker _decisionMaker = null;
     
     /** Patch value calculator */
     private PatchDepletionCalculator _patchValueCalc = null;
 
-    /** This agent's position */
+    /** The store holding the motion state of all the agents */
+    private AgentStateStore _stateStore = null;
+    
+    /** This agent's slot in the state store */
+    private int _slot = -1;
+    
+    /** This agent's position, mirroring the state store.  Only this agent
+     *  writes it, when it moves, so other agents may read it while sensing
+     *  and steering. */
     private Vector3f _position = new Vector3f();
     
-    /** This agent's velocity */
+    /** This agent's velocity, mirroring the state store.  Like the
+     *  position, only this agent writes it, when it moves. */
     private Vector3f _velocity = new Vector3f();
     
     /** This agent's acceleration */
     private Vector3f _acceleration = new Vector3f();
     
+    /** Scratch vector holding the result of a single steering behavior */
+    private final Vector3f _behaviorScratch = new Vector3f();
+    
+    /** Kernel calculating all the sums over the sensed neighbors */
+    private NeighborKernel _neighborKernel = null;
+    
     /** The rate of resources this agent can consume */
     private float _resourceConsumptionRate = 0.0f;
     
@@ -120,20 +163,39 @@ public class Agent
     /** The patches currently sensed */
     private List<Patch> _sensedPatches = new LinkedList<Patch>();
     
-    /** The known team memberships */
-    private Map<String,List<Agent>> _knownTeamMemberships =
-            new HashMap<String,List<Agent>>();
+    /** This agent's team handle when it last sensed */
+    private int _ownTeamIndex = 0;
+    
+    /** The team handles of the sensed agents, in sensed order */
+    private int[] _sensedTeams = new int[0];
+    
+    /** The slots of the agents sensed this step and the previous step */
+    private SensedSlots _sensedSlots = new SensedSlots();
+    
+    /** The slots of the sensed agents that changed teams */
+    private int[] _teamChangerSlots = new int[_DEFAULT_TEAM_CAPACITY];
+    
+    /** The number of sensed agents that changed teams */
+    private int _teamChangerCount = 0;
     
-    /** The known team mean positions */
-    private Map<String,Vector3f> _meanTeamPositions = new HashMap<String,Vector3f>();
+    /** The known team handles in the order they were observed */
+    private int[] _knownTeams = new int[_DEFAULT_TEAM_CAPACITY];
     
-    /** Mean resultant vectors by team */
-    private Map<String,NavigationalVector> _meanResultantVectorsByTeam =
-            new HashMap<String,NavigationalVector>();
+    /** The known team memberships, parallel to the known team handles */
+    private List<List<Agent>> _knownTeamMemberships = new ArrayList<List<Agent>>();
     
-    /** Patch value by patch ID */
-    private Map<String,PatchValue> _patchValues =
-            new HashMap<String,PatchValue>();
+    /** The number of known teams */
+    private int _knownTeamCount = 0;
+    
+    /** The known team mean positions, parallel to the known team handles */
+    private Vector3f[] _meanTeamPositions = new Vector3f[_DEFAULT_TEAM_CAPACITY];
+    
+    /** Mean resultant vectors, parallel to the known team handles */
+    private NavigationalVector[] _meanResultantVectorsByTeam =
+            new NavigationalVector[_DEFAULT_TEAM_CAPACITY];
+    
+    /** Patch value by patch index */
+    private PatchValue[] _patchValues = new PatchValue[0];
 
     /** The sum of all the individual give up time slopes */
     private float _patchValueSlopeIndSum = 0.0f;
@@ -150,6 +212,9 @@ public class Agent
     /** The current state of the simulation */
     private SimulationState _simState = null;
     
+    /** The random number generator used by this agent's decisions */
+    private MersenneTwisterFast _rng = null;
+    
     /**
      * Builds this Agent object
      *
@@ -164,6 +229,7 @@ public class Agent
      * @param patchSensor
      * @param decisionMaker
      * @param simState
+     * @param rng
      */
     public Agent( String id,
             Vector3f initialPosition,
@@ -180,7 +246,8 @@ public class Agent
             PatchSensor patchSensor,
             AgentDecisionMaker decisionMaker,
             PatchDepletionCalculator patchValueCalc,
-            SimulationState simState )
+            SimulationState simState,
+            MersenneTwisterFast rng )
     {
         // Validate the parameters
         Validate.notBlank( id, "ID may not be null" );
@@ -198,11 +265,10 @@ public class Agent
         Validate.notNull( decisionMaker, "Decision maker may not be null" );
         Validate.notNull( patchValueCalc, "Patch value calculator may not be null" );
         Validate.notNull( simState, "Simulation state may not be null" );
+        Validate.notNull( rng, "Random number generator may not be null" );
         
         // Store the parameters
         _id = id;
-        _position = initialPosition.clone();
-        _velocity = initialVelocity.clone();
         _resourceConsumptionRate = resourceConsumptionRate;
         _maxSpeed = maxSpeed;
         _maxForce = maxForce;
@@ -214,6 +280,18 @@ public class Agent
         _decisionMaker = decisionMaker;
         _patchValueCalc = patchValueCalc;
         _simState = simState;
+        _rng = rng;
+        
+        // Add our motion state to the store
+        _stateStore = simState.getAgentStateStore();
+        _slot = _stateStore.add( this, initialPosition, initialVelocity );
+        _stateStore.loadPosition( _slot, _position );
+        _stateStore.loadVelocity( _slot, _velocity );
+        
+        // Create the kernel for the neighbor sums
+        _neighborKernel = new NeighborKernel( _minSeparation,
+                _desiredSeparation,
+                _MAX_SEPARATION_STRENGTH );
         
         _decision = Decision.buildRestDecision( 0, this );
     }
@@ -226,22 +304,22 @@ public class Agent
         _LOG.trace( "Entering sense()" );
 
         // Clear out all the previously sensed objects
-        _sensedAgents.clear();
         _sensedTeammates.clear();
         _sensedNonTeammates.clear();
         _sensedPatches.clear();
         
-        // Sense the agents
+        // Sense the agents and find what changed
         _sensedAgents = _agentSensor.sense( this );
+        _sensedSlots.update( _sensedAgents );
         
         // Which ones are teammates?
         findSensedTeammates();
         
-        // Determine team memberships
-        findTeamMemberships();
+        // Update the team memberships with the changes
+        updateTeamMemberships();
         
-        // Calculate the mean resultant vectors for all teams
-        calculateMeanResultantVectors();
+        // Calculate all the neighbor sums in a single pass
+        calculateNeighborSums();
         
 //        _LOG.debug( "Sensed [" + _sensedTeammates.size() + "] teammates" );
         
@@ -261,8 +339,209 @@ public class Agent
     {
         _LOG.trace( "Entering plan()" );
 
-        // Get the new decision
-        Decision decision = _decisionMaker.decide( this );
+        // Make the decision and commit to it
+        decide();
+        commitDecision();
+        
+        _LOG.trace( "Leaving plan()" );
+    }
+
+    /**
+     * Makes a new decision without changing this agent's current decision
+     * or any leader registrations.  This only reads state that doesn't
+     * change until decisions are committed, so agents may decide
+     * concurrently.
+     */
+    public void decide()
+    {
+        _LOG.trace( "Entering decide()" );
+
+        // Keep the current decision if nothing requires a new one
+        if( !isDecisionNeeded() )
+        {
+            _pendingDecision = _decision;
+            _LOG.trace( "Leaving decide()" );
+            return;
+        }
+
+        _pendingDecision = _decisionMaker.decide( this );
+
+        _LOG.trace( "Leaving decide()" );
+    }
+
+    /**
+     * Plans a new decision by gathering the candidate decisions without
+     * picking one.  Once every agent has planned and the decision maker
+     * has evaluated all the plans, {@link #chooseDecision()} picks the
+     * decision.  Like {@link #decide()}, agents may plan concurrently.
+     */
+    public void planDecision()
+    {
+        _LOG.trace( "Entering planDecision()" );
+
+        // Keep the current decision if nothing requires a new one
+        _decisionPlanned = isDecisionNeeded();
+        if( _decisionPlanned )
+        {
+            _decisionMaker.plan( this );
+        }
+        else
+        {
+            _pendingDecision = _decision;
+        }
+
+        _LOG.trace( "Leaving planDecision()" );
+    }
+
+    /**
+     * Picks the decision planned by {@link #planDecision()} without
+     * changing this agent's current decision or any leader registrations
+     */
+    public void chooseDecision()
+    {
+        _LOG.trace( "Entering chooseDecision()" );
+
+        if( _decisionPlanned )
+        {
+            _pendingDecision = _decisionMaker.choose( this );
+            _decisionPlanned = false;
+        }
+
+        _LOG.trace( "Leaving chooseDecision()" );
+    }
+
+    /**
+     * Determines if this agent has a planned decision that hasn't been
+     * chosen yet
+     *
+     * @return <code>true</code> if a decision was planned
+     */
+    public boolean isDecisionPlanned()
+    {
+        return _decisionPlanned;
+    }
+
+    /**
+     * Returns the candidate decisions planned this step.  They are only
+     * used by the decision maker.
+     *
+     * @return The planned candidates
+     */
+    public DecisionCandidates getPlannedCandidates()
+    {
+        return _plannedCandidates;
+    }
+
+    /**
+     * Determines if this agent has to make a new decision.  When decisions
+     * are event driven, the current decision is kept until it is time to
+     * decide or the inputs bounding the switch probability have changed.
+     *
+     * @return <code>true</code> if a new decision is needed
+     */
+    private boolean isDecisionNeeded()
+    {
+        if( _simState.isEventDrivenDecisions() )
+        {
+            long signature = calculateDecisionInputsSignature();
+            if( signature != _decisionInputsSignature )
+            {
+                // The scheduled decision's bound may no longer hold
+                _simState.wakeDecision( this );
+                _decisionInputsSignature = signature;
+            }
+            else if( !_simState.isDecisionDue( this ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Calculates a signature of the inputs that determine which decisions
+     * are available to this agent and the bound on how likely they are
+     * (see {@link edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateMaxProbabilitySum(Agent, DecisionCandidates)}).
+     * Inputs that only drift within the bound, such as patch values and
+     * MRVs, are left out.  A change in the signature means the bound the
+     * agent's next decision was scheduled with may no longer hold.
+     *
+     * @return The signature
+     */
+    private long calculateDecisionInputsSignature()
+    {
+        // Start with our own team, its size and our decision
+        long signature = _ownTeamIndex;
+        signature = 31 * signature + _simState.getTeamSize( _ownTeamIndex );
+        signature = 31 * signature + _decision.getType().ordinal();
+        if( null != _decision.getPatch() )
+        {
+            signature = 31 * signature + _decision.getPatch().getIndex();
+        }
+        if( null != _decision.getLeader() )
+        {
+            signature = 31 * signature + _decision.getLeader().getSlot();
+        }
+        
+        // Add the sensed teams, their sizes and whether they can be
+        // followed, in any order
+        signature = 31 * signature + _sensedAgents.size();
+        long teamsSignature = 0;
+        for( int i = 0; i < _knownTeamCount; i++ )
+        {
+            Agent leader = _knownTeamMemberships.get( i ).get( 0 );
+            long team = _knownTeams[i];
+            team = 31 * team + _simState.getTeamSize( _knownTeams[i] );
+            team = 31 * team + (DecisionType.REST.equals(
+                    leader.getDecision().getType() ) ? 1 : 0);
+            teamsSignature += mixSignature( team );
+        }
+        signature = 31 * signature + teamsSignature;
+        
+        // Add the sensed patches and the ones we are in, in any order
+        long patchesSignature = 0;
+        Iterator<Patch> patchIter = _sensedPatches.iterator();
+        while( patchIter.hasNext() )
+        {
+            patchesSignature += mixSignature( patchIter.next().getIndex() );
+        }
+        patchIter = _simState.getPatchIndex().findPatchesContaining( this ).iterator();
+        while( patchIter.hasNext() )
+        {
+            patchesSignature += mixSignature( -patchIter.next().getIndex() - 1 );
+        }
+        signature = 31 * signature + patchesSignature;
+        
+        return signature;
+    }
+
+    /**
+     * Scrambles a value so the scrambled values of a set can be summed
+     * into a signature that doesn't depend on their order
+     *
+     * @param value The value
+     * @return The scrambled value
+     */
+    private static long mixSignature( long value )
+    {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Commits the decision made by {@link #decide()}, updating the
+     * leader registrations and signaling the decision
+     */
+    public void commitDecision()
+    {
+        _LOG.trace( "Entering commitDecision()" );
+
+        // Get the pending decision
+        Decision decision = _pendingDecision;
+        Validate.notNull( decision, "No decision has been made to commit" );
+        _pendingDecision = null;
         if( !_decision.equals( decision ) )
         {
             // Does the new decision have a new leader?
@@ -303,7 +582,17 @@ if( this.equals(oldLeader) )
                 this,
                 _simState.getCurrentSimulationStep() ) );
         
-        _LOG.trace( "Leaving plan()" );
+        // Schedule the next decision if the decision-maker asked for one
+        if( 0 < _pendingDecisionDelay )
+        {
+            _simState.scheduleDecision( this,
+                    _pendingDecisionDelay,
+                    _pendingDecisionSwitchHazard );
+            _pendingDecisionDelay = 0;
+            _pendingDecisionSwitchHazard = 0.0f;
+        }
+        
+        _LOG.trace( "Leaving commitDecision()" );
     }
 
     /**
@@ -313,8 +602,24 @@ if( this.equals(oldLeader) )
     {
         _LOG.trace( "Entering act()" );
 
+        // Steer and then move
+        steer();
+        move();
+
+        _LOG.trace( "Leaving act()" );
+    }
+
+    /**
+     * Calculates the steering acceleration for this agent's current
+     * decision.  Only this agent's acceleration is changed, so agents may
+     * steer concurrently as long as none of them are moving.
+     */
+    public void steer()
+    {
+        _LOG.trace( "Entering steer()" );
+
         // Reset the acceleration
-        _acceleration = new Vector3f();
+        _acceleration.set( 0.0f, 0.0f, 0.0f );
 
         // Are we at our desired location?
         
@@ -327,7 +632,10 @@ if( this.equals(oldLeader) )
         {
             Vector3f separation = calculateSeparation();
             separation.multLocal( separationWeight );
-            _LOG.debug( getID() + " separation=[" + separation + "]" );
+            if( _LOG.isDebugEnabled() )
+            {
+                _LOG.debug( getID() + " separation=[" + separation + "]" );
+            }
             _acceleration.addLocal( separation );
         }
         float cohesionWeight = _decision.getCohesionWeight();
@@ -335,7 +643,10 @@ if( this.equals(oldLeader) )
         {
             Vector3f cohesion = calculateCohesion();
             cohesion.multLocal( cohesionWeight );
-            _LOG.debug( getID() + " cohesion=[" + cohesion + "]" );
+            if( _LOG.isDebugEnabled() )
+            {
+                _LOG.debug( getID() + " cohesion=[" + cohesion + "]" );
+            }
             _acceleration.addLocal( cohesion );
         }
         float alignmentWeight = _decision.getAlignmentWeight();
@@ -343,7 +654,10 @@ if( this.equals(oldLeader) )
         {
             Vector3f alignment = calculateAlignment();
             alignment.multLocal( alignmentWeight );
-            _LOG.debug( getID() + " alignment=[" + alignment + "]" );
+            if( _LOG.isDebugEnabled() )
+            {
+                _LOG.debug( getID() + " alignment=[" + alignment + "]" );
+            }
             _acceleration.addLocal( alignment );
         }
         float goalSeekWeight = _decision.getGoalSeekWeight();
@@ -351,12 +665,30 @@ if( this.equals(oldLeader) )
         {
             Vector3f goalSeek = calculateGoalSeek();
             goalSeek.multLocal( goalSeekWeight );
-            _LOG.debug( getID() + " goalSeek=[" + goalSeek + "]" );
+            if( _LOG.isDebugEnabled() )
+            {
+                _LOG.debug( getID() + " goalSeek=[" + goalSeek + "]" );
+            }
             _acceleration.addLocal( goalSeek );
         }
         
         ForageUtils.limitMagnitude( _acceleration, _maxForce );
-        
+        _stateStore.setAcceleration( _slot, _acceleration );
+
+        _LOG.trace( "Leaving steer()" );
+    }
+
+    /**
+     * Applies the steering acceleration to this agent's velocity and
+     * position
+     */
+    public void move()
+    {
+        _LOG.trace( "Entering move()" );
+
+        // Get the acceleration, the position and velocity are current
+        _stateStore.loadAcceleration( _slot, _acceleration );
+
         // Apply the acceleration to the velocity and move the agent
         if( _acceleration.lengthSquared() > 0.0001f )
         {
@@ -365,18 +697,25 @@ if( this.equals(oldLeader) )
         }
         _position.addLocal( _velocity );
         
-        _LOG.debug( "Action "
-                + getID()
-                + ": accel="
-                + _acceleration
-                + " vel="
-                + _velocity
-                + " position="
-                + _position
-                + " speed="
-                + _velocity.length() );
+        // Save it
+        _stateStore.setVelocity( _slot, _velocity );
+        _stateStore.setPosition( _slot, _position );
+        
+        if( _LOG.isDebugEnabled() )
+        {
+            _LOG.debug( "Action "
+                    + getID()
+                    + ": accel="
+                    + _acceleration
+                    + " vel="
+                    + _velocity
+                    + " position="
+                    + _position
+                    + " speed="
+                    + _velocity.length() );
+        }
 
-        _LOG.trace( "Leaving act()" );
+        _LOG.trace( "Leaving move()" );
     }
     
     /**
@@ -398,41 +737,57 @@ if( this.equals(oldLeader) )
         return _id;
     }
     
+    /**
+     * Returns the random number generator used by this agent's decisions
+     *
+     * @return The random number generator
+     */
+    public MersenneTwisterFast getRNG()
+    {
+        return _rng;
+    }
+    
+    /**
+     * Returns the agent at the root of this agent's leadership chain
+     *
+     * @return The root leader, which is this agent if it isn't following
+     * anyone, or <code>null</code> if the chain has a cycle
+     */
     public Agent getLeader()
     {
-        return getLeader( this );
+        return _simState.getRootLeader( this );
     }
     
-    private Agent getLeader( Agent originalAgent )
+    /**
+     * Returns the handle of this agent's team.  Teams are identified by the
+     * slot of the agent at the root of the leadership chain, so an agent
+     * that isn't following anyone is on its own team.
+     *
+     * @return The team handle
+     */
+    public int getTeamIndex()
     {
-        Agent leader = null;
-
-        // If the decision leader is null, this agent is the leader
-        Agent decisionLeader = _decision.getLeader();
-        if( null == decisionLeader )
-        {
-            // This agent is the leader
-            leader = this;
-        }
-        /* Check to ensure the decision leader isn't the original agent looking
-         * for their leader.  This could happen if A follows B, B follows C,
-         * and C follows A. */
-        else if( originalAgent.getID().equals( decisionLeader ) )
+        Agent leader = getLeader();
+        if( null == leader )
         {
-            _LOG.warn( "Cycle detected in leadership hierarchy" );
-            leader = null;
+            return _slot;
         }
-        else
-        {
-            // Ask the decision leader who their team leader is
-            leader = decisionLeader.getLeader( originalAgent );
-        }
-        
-        return leader;
+        return leader.getSlot();
+    }
+    
+    /**
+     * Returns the number of agents on this agent's team
+     *
+     * @return The team size
+     */
+    public int getTeamSize()
+    {
+        return _simState.getTeamSize( getTeamIndex() );
     }
     
     /**
-     * Returns this agent's position
+     * Returns this agent's position.  The vector is only changed by this
+     * agent when it moves and must not be modified by the caller.
      *
      * @return This agent's position
      */
@@ -442,13 +797,24 @@ if( this.equals(oldLeader) )
     }
     
     /**
-     * Returns this agent's velocity
+     * Returns this agent's velocity.  The vector is only changed by this
+     * agent when it moves and must not be modified by the caller.
      *
      * @return This agent's velocity
      */
     public Vector3f getVelocity()
     {
-        return _velocity.clone();
+        return _velocity;
+    }
+    
+    /**
+     * Returns this agent's slot in the agent state store
+     *
+     * @return The slot
+     */
+    public int getSlot()
+    {
+        return _slot;
     }
     
     /**
@@ -511,6 +877,22 @@ if( this.equals(oldLeader) )
         _decision = decision;
     }
     
+    /**
+     * Requests that this agent's next decision be scheduled once the
+     * current decision is committed.  Only used when decisions are event
+     * driven.
+     *
+     * @param delay The number of steps until the next decision
+     * @param switchHazard The bound on the switch probability the delay
+     *            was sampled with, or 0 if the agent only reconsiders
+     */
+    public void scheduleNextDecision( long delay, float switchHazard )
+    {
+        Validate.isTrue( 0 < delay, "Decision delay must be positive" );
+        _pendingDecisionDelay = delay;
+        _pendingDecisionSwitchHazard = switchHazard;
+    }
+    
     /**
      * Returns all the agents sensed by this agent
      * 
@@ -531,10 +913,22 @@ if( this.equals(oldLeader) )
         return _sensedTeammates;
     }
     
-    public List<Agent> getSensedAgentsOnTeam( AgentTeam team )
+    /**
+     * Returns the sensed members of the specified team in observed join
+     * order
+     *
+     * @param teamIdx The team handle
+     * @return The sensed team members, or <code>null</code> if no members
+     * were sensed
+     */
+    public List<Agent> getSensedAgentsOnTeam( int teamIdx )
     {
-        Validate.notNull( team, "Team may not be null" );
-        return _knownTeamMemberships.get( team.getID() );
+        int knownIdx = findKnownTeam( teamIdx );
+        if( 0 > knownIdx )
+        {
+            return null;
+        }
+        return _knownTeamMemberships.get( knownIdx );
     }
     
     /**
@@ -558,27 +952,24 @@ if( this.equals(oldLeader) )
     }
     
     /**
-     * Returns a map of all the sensed teams and the first known member
-     * (referred to as the leader)
+     * Returns the first known member (referred to as the leader) of each
+     * sensed team in the order the teams were observed
      *
      * @return The sensed team leaders
      */
-    public Map<String,Agent> getSensedTeamLeaders()
+    public List<Agent> getSensedTeamLeaders()
     {
-        // Build a map that stores teamID -> agent
-        // Where the agent is the first sensed team member
-        Map<String,Agent> sensedLeaders = new HashMap<String,Agent>();
-        Iterator<String> teamIDIter = _knownTeamMemberships.keySet().iterator();
-        while( teamIDIter.hasNext() )
+        // Build a list of the first sensed member of each team
+        List<Agent> sensedLeaders = new ArrayList<Agent>( _knownTeamCount );
+        for( int i = 0; i < _knownTeamCount; i++ )
         {
-            String teamID = teamIDIter.next();
-            Agent agent = _knownTeamMemberships.get( teamID ).get( 0 );
+            Agent agent = _knownTeamMemberships.get( i ).get( 0 );
             
             // A leader can't be resting
             Decision agentDecision = agent.getDecision();
             if( !DecisionType.REST.equals( agentDecision.getType() ) )
             {
-                sensedLeaders.put( teamID, agent );
+                sensedLeaders.add( agent );
             }
         }
         
@@ -590,14 +981,25 @@ if( this.equals(oldLeader) )
      */
     private void findSensedTeammates()
     {
+        // Make sure we have room for the team handles
+        int sensedCount = _sensedAgents.size();
+        if( _sensedTeams.length < sensedCount )
+        {
+            _sensedTeams = new int[sensedCount];
+        }
+        
         // Which of the sensed agents are teammates?
+        _ownTeamIndex = getTeamIndex();
+        int sensedIdx = 0;
         Iterator<Agent> agentIter = _sensedAgents.iterator();
         while( agentIter.hasNext() )
         {
             Agent current = agentIter.next();
+            int teamIdx = current.getTeamIndex();
+            _sensedTeams[sensedIdx++] = teamIdx;
             
             // Are they on the same team?
-            if( _team.equals( current.getTeam() ) )
+            if( _ownTeamIndex == teamIdx )
             {
                 // Yup
                 _sensedTeammates.add( current );
@@ -632,49 +1034,60 @@ if( this.equals(oldLeader) )
     /**
      * Returns the mean resultant vector for this agent for the given team
      *
-     * @param teamID The team associated with the MRV
+     * @param teamIdx The handle of the team associated with the MRV
      * @return The mean resultant vector
      */
-    public NavigationalVector getMRVForTeam( String teamID )
+    public NavigationalVector getMRVForTeam( int teamIdx )
     {
-        // Validate the team ID
-        Validate.notEmpty( teamID, "Team ID is required" );
-        Validate.isTrue( _meanResultantVectorsByTeam.containsKey( teamID ),
-                "Unknown team ID [" + teamID + "]" );
+        // Is it a known team?
+        int knownIdx = findKnownTeam( teamIdx );
+        if( 0 > knownIdx )
+        {
+            // If we didn't sense any members of our own team, it is empty
+            Validate.isTrue( _ownTeamIndex == teamIdx,
+                    "Unknown team [" + teamIdx + "]" );
+            return new NavigationalVector();
+        }
         
-        return _meanResultantVectorsByTeam.get( teamID );
+        return _meanResultantVectorsByTeam[knownIdx];
     }
     
     /**
      * Returns the mean position of the given team
      *
-     * @param teamID The team
+     * @param teamIdx The team handle
      * @return The mean position
      */
-    public Vector3f getMeanPositionOfTeam( String teamID )
+    public Vector3f getMeanPositionOfTeam( int teamIdx )
     {
-        // Validate the team ID
-        Validate.notEmpty( teamID, "Team ID is required" );
-        Validate.isTrue( _meanTeamPositions.containsKey( teamID ),
-                "Unknown team ID [" + teamID + "]" );
+        // Is it a known team?
+        int knownIdx = findKnownTeam( teamIdx );
+        if( 0 > knownIdx )
+        {
+            // If we didn't sense any members of our own team, it is empty
+            Validate.isTrue( _ownTeamIndex == teamIdx,
+                    "Unknown team [" + teamIdx + "]" );
+            return new Vector3f();
+        }
         
-        return _meanTeamPositions.get( teamID );
+        return _meanTeamPositions[knownIdx];
     }
     
     /**
      * Returns the value of the specified patch
      *
-     * @param patchID The patch of interest
+     * @param patchIdx The index of the patch of interest
      * @return The patches value
      */
-    public PatchValue getPachValue( String patchID )
+    public PatchValue getPachValue( int patchIdx )
     {
-        // Validate the patch ID
-        Validate.notEmpty( patchID, "Patch ID is required" );
-        Validate.isTrue( _patchValues.containsKey( patchID ),
-                "Uknown patch ID [" + patchID + "]" );
+        // Validate the patch index
+        Validate.isTrue( (0 <= patchIdx)
+                && (patchIdx < _patchValues.length)
+                && (null != _patchValues[patchIdx]),
+                "Uknown patch index [" + patchIdx + "]" );
         
-        return _patchValues.get( patchID );
+        return _patchValues[patchIdx];
     }
     
     /**
@@ -698,208 +1111,203 @@ if( this.equals(oldLeader) )
     }
     
     /**
-     * Searches for team memberships (ordered by observed join time)
-     * among the sensed agents
+     * Updates the team memberships (ordered by observed join time) in place
+     * using the agents that entered and left the sensed set.  Agents that
+     * left are removed and agents that changed teams are moved to the end
+     * of their new team, just like newly sensed agents.
      */
-    private void findTeamMemberships()
+    private void updateTeamMemberships()
     {
-        _LOG.trace( "Entering findTeamMemberships()" );
+        _LOG.trace( "Entering updateTeamMemberships()" );
 
-        // Create a new map for team memberships
-        Map<String,List<Agent>> currentKnownTeamMemberships =
-                new HashMap<String,List<Agent>>();
-        
-        // Build a map of all the observed agents
-        Map<String,Agent> sensedAgentMap = new HashMap<String,Agent>();
-        Iterator<Agent> agentIter = _sensedAgents.iterator();
-        while( agentIter.hasNext() )
+        // Iterate through all the teams in the existing team memberships
+        boolean anyLeft = (0 < _sensedSlots.getLeftCount());
+        _teamChangerCount = 0;
+        int keptTeamCount = 0;
+        for( int i = 0; i < _knownTeamCount; i++ )
         {
-            Agent current = agentIter.next();
-            sensedAgentMap.put( current.getID(), current );
-        }
-        
-        // Iterate through all the teamIDs in the existing team membership map
-        Iterator<String> teamIDIter = _knownTeamMemberships.keySet().iterator();
-        while( teamIDIter.hasNext() )
-        {
-            // Iterate through all the sensed agents in this team
-            String teamID = teamIDIter.next();
-            List<Agent> newTeamMembers = new LinkedList<Agent>();
-            List<Agent> oldTeamMembers = _knownTeamMemberships.get( teamID );
-            Iterator<Agent> oldTeamMemberIter = oldTeamMembers.iterator();
-            while( oldTeamMemberIter.hasNext() )
+            // Iterate through all the previously sensed agents in this team
+            int teamIdx = _knownTeams[i];
+            List<Agent> teamMembers = _knownTeamMemberships.get( i );
+            Iterator<Agent> teamMemberIter = teamMembers.iterator();
+            while( teamMemberIter.hasNext() )
             {
-                // Did we sense this agent?
-                Agent agent = oldTeamMemberIter.next();
-                if( sensedAgentMap.containsKey( agent.getID() ) )
+                Agent agent = teamMemberIter.next();
+                
+                // Is it still sensed?
+                if( anyLeft && !_sensedSlots.isSensed( agent.getSlot() ) )
+                {
+                    // Nope
+                    teamMemberIter.remove();
+                }
+                // Is it still in the same team?
+                else if( teamIdx != agent.getTeamIndex() )
                 {
-                    // Was it in the same team?
-                    if( teamID.equals( agent.getTeam().getID() ) )
-                    {
-                        // Yup.  Add it to the new list of team members
-                        newTeamMembers.add( agent );
-                        
-                        // Remove it from the map of sensed agents
-                        sensedAgentMap.remove( agent.getID() );
-                        
-//                        _LOG.debug( "Found previous member of ["
-//                                + teamID
-//                                + "]" );
-                    }
+                    // Nope, it needs to join its new team
+                    teamMemberIter.remove();
+                    addTeamChanger( agent.getSlot() );
                 }
             }
             
-//            _LOG.debug( "Team=[" + teamID + "]  Previous members=[" + newTeamMembers.size() + "]" );
-            
-            // Did we sense any team members for this team?
-            if( newTeamMembers.size() > 0 )
+            // Keep the team if we still sense any of its members
+            if( !teamMembers.isEmpty() )
             {
-                // Yup add it to the map
-                currentKnownTeamMemberships.put( teamID, newTeamMembers );
+                _knownTeams[keptTeamCount] = teamIdx;
+                _knownTeamMemberships.set( keptTeamCount, teamMembers );
+                keptTeamCount++;
             }
         }
         
-        // Process all the agents we haven't previously observed to be part of a team
-        Iterator<String> unprocessedAgentIDIter = sensedAgentMap.keySet().iterator();
-        while( unprocessedAgentIDIter.hasNext() )
+        // Drop the teams we no longer sense
+        while( _knownTeamMemberships.size() > keptTeamCount )
         {
-            // Get the agent and their teamID
-            String agentID = unprocessedAgentIDIter.next();
-            Agent agent = sensedAgentMap.get( agentID );
-            String teamID = agent.getTeam().getID();
-            
-//            _LOG.debug( "Found new member of ["
-//                    + teamID
-//                    + "]" );
-            
-            // Get the observed members of that team
-            List<Agent> observedTeamMembers = currentKnownTeamMemberships.get( teamID );
-            if( null == observedTeamMembers )
+            _knownTeamMemberships.remove( _knownTeamMemberships.size() - 1 );
+        }
+        _knownTeamCount = keptTeamCount;
+        
+        // Add the new agents and the ones that changed teams to the end of
+        // their teams in sensed order
+        if( (0 < _sensedSlots.getEnteredCount()) || (0 < _teamChangerCount) )
+        {
+            Arrays.sort( _teamChangerSlots, 0, _teamChangerCount );
+            int sensedIdx = 0;
+            Iterator<Agent> agentIter = _sensedAgents.iterator();
+            while( agentIter.hasNext() )
             {
-                // We haven't observed any for that team, create the list and
-                // add it to the map
-                observedTeamMembers = new LinkedList<Agent>();
-                currentKnownTeamMemberships.put( teamID, observedTeamMembers );
-                
-//                _LOG.debug( "New team [" + teamID + "]" );
+                Agent agent = agentIter.next();
+                int teamIdx = _sensedTeams[sensedIdx++];
+                int slot = agent.getSlot();
+                if( !_sensedSlots.wasSensed( slot )
+                        || (0 <= Arrays.binarySearch( _teamChangerSlots,
+                                0,
+                                _teamChangerCount,
+                                slot )) )
+                {
+                    joinKnownTeam( agent, teamIdx );
+                }
             }
-            
-            // Add the agent to the end of the list
-            observedTeamMembers.add( agent );
-//            _LOG.debug( "Added agent [" + agentID + "] to team [" + teamID + "]" );
         }
         
-        // Save the team memberships
-        _knownTeamMemberships = currentKnownTeamMemberships;
-        
-        // Compute the mean positions of all the teams
-        teamIDIter = _knownTeamMemberships.keySet().iterator();
-        while( teamIDIter.hasNext() )
+        _LOG.trace( "Leaving updateTeamMemberships()" );
+    }
+    
+    /**
+     * Records the slot of a sensed agent that changed teams
+     *
+     * @param slot The agent's slot
+     */
+    private void addTeamChanger( int slot )
+    {
+        if( _teamChangerSlots.length == _teamChangerCount )
         {
-            // Iterate through all the sensed agents in this team
-            String teamID = teamIDIter.next();
-            Vector3f meanPosition = new Vector3f();
-            List<Agent> teamMembers = _knownTeamMemberships.get( teamID );
-            Iterator<Agent> teamMemberIter = teamMembers.iterator();
-            while( teamMemberIter.hasNext() )
+            _teamChangerSlots = Arrays.copyOf( _teamChangerSlots,
+                    2 * _teamChangerCount );
+        }
+        _teamChangerSlots[_teamChangerCount++] = slot;
+    }
+    
+    /**
+     * Adds an agent to the end of the sensed members of a team
+     *
+     * @param agent The agent
+     * @param teamIdx The agent's team handle
+     */
+    private void joinKnownTeam( Agent agent, int teamIdx )
+    {
+        // Get the observed members of that team
+        int knownIdx = findKnownTeam( teamIdx );
+        if( 0 > knownIdx )
+        {
+            // We haven't observed any for that team, create the list
+            if( _knownTeams.length == _knownTeamCount )
             {
-                meanPosition.addLocal( teamMemberIter.next().getPosition() );
+                _knownTeams = Arrays.copyOf( _knownTeams, 2 * _knownTeamCount );
             }
-            
-            meanPosition.divideLocal( teamMembers.size() );
-            
-            // Add it to the map
-            _meanTeamPositions.put( teamID, meanPosition );
-//            _LOG.debug( "Mean position: teamID=["
-//                    + teamID
-//                    + "] position=["
-//                    + meanPosition
-//                    + "]" );
+            knownIdx = _knownTeamCount++;
+            _knownTeams[knownIdx] = teamIdx;
+            _knownTeamMemberships.add( new LinkedList<Agent>() );
         }
         
-        // If we didn't find any team members, create an empty MRV for our team
-        if( !_meanTeamPositions.containsKey( getTeam().getID() ) )
+        // Add the agent to the end of the list
+        _knownTeamMemberships.get( knownIdx ).add( agent );
+    }
+    
+    /**
+     * Returns the position of the specified team among the known teams
+     *
+     * @param teamIdx The team handle
+     * @return The position, or <code>-1</code> if the team isn't known
+     */
+    private int findKnownTeam( int teamIdx )
+    {
+        for( int i = 0; i < _knownTeamCount; i++ )
         {
-            _meanTeamPositions.put( getTeam().getID(),
-                    new Vector3f() );
+            if( teamIdx == _knownTeams[i] )
+            {
+                return i;
+            }
         }
-
-
-//        _LOG.debug( "Sensed leaders for [" + _knownTeamMemberships.size() + "]" );
-        
-        _LOG.trace( "Leaving findTeamMemberships()" );
+        return -1;
     }
     
     /**
-     * Calculates the mean resultant vector of this agent w.r.t. to all sensed
-     * agents by team.
+     * Calculates the separation, cohesion and alignment sums along with the
+     * mean resultant vectors and mean positions of all the sensed teams in
+     * a single pass over the sensed agents
      */
-    private void calculateMeanResultantVectors()
+    private void calculateNeighborSums()
     {
-        _LOG.trace( "Entering calculateMeanResultantVectors()" );
+        _LOG.trace( "Entering calculateNeighborSums()" );
 
+        // Run the kernel over the team memberships
+        _neighborKernel.calculate( _stateStore,
+                _slot,
+                _knownTeams,
+                _knownTeamMemberships,
+                _knownTeamCount,
+                _ownTeamIndex );
+        
+        // Make sure we have room for the results
+        if( _meanTeamPositions.length < _knownTeamCount )
+        {
+            int capacity = Math.max( _knownTeamCount,
+                    2 * _meanTeamPositions.length );
+            _meanTeamPositions = new Vector3f[capacity];
+            _meanResultantVectorsByTeam = new NavigationalVector[capacity];
+        }
+        
         // Iterate through each team
-        Iterator<String> teamIDIter = _knownTeamMemberships.keySet().iterator();
-        while( teamIDIter.hasNext() )
+        for( int i = 0; i < _knownTeamCount; i++ )
         {
-            String currentTeamID = teamIDIter.next();
+            int teamSize = _neighborKernel.getTeamSize( i );
+            
+            // Calculate the mean position
+            Vector3f meanPosition = _neighborKernel.loadPositionSum( i,
+                    new Vector3f() );
+            meanPosition.divideLocal( teamSize );
+            _meanTeamPositions[i] = meanPosition;
             
-            // Iterate through all the agents on the team
-            Vector3f teamSum = new Vector3f();
-            List<Agent> teamMembers = _knownTeamMemberships.get( currentTeamID );
-            Iterator<Agent> currentTeamMemberIter = teamMembers.iterator();
-            while( currentTeamMemberIter.hasNext() )
+            // Scale the resultant vector by the number of agents
+            Vector3f mrv = _neighborKernel.loadMRVSum( i, new Vector3f() );
+            if( 0 < teamSize )
             {
-                Agent currentAgent = currentTeamMemberIter.next();
-                
-                if( currentAgent.getID().equals( getID() ) )
-                {
-                    continue;
-                }
-                
-                // Get the vector from the agent to the teammate
-                Vector3f toAgent = currentAgent.getPosition().subtract( _position );
-
-                // Normalize and add it to the sum of vectors
-                teamSum.addLocal( toAgent.normalize() );
-                
-//                _LOG.debug( "ToAgent ["
-//                        + toAgent
-//                        + "] teamSum=["
-//                        + teamSum
-//                        + "]" );
+                mrv.multLocal( 1.0f / teamSize );
             }
+            _meanResultantVectorsByTeam[i] = new NavigationalVector( mrv );
             
-            // Scale it by the number of agents
-            Vector3f mrv = new Vector3f( teamSum );
-            if( 0 < teamMembers.size() )
+            if( _LOG.isDebugEnabled() )
             {
-                mrv.multLocal( 1.0f / teamMembers.size() );
+                _LOG.debug( "MRV Team=["
+                        + _knownTeams[i]
+                        + "]: mrv=["
+                        + mrv
+                        + "] size=["
+                        + teamSize
+                        + "]" );
             }
-            
-            // Store it
-            _meanResultantVectorsByTeam.put( currentTeamID,
-                    new NavigationalVector( mrv ) );
-            
-            _LOG.debug( "MRV Team=["
-                    + currentTeamID
-                    + "]: mrv=["
-                    + mrv
-                    + "] teamSum=["
-                    + teamSum
-                    + "] size=["
-                    + teamMembers.size()
-                    + "]" );
         }
         
-        // If we didn't find any team members, create an empty MRV for our team
-        if( !_meanResultantVectorsByTeam.containsKey( getTeam().getID() ) )
-        {
-            _meanResultantVectorsByTeam.put( getTeam().getID(),
-                    new NavigationalVector() );
-        }
-        
-        _LOG.trace( "Leaving calculateMeanResultantVectors()" );
+        _LOG.trace( "Leaving calculateNeighborSums()" );
     }
 
 
@@ -937,7 +1345,12 @@ if( this.equals(oldLeader) )
 //            }
             
             // Save it
-            _patchValues.put( patch.getID(), value );
+            int patchIdx = patch.getIndex();
+            if( _patchValues.length <= patchIdx )
+            {
+                _patchValues = Arrays.copyOf( _patchValues, patchIdx + 1 );
+            }
+            _patchValues[patchIdx] = value;
             
             // Add it to the sums
             _patchValueSlopeIndSum += giveUpSlopeInd;
@@ -958,137 +1371,89 @@ if( this.equals(oldLeader) )
     }
     
     /**
-     * Calculates the alignment vector
+     * Calculates the alignment vector.  The returned vector is scratch
+     * space that is overwritten by the next steering calculation.
      *
      * @return The alignment vector
      */
     private Vector3f calculateAlignment()
     {
-        Vector3f alignment = new Vector3f();
-        
         // Average all the velocities of our sensed teammates
-        Iterator<Agent> agentIter = _sensedTeammates.iterator();
-        while( agentIter.hasNext() )
-        {
-            Agent current = agentIter.next();
-            alignment.addLocal( current.getVelocity() );
-        }
-        alignment.divideLocal( _sensedTeammates.size() );
+        Vector3f alignment = _neighborKernel.loadAlignmentSum( _behaviorScratch );
+        alignment.divideLocal( _neighborKernel.getTeammateCount() );
         
         // Limit it by the max force
-        alignment.subtractLocal( getVelocity() );
+        alignment.subtractLocal( _velocity );
         ForageUtils.limitMagnitude( alignment, _maxForce );
 
         return alignment;
     }
     
     /**
-     * Calculates the separation vector
+     * Calculates the separation vector.  The returned vector is scratch
+     * space that is overwritten by the next steering calculation.
      *
      * @return The separation vector
      */
     private Vector3f calculateSeparation()
     {
-        Vector3f separation = new Vector3f();
-
-        float minMaxSeparationDiff = _desiredSeparation - _minSeparation;
-        
-        // Average all the relative positions from everyone
-        int separationAgentCount = 0;
-//        Iterator<Agent> agentIter = _sensedTeammates.iterator();
-        Iterator<Agent> agentIter = _sensedAgents.iterator();
-        while( agentIter.hasNext() )
-        {
-            Agent current = agentIter.next();
-            
-            // Calculate the vector to us 
-            Vector3f fromCurrent = _position.subtract( current.getPosition() );
-            float distance = fromCurrent.length();
-//            _LOG.debug( "Separation distance=[" + distance + "]" );
-            
-            // Is the distance within the desired separation?
-            if( _desiredSeparation > distance )
-            {
-                /* There is a separation force that uses the distance to the agent.
-                 * Since we don't want to be closer than the minimum, anything
-                 * closer is at maximum strength.
-                 */
-                float separationStrength = (distance - _minSeparation) / minMaxSeparationDiff;
-                if( separationStrength <= 0.0f )
-                {
-                    separationStrength = _MAX_SEPARATION_STRENGTH;
-                }
-                fromCurrent.normalizeLocal();
-                fromCurrent.divideLocal( separationStrength );
-//                _LOG.debug( "Separation: distance=[" + distance
-//                        + "] strength=[" + separationStrength
-//                        + "] fromCurrent=[" + fromCurrent + "]" );
-
-                // Add it to the total separation
-                separation.addLocal( fromCurrent );
-                separationAgentCount++;
-            }
-        }
+        // Get the sum of the separation vectors from everyone
+        Vector3f separation = _neighborKernel.loadSeparationSum( _behaviorScratch );
         
         // Did we separate from anyone?
-        if( 0 < separationAgentCount )
+        if( 0 < _neighborKernel.getSeparationCount() )
         {
             //Yup, scale it
-            separation.divideLocal( _sensedTeammates.size() );
+            separation.divideLocal( _neighborKernel.getTeammateCount() );
             
             // Limit it by the max force
 //            ForageUtils.limitMagnitude( separation, _maxForce );
         }
-        else
-        {
-            separation = new Vector3f();
-        }
 
         return separation;
     }
     
     /**
-     * Calculates the cohesion vector
+     * Calculates the cohesion vector.  The returned vector is scratch
+     * space that is overwritten by the next steering calculation.
      *
      * @return The cohesion vector
      */
     private Vector3f calculateCohesion()
     {
-        Vector3f cohesion = new Vector3f();
-        
         // Average all the relative positions of our sensed teammates
-        Iterator<Agent> agentIter = _sensedTeammates.iterator();
-        while( agentIter.hasNext() )
-        {
-            Agent current = agentIter.next();
-            cohesion.addLocal( current.getPosition().subtract( _position ) );
-        }
-        cohesion.divideLocal( _sensedTeammates.size() );
+        Vector3f cohesion = _neighborKernel.loadCohesionSum( _behaviorScratch );
+        cohesion.divideLocal( _neighborKernel.getTeammateCount() );
         
         return seek( cohesion, false );
     }
 
     /**
-     * Calculates the goal seek vector
+     * Calculates the goal seek vector.  The returned vector is scratch
+     * space that is overwritten by the next steering calculation.
      *
      * @return The goal seek vector
      */
     private Vector3f calculateGoalSeek()
     {
         // Get the destination from the decision
-        Vector3f goal = _decision.getDestination();
+        Vector3f goal = _decision.loadDestination( _behaviorScratch );
         
-        _LOG.debug( "Position=["
-                + _position
-                + "] Goal=["
-                + goal
-                + "]" );
+        if( _LOG.isDebugEnabled() )
+        {
+            _LOG.debug( "Position=["
+                    + getPosition()
+                    + "] Goal=["
+                    + goal
+                    + "]" );
+        }
         
-        return seek( goal.subtract( _position ), true );
+        return seek( goal.subtractLocal( getPosition() ), true );
     }
     
     /**
-     * Calculates vector to seek to a location
+     * Calculates vector to seek to a location.  The location vector is
+     * modified in place and returned as the steering vector.
      *
      * @param location The location to which the agent will navigate
      * @param slowDown Flag indicating whether or not the agent should slow down
@@ -1097,14 +1462,17 @@ if( this.equals(oldLeader) )
      */
     private Vector3f seek( Vector3f location, boolean slowDown )
     {
-        _LOG.debug( "Seeking [" + location + "]" );
+        if( _LOG.isDebugEnabled() )
+        {
+            _LOG.debug( "Seeking [" + location + "]" );
+        }
         
         // Is it within the minimum distance to not go full speed?
         float distance = location.length();
-        Vector3f desired = location.normalize();
-        Vector3f steer = null;
+        Vector3f steer = location;
         if( 0.0f < distance )
         {
+            Vector3f desired = location.normalizeLocal();
             if( slowDown && (_arrivalScaleDistance > distance) )
             {
                 // Yup, scale based on distance
@@ -1117,11 +1485,11 @@ if( this.equals(oldLeader) )
             }
             
             // Calculate steering change
-            steer = desired.subtract( getVelocity() );
+            steer = desired.subtractLocal( _velocity );
         }
         else
         {
-            steer = new Vector3f();
+            steer.set( 0.0f, 0.0f, 0.0f );
         }
 
         // Limit it to our max force
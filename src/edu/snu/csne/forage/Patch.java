@@ -43,6 +43,9 @@ public class Patch
     /** This patch's unique ID */
     private String _id = null;
     
+    /** This patch's dense integer index */
+    private int _index = 0;
+    
     /** This patch's position */
     private Vector3f _position = Vector3f.ZERO;
     
@@ -69,6 +72,7 @@ public class Patch
      * Builds this Patch object
      *
      * @param id
+     * @param index
      * @param position
      * @param radius
      * @param initialResources
@@ -76,6 +80,7 @@ public class Patch
      * @param minAgentForageCount
      */
     public Patch( String id,
+            int index,
             Vector3f position,
             float radius,
             float initialResources,
@@ -106,6 +111,7 @@ public class Patch
 //    {
         // Validate and store
         Validate.notEmpty( id, "Patch ID may not be null or empty" );
+        Validate.isTrue( 0 <= index, "Patch index must be non-negative" );
         Validate.notNull( position, "Patch position may not be null" );
         Validate.isTrue( 0.0f < radius,
                 "Patch radius must be positive" );
@@ -118,6 +124,7 @@ public class Patch
         Validate.isTrue( 0 <= minAgentForageCount,
                 "Minimum agent foraging count must be non-negative" );
         _id = id;
+        _index = index;
         _position = position;
         _radius = radius;
         _initialResources = initialResources;
@@ -151,6 +158,17 @@ public class Patch
         return _id;
     }
     
+    /**
+     * Returns the dense integer index of this patch.  Patches are indexed
+     * in the order they are created.
+     *
+     * @return The index
+     */
+    public int getIndex()
+    {
+        return _index;
+    }
+    
     /**
      * Returns this food patch's position 
      *
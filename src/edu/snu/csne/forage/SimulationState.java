@@ -20,11 +20,15 @@
 package edu.snu.csne.forage;
 
 // Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
 
 import org.apache.commons.lang3.Validate;
@@ -33,11 +37,18 @@ import org.apache.logging.log4j.Logger;
 import com.jme3.math.Vector3f;
 import ec.util.MersenneTwisterFast;
 import edu.snu.csne.forage.decision.AgentDecisionMaker;
+import edu.snu.csne.forage.decision.DecisionCalculatorParams;
 import edu.snu.csne.forage.event.DecisionEvent;
 import edu.snu.csne.forage.event.SimulationEventListener;
 import edu.snu.csne.forage.sensor.AgentSensor;
 import edu.snu.csne.forage.sensor.PatchSensor;
+import edu.snu.csne.forage.util.AgentSpatialGrid;
+import edu.snu.csne.forage.util.AgentStateStore;
 import edu.snu.csne.forage.util.PatchDepletionCalculator;
+import edu.snu.csne.forage.util.PatchSpatialIndex;
+import edu.snu.csne.forage.util.ScenarioCache;
+import edu.snu.csne.forage.util.ScenarioCache.AgentScenario;
+import edu.snu.csne.forage.util.ScenarioCache.PatchScenario;
 import edu.snu.csne.util.MiscUtils;
 
 
@@ -77,12 +88,6 @@ public class SimulationState
     public static final String _PATCH_PROPS_FILE_KEY = "patch-properties-file";
     
     
-    /** Key for the number of agents */
-    private static final String _AGENT_COUNT_KEY = "agent-count";
-    
-    /** Key prefix for agents */
-    private static final String _AGENT_PREFIX_KEY = "agent";
-
     /** Key for the agent's maximum speed */
     private static final String _MAX_SPEED_KEY = "max-speed";
     
@@ -101,9 +106,6 @@ public class SimulationState
     /** Key for the agent's max foraging area */
     private static final String _MAX_FORAGING_AREA_KEY = "max-foraging-area";
     
-    /** Key for the number of patches */
-    private static final String _PATCH_COUNT_KEY = "patch-count";
-    
     /** Key for the resource consumption rate */
     private static final String _RESOURCE_CONSUMPTION_RATE_KEY =
             "resource-consumption-rate";
@@ -112,36 +114,9 @@ public class SimulationState
     private static final String _RESOURCE_CONSUMPTION_MAX_KEY =
             "resource-consumption-max";
 
-    /** Key prefix for patches */
-    private static final String _PATCH_PREFIX_KEY = "patch";
-    
-    /** Key postfix for a position */
-    private static final String _POSITION_KEY = "position";
-    
-    /** Key postfix for a velocity */
-    private static final String _VELOCITY_KEY = "velocity";
-
-    /** Key postfix for a radius value */
-    private static final String _RADIUS_KEY = "radius";
-
-    /** Key postfix for a resources value */
-    private static final String _RESOURCES_KEY = "resources";
-    
-    /** Key postfix for a predation probability value */
-    private static final String _PREDATION_PROBABILITY_KEY = "predation-probability";
-    
-    /** Key postfix for a minimum agent forage count value */
-    private static final String _MIN_AGENT_FORAGE_COUNT_KEY = "min-agent-forage-count";
-    
     /** Key postfix for a team value */
     private static final String _TEAM_KEY = "team";
     
-    /** Key format string for an agent index */
-    private static final String _AGENT_INDEX_FORMAT_STR = "%03d";
-    
-    /** Key format string for a patch index */
-    private static final String _PATCH_INDEX_FORMAT_STR = "%02d";
-
     /** Key for the number of event listeners */
     private static final String _EVENT_LISTENER_COUNT_KEY = "event-listener-count";
     
@@ -157,10 +132,46 @@ public class SimulationState
     /** Key for the flag denoting whether or not agent's have an initial velocity */
     private static final String _ALLOW_INITIAL_VELOCITY_KEY = "allow-initial-velocity";
     
+    /** Key for the flag denoting whether or not agents step synchronously */
+    private static final String _SYNCHRONOUS_STEP_KEY = "synchronous-step";
+    
+    /** Key for the flag denoting whether or not agents only decide when scheduled */
+    private static final String _EVENT_DRIVEN_DECISIONS_KEY = "event-driven-decisions";
+    
+    /** Key for the distribution of the waiting times between decisions */
+    private static final String _DECISION_WAIT_DISTRIBUTION_KEY = "decision-wait-distribution";
+    
+    /** Key for the max number of steps an agent waits before reconsidering */
+    private static final String _DECISION_MAX_WAIT_KEY = "decision-max-wait";
+    
+    /** Geometrically distributed waiting times */
+    private static final String _GEOMETRIC_DECISION_WAIT = "geometric";
+    
+    /** Exponentially distributed waiting times */
+    private static final String _EXPONENTIAL_DECISION_WAIT = "exponential";
+    
+    /** Default max number of steps an agent waits before reconsidering.
+     *  Reconsidering doesn't change the results, it only bounds how long
+     *  agents with no possible decisions stay in the schedule. */
+    private static final int _DEFAULT_DECISION_MAX_WAIT = 1000;
+    
+    /** Root leader slot for agents in a leadership cycle */
+    private static final int _CYCLE_SLOT = -1;
+    
+    /** Root leader slot for agents that haven't been resolved */
+    private static final int _UNRESOLVED_SLOT = -2;
+    
+    /** Root leader slot for agents being resolved */
+    private static final int _RESOLVING_SLOT = -3;
+    
     
     /** The simulation properties */
     private Properties _props = null;
 
+    /** Typed decision calculator parameters (null if they come from the
+     *  properties) */
+    private DecisionCalculatorParams _decisionCalculatorParams = null;
+
     /** Random number generator */
     private MersenneTwisterFast _random = null;
 
@@ -179,6 +190,32 @@ public class SimulationState
     /** Number of new teams created */
     private int _newTeamCount = 0;
     
+    /** Flag denoting whether or not agents step synchronously */
+    private boolean _synchronousStep = false;
+    
+    /** Flag denoting whether or not agents only decide when scheduled */
+    private boolean _eventDrivenDecisions = false;
+    
+    /** Flag denoting whether the waiting times are exponential or geometric */
+    private boolean _exponentialDecisionWait = false;
+    
+    /** The max number of steps an agent waits before reconsidering */
+    private int _decisionMaxWait = _DEFAULT_DECISION_MAX_WAIT;
+    
+    /** The scheduled agent decisions ordered by simulation step */
+    private PriorityQueue<ScheduledDecision> _decisionSchedule =
+            new PriorityQueue<ScheduledDecision>();
+    
+    /** Flags denoting the agents due to decide, indexed by slot */
+    private boolean[] _decisionDue = new boolean[0];
+    
+    /** The bound on the switch probability each due agent was scheduled
+     *  with, indexed by slot */
+    private float[] _decisionSwitchHazards = new float[0];
+    
+    /** The version of each agent's latest scheduled decision, indexed by slot */
+    private int[] _decisionScheduleVersions = new int[0];
+    
     /** Decision maker for all agents */
     private AgentDecisionMaker _decisionMaker = null;
     
@@ -186,6 +223,15 @@ public class SimulationState
     private PatchDepletionCalculator _patchDepletionCalculator =
             new PatchDepletionCalculator();
 
+    /** The motion state of all the agents */
+    private AgentStateStore _agentStateStore = new AgentStateStore();
+    
+    /** Spatial index of the agents, rebuilt every simulation step */
+    private AgentSpatialGrid _agentGrid = null;
+
+    /** Spatial index of the food patches, built when they are created */
+    private PatchSpatialIndex _patchIndex = null;
+
 
     /** All the agents in the simulation */
     private Map<String,Agent> _agents = new HashMap<String,Agent>();
@@ -193,6 +239,29 @@ public class SimulationState
     /** Each agent's leader */
     private Map<Agent,Agent> _following = new HashMap<Agent,Agent>();
     
+    /** Each leader's direct followers in the order they registered */
+    private Map<Agent,List<Agent>> _followers = new HashMap<Agent,List<Agent>>();
+    
+    /** Flag denoting whether the root leaders have been resolved from the
+     *  registrations.  Once they have, every registration updates them. */
+    private volatile boolean _leadersResolved = false;
+    
+    /** The slot of each agent's root leader, indexed by slot */
+    private int[] _rootLeaderSlots = new int[0];
+    
+    /** The number of agents on each team, indexed by the team handle */
+    private int[] _teamSizes = new int[0];
+    
+    /** The agents that aren't following anyone, in slot order */
+    private List<Agent> _rootLeaderList = new ArrayList<Agent>();
+    
+    /** Read-only view of the root leaders */
+    private List<Agent> _rootLeaders = Collections.unmodifiableList(
+            _rootLeaderList );
+    
+    /** Scratch buffer holding the slots of a follower's subtree */
+    private int[] _subtreeSlots = new int[0];
+    
     /** All the food patches in the simulation */
     private Map<String,Patch> _patches = new HashMap<String,Patch>();
     
@@ -208,7 +277,21 @@ public class SimulationState
      */
     public void initialize( Properties props )
     {
-        _LOG.trace( "Entering initialize( props )" );
+        initialize( props, null );
+    }
+
+    /**
+     * Initialize the simulation state using the specified decision
+     * calculator parameters instead of the ones in the properties
+     *
+     * @param props The simulation properties
+     * @param decisionCalculatorParams The decision calculator parameters
+     *            (may be <code>null</code>)
+     */
+    public void initialize( Properties props,
+            DecisionCalculatorParams decisionCalculatorParams )
+    {
+        _LOG.trace( "Entering initialize( props, decisionCalculatorParams )" );
 
         // (Re)Set some values
         _currentSimulationRun = 0;
@@ -217,6 +300,7 @@ public class SimulationState
         
         // Save the properties
         _props = props;
+        _decisionCalculatorParams = decisionCalculatorParams;
 
         // Get the random number generator seed
         String randomSeedStr = props.getProperty( _RANDOM_SEED_KEY );
@@ -243,6 +327,55 @@ public class SimulationState
                 + _simulationRunStepCount
                 + "]" );
 
+        // Do the agents step synchronously?
+        _synchronousStep = MiscUtils.loadOptionalBooleanProperty( _props,
+                _SYNCHRONOUS_STEP_KEY,
+                false );
+        _LOG.debug( "_synchronousStep=["
+                + _synchronousStep
+                + "]" );
+
+        // Do the agents only decide when scheduled?
+        _eventDrivenDecisions = MiscUtils.loadOptionalBooleanProperty( _props,
+                _EVENT_DRIVEN_DECISIONS_KEY,
+                false );
+        _LOG.debug( "_eventDrivenDecisions=["
+                + _eventDrivenDecisions
+                + "]" );
+        if( _eventDrivenDecisions )
+        {
+            // Get the waiting time distribution
+            String distribution = _props.getProperty(
+                    _DECISION_WAIT_DISTRIBUTION_KEY,
+                    _GEOMETRIC_DECISION_WAIT ).trim();
+            if( _EXPONENTIAL_DECISION_WAIT.equalsIgnoreCase( distribution ) )
+            {
+                _exponentialDecisionWait = true;
+            }
+            else if( !_GEOMETRIC_DECISION_WAIT.equalsIgnoreCase( distribution ) )
+            {
+                _LOG.error( "Unknown decision wait distribution ["
+                        + distribution
+                        + "]" );
+                throw new IllegalArgumentException( "Unknown decision wait distribution ["
+                        + distribution
+                        + "]" );
+            }
+            _LOG.debug( "_exponentialDecisionWait=["
+                    + _exponentialDecisionWait
+                    + "]" );
+
+            // Get the max waiting time
+            _decisionMaxWait = MiscUtils.loadOptionalIntegerProperty( _props,
+                    _DECISION_MAX_WAIT_KEY,
+                    _DEFAULT_DECISION_MAX_WAIT );
+            Validate.isTrue( 0 < _decisionMaxWait,
+                    "Decision max wait must be positive" );
+            _LOG.debug( "_decisionMaxWait=["
+                    + _decisionMaxWait
+                    + "]" );
+        }
+
         // Initialize the patch depletion calculator
         _patchDepletionCalculator.initialize( this );
         
@@ -252,6 +385,9 @@ public class SimulationState
 
         // Create the agents
         createAgents();
+        
+        // Tabulate the patch depletion now that the patches and agents exist
+        _patchDepletionCalculator.buildDepletionTables();
                 
         // Load all the event listeners
         int eventListenerCount = MiscUtils.loadNonEmptyIntegerProperty(
@@ -289,7 +425,7 @@ public class SimulationState
         }
 
         
-        _LOG.trace( "Leaving initialize( props )" );
+        _LOG.trace( "Leaving initialize( props, decisionCalculatorParams )" );
     }
 
     /**
@@ -382,6 +518,21 @@ public class SimulationState
                 + "]" );
         }
         _following.put( follower, leader );
+        
+        // Add it to the leader's followers
+        List<Agent> followers = _followers.get( leader );
+        if( null == followers )
+        {
+            followers = new LinkedList<Agent>();
+            _followers.put( leader, followers );
+        }
+        followers.add( follower );
+        
+        // Move the follower's subtree onto the leader's team
+        if( _leadersResolved )
+        {
+            joinTeam( follower, leader );
+        }
     }
     
     public void deregisterFollower( Agent follower, Agent leader )
@@ -403,27 +554,85 @@ public class SimulationState
                 + currentLeader
                 + "])" );
         _following.remove( follower );
+        
+        // Remove it from the leader's followers
+        List<Agent> followers = _followers.get( leader );
+        followers.remove( follower );
+        if( followers.isEmpty() )
+        {
+            _followers.remove( leader );
+        }
+        
+        // The follower's subtree is now its own team
+        if( _leadersResolved )
+        {
+            leaveTeam( follower );
+        }
     }
     
+    /**
+     * Returns the agents directly following the specified leader in the
+     * order they registered
+     *
+     * @param leader The leader
+     * @return The followers
+     */
     public List<Agent> getFollowers( Agent leader )
     {
         Validate.notNull( leader, "Can't find followers of null leader" );
         
-        List<Agent> followers = new LinkedList<Agent>();
-        
-        // Iterate through all the agents to see who they are following
-        Iterator<Agent> followerIter = _following.keySet().iterator();
-        while( followerIter.hasNext() )
+        List<Agent> followers = _followers.get( leader );
+        if( null == followers )
         {
-            Agent currentFollower = followerIter.next();
-            Agent currentLeader = _following.get( currentFollower );
-            if( leader.getID().equals( currentLeader ) )
-            {
-                followers.add( currentFollower );
-            }
+            return new LinkedList<Agent>();
         }
+        return new LinkedList<Agent>( followers );
+    }
+    
+    /**
+     * Returns the agent at the root of the specified agent's leadership
+     * chain
+     *
+     * @param agent The agent
+     * @return The root leader, which is the agent itself if it isn't
+     * following anyone, or <code>null</code> if the chain has a cycle
+     */
+    public Agent getRootLeader( Agent agent )
+    {
+        Validate.notNull( agent, "Can't find the root leader of a null agent" );
+        ensureLeadersResolved();
         
-        return followers;
+        int rootSlot = _rootLeaderSlots[agent.getSlot()];
+        if( _CYCLE_SLOT == rootSlot )
+        {
+            return null;
+        }
+        return _agentStateStore.getAgent( rootSlot );
+    }
+    
+    /**
+     * Returns the number of agents on the specified team
+     *
+     * @param teamIdx The team handle
+     * @return The number of agents
+     */
+    public int getTeamSize( int teamIdx )
+    {
+        ensureLeadersResolved();
+        return _teamSizes[teamIdx];
+    }
+    
+    /**
+     * Returns all the agents that aren't following anyone and therefore
+     * lead their own team.  The list is updated as followers register, so
+     * it must not be iterated while decisions are being committed.
+     *
+     * @return The root leaders in slot order
+     */
+    public List<Agent> getRootLeaders()
+    {
+        ensureLeadersResolved();
+        return _rootLeaders;
     }
     
     /**
@@ -483,6 +692,12 @@ public class SimulationState
         // Update the current simulation run
         _currentSimulationRun++;
         
+        // Every agent decides at the start of a run
+        resetDecisionSchedule();
+        
+        // Only count the patch value cache statistics for this run
+        _patchDepletionCalculator.resetValueCacheStats();
+        
         // Iterate through all the event listeners
         Iterator<SimulationEventListener> iter = _listeners.iterator();
         while( iter.hasNext() )
@@ -492,6 +707,402 @@ public class SimulationState
         }
     }
 
+    /**
+     * Makes sure the root leaders reflect the current follower registrations
+     */
+    private void ensureLeadersResolved()
+    {
+        if( !_leadersResolved )
+        {
+            resolveLeaders();
+        }
+    }
+    
+    /**
+     * Clears the decision schedule so every agent is due to decide
+     */
+    private void resetDecisionSchedule()
+    {
+        int agentCount = _agentStateStore.size();
+        _decisionSchedule.clear();
+        _decisionDue = new boolean[agentCount];
+        Arrays.fill( _decisionDue, true );
+        _decisionSwitchHazards = new float[agentCount];
+        _decisionScheduleVersions = new int[agentCount];
+    }
+    
+    /**
+     * Marks the agents whose scheduled decisions have come due.  Entries
+     * replaced by a later schedule for the same agent are discarded.
+     */
+    private void releaseDueDecisions()
+    {
+        while( !_decisionSchedule.isEmpty()
+                && (_decisionSchedule.peek()._step <= _currentSimulationStep) )
+        {
+            ScheduledDecision scheduled = _decisionSchedule.poll();
+            if( scheduled._version == _decisionScheduleVersions[scheduled._slot] )
+            {
+                _decisionDue[scheduled._slot] = true;
+                _decisionSwitchHazards[scheduled._slot] = scheduled._switchHazard;
+            }
+        }
+    }
+    
+    /**
+     * Schedules an agent's next decision, replacing any previously
+     * scheduled one.  The agent isn't due to decide again until then,
+     * unless its inputs change.  Waits reaching the max are shortened to
+     * the max and the agent simply reconsiders its decision then.  Since
+     * the waiting times are memoryless, reconsidering with the current
+     * switch probability at the max is the same as waiting longer.
+     *
+     * @param agent The agent
+     * @param delay The number of steps until the decision
+     * @param switchHazard The bound on the switch probability the wait
+     *            was sampled with, or 0 if the agent only reconsiders
+     */
+    public void scheduleDecision( Agent agent, long delay, float switchHazard )
+    {
+        Validate.isTrue( 0 < delay, "Decision delay must be positive" );
+
+        // Don't wait too long
+        if( delay >= _decisionMaxWait )
+        {
+            delay = _decisionMaxWait;
+            switchHazard = 0.0f;
+        }
+
+        // Replace the current schedule
+        int slot = agent.getSlot();
+        _decisionScheduleVersions[slot]++;
+        _decisionDue[slot] = false;
+        _decisionSwitchHazards[slot] = 0.0f;
+        _decisionSchedule.add( new ScheduledDecision(
+                _currentSimulationStep + delay,
+                slot,
+                _decisionScheduleVersions[slot],
+                switchHazard ) );
+    }
+    
+    /**
+     * Samples the number of steps until an agent may switch decisions,
+     * given the probability of switching during each step.  A wait of 1
+     * means the agent may switch during the next step.  Exponential
+     * waiting times use the rate that gives the same probability of
+     * switching during each step, so both distributions sample the same
+     * process.
+     *
+     * @param hazard The probability of switching during each step
+     * @param rng The agent's random number generator
+     * @return The number of steps, or {@link Long#MAX_VALUE} if the agent
+     *         never switches
+     */
+    public long sampleDecisionWait( float hazard, MersenneTwisterFast rng )
+    {
+        if( 0.0f >= hazard )
+        {
+            return Long.MAX_VALUE;
+        }
+        if( 1.0f <= hazard )
+        {
+            return 1;
+        }
+
+        // Use the inverse of the distribution's CDF
+        double logRandom = Math.log( 1.0 - rng.nextDouble() );
+        double wait = 0.0;
+        if( _exponentialDecisionWait )
+        {
+            double rate = -Math.log( 1.0 - hazard );
+            wait = Math.ceil( -logRandom / rate );
+        }
+        else
+        {
+            wait = 1.0 + Math.floor( logRandom / Math.log( 1.0 - hazard ) );
+        }
+
+        return (long) Math.max( 1.0, Math.min( wait, Long.MAX_VALUE ) );
+    }
+    
+    /**
+     * Resolves the root leader of every agent in a single pass over the
+     * leadership forest.  Each chain is walked once and every agent on it
+     * is assigned the chain's root, so the total work is linear in the
+     * number of agents.  Agents in, or leading into, a cycle have no root
+     * leader and are treated as their own team.  This is only done once
+     * after the agents are created, since every later registration
+     * updates the affected subtree itself.
+     */
+    private synchronized void resolveLeaders()
+    {
+        // Another thread may have resolved them while we waited
+        if( _leadersResolved )
+        {
+            return;
+        }
+        
+        // Get each agent's direct leader
+        int agentCount = _agentStateStore.size();
+        int[] leaderSlots = new int[agentCount];
+        Arrays.fill( leaderSlots, _CYCLE_SLOT );
+        Iterator<Map.Entry<Agent,Agent>> followingIter = _following.entrySet().iterator();
+        while( followingIter.hasNext() )
+        {
+            Map.Entry<Agent,Agent> entry = followingIter.next();
+            leaderSlots[entry.getKey().getSlot()] = entry.getValue().getSlot();
+        }
+        
+        // Walk each unresolved chain up to a resolved agent, a root or a cycle
+        int[] rootSlots = new int[agentCount];
+        Arrays.fill( rootSlots, _UNRESOLVED_SLOT );
+        int[] chain = new int[agentCount];
+        int cycleCount = 0;
+        for( int i = 0; i < agentCount; i++ )
+        {
+            int chainLength = 0;
+            int current = i;
+            int rootSlot = _UNRESOLVED_SLOT;
+            while( _UNRESOLVED_SLOT == rootSlot )
+            {
+                if( _UNRESOLVED_SLOT == rootSlots[current] )
+                {
+                    // Add it to the chain and move to its leader
+                    rootSlots[current] = _RESOLVING_SLOT;
+                    chain[chainLength++] = current;
+                    if( 0 > leaderSlots[current] )
+                    {
+                        rootSlot = current;
+                    }
+                    else
+                    {
+                        current = leaderSlots[current];
+                    }
+                }
+                else if( _RESOLVING_SLOT == rootSlots[current] )
+                {
+                    // We came back to an agent on this chain
+                    rootSlot = _CYCLE_SLOT;
+                    cycleCount++;
+                }
+                else
+                {
+                    // It has already been resolved
+                    rootSlot = rootSlots[current];
+                }
+            }
+            
+            // Everyone on the chain has the same root
+            for( int j = 0; j < chainLength; j++ )
+            {
+                rootSlots[chain[j]] = rootSlot;
+            }
+        }
+        if( 0 < cycleCount )
+        {
+            _LOG.warn( "Cycle detected in leadership hierarchy: count=["
+                    + cycleCount
+                    + "]" );
+        }
+        
+        // Count the team members and find the root leaders
+        int[] teamSizes = new int[agentCount];
+        List<Agent> rootLeaders = new ArrayList<Agent>( agentCount );
+        for( int i = 0; i < agentCount; i++ )
+        {
+            if( _CYCLE_SLOT == rootSlots[i] )
+            {
+                // Agents in a cycle are their own team
+                teamSizes[i]++;
+            }
+            else
+            {
+                teamSizes[rootSlots[i]]++;
+            }
+            if( i == rootSlots[i] )
+            {
+                rootLeaders.add( _agentStateStore.getAgent( i ) );
+            }
+        }
+        
+        // Publish them
+        _rootLeaderSlots = rootSlots;
+        _teamSizes = teamSizes;
+        _rootLeaderList = rootLeaders;
+        _rootLeaders = Collections.unmodifiableList( rootLeaders );
+        _subtreeSlots = new int[agentCount];
+        _leadersResolved = true;
+    }
+
+    /**
+     * Moves the subtree of an agent that just started following a leader
+     * onto the leader's team.  The agent was a root leader, so only the
+     * agents in its subtree change teams.
+     *
+     * @param follower The agent that started following
+     * @param leader The agent it is following
+     */
+    private void joinTeam( Agent follower, Agent leader )
+    {
+        int followerSlot = follower.getSlot();
+        int subtreeSize = collectSubtree( followerSlot );
+        int newRootSlot = _rootLeaderSlots[leader.getSlot()];
+        
+        // It is no longer a root leader
+        removeRootLeader( followerSlot );
+        
+        // Did the subtree just become, or join, a cycle?
+        if( (followerSlot == newRootSlot) || (_CYCLE_SLOT == newRootSlot) )
+        {
+            _LOG.warn( "Cycle detected in leadership hierarchy: follower=["
+                    + follower.getID()
+                    + "] leader=["
+                    + leader.getID()
+                    + "]" );
+            
+            // Agents in a cycle are their own team
+            for( int i = 0; i < subtreeSize; i++ )
+            {
+                int slot = _subtreeSlots[i];
+                _rootLeaderSlots[slot] = _CYCLE_SLOT;
+                _teamSizes[slot] = 1;
+            }
+        }
+        else
+        {
+            // Everyone joins the leader's team
+            for( int i = 0; i < subtreeSize; i++ )
+            {
+                _rootLeaderSlots[_subtreeSlots[i]] = newRootSlot;
+            }
+            _teamSizes[newRootSlot] += subtreeSize;
+            _teamSizes[followerSlot] = 0;
+        }
+    }
+
+    /**
+     * Makes the subtree of an agent that just stopped following its leader
+     * into its own team
+     *
+     * @param follower The agent that stopped following
+     */
+    private void leaveTeam( Agent follower )
+    {
+        int followerSlot = follower.getSlot();
+        int subtreeSize = collectSubtree( followerSlot );
+        int oldRootSlot = _rootLeaderSlots[followerSlot];
+        
+        // Take the subtree off its old team
+        if( _CYCLE_SLOT == oldRootSlot )
+        {
+            // Each agent was its own team
+            for( int i = 0; i < subtreeSize; i++ )
+            {
+                _teamSizes[_subtreeSlots[i]] = 0;
+            }
+        }
+        else
+        {
+            _teamSizes[oldRootSlot] -= subtreeSize;
+        }
+        
+        // The follower leads them now
+        for( int i = 0; i < subtreeSize; i++ )
+        {
+            _rootLeaderSlots[_subtreeSlots[i]] = followerSlot;
+        }
+        _teamSizes[followerSlot] = subtreeSize;
+        addRootLeader( follower );
+    }
+
+    /**
+     * Collects the slots of an agent and everyone whose leadership chain
+     * passes through it into the subtree buffer.  Every agent has a single
+     * leader, so the only agent that can be reached twice is the top one
+     * when it is part of a cycle.
+     *
+     * @param topSlot The slot of the agent at the top of the subtree
+     * @return The number of agents in the subtree
+     */
+    private int collectSubtree( int topSlot )
+    {
+        int count = 0;
+        _subtreeSlots[count++] = topSlot;
+        for( int i = 0; i < count; i++ )
+        {
+            List<Agent> followers = _followers.get(
+                    _agentStateStore.getAgent( _subtreeSlots[i] ) );
+            if( null == followers )
+            {
+                continue;
+            }
+            Iterator<Agent> followerIter = followers.iterator();
+            while( followerIter.hasNext() )
+            {
+                int slot = followerIter.next().getSlot();
+                if( topSlot != slot )
+                {
+                    _subtreeSlots[count++] = slot;
+                }
+            }
+        }
+        
+        return count;
+    }
+
+    /**
+     * Adds an agent to the root leaders, keeping them in slot order
+     *
+     * @param agent The agent
+     */
+    private void addRootLeader( Agent agent )
+    {
+        int idx = findRootLeader( agent.getSlot() );
+        _rootLeaderList.add( -(idx + 1), agent );
+    }
+
+    /**
+     * Removes the agent in the specified slot from the root leaders
+     *
+     * @param slot The agent's slot
+     */
+    private void removeRootLeader( int slot )
+    {
+        _rootLeaderList.remove( findRootLeader( slot ) );
+    }
+
+    /**
+     * Finds the agent in the specified slot in the root leaders
+     *
+     * @param slot The agent's slot
+     * @return The index of the agent, or <code>-(insertion point + 1)</code>
+     *         if it isn't a root leader
+     */
+    private int findRootLeader( int slot )
+    {
+        int low = 0;
+        int high = _rootLeaderList.size() - 1;
+        while( low <= high )
+        {
+            int mid = (low + high) >>> 1;
+            int midSlot = _rootLeaderList.get( mid ).getSlot();
+            if( midSlot < slot )
+            {
+                low = mid + 1;
+            }
+            else if( midSlot > slot )
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        
+        return -(low + 1);
+    }
+
     /**
      * Signal all the listeners that a simulation step is about to be executed
      */
@@ -500,6 +1111,18 @@ public class SimulationState
         // Update the current simulation run step
         _currentSimulationStep++;
         
+        // Rebuild the agent spatial index
+        _agentGrid.rebuild( _agentStateStore );
+        
+        // Resolve the leaders before the agents start asking for them
+        ensureLeadersResolved();
+        
+        // Patch values and arrivals from the last step are stale now
+        _patchDepletionCalculator.prepareStep();
+        
+        // Find the agents whose scheduled decisions are due
+        releaseDueDecisions();
+        
         // Iterate through all the event listeners
         Iterator<SimulationEventListener> iter = _listeners.iterator();
         while( iter.hasNext() )
@@ -528,6 +1151,19 @@ public class SimulationState
      */
     public void signalSimRunTeardown()
     {
+        if( _LOG.isDebugEnabled() )
+        {
+            _LOG.debug( "Run patch value cache hits=["
+                    + _patchDepletionCalculator.getValueCacheHits()
+                    + "] misses=["
+                    + _patchDepletionCalculator.getValueCacheMisses()
+                    + "] hitRate=["
+                    + _patchDepletionCalculator.getValueCacheHitRate()
+                    + "] projectedTimesteps=["
+                    + _patchDepletionCalculator.getProjectedTimesteps()
+                    + "]" );
+        }
+
         // Iterate through all the event listeners
         Iterator<SimulationEventListener> iter = _listeners.iterator();
         while( iter.hasNext() )
@@ -601,6 +1237,17 @@ public class SimulationState
         return _props;
     }
 
+    /**
+     * Returns the typed decision calculator parameters
+     *
+     * @return The parameters, or <code>null</code> if they should be read
+     *         from the properties
+     */
+    public DecisionCalculatorParams getDecisionCalculatorParams()
+    {
+        return _decisionCalculatorParams;
+    }
+
     /**
      * Sets the simulation run
      *
@@ -646,6 +1293,73 @@ public class SimulationState
         return _random;
     }
     
+    /**
+     * Determines if agents sense, plan and act synchronously.  If they do,
+     * each agent has its own random number generator so the results don't
+     * depend on the order in which the agents are processed.
+     *
+     * @return <code>true</code> if the agents step synchronously, otherwise
+     * <code>false</code>
+     */
+    public boolean isSynchronousStep()
+    {
+        return _synchronousStep;
+    }
+    
+    /**
+     * Determines if agents only make decisions when they are scheduled or
+     * their inputs change, instead of every simulation step
+     *
+     * @return <code>true</code> if the decisions are event driven,
+     * otherwise <code>false</code>
+     */
+    public boolean isEventDrivenDecisions()
+    {
+        return _eventDrivenDecisions;
+    }
+    
+    /**
+     * Wakes an agent whose decision inputs changed, making it due to
+     * reconsider its decision this step.  Any switch sampled from the
+     * bound for its old inputs is dropped since the bound no longer holds.
+     * Agents may only wake themselves, so they may do so concurrently.
+     *
+     * @param agent The agent
+     */
+    public void wakeDecision( Agent agent )
+    {
+        _decisionDue[agent.getSlot()] = true;
+        _decisionSwitchHazards[agent.getSlot()] = 0.0f;
+    }
+    
+    /**
+     * Determines if an agent is due to make a decision this step
+     *
+     * @param agent The agent
+     * @return <code>true</code> if the agent is due, otherwise
+     * <code>false</code>
+     */
+    public boolean isDecisionDue( Agent agent )
+    {
+        return _decisionDue[agent.getSlot()];
+    }
+    
+    /**
+     * Returns the bound on the switch probability an agent's current wait
+     * was sampled with if the agent is due to decide this step
+     *
+     * @param agent The agent
+     * @return The bound, or 0 if the agent isn't due or only reconsiders
+     */
+    public float getDecisionSwitchHazard( Agent agent )
+    {
+        if( !_decisionDue[agent.getSlot()] )
+        {
+            return 0.0f;
+        }
+        return _decisionSwitchHazards[agent.getSlot()];
+    }
+    
     public PatchDepletionCalculator getPatchDepletionCalculator()
     {
         return _patchDepletionCalculator;
@@ -656,6 +1370,37 @@ public class SimulationState
         return _decisionMaker;
     }
     
+    /**
+     * Returns the store holding the motion state of all the agents
+     *
+     * @return The agent state store
+     */
+    public AgentStateStore getAgentStateStore()
+    {
+        return _agentStateStore;
+    }
+    
+    /**
+     * Returns the spatial index of the agents as of the start of the
+     * current simulation step
+     *
+     * @return The agent spatial index
+     */
+    public AgentSpatialGrid getAgentGrid()
+    {
+        return _agentGrid;
+    }
+    
+    /**
+     * Returns the spatial index of the food patches
+     *
+     * @return The patch spatial index
+     */
+    public PatchSpatialIndex getPatchIndex()
+    {
+        return _patchIndex;
+    }
+    
     /**
      * Create all the agents used in the simulation
      */
@@ -663,8 +1408,11 @@ public class SimulationState
     {
         _LOG.trace( "Entering createAgents()" );
         
-        // (Re)Create the agent map
+        // (Re)Create the agent map and the leadership registrations
         _agents = new HashMap<String,Agent>();
+        _following.clear();
+        _followers.clear();
+        _leadersResolved = false;
         
         // Get the max speed
         float maxSpeed = MiscUtils.loadNonEmptyFloatProperty( _props,
@@ -729,6 +1477,9 @@ public class SimulationState
                 + "]" );
         agentSensor.initialize( this, _props );
         
+        // Size the agent spatial index using the sensing range
+        _agentGrid = new AgentSpatialGrid( agentSensor.getMaxSensingRange() );
+        
         // Get the food patch sensor class
         String patchSensorClassName = _props.getProperty( _PATCH_SENSOR_CLASS_KEY );
         PatchSensor patchSensor = (PatchSensor) MiscUtils.loadAndInstantiate(
@@ -747,44 +1498,28 @@ public class SimulationState
                 + "]" );
         _decisionMaker.initialize( this, _props );
 
-        // Get the agent configuration properties
+        // Get the agent configuration, parsed once per process
         String agentPropertiesFile = _props.getProperty( _AGENT_PROPS_FILE_KEY );
-        Validate.notEmpty( agentPropertiesFile,
-                "Agent properties file may not be empty ["
-                + agentPropertiesFile
-                + "]" );
-        
-        // Load the properties
-        Properties agentProps = MiscUtils.loadPropertiesFromFile( agentPropertiesFile );
+        AgentScenario agentScenario = ScenarioCache.getAgentScenario(
+                agentPropertiesFile,
+                allowInitialVelocity );
+        int agentCount = agentScenario.getAgentCount();
         
-        // Process them
-        int agentCount = MiscUtils.loadNonEmptyIntegerProperty( agentProps,
-                _AGENT_COUNT_KEY,
-                "Agent count " );
+        // (Re)Create the agent state store
+        _agentStateStore = new AgentStateStore( agentCount );
         for( int i = 0; i < agentCount; i++ )
         {
-            // Build the id
-            String formattedIdx = String.format( _AGENT_INDEX_FORMAT_STR, i );
-            String id = "Agent" + formattedIdx;
-            
-            // Build the properties prefix
-            String prefix = _AGENT_PREFIX_KEY
-                    + "."
-                    + formattedIdx
-                    + ".";
-            
-            // Get the position
-            Vector3f position = MiscUtils.loadNonEmptyVector3fProperty( agentProps,
-                    prefix + _POSITION_KEY,
-                    "Agent [" + formattedIdx + "] position " );
-            
-            // Get the velocity
-            Vector3f velocity = new Vector3f();
-            if( allowInitialVelocity )
+            // Get the id, position and velocity
+            String id = agentScenario.getID( i );
+            Vector3f position = agentScenario.getPosition( i );
+            Vector3f velocity = agentScenario.getVelocity( i );
+
+            // Agents share the random number generator unless they step
+            // synchronously, in which case each is seeded in creation order
+            MersenneTwisterFast agentRNG = _random;
+            if( _synchronousStep )
             {
-                velocity = MiscUtils.loadNonEmptyVector3fProperty( agentProps,
-                    prefix + _VELOCITY_KEY,
-                    "Agent [" + formattedIdx + "] velocity " );
+                agentRNG = new MersenneTwisterFast( _random.nextLong() );
             }
 
             // Create the agent
@@ -803,7 +1538,8 @@ public class SimulationState
                     patchSensor,
                     _decisionMaker,
                     _patchDepletionCalculator,
-                    this );
+                    this,
+                    agentRNG );
             
             // Add it to the map
             _agents.put( id, agent );
@@ -822,72 +1558,94 @@ public class SimulationState
         // (Re)create the patch list
         _patches = new HashMap<String, Patch>();
         
-        // Get the patch configuration properties
+        // Get the patch configuration, parsed once per process
         String patchPropertiesFile = _props.getProperty( _PATCH_PROPS_FILE_KEY );
-        Validate.notEmpty( patchPropertiesFile,
-                "Patch properties file may not be empty ["
-                + patchPropertiesFile
-                + "]" );
-
-        // Load the properties
-        Properties patchProps = MiscUtils.loadPropertiesFromFile( patchPropertiesFile );
-
-        // Get the number of patches
-        int patchCount = MiscUtils.loadNonEmptyIntegerProperty( patchProps,
-                _PATCH_COUNT_KEY,
-                "Patch count " );
+        PatchScenario patchScenario = ScenarioCache.getPatchScenario(
+                patchPropertiesFile );
+        int patchCount = patchScenario.getPatchCount();
         _LOG.debug( "Loading [" + patchCount + "] patches" );
 
         for( int i = 0; i < patchCount; i++ )
         {
-            // Build the id
-            String formattedIdx = String.format( _PATCH_INDEX_FORMAT_STR, i );
-            String id = "Patch" + formattedIdx;
-            
-            // Build the properties prefix
-            String prefix = _PATCH_PREFIX_KEY
-                    + "."
-                    + formattedIdx
-                    + ".";
-            
-            // Get the position
-            Vector3f position = MiscUtils.loadNonEmptyVector3fProperty( patchProps,
-                    prefix + _POSITION_KEY,
-                    "Patch [" + formattedIdx + "] position " );
-            
-            // Get the radius
-            float radius = MiscUtils.loadNonEmptyFloatProperty( patchProps,
-                    prefix + _RADIUS_KEY,
-                    "Patch [" + formattedIdx + "] radius" );
-            
-            // Get the amount of resources
-            float resources = MiscUtils.loadNonEmptyFloatProperty( patchProps,
-                    prefix + _RESOURCES_KEY,
-                    "Patch [" + formattedIdx + "] resources" );
-            
-            // Get the radius
-            float predationProbability = MiscUtils.loadNonEmptyFloatProperty( patchProps,
-                    prefix + _PREDATION_PROBABILITY_KEY,
-                    "Patch [" + formattedIdx + "] predation probability " );
-
-            // Get the radius
-            int minAgentForageCount = MiscUtils.loadNonEmptyIntegerProperty( patchProps,
-                    prefix + _MIN_AGENT_FORAGE_COUNT_KEY,
-                    "Patch [" + formattedIdx + "] min agent forage count " );
-
             // Create the patch and store it
+            String id = patchScenario.getID( i );
             Patch patch = new Patch( id,
-                    position,
-                    radius,
-                    resources,
-                    predationProbability,
-                    minAgentForageCount );
+                    i,
+                    patchScenario.getPosition( i ),
+                    patchScenario.getRadius( i ),
+                    patchScenario.getResources( i ),
+                    patchScenario.getPredationProbability( i ),
+                    patchScenario.getMinAgentForageCount( i ) );
             _patches.put( id, patch );
             
             _LOG.debug( "Created patch [" + id + "]" );
         }
+        
+        // Index them since they never move
+        _patchIndex = new PatchSpatialIndex( _patches.values() );
 
         _LOG.trace( "Leaving createPatches()" );
     }
 
+
+    /**
+     * An agent decision scheduled for a future simulation step
+     *
+     * @author Brent Eskridge
+     */
+    private static class ScheduledDecision
+            implements Comparable<ScheduledDecision>
+    {
+        /** The simulation step of the decision */
+        private final long _step;
+
+        /** The agent's slot */
+        private final int _slot;
+
+        /** The version of the agent's schedule */
+        private final int _version;
+
+        /** The bound on the switch probability of the wait, or 0 if the
+         *  agent reconsiders */
+        private final float _switchHazard;
+
+
+        /**
+         * Builds this scheduled decision
+         *
+         * @param step The simulation step of the decision
+         * @param slot The agent's slot
+         * @param version The version of the agent's schedule
+         * @param switchHazard The bound on the switch probability of the wait
+         */
+        private ScheduledDecision( long step,
+                int slot,
+                int version,
+                float switchHazard )
+        {
+            _step = step;
+            _slot = slot;
+            _version = version;
+            _switchHazard = switchHazard;
+        }
+
+        /**
+         * Orders the decisions by step and then by agent slot
+         *
+         * @param other The other scheduled decision
+         * @return The comparison
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo( ScheduledDecision other )
+        {
+            int result = Long.compare( _step, other._step );
+            if( 0 == result )
+            {
+                result = Integer.compare( _slot, other._slot );
+            }
+            return result;
+        }
+    }
+
 }
@@ -19,12 +19,19 @@
  */
 package edu.snu.csne.forage;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import edu.snu.csne.forage.decision.DecisionCalculatorParams;
 import edu.snu.csne.util.MiscUtils;
 
 /**
@@ -41,6 +48,104 @@ public class Simulator
     /** Key for simulation properties file */
     public static final String PROPS_FILE_KEY = "sim-properties";
 
+    /** Key for the number of threads used in synchronous steps */
+    private static final String _STEP_THREAD_COUNT_KEY = "step-thread-count";
+    
+    /** Minimum number of agents processed by a single step task */
+    private static final int _MIN_AGENTS_PER_TASK = 16;
+
+    
+    /**
+     * The phases of a synchronous simulation step that run in parallel
+     */
+    private enum StepPhase
+    {
+        SENSE_AND_PLAN,
+        CHOOSE,
+        STEER,
+        MOVE
+    }
+    
+    /**
+     * Executes a single phase of a synchronous step for a range of agents,
+     * splitting the range across the pool's threads
+     */
+    private static class AgentStepAction extends RecursiveAction
+    {
+        /** Default serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** The agents */
+        private final Agent[] _agents;
+        
+        /** The first index of the range */
+        private final int _start;
+        
+        /** One past the last index of the range */
+        private final int _end;
+        
+        /** The phase to execute */
+        private final StepPhase _phase;
+        
+        /**
+         * Builds this action
+         *
+         * @param agents The agents
+         * @param start The first index of the range
+         * @param end One past the last index of the range
+         * @param phase The phase to execute
+         */
+        public AgentStepAction( Agent[] agents,
+                int start,
+                int end,
+                StepPhase phase )
+        {
+            _agents = agents;
+            _start = start;
+            _end = end;
+            _phase = phase;
+        }
+
+        /**
+         * Executes the phase for the agents in the range
+         *
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute()
+        {
+            // Split big ranges
+            if( (_end - _start) > _MIN_AGENTS_PER_TASK )
+            {
+                int mid = (_start + _end) >>> 1;
+                invokeAll( new AgentStepAction( _agents, _start, mid, _phase ),
+                        new AgentStepAction( _agents, mid, _end, _phase ) );
+                return;
+            }
+            
+            for( int i = _start; i < _end; i++ )
+            {
+                Agent current = _agents[i];
+                if( StepPhase.SENSE_AND_PLAN.equals( _phase ) )
+                {
+                    current.sense();
+                    current.planDecision();
+                }
+                else if( StepPhase.CHOOSE.equals( _phase ) )
+                {
+                    current.chooseDecision();
+                }
+                else if( StepPhase.STEER.equals( _phase ) )
+                {
+                    current.steer();
+                }
+                else
+                {
+                    current.move();
+                }
+            }
+        }
+    }
     
     
     /** The current state of the simulation */
@@ -48,6 +153,12 @@ public class Simulator
     
     /** The properties used to initialize the system */
     private Properties _props = new Properties();
+    
+    /** The thread pool used for synchronous steps */
+    private ForkJoinPool _stepPool = null;
+    
+    /** Flag indicating that we built the step pool and must shut it down */
+    private boolean _ownsStepPool = false;
 
     /**
      * Main entry into the simulation
@@ -82,52 +193,106 @@ public class Simulator
      */
     public void initialize( Properties props )
     {
-        _LOG.trace( "Entering initialize( Properties )" );
+        initialize( props, null );
+    }
+
+    /**
+     * Initializes this simulator using the specified decision calculator
+     * parameters instead of the ones in the properties
+     *
+     * @param props The simulator properties
+     * @param decisionCalculatorParams The decision calculator parameters
+     *            (may be <code>null</code>)
+     */
+    public void initialize( Properties props,
+            DecisionCalculatorParams decisionCalculatorParams )
+    {
+        _LOG.trace( "Entering initialize( Properties, DecisionCalculatorParams )" );
         
         // Save the properties
         _props = new Properties( props );
 
         // Initialize the simulation state
         _simState = new SimulationState();
-        _simState.initialize( _props );
+        _simState.initialize( _props, decisionCalculatorParams );
 
         // Signal that the simulator is about ready to start
         _simState.signalSimSetup();
 
-        _LOG.trace( "Leaving initialize( Properties )" );
+        // Get a thread pool if the agents step synchronously
+        if( _simState.isSynchronousStep() )
+        {
+            String threadCountStr = _props.getProperty( _STEP_THREAD_COUNT_KEY );
+            if( (null == threadCountStr) && ForkJoinTask.inForkJoinPool() )
+            {
+                // We are already running in a pool (e.g., one of several
+                // folds), so share its threads instead of adding more
+                _stepPool = ForkJoinTask.getPool();
+                _ownsStepPool = false;
+                _LOG.debug( "Sharing the current pool: parallelism=["
+                        + _stepPool.getParallelism()
+                        + "]" );
+            }
+            else
+            {
+                int threadCount = MiscUtils.loadOptionalIntegerProperty( _props,
+                        _STEP_THREAD_COUNT_KEY,
+                        Runtime.getRuntime().availableProcessors() );
+                _LOG.debug( "threadCount=["
+                        + threadCount
+                        + "]" );
+                _stepPool = new ForkJoinPool( threadCount );
+                _ownsStepPool = true;
+            }
+        }
+
+        _LOG.trace( "Leaving initialize( Properties, DecisionCalculatorParams )" );
     }
     
     public void run()
     {
         _LOG.trace( "Entering run()" );
 
-        while( !_simState.isSimFinished() )
+        try
         {
-            // Signal the start of a simulation
-            _simState.signalSimRunSetup();
-            
-            // Run through each step of the simulation
-            while( !_simState.isRunFinished() )
+            while( !_simState.isSimFinished() )
             {
-                // Signal the start of a simulation step
-                _simState.signalSimStepSetup();
+                // Signal the start of a simulation
+                _simState.signalSimRunSetup();
                 
-                // Run a step of the simulation
-                runSimStep();
+                // Run through each step of the simulation
+                while( !_simState.isRunFinished() )
+                {
+                    // Signal the start of a simulation step
+                    _simState.signalSimStepSetup();
+                    
+                    // Run a step of the simulation
+                    runSimStep();
+                    
+                    // Signal the end of a simulation step
+                    _simState.signalSimStepTeardown();
+                }
                 
-                // Signal the end of a simulation step
-                _simState.signalSimStepTeardown();
+                // Signal the end of a simualation
+                _simState.signalSimRunTeardown();
             }
+
+            // Signal that the simulation is finishing
+            _simState.signalSimTeardown();
             
-            // Signal the end of a simualation
-            _simState.signalSimRunTeardown();
+            // Perform any additional cleanup
+            _simState.signalCleanup();
+        }
+        finally
+        {
+            // Shut down the thread pool, even if the run failed
+            if( _ownsStepPool )
+            {
+                _stepPool.shutdown();
+            }
+            _stepPool = null;
+            _ownsStepPool = false;
         }
-
-        // Signal that the simulation is finishing
-        _simState.signalSimTeardown();
-        
-        // Perform any additional cleanup
-        _simState.signalCleanup();
 
         _LOG.trace( "Leaving run()" );
     }
@@ -140,26 +305,121 @@ public class Simulator
     {
         _LOG.trace( "Entering runSimStep()" );
 
-        // Get all the agents
-        Map<String,Agent> agentsMap = _simState.getAllAgents();
-        Collection<Agent> agents = agentsMap.values();
+        // Do the agents step synchronously?
+        if( null != _stepPool )
+        {
+            runSynchronousSimStep();
+        }
+        else
+        {
+            // Get all the agents
+            Map<String,Agent> agentsMap = _simState.getAllAgents();
+            Collection<Agent> agents = agentsMap.values();
+            
+            // Execute the agents
+            Iterator<Agent> agentIter = agents.iterator();
+            while( agentIter.hasNext() )
+            {
+                Agent current = agentIter.next();
+                
+                // Only proceed if they are active
+                if( current.isActive() )
+                {
+                    current.sense();
+                    current.plan();
+                    current.act();
+                }
+            }
+        }
         
-        // Execute the agents
-        Iterator<Agent> agentIter = agents.iterator();
+        _LOG.trace( "Leaving runSimStep()" );
+    }
+    
+    /**
+     * Runs a single simulation step in which every agent senses and decides
+     * using the state at the start of the step.  Sensing, planning,
+     * choosing, steering and moving run in parallel.  Between planning and
+     * choosing, the decision maker evaluates every agent's plan at once,
+     * and committing decisions (and the resulting leader registrations)
+     * runs in a single sequential merge phase.  Each agent has its own
+     * random number generator, so the results don't depend on the number
+     * of threads.
+     */
+    private void runSynchronousSimStep()
+    {
+        _LOG.trace( "Entering runSynchronousSimStep()" );
+
+        // Get all the active agents in a fixed order
+        List<Agent> activeAgents = new ArrayList<Agent>();
+        Iterator<Agent> agentIter = _simState.getAllAgents().values().iterator();
         while( agentIter.hasNext() )
         {
             Agent current = agentIter.next();
-            
-            // Only proceed if they are active
             if( current.isActive() )
             {
-                current.sense();
-                current.plan();
-                current.act();
+                activeAgents.add( current );
             }
         }
+        Agent[] agents = activeAgents.toArray( new Agent[activeAgents.size()] );
         
-        _LOG.trace( "Leaving runSimStep()" );
+        // Sense and plan against the frozen state
+        invokeStepPhase( new AgentStepAction( agents,
+                0,
+                agents.length,
+                StepPhase.SENSE_AND_PLAN ) );
+        
+        // Evaluate all the plans at once and then choose the decisions
+        List<Agent> plannedAgents = new ArrayList<Agent>( agents.length );
+        for( int i = 0; i < agents.length; i++ )
+        {
+            if( agents[i].isDecisionPlanned() )
+            {
+                plannedAgents.add( agents[i] );
+            }
+        }
+        _simState.getAgentDecisionMaker().evaluatePlans( plannedAgents );
+        invokeStepPhase( new AgentStepAction( agents,
+                0,
+                agents.length,
+                StepPhase.CHOOSE ) );
+        
+        // Commit all the decisions
+        for( int i = 0; i < agents.length; i++ )
+        {
+            agents[i].commitDecision();
+        }
+        
+        // Steer using the frozen positions and then move everyone
+        invokeStepPhase( new AgentStepAction( agents,
+                0,
+                agents.length,
+                StepPhase.STEER ) );
+        invokeStepPhase( new AgentStepAction( agents,
+                0,
+                agents.length,
+                StepPhase.MOVE ) );
+        
+        _LOG.trace( "Leaving runSynchronousSimStep()" );
+    }
+    
+    /**
+     * Runs a phase of a synchronous step in the step pool
+     *
+     * @param action The phase action
+     */
+    private void invokeStepPhase( AgentStepAction action )
+    {
+        // If we are already one of the pool's threads, run it directly so
+        // the forked work stays in the pool
+        if( ForkJoinTask.inForkJoinPool()
+                && (_stepPool == ForkJoinTask.getPool()) )
+        {
+            action.invoke();
+        }
+        else
+        {
+            _stepPool.invoke( action );
+        }
     }
     
     public SimulationState getSimState()
@@ -4,10 +4,12 @@
 package edu.snu.csne.forage.decision;
 
 // Imports
+import java.util.List;
 import java.util.Properties;
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.SimulationState;
 
 
@@ -45,4 +47,43 @@ public abstract class AbstractAgentDecisionMaker implements AgentDecisionMaker
         _LOG.trace( "Leaving initialize( simState, props )" );
     }
 
+    /**
+     * Plans a decision.  By default nothing is planned and the whole
+     * decision is made when it is chosen.
+     *
+     * @param agent The agent planning the decision
+     * @see edu.snu.csne.forage.decision.AgentDecisionMaker#plan(edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public void plan( Agent agent )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Evaluates the plans of all the specified agents.  By default there
+     * is nothing to evaluate.
+     *
+     * @param agents The agents that planned a decision
+     * @see edu.snu.csne.forage.decision.AgentDecisionMaker#evaluatePlans(java.util.List)
+     */
+    @Override
+    public void evaluatePlans( List<Agent> agents )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Picks a decision from the agent's evaluated plan.  By default the
+     * whole decision is made now.
+     *
+     * @param agent The agent making the decision
+     * @return The decision
+     * @see edu.snu.csne.forage.decision.AgentDecisionMaker#choose(edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public Decision choose( Agent agent )
+    {
+        return decide( agent );
+    }
 }
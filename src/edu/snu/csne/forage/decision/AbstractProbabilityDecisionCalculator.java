@@ -0,0 +1,128 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.decision;
+
+// Imports
+import java.util.List;
+
+import edu.snu.csne.forage.Agent;
+
+
+/**
+ * Base class for probability decision calculators that calculates the
+ * probabilities of a batch of candidate decisions using the calculations
+ * for the individual decision types.
+ *
+ * @author Brent Eskridge
+ */
+public abstract class AbstractProbabilityDecisionCalculator
+        implements ProbabilityDecisionCalculator
+{
+    /**
+     * Calculate the probabilities of all the candidate decisions of a given
+     * agent, storing them in the candidates' probability array
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateProbabilities(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public void calculateProbabilities( Agent agent,
+            DecisionCandidates candidates )
+    {
+        float[] probabilities = candidates.getProbabilities();
+        int size = candidates.size();
+        for( int i = 0; i < size; i++ )
+        {
+            // The decision type determines the calculation
+            DecisionType type = candidates.getType( i );
+            if( DecisionType.NAVIGATE.equals( type ) )
+            {
+                probabilities[i] = calculateNavigateProbability(
+                        candidates.getPatch( i ),
+                        agent );
+            }
+            else if( DecisionType.FOLLOW.equals( type ) )
+            {
+                probabilities[i] = calculateFollowProbability(
+                        candidates.getLeader( i ),
+                        agent );
+            }
+            else if( DecisionType.FORAGE.equals( type ) )
+            {
+                probabilities[i] = calculateForageProbability(
+                        candidates.getPatch( i ),
+                        agent );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unsupported candidate decision type ["
+                        + type
+                        + "]" );
+            }
+        }
+    }
+
+    /**
+     * Prepares the probabilities of all the candidate decisions an agent
+     * planned by calculating them now
+     *
+     * @param agent The agent planning the decision
+     * @param candidates The candidate decisions
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#prepareProbabilities(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public void prepareProbabilities( Agent agent,
+            DecisionCandidates candidates )
+    {
+        calculateProbabilities( agent, candidates );
+    }
+
+    /**
+     * Finishes calculating the prepared probabilities.  They were already
+     * calculated when they were prepared, so there is nothing to do.
+     *
+     * @param agents The agents that planned a decision
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculatePreparedProbabilities(java.util.List)
+     */
+    @Override
+    public void calculatePreparedProbabilities( List<Agent> agents )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Calculates an upper bound on the sum of the probabilities of all the
+     * candidate decisions of a given agent.  Without knowing more about
+     * the calculations, the only safe bound is that no probability
+     * exceeds 1.
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @return The bound
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateMaxProbabilitySum(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public float calculateMaxProbabilitySum( Agent agent,
+            DecisionCandidates candidates )
+    {
+        return candidates.size();
+    }
+}
@@ -19,6 +19,7 @@
  */
 package edu.snu.csne.forage.decision;
 
+import java.util.List;
 import java.util.Properties;
 
 import edu.snu.csne.forage.Agent;
@@ -46,4 +47,29 @@ public interface AgentDecisionMaker
      * @return The decision
      */
     public Decision decide( Agent agent );
+    
+    /**
+     * Plans a decision by gathering the candidate decisions available to
+     * the agent without picking one.  Agents may plan concurrently.
+     *
+     * @param agent The agent planning the decision
+     */
+    public void plan( Agent agent );
+    
+    /**
+     * Evaluates the plans of all the specified agents at once.  This is
+     * called by a single thread once every agent has planned.
+     *
+     * @param agents The agents that planned a decision
+     */
+    public void evaluatePlans( List<Agent> agents );
+    
+    /**
+     * Picks a decision from the agent's evaluated plan.  Agents may choose
+     * concurrently.
+     *
+     * @param agent The agent making the decision
+     * @return The decision
+     */
+    public Decision choose( Agent agent );
 }
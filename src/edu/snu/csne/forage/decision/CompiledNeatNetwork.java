@@ -0,0 +1,524 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.decision;
+
+// Imports
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ec.util.MersenneTwisterFast;
+import edu.snu.jyperneat.core.ActivationFunction;
+import edu.snu.jyperneat.core.Network;
+import edu.snu.jyperneat.core.NodeType;
+import edu.snu.jyperneat.network.AbstractNetwork;
+import edu.snu.jyperneat.network.FastNetwork;
+
+
+/**
+ * A NEAT network compiled once into flat arrays.  Nodes are addressed by
+ * integer slots and links are stored as parallel source, destination and
+ * weight arrays in their original order, so activating the network needs
+ * no map lookups.  The compiled network is immutable and may be shared
+ * across threads; all the node values live in a {@link Batch}, which
+ * evaluates the network for many sets of inputs at once.
+ * <p>
+ * Activation reproduces the synchronous, iterative update of
+ * {@link FastNetwork} exactly, including the random reinitialization of
+ * the nodes, so the outputs are identical to those of the original network.
+ *
+ * @author Brent Eskridge
+ */
+public class CompiledNeatNetwork
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            CompiledNeatNetwork.class.getName() );
+
+    /** The max number of iterations used when the layer count is unknown */
+    private static final int _MAX_UNLAYERED_ITERATIONS = 15;
+
+
+    /** The slots of the nodes indexed by name */
+    private final Map<Object,Integer> _slotsByName;
+
+    /** The activation functions of the nodes (<code>null</code> for identity) */
+    private final ActivationFunction[] _activationFunctions;
+
+    /** The slots of the input nodes */
+    private final int[] _inputSlots;
+
+    /** The source slots of the links */
+    private final int[] _linkSources;
+
+    /** The destination slots of the links */
+    private final int[] _linkDestinations;
+
+    /** The weights of the links */
+    private final double[] _linkWeights;
+
+    /** The number of iterations used to activate a reinitialized network */
+    private final int _activationIterations;
+
+
+    /**
+     * Builds this compiled network
+     *
+     * @param network The network built from a NEAT individual
+     */
+    public CompiledNeatNetwork( Network network )
+    {
+        Validate.notNull( network, "Network may not be null" );
+        if( !(network instanceof FastNetwork) )
+        {
+            _LOG.error( "Unable to compile network of type ["
+                    + network.getClass().getName()
+                    + "]" );
+            throw new IllegalArgumentException( "Unable to compile network of type ["
+                    + network.getClass().getName()
+                    + "]" );
+        }
+
+        // Read the network's structure
+        NetworkReader reader = new NetworkReader( (FastNetwork) network );
+        _activationFunctions = reader._activationFunctions;
+        _slotsByName = reader._slotsByName;
+        _inputSlots = reader._inputSlots;
+        _linkSources = reader._linkSources;
+        _linkDestinations = reader._linkDestinations;
+        _linkWeights = reader._linkWeights;
+        int nodeCount = _activationFunctions.length;
+        int linkCount = _linkWeights.length;
+        Integer layerCount = getFieldValue( AbstractNetwork.class,
+                "_layerCount",
+                network );
+
+        // Use the same number of iterations as a newly reinitialized network
+        if( layerCount > 0 )
+        {
+            _activationIterations = Math.max( layerCount, 1 );
+        }
+        else
+        {
+            _activationIterations = 1 + Math.min( nodeCount,
+                    _MAX_UNLAYERED_ITERATIONS );
+        }
+
+        _LOG.debug( "Compiled network: nodes=["
+                + nodeCount
+                + "] links=["
+                + linkCount
+                + "] iterations=["
+                + _activationIterations
+                + "]" );
+    }
+
+    /**
+     * Returns the slot of the node with the specified name
+     *
+     * @param name The node's name
+     * @return The node's slot
+     */
+    public int getSlot( Object name )
+    {
+        Integer slot = _slotsByName.get( name );
+        if( null == slot )
+        {
+            _LOG.error( "Unknown node with name [" + name + "]" );
+            throw new IllegalArgumentException( "Unknown node with name ["
+                    + name
+                    + "]" );
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the number of nodes in the network
+     *
+     * @return The number of nodes
+     */
+    public int getNodeCount()
+    {
+        return _activationFunctions.length;
+    }
+
+    /**
+     * Returns the number of links in the network
+     *
+     * @return The number of links
+     */
+    public int getLinkCount()
+    {
+        return _linkWeights.length;
+    }
+
+    /**
+     * Creates a new, empty batch of node values for this network.  A batch
+     * may only be used by one thread at a time.
+     *
+     * @return The new batch
+     */
+    public Batch createBatch()
+    {
+        return new Batch();
+    }
+
+    /**
+     * Reads the value of a private field of the network
+     *
+     * @param type The class declaring the field
+     * @param name The field's name
+     * @param network The network
+     * @return The field's value
+     */
+    @SuppressWarnings( "unchecked" )
+    private static <T> T getFieldValue( Class<?> type,
+            String name,
+            Network network )
+    {
+        try
+        {
+            Field field = type.getDeclaredField( name );
+            field.setAccessible( true );
+            return (T) field.get( network );
+        }
+        catch( ReflectiveOperationException | RuntimeException e )
+        {
+            _LOG.error( "Unable to read network field ["
+                    + name
+                    + "]", e );
+            throw new RuntimeException( "Unable to read network field ["
+                    + name
+                    + "]", e );
+        }
+    }
+
+
+    /**
+     * The node values of a compiled network for a batch of evaluations.
+     * The values are stored node by node, so each link and each node is
+     * processed for the whole batch in a single tight loop over a
+     * contiguous range of the arrays.
+     *
+     * @author Brent Eskridge
+     */
+    public class Batch
+    {
+        /** The number of evaluations the arrays can hold */
+        private int _capacity = 0;
+
+        /** The number of evaluations in the batch */
+        private int _size = 0;
+
+        /** The inputs of the nodes indexed by slot and evaluation */
+        private double[] _inputs = new double[0];
+
+        /** The outputs of the nodes indexed by slot and evaluation */
+        private double[] _outputs = new double[0];
+
+
+        /**
+         * Prepares the batch for the specified number of evaluations.  Every
+         * evaluation must be reinitialized before the batch is activated.
+         *
+         * @param size The number of evaluations
+         */
+        public void reset( int size )
+        {
+            Validate.isTrue( 0 <= size, "Batch size may not be negative" );
+
+            // Make sure we have room
+            if( _capacity < size )
+            {
+                _capacity = Math.max( size, 2 * _capacity );
+                _inputs = new double[_activationFunctions.length * _capacity];
+                _outputs = new double[_activationFunctions.length * _capacity];
+            }
+            _size = size;
+        }
+
+        /**
+         * Returns the number of evaluations in the batch
+         *
+         * @return The number of evaluations
+         */
+        public int size()
+        {
+            return _size;
+        }
+
+        /**
+         * Randomly reinitializes the outputs of the nodes for an evaluation
+         * using the same sequence of random numbers as the original network
+         *
+         * @param idx The evaluation's index
+         * @param rng The random number generator
+         */
+        public void reinitialize( int idx, MersenneTwisterFast rng )
+        {
+            for( int i = 0; i < _activationFunctions.length; i++ )
+            {
+                int valueIdx = i * _capacity + idx;
+                _inputs[valueIdx] = rng.nextFloat() * 2.0f - 1.0f;
+                _outputs[valueIdx] = evaluate( i, _inputs[valueIdx] );
+                _inputs[valueIdx] = 0.0;
+            }
+        }
+
+        /**
+         * Sets all the input nodes of an evaluation to 0
+         *
+         * @param idx The evaluation's index
+         */
+        public void resetInputs( int idx )
+        {
+            for( int i = 0; i < _inputSlots.length; i++ )
+            {
+                setValue( idx, _inputSlots[i], 0.0 );
+            }
+        }
+
+        /**
+         * Sets the value of a node for an evaluation
+         *
+         * @param idx The evaluation's index
+         * @param slot The node's slot
+         * @param value The value
+         */
+        public void setValue( int idx, int slot, double value )
+        {
+            int valueIdx = slot * _capacity + idx;
+            _inputs[valueIdx] = value;
+            _outputs[valueIdx] = value;
+        }
+
+        /**
+         * Returns the value of a node for an evaluation
+         *
+         * @param idx The evaluation's index
+         * @param slot The node's slot
+         * @return The value
+         */
+        public double getValue( int idx, int slot )
+        {
+            return _outputs[slot * _capacity + idx];
+        }
+
+        /**
+         * Activates the reinitialized network for every evaluation in the
+         * batch
+         */
+        public void activate()
+        {
+            int size = _size;
+            double[] inputs = _inputs;
+            double[] outputs = _outputs;
+            for( int iteration = 0; iteration < _activationIterations; iteration++ )
+            {
+                // Propagate the outputs along the links
+                for( int i = 0; i < _linkWeights.length; i++ )
+                {
+                    int source = _linkSources[i] * _capacity;
+                    int destination = _linkDestinations[i] * _capacity;
+                    double weight = _linkWeights[i];
+                    for( int j = 0; j < size; j++ )
+                    {
+                        inputs[destination + j] += outputs[source + j] * weight;
+                    }
+                }
+
+                // Evaluate the nodes
+                for( int i = 0; i < _activationFunctions.length; i++ )
+                {
+                    int base = i * _capacity;
+                    ActivationFunction function = _activationFunctions[i];
+                    if( null == function )
+                    {
+                        System.arraycopy( inputs, base, outputs, base, size );
+                    }
+                    else
+                    {
+                        for( int j = 0; j < size; j++ )
+                        {
+                            outputs[base + j] = function.evaluate(
+                                    inputs[base + j] );
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Evaluates a single node's activation function
+         *
+         * @param slot The node's slot
+         * @param input The node's input
+         * @return The node's output
+         */
+        private double evaluate( int slot, double input )
+        {
+            ActivationFunction function = _activationFunctions[slot];
+            if( null != function )
+            {
+                return function.evaluate( input );
+            }
+            return input;
+        }
+    }
+
+    /**
+     * Reads the structure of a network.  Extending the network is only
+     * needed to be able to refer to its node and link types.
+     *
+     * @author Brent Eskridge
+     */
+    private static class NetworkReader extends FastNetwork
+    {
+        /** Default serial version UID */
+        private static final long serialVersionUID = 1L;
+
+
+        /** The slots of the nodes indexed by name */
+        private Map<Object,Integer> _slotsByName = null;
+
+        /** The activation functions of the nodes */
+        private ActivationFunction[] _activationFunctions = null;
+
+        /** The slots of the input nodes */
+        private int[] _inputSlots = null;
+
+        /** The source slots of the links */
+        private int[] _linkSources = null;
+
+        /** The destination slots of the links */
+        private int[] _linkDestinations = null;
+
+        /** The weights of the links */
+        private double[] _linkWeights = null;
+
+
+        /**
+         * Reads the structure of the specified network
+         *
+         * @param network The network
+         */
+        private NetworkReader( FastNetwork network )
+        {
+            Map<Object,FastNetwork.Node> nodesByID = getFieldValue(
+                    FastNetwork.class,
+                    "_nodesByID",
+                    network );
+            Map<Object,FastNetwork.Node> nodesByName = getFieldValue(
+                    FastNetwork.class,
+                    "_nodesByName",
+                    network );
+            List<FastNetwork.Link> links = getFieldValue( FastNetwork.class,
+                    "_links",
+                    network );
+
+            // Assign slots to the nodes in the order the network updates them
+            _activationFunctions = new ActivationFunction[nodesByID.size()];
+            Map<Object,Integer> slotsByID = new HashMap<Object,Integer>();
+            Map<FastNetwork.Node,Integer> slotsByNode =
+                    new IdentityHashMap<FastNetwork.Node,Integer>();
+            int slot = 0;
+            Iterator<Map.Entry<Object,FastNetwork.Node>> nodeIter =
+                    nodesByID.entrySet().iterator();
+            while( nodeIter.hasNext() )
+            {
+                Map.Entry<Object,FastNetwork.Node> entry = nodeIter.next();
+                FastNetwork.Node node = entry.getValue();
+                _activationFunctions[slot] = node.actFunction;
+                slotsByID.put( entry.getKey(), slot );
+                slotsByNode.put( node, slot );
+                slot++;
+            }
+
+            // Map the names to slots and find the inputs
+            _slotsByName = new HashMap<Object,Integer>();
+            int[] inputSlots = new int[nodesByName.size()];
+            int inputCount = 0;
+            Iterator<Map.Entry<Object,FastNetwork.Node>> nameIter =
+                    nodesByName.entrySet().iterator();
+            while( nameIter.hasNext() )
+            {
+                Map.Entry<Object,FastNetwork.Node> entry = nameIter.next();
+                Integer nodeSlot = slotsByNode.get( entry.getValue() );
+                if( null == nodeSlot )
+                {
+                    throw new IllegalArgumentException( "Named node ["
+                            + entry.getKey()
+                            + "] has no ID" );
+                }
+                _slotsByName.put( entry.getKey(), nodeSlot );
+                if( NodeType.INPUT.equals( entry.getValue().type ) )
+                {
+                    inputSlots[inputCount] = nodeSlot;
+                    inputCount++;
+                }
+            }
+            _inputSlots = new int[inputCount];
+            System.arraycopy( inputSlots, 0, _inputSlots, 0, inputCount );
+
+            // Flatten the links, keeping their order
+            int linkCount = links.size();
+            _linkSources = new int[linkCount];
+            _linkDestinations = new int[linkCount];
+            _linkWeights = new double[linkCount];
+            int linkIdx = 0;
+            Iterator<FastNetwork.Link> linkIter = links.iterator();
+            while( linkIter.hasNext() )
+            {
+                FastNetwork.Link link = linkIter.next();
+                Integer from = slotsByID.get( link.fromNodeID );
+                if( null == from )
+                {
+                    _LOG.error( "Unknown from node ID ["
+                            + link.fromNodeID
+                            + "]" );
+                    throw new RuntimeException( "Unknown from node ID ["
+                            + link.fromNodeID
+                            + "]" );
+                }
+                Integer to = slotsByID.get( link.toNodeID );
+                if( null == to )
+                {
+                    _LOG.error( "Unknown to node ID ["
+                            + link.toNodeID
+                            + "]" );
+                    throw new RuntimeException( "Unknown to node ID ["
+                            + link.toNodeID
+                            + "]" );
+                }
+                _linkSources[linkIdx] = from;
+                _linkDestinations[linkIdx] = to;
+                _linkWeights[linkIdx] = link.weight;
+                linkIdx++;
+            }
+        }
+    }
+}
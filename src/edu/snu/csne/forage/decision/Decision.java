@@ -176,31 +176,45 @@ public class Decision
     /**
      * Returns the destination for the goal seek behavior
      *
-     * @return The destination
+     * @return A copy of the destination
      */
     public Vector3f getDestination()
+    {
+        return loadDestination( new Vector3f() );
+    }
+    
+    /**
+     * Copies the destination for the goal seek behavior into the specified
+     * vector
+     *
+     * @param result The vector in which to store the destination
+     * @return The result vector
+     */
+    public Vector3f loadDestination( Vector3f result )
     {
         // The type of decisions determines the destination
-        Vector3f destination = new Vector3f();
-        
         if( DecisionType.NAVIGATE.equals( _type ) )
         {
-            destination = _patch.getPosition();
+            result.set( _patch.getPosition() );
         }
         else if( DecisionType.EXPLORE.equals( _type ) )
         {
-            destination = _destination;
+            result.set( _destination );
         }
         else if( DecisionType.FOLLOW.equals( _type ) )
         {
-            destination = _leader.getPosition();
+            result.set( _leader.getPosition() );
+        }
+        else if( DecisionType.FORAGE.equals( _type ) )
+        {
+            result.set( _patch.getPosition() );
         }
-        if( DecisionType.FORAGE.equals( _type ) )
+        else
         {
-            destination = _patch.getPosition();
+            result.set( 0.0f, 0.0f, 0.0f );
         }
 
-        return destination;
+        return result;
     }
     
     /**
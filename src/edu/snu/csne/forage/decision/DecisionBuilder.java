@@ -174,8 +174,7 @@ public class DecisionBuilder
 
         // Build the decision
         Decision decision = Decision.buildForageDecision( _simState.getCurrentSimulationStep(),
-                patch.getForagingTeam(),
-                null,
+                agent.getDecision().getLeader(),
                 patch,
                 forageWeights.get( GroupBehavior.SEPARATION ).floatValue(),
                 forageWeights.get( GroupBehavior.COHESION ).floatValue(),
@@ -193,5 +192,50 @@ public class DecisionBuilder
         return decision;
     }
     
-
+    /**
+     * Builds the decision for a single candidate
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @param idx The index of the candidate
+     * @param probability The probability of the decision
+     * @return The decision
+     */
+    public Decision buildCandidateDecision( Agent agent,
+            DecisionCandidates candidates,
+            int idx,
+            float probability )
+    {
+        // The decision type determines what gets built
+        DecisionType type = candidates.getType( idx );
+        Decision decision = null;
+        if( DecisionType.NAVIGATE.equals( type ) )
+        {
+            decision = buildPatchNavigateDecision( agent,
+                    candidates.getPatch( idx ),
+                    probability );
+        }
+        else if( DecisionType.FOLLOW.equals( type ) )
+        {
+            Agent leader = candidates.getLeader( idx );
+            decision = buildFollowDecision( agent,
+                    leader,
+                    leader.getDecision().getPatch(),
+                    probability );
+        }
+        else if( DecisionType.FORAGE.equals( type ) )
+        {
+            decision = buildForageDecision( agent,
+                    candidates.getPatch( idx ),
+                    probability );
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Unsupported candidate decision type ["
+                    + type
+                    + "]" );
+        }
+        
+        return decision;
+    }
 }
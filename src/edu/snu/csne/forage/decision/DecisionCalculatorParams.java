@@ -0,0 +1,500 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.decision;
+
+// Imports
+import java.util.Properties;
+
+import edu.snu.csne.util.MiscUtils;
+
+
+/**
+ * Immutable parameters of the {@link DefaultProbabilityDecisionCalculator}.
+ * They can be parsed from properties or built directly, for example when
+ * they are decoded from a genome, so the calculator doesn't need to parse
+ * them back out of strings.
+ *
+ * @author Brent Eskridge
+ */
+public class DecisionCalculatorParams
+{
+    /** The base initiation rate */
+    private final float _initiateRate;
+
+    /** Initiation k exponent multiplier */
+    private final float _initiateKExpMultiplier;
+
+    /** Initiation k exponent offset */
+    private final float _initiateKExpOffset;
+
+    /** Initiation MRV sigma */
+    private final float _initiateMRVSigma;
+
+    /** Initiation MRV flag */
+    private final boolean _initiateMRVFlag;
+
+    /** Initiation patch value sigma */
+    private final float _initiatePatchValueSigma;
+
+    /** Initiation patch value flag */
+    private final boolean _initiatePatchValueFlag;
+
+    /** Initiation direction difference sigma */
+    private final float _initiateDirDiffSigma;
+
+    /** Initiation direction difference flag */
+    private final boolean _initiateDirDiffFlag;
+
+    /** Follow alpha */
+    private final float _followAlpha;
+
+    /** Follow beta */
+    private final float _followBeta;
+
+    /** Follow k exponent multiplier */
+    private final float _followKExpMultiplier;
+
+    /** Follow k exponent offset */
+    private final float _followKExpOffset;
+
+    /** Follow mean position relative distance sigma */
+    private final float _followMeanPosRelDistSigma;
+
+    /** Follow mean position relative distance flag */
+    private final boolean _followMeanPosRelDistFlag;
+
+    /** Follow MRV direction difference sigma */
+    private final float _followMRVDirDiffSigma;
+
+    /** Follow MRV direction difference flag */
+    private final boolean _followMRVDirDiffFlag;
+
+    /** Follow MRV magnitude difference sigma */
+    private final float _followMRVMagDiffSigma;
+
+    /** Follow MRV magnitude difference flag */
+    private final boolean _followMRVMagDiffFlag;
+
+    /** The base forage rate */
+    private final float _forageRate;
+
+    /** Forage k exponent multiplier */
+    private final float _forageKExpMultiplier;
+
+    /** Forage k exponent offset */
+    private final float _forageKExpOffset;
+
+    /** Forage patch value sigma */
+    private final float _foragePatchValueSigma;
+
+    /** Forage patch value flag */
+    private final boolean _foragePatchValueFlag;
+
+
+    /**
+     * Builds these parameters
+     *
+     * @param initiateRate The base initiation rate
+     * @param initiateKExpMultiplier Initiation k exponent multiplier
+     * @param initiateKExpOffset Initiation k exponent offset
+     * @param initiateMRVSigma Initiation MRV sigma
+     * @param initiateMRVFlag Initiation MRV flag
+     * @param initiatePatchValueSigma Initiation patch value sigma
+     * @param initiatePatchValueFlag Initiation patch value flag
+     * @param initiateDirDiffSigma Initiation direction difference sigma
+     * @param initiateDirDiffFlag Initiation direction difference flag
+     * @param followAlpha Follow alpha
+     * @param followBeta Follow beta
+     * @param followKExpMultiplier Follow k exponent multiplier
+     * @param followKExpOffset Follow k exponent offset
+     * @param followMeanPosRelDistSigma Follow mean position relative distance sigma
+     * @param followMeanPosRelDistFlag Follow mean position relative distance flag
+     * @param followMRVDirDiffSigma Follow MRV direction difference sigma
+     * @param followMRVDirDiffFlag Follow MRV direction difference flag
+     * @param followMRVMagDiffSigma Follow MRV magnitude difference sigma
+     * @param followMRVMagDiffFlag Follow MRV magnitude difference flag
+     * @param forageRate The base forage rate
+     * @param forageKExpMultiplier Forage k exponent multiplier
+     * @param forageKExpOffset Forage k exponent offset
+     * @param foragePatchValueSigma Forage patch value sigma
+     * @param foragePatchValueFlag Forage patch value flag
+     */
+    public DecisionCalculatorParams( float initiateRate,
+            float initiateKExpMultiplier,
+            float initiateKExpOffset,
+            float initiateMRVSigma,
+            boolean initiateMRVFlag,
+            float initiatePatchValueSigma,
+            boolean initiatePatchValueFlag,
+            float initiateDirDiffSigma,
+            boolean initiateDirDiffFlag,
+            float followAlpha,
+            float followBeta,
+            float followKExpMultiplier,
+            float followKExpOffset,
+            float followMeanPosRelDistSigma,
+            boolean followMeanPosRelDistFlag,
+            float followMRVDirDiffSigma,
+            boolean followMRVDirDiffFlag,
+            float followMRVMagDiffSigma,
+            boolean followMRVMagDiffFlag,
+            float forageRate,
+            float forageKExpMultiplier,
+            float forageKExpOffset,
+            float foragePatchValueSigma,
+            boolean foragePatchValueFlag )
+    {
+        _initiateRate = initiateRate;
+        _initiateKExpMultiplier = initiateKExpMultiplier;
+        _initiateKExpOffset = initiateKExpOffset;
+        _initiateMRVSigma = initiateMRVSigma;
+        _initiateMRVFlag = initiateMRVFlag;
+        _initiatePatchValueSigma = initiatePatchValueSigma;
+        _initiatePatchValueFlag = initiatePatchValueFlag;
+        _initiateDirDiffSigma = initiateDirDiffSigma;
+        _initiateDirDiffFlag = initiateDirDiffFlag;
+        _followAlpha = followAlpha;
+        _followBeta = followBeta;
+        _followKExpMultiplier = followKExpMultiplier;
+        _followKExpOffset = followKExpOffset;
+        _followMeanPosRelDistSigma = followMeanPosRelDistSigma;
+        _followMeanPosRelDistFlag = followMeanPosRelDistFlag;
+        _followMRVDirDiffSigma = followMRVDirDiffSigma;
+        _followMRVDirDiffFlag = followMRVDirDiffFlag;
+        _followMRVMagDiffSigma = followMRVMagDiffSigma;
+        _followMRVMagDiffFlag = followMRVMagDiffFlag;
+        _forageRate = forageRate;
+        _forageKExpMultiplier = forageKExpMultiplier;
+        _forageKExpOffset = forageKExpOffset;
+        _foragePatchValueSigma = foragePatchValueSigma;
+        _foragePatchValueFlag = foragePatchValueFlag;
+    }
+
+    /**
+     * Parses the parameters from the specified properties
+     *
+     * @param props The properties
+     * @return The parameters
+     */
+    public static DecisionCalculatorParams loadFromProperties( Properties props )
+    {
+        return new DecisionCalculatorParams(
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_RATE_KEY,
+                        "Initiation rate" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_MULT_KEY,
+                        "Initiation k exponent multiplier" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_OFFSET_KEY,
+                        "Initiation k exponent offset" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_MRV_SIGMA_KEY,
+                        "Navigate MRV sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_MRV_FLAG_KEY,
+                        "Navigate MRV flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_SIGMA_KEY,
+                        "Navigate patch value sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_FLAG_KEY,
+                        "Navigate patch value flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_SIGMA_KEY,
+                        "Navigate direction difference sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_FLAG_KEY,
+                        "Navigate direction difference flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_ALPHA_KEY,
+                        "Follow alpha" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_BETA_KEY,
+                        "Follow beta" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_MULT_KEY,
+                        "Follow k exponent multiplier" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_OFFSET_KEY,
+                        "Follow k exponent offset" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_SIGMA_KEY,
+                        "follow mean position relative distance sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_FLAG_KEY,
+                        "follow mean position relative distance flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_SIGMA_KEY,
+                        "follow MRV direction difference sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_FLAG_KEY,
+                        "follow MRV direction difference flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_SIGMA_KEY,
+                        "follow MRV magnitude difference sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_FLAG_KEY,
+                        "follow MRV magnitude difference flag" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FORAGE_RATE_KEY,
+                        "Forage base rate" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_MULT_KEY,
+                        "Forage k exponent multiplier" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_OFFSET_KEY,
+                        "Forage k exponent offset" ),
+                MiscUtils.loadNonEmptyFloatProperty( props,
+                        DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_SIGMA_KEY,
+                        "forage patch value sigma" ),
+                MiscUtils.loadNonEmptyBooleanProperty( props,
+                        DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_FLAG_KEY,
+                        "forage patch value flag" ) );
+    }
+
+    /**
+     * Returns these parameters as properties using the calculator's keys
+     *
+     * @return The properties
+     */
+    public Properties toProperties()
+    {
+        Properties props = new Properties();
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_RATE_KEY,
+                _initiateRate );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_MULT_KEY,
+                _initiateKExpMultiplier );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_OFFSET_KEY,
+                _initiateKExpOffset );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_MRV_SIGMA_KEY,
+                _initiateMRVSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_MRV_FLAG_KEY,
+                _initiateMRVFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_SIGMA_KEY,
+                _initiatePatchValueSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_FLAG_KEY,
+                _initiatePatchValueFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_SIGMA_KEY,
+                _initiateDirDiffSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_FLAG_KEY,
+                _initiateDirDiffFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_ALPHA_KEY,
+                _followAlpha );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_BETA_KEY,
+                _followBeta );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_MULT_KEY,
+                _followKExpMultiplier );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_OFFSET_KEY,
+                _followKExpOffset );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_SIGMA_KEY,
+                _followMeanPosRelDistSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_FLAG_KEY,
+                _followMeanPosRelDistFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_SIGMA_KEY,
+                _followMRVDirDiffSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_FLAG_KEY,
+                _followMRVDirDiffFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_SIGMA_KEY,
+                _followMRVMagDiffSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_FLAG_KEY,
+                _followMRVMagDiffFlag );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FORAGE_RATE_KEY,
+                _forageRate );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_MULT_KEY,
+                _forageKExpMultiplier );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_OFFSET_KEY,
+                _forageKExpOffset );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_SIGMA_KEY,
+                _foragePatchValueSigma );
+        setProperty( props,
+                DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_FLAG_KEY,
+                _foragePatchValueFlag );
+
+        return props;
+    }
+
+    public float getInitiateRate()
+    {
+        return _initiateRate;
+    }
+
+    public float getInitiateKExpMultiplier()
+    {
+        return _initiateKExpMultiplier;
+    }
+
+    public float getInitiateKExpOffset()
+    {
+        return _initiateKExpOffset;
+    }
+
+    public float getInitiateMRVSigma()
+    {
+        return _initiateMRVSigma;
+    }
+
+    public boolean isInitiateMRVFlag()
+    {
+        return _initiateMRVFlag;
+    }
+
+    public float getInitiatePatchValueSigma()
+    {
+        return _initiatePatchValueSigma;
+    }
+
+    public boolean isInitiatePatchValueFlag()
+    {
+        return _initiatePatchValueFlag;
+    }
+
+    public float getInitiateDirDiffSigma()
+    {
+        return _initiateDirDiffSigma;
+    }
+
+    public boolean isInitiateDirDiffFlag()
+    {
+        return _initiateDirDiffFlag;
+    }
+
+    public float getFollowAlpha()
+    {
+        return _followAlpha;
+    }
+
+    public float getFollowBeta()
+    {
+        return _followBeta;
+    }
+
+    public float getFollowKExpMultiplier()
+    {
+        return _followKExpMultiplier;
+    }
+
+    public float getFollowKExpOffset()
+    {
+        return _followKExpOffset;
+    }
+
+    public float getFollowMeanPosRelDistSigma()
+    {
+        return _followMeanPosRelDistSigma;
+    }
+
+    public boolean isFollowMeanPosRelDistFlag()
+    {
+        return _followMeanPosRelDistFlag;
+    }
+
+    public float getFollowMRVDirDiffSigma()
+    {
+        return _followMRVDirDiffSigma;
+    }
+
+    public boolean isFollowMRVDirDiffFlag()
+    {
+        return _followMRVDirDiffFlag;
+    }
+
+    public float getFollowMRVMagDiffSigma()
+    {
+        return _followMRVMagDiffSigma;
+    }
+
+    public boolean isFollowMRVMagDiffFlag()
+    {
+        return _followMRVMagDiffFlag;
+    }
+
+    public float getForageRate()
+    {
+        return _forageRate;
+    }
+
+    public float getForageKExpMultiplier()
+    {
+        return _forageKExpMultiplier;
+    }
+
+    public float getForageKExpOffset()
+    {
+        return _forageKExpOffset;
+    }
+
+    public float getForagePatchValueSigma()
+    {
+        return _foragePatchValueSigma;
+    }
+
+    public boolean isForagePatchValueFlag()
+    {
+        return _foragePatchValueFlag;
+    }
+
+    /**
+     * Stores a float value in the properties
+     *
+     * @param props The properties
+     * @param key The key
+     * @param value The value
+     */
+    private static void setProperty( Properties props, String key, float value )
+    {
+        props.setProperty( key, Float.toString( value ) );
+    }
+
+    /**
+     * Stores a boolean value in the properties
+     *
+     * @param props The properties
+     * @param key The key
+     * @param value The value
+     */
+    private static void setProperty( Properties props, String key, boolean value )
+    {
+        props.setProperty( key, Boolean.toString( value ) );
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.decision;
+
+// Imports
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+import edu.snu.csne.forage.Agent;
+import edu.snu.csne.forage.Patch;
+
+
+/**
+ * Reusable batch of the candidate decisions available to an agent.  Each
+ * candidate is only a decision type and its target, along with a slot in
+ * a primitive probability array, so probabilities can be calculated and
+ * sampled without building a {@link Decision} for every candidate.
+ *
+ * @author Brent Eskridge
+ */
+public class DecisionCandidates
+{
+    /** The default initial capacity */
+    private static final int _DEFAULT_CAPACITY = 16;
+
+
+    /** The decision types of the candidates */
+    private DecisionType[] _types = new DecisionType[_DEFAULT_CAPACITY];
+
+    /** The patches of the candidates (if any) */
+    private Patch[] _patches = new Patch[_DEFAULT_CAPACITY];
+
+    /** The leaders of the candidates (if any) */
+    private Agent[] _leaders = new Agent[_DEFAULT_CAPACITY];
+
+    /** The probabilities of the candidates */
+    private float[] _probabilities = new float[_DEFAULT_CAPACITY];
+
+    /** The number of candidates */
+    private int _size = 0;
+
+
+    /**
+     * Removes all the candidates
+     */
+    public void clear()
+    {
+        // Drop the references so they can be collected
+        Arrays.fill( _patches, 0, _size, null );
+        Arrays.fill( _leaders, 0, _size, null );
+        _size = 0;
+    }
+
+    /**
+     * Adds a candidate to navigate to a patch
+     *
+     * @param patch The patch
+     */
+    public void addNavigate( Patch patch )
+    {
+        Validate.notNull( patch, "Patch may not be null" );
+        add( DecisionType.NAVIGATE, patch, null );
+    }
+
+    /**
+     * Adds a candidate to follow a leader
+     *
+     * @param leader The leader
+     */
+    public void addFollow( Agent leader )
+    {
+        Validate.notNull( leader, "Leader may not be null" );
+        add( DecisionType.FOLLOW, null, leader );
+    }
+
+    /**
+     * Adds a candidate to forage in a patch
+     *
+     * @param patch The patch
+     */
+    public void addForage( Patch patch )
+    {
+        Validate.notNull( patch, "Patch may not be null" );
+        add( DecisionType.FORAGE, patch, null );
+    }
+
+    /**
+     * Returns the number of candidates
+     *
+     * @return The number of candidates
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the decision type of a candidate
+     *
+     * @param idx The candidate's index
+     * @return The decision type
+     */
+    public DecisionType getType( int idx )
+    {
+        return _types[idx];
+    }
+
+    /**
+     * Returns the patch of a candidate
+     *
+     * @param idx The candidate's index
+     * @return The patch or <code>null</code> if it has none
+     */
+    public Patch getPatch( int idx )
+    {
+        return _patches[idx];
+    }
+
+    /**
+     * Returns the leader of a candidate
+     *
+     * @param idx The candidate's index
+     * @return The leader or <code>null</code> if it has none
+     */
+    public Agent getLeader( int idx )
+    {
+        return _leaders[idx];
+    }
+
+    /**
+     * Returns the probability of a candidate
+     *
+     * @param idx The candidate's index
+     * @return The probability
+     */
+    public float getProbability( int idx )
+    {
+        return _probabilities[idx];
+    }
+
+    /**
+     * Sets the probability of a candidate
+     *
+     * @param idx The candidate's index
+     * @param probability The probability
+     */
+    public void setProbability( int idx, float probability )
+    {
+        _probabilities[idx] = probability;
+    }
+
+    /**
+     * Returns the probabilities of all the candidates.  Only the first
+     * {@link #size()} entries are valid.
+     *
+     * @return The probabilities
+     */
+    public float[] getProbabilities()
+    {
+        return _probabilities;
+    }
+
+    /**
+     * Adds a candidate
+     *
+     * @param type The decision type
+     * @param patch The patch (if any)
+     * @param leader The leader (if any)
+     */
+    private void add( DecisionType type, Patch patch, Agent leader )
+    {
+        // Make sure we have room
+        if( _types.length == _size )
+        {
+            int capacity = 2 * _types.length;
+            _types = Arrays.copyOf( _types, capacity );
+            _patches = Arrays.copyOf( _patches, capacity );
+            _leaders = Arrays.copyOf( _leaders, capacity );
+            _probabilities = Arrays.copyOf( _probabilities, capacity );
+        }
+
+        _types[_size] = type;
+        _patches[_size] = patch;
+        _leaders[_size] = leader;
+        _probabilities[_size] = 0.0f;
+        _size++;
+    }
+}
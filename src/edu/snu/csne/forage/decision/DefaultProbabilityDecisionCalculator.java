@@ -30,6 +30,7 @@ import edu.snu.csne.forage.Patch;
 import edu.snu.csne.forage.SimulationState;
 import edu.snu.csne.forage.util.PatchValue;
 import edu.snu.csne.mates.math.NavigationalVector;
+import edu.snu.csne.util.ApproximateMath;
 import edu.snu.csne.util.MiscUtils;
 
 /**
@@ -38,7 +39,7 @@ import edu.snu.csne.util.MiscUtils;
  * @author Brent Eskridge
  */
 public class DefaultProbabilityDecisionCalculator
-        implements ProbabilityDecisionCalculator
+        extends AbstractProbabilityDecisionCalculator
 {
     /** Our logger */
     private static final Logger _LOG = LogManager.getLogger(
@@ -127,6 +128,16 @@ public class DefaultProbabilityDecisionCalculator
 
     
     
+    /** Property key for the flag indicating the fast math approximations should be used */
+    public static final String _FAST_MATH_KEY = "fast-math";
+    
+    /** Property key for the max error of the fast math approximations */
+    public static final String _FAST_MATH_MAX_ERROR_KEY = "fast-math-max-error";
+    
+    /** Default max error of the fast math approximations */
+    public static final float _DEFAULT_FAST_MATH_MAX_ERROR = 0.0001f;
+    
+    
     /** Property key for the flag indicating individual patch value should be used */
     protected static final String _USE_PATCH_VALUE_INDIVIDUAL_KEY = "use-patch-value-individual";
     
@@ -146,6 +157,9 @@ public class DefaultProbabilityDecisionCalculator
     /** The random number generator */
     public MersenneTwisterFast _rng = null;
     
+    /** The fast math approximations, or <code>null</code> to use exact math */
+    private ApproximateMath _approxMath = null;
+    
     /** The base initiation rate */
     private float _inititationRate = 0.0f;
     
@@ -157,18 +171,27 @@ public class DefaultProbabilityDecisionCalculator
 
     /** Initiation MRV sigma */
     private float _navigateMRVSigma = 0.0f;
+
+    /** Initiation MRV sigma as 1/sigma^2 */
+    private float _navigateMRVInvSigmaSquared = 0.0f;
     
     /** Initiation MRV flag */
     private boolean _navigateMRVFlag = false;
     
     /** Initiation patch value sigma */
     private float _navigatePatchValueSigma = 0.0f;
+
+    /** Initiation patch value sigma as 1/sigma^2 */
+    private float _navigatePatchValueInvSigmaSquared = 0.0f;
     
     /** Initiation patch value flag */
     private boolean _navigatePatchValueFlag = false;
     
     /** Initiation direction difference sigma */
     private float _navigateDirDiffSigma = 0.0f;
+
+    /** Initiation direction difference sigma as 1/sigma^2 */
+    private float _navigateDirDiffInvSigmaSquared = 0.0f;
     
     /** Initiation direction difference flag */
     private boolean _navigateDirDiffFlag = false;
@@ -191,18 +214,27 @@ public class DefaultProbabilityDecisionCalculator
     
     /** Follow MRV direction difference sigma */
     private float _followMRVDirDiffSigma = 0.0f;
+
+    /** Follow MRV direction difference sigma as 1/sigma^2 */
+    private float _followMRVDirDiffInvSigmaSquared = 0.0f;
     
     /** Follow MRV direction difference flag */
     private boolean _followMRVDirDiffFlag = false;
     
     /** Follow MRV magnitude difference sigma */
     private float _followMRVMagDiffSigma = 0.0f;
+
+    /** Follow MRV magnitude difference sigma as 1/sigma^2 */
+    private float _followMRVMagDiffInvSigmaSquared = 0.0f;
     
     /** Follow MRV magnitude difference flag */
     private boolean _followMRVMagDiffFlag = false;
     
     /** Follow relative distance sigma */
     private float _followRelDistanceSigma = 0.0f;
+
+    /** Follow relative distance sigma as 1/sigma^2 */
+    private float _followRelDistanceInvSigmaSquared = 0.0f;
     
     /** Follow relative distance flag */
     private boolean _followRelDistanceFlag = false;
@@ -222,6 +254,9 @@ public class DefaultProbabilityDecisionCalculator
     
     /** Forage patch value sigma */
     private float _foragePatchValueSigma = 0.0f;
+
+    /** Forage patch value sigma as 1/sigma^2 */
+    private float _foragePatchValueInvSigmaSquared = 0.0f;
     
     /** Forage patch value flag */
     private boolean _foragePatchValueFlag = false;
@@ -259,51 +294,59 @@ public class DefaultProbabilityDecisionCalculator
         // Get the random number generator
         _rng = simState.getRNG();
         
-        // If there is a separate props file for calculations, use it
-        Properties calcProps = props;
-        String calcPropsFilename = System.getProperty( PROB_DECISION_CALC_PROPS_FILE_KEY );
-        if( null != calcPropsFilename )
+        // Should we use the fast math approximations?
+        boolean useFastMath = MiscUtils.loadOptionalBooleanProperty( props,
+                _FAST_MATH_KEY,
+                false );
+        _approxMath = null;
+        if( useFastMath )
         {
-            calcProps = MiscUtils.loadPropertiesFromFile( calcPropsFilename );
-            _LOG.info( "Using decision calculator properties file" );
+            float maxError = MiscUtils.loadOptionalFloatProperty( props,
+                    _FAST_MATH_MAX_ERROR_KEY,
+                    _DEFAULT_FAST_MATH_MAX_ERROR );
+            _approxMath = new ApproximateMath( maxError );
+            _LOG.info( "Using fast math with maxError=["
+                    + maxError
+                    + "]" );
         }
         
-        // Load the initiation rate
-        _inititationRate = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_RATE_KEY,
-                "Initiation rate" );
+        // Use the typed parameters if the simulation has them, otherwise
+        // parse them from the properties
+        DecisionCalculatorParams params = simState.getDecisionCalculatorParams();
+        if( null == params )
+        {
+            // If there is a separate props file for calculations, use it,
+            // preferring the simulation's own setting to the system-wide one
+            Properties calcProps = props;
+            String calcPropsFilename = props.getProperty(
+                    PROB_DECISION_CALC_PROPS_FILE_KEY,
+                    System.getProperty( PROB_DECISION_CALC_PROPS_FILE_KEY ) );
+            if( null != calcPropsFilename )
+            {
+                calcProps = MiscUtils.loadPropertiesFromFile( calcPropsFilename );
+                _LOG.info( "Using decision calculator properties file" );
+            }
+            params = DecisionCalculatorParams.loadFromProperties( calcProps );
+        }
+
+        // Get the initiation rate
+        _inititationRate = params.getInitiateRate();
         
-        _initiationKExpMultiplier = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_K_EXP_MULT_KEY,
-                "Initiation rate" );
+        _initiationKExpMultiplier = params.getInitiateKExpMultiplier();
         
-        _initiationKExpOffset = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_K_EXP_OFFSET_KEY,
-                "Initiation rate" );
+        _initiationKExpOffset = params.getInitiateKExpOffset();
         
-        // Load the navigate MRV values
-        _navigateMRVSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_MRV_SIGMA_KEY,
-                "Navigate MRV sigma" );
-        _navigateMRVFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _INITIATE_MRV_FLAG_KEY,
-                "Navigate MRV flag" );
+        // Get the navigate MRV values
+        _navigateMRVSigma = params.getInitiateMRVSigma();
+        _navigateMRVFlag = params.isInitiateMRVFlag();
         
-        // Load the navigate patch value values
-        _navigatePatchValueSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_PATCH_VALUE_SIGMA_KEY,
-                "Navigate patch value sigma" );
-        _navigatePatchValueFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _INITIATE_PATCH_VALUE_FLAG_KEY,
-                "Navigate patch value flag" );
-
-        // Load the navigate direction difference values
-        _navigateDirDiffSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _INITIATE_DIR_DIFF_SIGMA_KEY,
-                "Navigate direction difference sigma" );
-        _navigateDirDiffFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _INITIATE_DIR_DIFF_FLAG_KEY,
-                "Navigate direction difference flag" );
+        // Get the navigate patch value values
+        _navigatePatchValueSigma = params.getInitiatePatchValueSigma();
+        _navigatePatchValueFlag = params.isInitiatePatchValueFlag();
+
+        // Get the navigate direction difference values
+        _navigateDirDiffSigma = params.getInitiateDirDiffSigma();
+        _navigateDirDiffFlag = params.isInitiateDirDiffFlag();
 
         /** Compute the max navigation k value */
         _maxNavigateK = (1.0f/(1.0f + (float) Math.exp( _initiationKExpMultiplier
@@ -326,49 +369,29 @@ public class DefaultProbabilityDecisionCalculator
 //                + "]" );
         
         
-        // Load the follow alpha constant
-        _followAlpha = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_ALPHA_KEY,
-                "Follow alpha" );
-
-        // Load the follow beta constant
-        _followBeta = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_BETA_KEY,
-                "Follow beta" );
+        // Get the follow alpha constant
+        _followAlpha = params.getFollowAlpha();
+
+        // Get the follow beta constant
+        _followBeta = params.getFollowBeta();
         
-        // Load the follow k exponent multiplier
-        _followKExpMultiplier = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_K_EXP_MULT_KEY,
-                "follow base rate" );
-
-        // Load the follow k exponent offset value
-        _followKExpOffset = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_K_EXP_OFFSET_KEY,
-                "follow base rate" );
-
-        // Load the follow relative distance values
-        _followRelDistanceSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_MEAN_POS_REL_DIST_SIGMA_KEY,
-                "follow mean position relative distance sigma" );
-        _followRelDistanceFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _FOLLOW_MEAN_POS_REL_DIST_FLAG_KEY,
-                "follow mean position relative distance flag" );
-
-        // Load the follow MRV direction difference values
-        _followMRVDirDiffSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_MRV_DIR_DIFF_SIGMA_KEY,
-                "follow MRV direction difference sigma" );
-        _followMRVDirDiffFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _FOLLOW_MRV_DIR_DIFF_FLAG_KEY,
-                "follow MRV direction difference flag" );
+        // Get the follow k exponent multiplier
+        _followKExpMultiplier = params.getFollowKExpMultiplier();
+
+        // Get the follow k exponent offset value
+        _followKExpOffset = params.getFollowKExpOffset();
+
+        // Get the follow relative distance values
+        _followRelDistanceSigma = params.getFollowMeanPosRelDistSigma();
+        _followRelDistanceFlag = params.isFollowMeanPosRelDistFlag();
+
+        // Get the follow MRV direction difference values
+        _followMRVDirDiffSigma = params.getFollowMRVDirDiffSigma();
+        _followMRVDirDiffFlag = params.isFollowMRVDirDiffFlag();
         
-        // Load the follow MRV magnitude difference values
-        _followMRVMagDiffSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FOLLOW_MRV_MAG_DIFF_SIGMA_KEY,
-                "follow MRV magnitude difference sigma" );
-        _followMRVMagDiffFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _FOLLOW_MRV_MAG_DIFF_FLAG_KEY,
-                "follow MRV magnitude difference flag" );
+        // Get the follow MRV magnitude difference values
+        _followMRVMagDiffSigma = params.getFollowMRVMagDiffSigma();
+        _followMRVMagDiffFlag = params.isFollowMRVMagDiffFlag();
 
         // Compute the max follow k value
         _maxFollowK = (1.0f/(1.0f + (float) Math.exp( _followKExpMultiplier
@@ -389,28 +412,18 @@ public class DefaultProbabilityDecisionCalculator
 //                + "]" );
         
         
-        // Load the base forage rate
-        _forageBaseRate = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FORAGE_RATE_KEY,
-                "Forage base rate" );
-
-        // Load the forage k exponent multiplier
-        _forageKExpMultilier = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FORAGE_K_EXP_MULT_KEY,
-                "Forage base rate" );
-
-        // Load the forage k exponent offset value
-        _forageKExpOffset = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FORAGE_K_EXP_OFFSET_KEY,
-                "Forage base rate" );
-
-        // Load the forage patch value values
-        _foragePatchValueSigma = MiscUtils.loadNonEmptyFloatProperty( calcProps,
-                _FORAGE_PATCH_VALUE_SIGMA_KEY,
-                "forage patch value sigma" );
-        _foragePatchValueFlag = MiscUtils.loadNonEmptyBooleanProperty( calcProps,
-                _FORAGE_PATCH_VALUE_FLAG_KEY,
-                "forage patch value flag" );
+        // Get the base forage rate
+        _forageBaseRate = params.getForageRate();
+
+        // Get the forage k exponent multiplier
+        _forageKExpMultilier = params.getForageKExpMultiplier();
+
+        // Get the forage k exponent offset value
+        _forageKExpOffset = params.getForageKExpOffset();
+
+        // Get the forage patch value values
+        _foragePatchValueSigma = params.getForagePatchValueSigma();
+        _foragePatchValueFlag = params.isForagePatchValueFlag();
 
         // Compute the max forage k value
         _maxForageK = (1.0f/(1.0f + (float) Math.exp( _forageKExpMultilier
@@ -428,6 +441,15 @@ public class DefaultProbabilityDecisionCalculator
 //                + _maxForageK
 //                + "]" );
 
+        // Precompute the inverse sigma terms
+        _navigateMRVInvSigmaSquared = calculateInvSigmaSquared( _navigateMRVSigma );
+        _navigatePatchValueInvSigmaSquared = calculateInvSigmaSquared( _navigatePatchValueSigma );
+        _navigateDirDiffInvSigmaSquared = calculateInvSigmaSquared( _navigateDirDiffSigma );
+        _followMRVDirDiffInvSigmaSquared = calculateInvSigmaSquared( _followMRVDirDiffSigma );
+        _followMRVMagDiffInvSigmaSquared = calculateInvSigmaSquared( _followMRVMagDiffSigma );
+        _followRelDistanceInvSigmaSquared = calculateInvSigmaSquared( _followRelDistanceSigma );
+        _foragePatchValueInvSigmaSquared = calculateInvSigmaSquared( _foragePatchValueSigma );
+
         _LOG.trace( "Leaving initialize( simState )" );        
     }
 
@@ -443,18 +465,19 @@ public class DefaultProbabilityDecisionCalculator
     public float calculateNavigateProbability( Patch patch, Agent agent )
     {
         // Get the mean resultant vector of the agent w.r.t. sensed teammates
-        NavigationalVector mrv = agent.getMRVForTeam( agent.getTeam().getID() );
+        NavigationalVector mrv = agent.getMRVForTeam( agent.getTeamIndex() );
         float mrvComponent = 0.0f;
         float mrvR = mrv.r;
-        if( 1 == agent.getTeam().getSize() )
+        if( 1 == agent.getTeamSize() )
         {
             mrvR = 1.0f;
 //            _LOG.warn( "Using single size team" );
         }
         if( _navigateMRVFlag && _navigateMRVSigma > 0.0f )
         {
-            mrvComponent = (1.0f - mrv.r) * (1.0f - mrv.r)
-                / (_navigateMRVSigma * _navigateMRVSigma);
+            mrvComponent = calculateSigmaComponent( 1.0f - mrv.r,
+                    _navigateMRVSigma,
+                    _navigateMRVInvSigmaSquared );
         }
 //        _LOG.debug( "mrv.r=[" + mrv.r + "]" );
         
@@ -463,15 +486,15 @@ public class DefaultProbabilityDecisionCalculator
         float patchValueComponent = 0.0f;
         if( _navigatePatchValueFlag && _navigatePatchValueSigma > 0.0f )
         {
-            patchValueComponent = (1.0f - patchValue) * (1.0f - patchValue)
-                / (_navigatePatchValueSigma * _navigatePatchValueSigma);
+            patchValueComponent = calculateSigmaComponent( 1.0f - patchValue,
+                    _navigatePatchValueSigma,
+                    _navigatePatchValueInvSigmaSquared );
         }
 
         // Calculate the difference in direction between the patch and the team
-        NavigationalVector toPatch = new NavigationalVector(
-                patch.getPosition().subtract( agent.getPosition() ) );
-        float dirDiff = toPatch.theta - mrv.theta;
-        if( 1 == agent.getTeam().getSize() )
+        float dirDiff = calculateBearing( patch.getPosition().subtract(
+                agent.getPosition() ) ) - mrv.theta;
+        if( 1 == agent.getTeamSize() )
         {
             dirDiff = 0.0f;
         }
@@ -487,16 +510,16 @@ public class DefaultProbabilityDecisionCalculator
         float dirComponent = 0.0f;
         if( _navigateDirDiffFlag && _navigateDirDiffSigma > 0.0f )
         {
-            dirComponent = (dirDiff * dirDiff)
-                    / (_navigateDirDiffSigma * _navigateDirDiffSigma);
+            dirComponent = calculateSigmaComponent( dirDiff,
+                    _navigateDirDiffSigma,
+                    _navigateDirDiffInvSigmaSquared );
         }
         
         // Calculate the k-value
-        float k = (1.0f / (1.0f + (float) Math.exp( _initiationKExpMultiplier * ( mrvComponent
-                + patchValueComponent
-                + dirComponent
-                - _initiationKExpOffset ) ) ) )
-                / _maxNavigateK;
+        float k = calculateK( _initiationKExpMultiplier,
+                mrvComponent + patchValueComponent + dirComponent,
+                _initiationKExpOffset,
+                _maxNavigateK );
         
         // Calculate the probability
         float probability = 0.0f;
@@ -548,10 +571,10 @@ public class DefaultProbabilityDecisionCalculator
             Agent agent )
     {
         // Get the leader team's MRV
-        NavigationalVector leaderMRV = agent.getMRVForTeam( leader.getTeam().getID() );
+        NavigationalVector leaderMRV = agent.getMRVForTeam( leader.getTeamIndex() );
         
         // Get the MRV for the agent's current team
-        NavigationalVector currentMRV = agent.getMRVForTeam( agent.getTeam().getID() );
+        NavigationalVector currentMRV = agent.getMRVForTeam( agent.getTeamIndex() );
         
         // Compute the difference in the MRV angles
         float mrvDirDiff = leaderMRV.theta - currentMRV.theta;
@@ -569,8 +592,9 @@ public class DefaultProbabilityDecisionCalculator
         float mrvDirDiffComponent = 0.0f;
         if( _followMRVDirDiffFlag && _followMRVDirDiffSigma > 0.0f )
         {
-            mrvDirDiffComponent = (1.0f - mrvDirDiff) * (1.0f - mrvDirDiff)
-                / (_followMRVDirDiffSigma * _followMRVDirDiffSigma);
+            mrvDirDiffComponent = calculateSigmaComponent( 1.0f - mrvDirDiff,
+                    _followMRVDirDiffSigma,
+                    _followMRVDirDiffInvSigmaSquared );
         }
         
         // Compute the difference in the MRV magnitudes
@@ -585,18 +609,19 @@ public class DefaultProbabilityDecisionCalculator
         float mrvMagDiffComponent = 0.0f;
         if( _followMRVMagDiffFlag && _followMRVMagDiffSigma > 0.0f )
         {
-            mrvMagDiffComponent = (1.0f - currentMRV.r) * (1.0f - currentMRV.r)
-                / (_followMRVMagDiffSigma * _followMRVMagDiffSigma);
+            mrvMagDiffComponent = calculateSigmaComponent( 1.0f - currentMRV.r,
+                    _followMRVMagDiffSigma,
+                    _followMRVMagDiffInvSigmaSquared );
         }
         _LOG.debug( "currentMRV.r=[" + currentMRV.r + "]" );
         
         // Compute the difference in the distance to the mean position
         Vector3f leaderTeamMeanPosition = agent.getMeanPositionOfTeam(
-                leader.getTeam().getID() );
+                leader.getTeamIndex() );
         Vector3f leaderTeamRelPosition = leaderTeamMeanPosition.subtract(
                 agent.getPosition() );
         Vector3f currentTeamMeanPosition = agent.getMeanPositionOfTeam(
-                agent.getTeam().getID() );
+                agent.getTeamIndex() );
         Vector3f currentTeamRelPosition = currentTeamMeanPosition.subtract(
                 agent.getPosition() );
         
@@ -604,8 +629,9 @@ public class DefaultProbabilityDecisionCalculator
         float relDistanceComponent = 0.0f;
         if( _followRelDistanceFlag && _followRelDistanceSigma > 0.0f )
         {
-            relDistanceComponent = (relDistance) * (relDistance)
-                    / (_followRelDistanceSigma * _followRelDistanceSigma);
+            relDistanceComponent = calculateSigmaComponent( relDistance,
+                    _followRelDistanceSigma,
+                    _followRelDistanceInvSigmaSquared );
         }
         _LOG.debug( "relDistance=[" + relDistance + "]" );
         
@@ -637,12 +663,14 @@ public class DefaultProbabilityDecisionCalculator
 //        float k = (float) Math.exp( -2.0f * ( mrvDirDiffComponent
 //                + mrvMagDiffComponent ) );
         float positionComponent = mrvDirDiffComponent + mrvMagDiffComponent + relDistanceComponent;
-        float k = (1.0f/(1.0f + (float) Math.exp( _followKExpMultiplier * (positionComponent - _followKExpOffset))))
-                / _maxFollowK;
+        float k = calculateK( _followKExpMultiplier,
+                positionComponent,
+                _followKExpOffset,
+                _maxFollowK );
 
         // Compute the probability
-        float departed = leader.getTeam().getSize();
-        float currentTeamSize = agent.getTeam().getSize();
+        float departed = leader.getTeamSize();
+        float currentTeamSize = agent.getTeamSize();
         float groupSize = agent.getSensedAgents().size();
         float probability = 0.0f;
         if( k > _MIN_K_VALUE )
@@ -695,14 +723,16 @@ public class DefaultProbabilityDecisionCalculator
         float patchValueComponent = 0.0f;
         if( _foragePatchValueSigma > 0.0f )
         {
-            patchValueComponent = (1.0f - patchValue) * (1.0f - patchValue)
-                / (_foragePatchValueSigma * _foragePatchValueSigma);
+            patchValueComponent = calculateSigmaComponent( 1.0f - patchValue,
+                    _foragePatchValueSigma,
+                    _foragePatchValueInvSigmaSquared );
         }
 
         // Calculate the k-value
-        float k = (1.0f / (1.0f + (float) Math.exp( _initiationKExpMultiplier * ( patchValueComponent
-                - _initiationKExpOffset ) ) ) )
-                / _maxForageK;
+        float k = calculateK( _initiationKExpMultiplier,
+                patchValueComponent,
+                _initiationKExpOffset,
+                _maxForageK );
         
         // Calculate the probability
         float probability = 0.0f;
@@ -735,6 +765,66 @@ public class DefaultProbabilityDecisionCalculator
         return probability;
     }
 
+    /**
+     * Calculates an upper bound on the sum of the probabilities of all the
+     * candidate decisions of a given agent.  Every exponent component is a
+     * square, so each k-value is at most its value with no components (or
+     * its limit if the multiplier is negative).  Dividing that by the
+     * decision's rate bounds its probability using only the number of
+     * sensed agents and the team sizes.
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @return The bound
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateMaxProbabilitySum(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public float calculateMaxProbabilitySum( Agent agent,
+            DecisionCandidates candidates )
+    {
+        float maxProbabilitySum = 0.0f;
+        int size = candidates.size();
+        for( int i = 0; i < size; i++ )
+        {
+            // The decision type determines the bound
+            DecisionType type = candidates.getType( i );
+            if( DecisionType.NAVIGATE.equals( type ) )
+            {
+                maxProbabilitySum += calculateMaxProbability(
+                        calculateMaxK( _initiationKExpMultiplier,
+                                _initiationKExpOffset,
+                                _maxNavigateK ),
+                        _inititationRate * agent.getSensedAgents().size() );
+            }
+            else if( DecisionType.FOLLOW.equals( type ) )
+            {
+                float departed = candidates.getLeader( i ).getTeamSize();
+                float currentTeamSize = agent.getTeamSize();
+                maxProbabilitySum += calculateMaxProbability(
+                        calculateMaxK( _followKExpMultiplier,
+                                _followKExpOffset,
+                                _maxFollowK ),
+                        _followAlpha + ( _followBeta * currentTeamSize / departed ) );
+            }
+            else if( DecisionType.FORAGE.equals( type ) )
+            {
+                maxProbabilitySum += calculateMaxProbability(
+                        calculateMaxK( _initiationKExpMultiplier,
+                                _initiationKExpOffset,
+                                _maxForageK ),
+                        _forageBaseRate );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unsupported candidate decision type ["
+                        + type
+                        + "]" );
+            }
+        }
+
+        return maxProbabilitySum;
+    }
+
 //    /**
 //     * Calculate all the probabilities that a given agent forages in the
 //     * patches it currently is in
@@ -784,6 +874,132 @@ public class DefaultProbabilityDecisionCalculator
 //        return patchForageProbabilities;
 //    }
 
+    /**
+     * Calculates the inverse of a squared sigma value
+     *
+     * @param sigma The sigma value
+     * @return 1/sigma^2 or 0 if sigma is not positive
+     */
+    private static float calculateInvSigmaSquared( float sigma )
+    {
+        float invSigmaSquared = 0.0f;
+        if( sigma > 0.0f )
+        {
+            invSigmaSquared = 1.0f / (sigma * sigma);
+        }
+        return invSigmaSquared;
+    }
+
+    /**
+     * Calculates a component of the k-value exponent from a difference and
+     * its sigma
+     *
+     * @param diff The difference
+     * @param sigma The sigma value
+     * @param invSigmaSquared The precomputed 1/sigma^2
+     * @return The component
+     */
+    private float calculateSigmaComponent( float diff,
+            float sigma,
+            float invSigmaSquared )
+    {
+        // The fast path multiplies by the precomputed inverse
+        if( null != _approxMath )
+        {
+            return diff * diff * invSigmaSquared;
+        }
+        return diff * diff / (sigma * sigma);
+    }
+
+    /**
+     * Calculates a normalized k-value using the logistic function
+     *
+     * @param kExpMultiplier The k exponent multiplier
+     * @param component The sum of the exponent components
+     * @param kExpOffset The k exponent offset
+     * @param maxK The max k-value used to normalize it
+     * @return The k-value
+     */
+    private float calculateK( float kExpMultiplier,
+            float component,
+            float kExpOffset,
+            float maxK )
+    {
+        // The fast path uses the tabulated logistic function
+        if( null != _approxMath )
+        {
+            return _approxMath.logistic( -kExpMultiplier
+                    * (component - kExpOffset) ) / maxK;
+        }
+        return (1.0f / (1.0f + (float) Math.exp( kExpMultiplier
+                * (component - kExpOffset) ) ) ) / maxK;
+    }
+
+    /**
+     * Calculates the largest k-value {@link #calculateK(float, float, float, float)}
+     * returns for any non-negative sum of exponent components
+     *
+     * @param kExpMultiplier The k exponent multiplier
+     * @param kExpOffset The k exponent offset
+     * @param maxK The max k-value used to normalize it
+     * @return The largest k-value
+     */
+    private float calculateMaxK( float kExpMultiplier,
+            float kExpOffset,
+            float maxK )
+    {
+        // The logistic function is largest with no components, unless the
+        // multiplier is negative and it approaches 1 instead
+        float k = 1.0f / maxK;
+        if( kExpMultiplier >= 0.0f )
+        {
+            k = (1.0f / (1.0f + (float) Math.exp( kExpMultiplier
+                    * (-kExpOffset) ) ) ) / maxK;
+        }
+
+        // The fast path may overshoot by its max error
+        if( null != _approxMath )
+        {
+            k += _approxMath.getMaxError() / maxK;
+        }
+
+        return k;
+    }
+
+    /**
+     * Calculates the largest probability of a decision given its largest
+     * k-value
+     *
+     * @param maxK The largest k-value
+     * @param rate The rate by which k is divided to get the probability
+     * @return The largest probability
+     */
+    private float calculateMaxProbability( float maxK, float rate )
+    {
+        float probability = _MAX_PROBABILITY;
+        if( rate > 0.0f )
+        {
+            probability = Math.min( maxK / rate, _MAX_PROBABILITY );
+        }
+        return probability;
+    }
+
+    /**
+     * Calculates the navigational bearing of a vector
+     *
+     * @param vector The vector
+     * @return The bearing in radians
+     */
+    private float calculateBearing( Vector3f vector )
+    {
+        // The fast path approximates the navigational theta directly
+        if( null != _approxMath )
+        {
+            return _approxMath.atan2( vector.x, vector.y );
+        }
+        return new NavigationalVector( vector ).theta;
+    }
+
     /**
      * Calculates the value of a givent patch for a given agent
      *
@@ -793,7 +1009,7 @@ public class DefaultProbabilityDecisionCalculator
      */
     private float getPatchValue( Patch patch, Agent agent )
     {
-        PatchValue patchValueData = agent.getPachValue( patch.getID() );
+        PatchValue patchValueData = agent.getPachValue( patch.getIndex() );
         float patchValueIndMax = agent.getPatchValueIndMax();
         float patchValueGroupMax = agent.getPatchValueGroupMax();
         float patchValue = patchValueData.getGiveUpSlopeGroup() / patchValueGroupMax;
@@ -21,16 +21,13 @@ package edu.snu.csne.forage.decision;
 
 //Imports
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.jme3.math.Vector3f;
-import ec.util.MersenneTwisterFast;
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.Patch;
 import edu.snu.csne.forage.SimulationState;
@@ -51,12 +48,19 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
     private static final float _MAX_SAME_PATCH_DIST_SQUARED = 0.02f;
     
     
-    /** Random number generator */
-    private MersenneTwisterFast _rng = null;
-
     /** The decision builder */
     private DecisionBuilder _decisionBuilder = new DecisionBuilder();
 
+    /** Reusable candidate decisions for each thread making decisions */
+    private final ThreadLocal<DecisionCandidates> _candidates =
+            new ThreadLocal<DecisionCandidates>() {
+                @Override
+                protected DecisionCandidates initialValue()
+                {
+                    return new DecisionCandidates();
+                }
+            };
+
     /** The probability decision calculator */
     private ProbabilityDecisionCalculator _probDecisionCalc = null;
     
@@ -76,9 +80,6 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
         // Call the superclass implementation
         super.initialize( simState, props );
         
-        // Get the random number generator
-        _rng = simState.getRNG();
-
         // Initialize the decision builder
         _decisionBuilder.initialize( simState, props );
         
@@ -101,62 +102,210 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
     {
         _LOG.trace( "Entering decide( agent )" );
 
-        // Create a list of all possible decisions
-        List<Decision> allDecisions = new LinkedList<Decision>();
-        allDecisions.addAll( buildAllNavigateDecisions( agent ) );
-        allDecisions.addAll( buildAllFollowDecisions( agent ) );
-        allDecisions.addAll( buildAllForageDecisions( agent ) );
+        // Gather all the possible decisions
+        DecisionCandidates candidates = _candidates.get();
+        gatherCandidates( agent, candidates );
+        
+        // Calculate all their probabilities at once
+        _probDecisionCalc.calculateProbabilities( agent, candidates );
+        
+        // Pick one
+        Decision decision = chooseCandidateDecision( agent, candidates );
+        
+        _LOG.trace( "Leaving decide( agent )" );
+        
+        return decision;
+    }
+
+    /**
+     * Plans a decision by gathering the agent's candidate decisions.  The
+     * probability decision calculator may either calculate their
+     * probabilities now or wait until all the plans are evaluated.
+     *
+     * @param agent The agent planning the decision
+     * @see edu.snu.csne.forage.decision.AbstractAgentDecisionMaker#plan(edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public void plan( Agent agent )
+    {
+        DecisionCandidates candidates = agent.getPlannedCandidates();
+        gatherCandidates( agent, candidates );
+        _probDecisionCalc.prepareProbabilities( agent, candidates );
+    }
+
+    /**
+     * Evaluates the plans of all the specified agents, letting the
+     * probability decision calculator finish the probabilities of all the
+     * planned candidates at once
+     *
+     * @param agents The agents that planned a decision
+     * @see edu.snu.csne.forage.decision.AbstractAgentDecisionMaker#evaluatePlans(java.util.List)
+     */
+    @Override
+    public void evaluatePlans( List<Agent> agents )
+    {
+        _probDecisionCalc.calculatePreparedProbabilities( agents );
+    }
+
+    /**
+     * Picks a decision from the agent's evaluated candidates
+     *
+     * @param agent The agent making the decision
+     * @return The decision
+     * @see edu.snu.csne.forage.decision.AbstractAgentDecisionMaker#choose(edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public Decision choose( Agent agent )
+    {
+        return chooseCandidateDecision( agent, agent.getPlannedCandidates() );
+    }
+
+    /**
+     * Gathers all the candidate decisions available to an agent
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     */
+    private void gatherCandidates( Agent agent, DecisionCandidates candidates )
+    {
+        // Find the patches the agent is currently in
+        List<Patch> containingPatches = _simState.getPatchIndex().findPatchesContaining(
+                agent );
+        
+        // Gather all the possible decisions
+        candidates.clear();
+        addNavigateCandidates( agent, containingPatches, candidates );
+        addFollowCandidates( agent, candidates );
+        addForageCandidates( agent, containingPatches, candidates );
+    }
+
+    /**
+     * Picks a decision using the probabilities of the candidates
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions with their probabilities
+     * @return The decision
+     */
+    private Decision chooseCandidateDecision( Agent agent,
+            DecisionCandidates candidates )
+    {
+        float[] probabilities = candidates.getProbabilities();
+        int candidateCount = candidates.size();
         
         // Sum all the decision probabilities
         float decisionProbabilitiesSum = 0.0f;
-        Iterator<Decision> decisionIter = allDecisions.iterator();
-        while( decisionIter.hasNext() )
+        for( int i = 0; i < candidateCount; i++ )
+        {
+            decisionProbabilitiesSum += probabilities[i];
+        }
+        
+        // Scale everything if the sum is too large
+        float scale = calculateScale( decisionProbabilitiesSum );
+        _LOG.debug( "decisionProbabilitiesSum=["
+                + decisionProbabilitiesSum
+                + "] scale=["
+                + scale
+                + "]" );
+        
+        // Pick a candidate (defaulting to the current decision)
+        int chosenIdx = -1;
+        if( _simState.isEventDrivenDecisions() )
         {
-            decisionProbabilitiesSum += decisionIter.next().getProbability();
+            float maxProbabilitiesSum = _probDecisionCalc.calculateMaxProbabilitySum(
+                    agent,
+                    candidates );
+            chosenIdx = chooseScheduledCandidate( agent,
+                    candidates,
+                    decisionProbabilitiesSum,
+                    scale * decisionProbabilitiesSum,
+                    calculateScale( maxProbabilitiesSum ) * maxProbabilitiesSum );
+        }
+        else
+        {
+            chosenIdx = chooseCandidate( agent, candidates, scale );
         }
         
+        // Only build the decision that was made
+        Decision decision = agent.getDecision();
+        if( 0 <= chosenIdx )
+        {
+            decision = _decisionBuilder.buildCandidateDecision( agent,
+                    candidates,
+                    chosenIdx,
+                    probabilities[chosenIdx] );
+        }
+        candidates.clear();
+        
+        // Choose the decision
+        decision.choose( _simState );
+        
+        _LOG.debug( "Chosen decision type ["
+                + decision.getType()
+                + "] at time ["
+                + _simState.getCurrentSimulationStep()
+                + "]" );
+        
+        return decision;
+    }
+
+    /**
+     * Calculates the scale applied to the candidates' probabilities so the
+     * agent always has a minimum probability of keeping its current
+     * decision.  The scaled sum never decreases as the sum grows.
+     *
+     * @param probabilitiesSum The sum of the candidates' probabilities
+     * @return The scale
+     */
+    private float calculateScale( float probabilitiesSum )
+    {
         // Get the minimum probability of continuing the same decision
         // TODO
         float sameDecisionProbabilityMin = 0.1f;
         
         // If the sum is larger than 1 minus the same decision minimum, scale everything
         float scale = 1.0f;
-        if( decisionProbabilitiesSum > (1.0f - sameDecisionProbabilityMin) )
+        if( probabilitiesSum > (1.0f - sameDecisionProbabilityMin) )
         {
-            scale = 1.0f / (decisionProbabilitiesSum + sameDecisionProbabilityMin);
+            scale = 1.0f / (probabilitiesSum + sameDecisionProbabilityMin);
         }
-        _LOG.debug( "decisionProbabilitiesSum=["
-                + decisionProbabilitiesSum
-                + "] sameDecisionProbabilityMin=["
-                + sameDecisionProbabilityMin
-                + "]" );
         
-        // Make a decision (defaulting to the current decision)
-        Decision decision = agent.getDecision();
-        boolean done = false;
-        float randomDecision = _rng.nextFloat();
+        return scale;
+    }
+
+    /**
+     * Picks a candidate using the probabilities of making each decision
+     * during this step
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @param scale The scale applied to the probabilities
+     * @return The index of the chosen candidate or -1 if the agent keeps
+     *         its current decision
+     */
+    private int chooseCandidate( Agent agent,
+            DecisionCandidates candidates,
+            float scale )
+    {
+        float[] probabilities = candidates.getProbabilities();
+        int candidateCount = candidates.size();
+        int chosenIdx = -1;
+        float randomDecision = agent.getRNG().nextFloat();
         _LOG.debug( "randomDecision=[" + randomDecision + "]" );
-        decisionIter = allDecisions.iterator();
-        while( decisionIter.hasNext() && !done )
+        for( int i = 0; (i < candidateCount) && (0 > chosenIdx); i++ )
         {
-            Decision possibleDecision = decisionIter.next();
-            
             // What is the probability?
-            float probability = scale * possibleDecision.getProbability();
+            float probability = scale * probabilities[i];
             _LOG.debug( "probability=["
                     + probability
                     + "] type=["
-                    + possibleDecision.getType()
-                    + "] possibleDecision=["
-                    + possibleDecision
+                    + candidates.getType( i )
                     + "]" );
             
             // Is this the one?
             if( probability > randomDecision )
             {
                 // Yup
-                decision = possibleDecision;
-                done = true;
+                chosenIdx = i;
                 _LOG.debug( "Making this decision" );
             }
             else
@@ -166,31 +315,109 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
             }
         }
         
-        // Choose the decision
-        decision.choose( _simState );
-        
-        _LOG.debug( "Chosen decision type ["
-                + decision.getType()
-                + "] at time ["
-                + _simState.getCurrentSimulationStep()
-                + "]" );
-        
-        _LOG.trace( "Leaving decide( agent )" );
-        
-        return decision;
+        return chosenIdx;
     }
+    
+    /**
+     * Picks a candidate when decisions are event driven.  Instead of
+     * sampling a switch every step, the steps at which the agent may
+     * switch are sampled from an upper bound on its switch probability
+     * that holds until its decision inputs change.  At each of those
+     * steps, the switch is only taken with the ratio of the current switch
+     * probability to the bound, which thins the sampled switches down to
+     * the ones the agent would have made deciding every step.  Agents
+     * woken early because their inputs changed or reconsidering after the
+     * max wait switch with the current probability instead.  When the
+     * agent does switch, a candidate is picked in proportion to its
+     * probability and the agent reconsiders the next step since its
+     * inputs change.
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @param probabilitiesSum The sum of the candidates' probabilities
+     * @param hazard The probability of switching during this step
+     * @param maxHazard The upper bound on the probability of switching
+     *            during a step until the agent's inputs change
+     * @return The index of the chosen candidate or -1 if the agent keeps
+     *         its current decision
+     */
+    private int chooseScheduledCandidate( Agent agent,
+            DecisionCandidates candidates,
+            float probabilitiesSum,
+            float hazard,
+            float maxHazard )
+    {
+        // Does the agent switch this step?
+        float dueMaxHazard = _simState.getDecisionSwitchHazard( agent );
+        if( 0.0f >= dueMaxHazard )
+        {
+            dueMaxHazard = 1.0f;
+        }
+        boolean switching = (agent.getRNG().nextFloat() * dueMaxHazard < hazard);
+        _LOG.debug( "hazard=["
+                + hazard
+                + "] dueMaxHazard=["
+                + dueMaxHazard
+                + "] maxHazard=["
+                + maxHazard
+                + "]" );
+        if( !switching )
+        {
+            // Nope, wait for the next step at which the agent may switch
+            agent.scheduleNextDecision(
+                    _simState.sampleDecisionWait( maxHazard, agent.getRNG() ),
+                    maxHazard );
+            return -1;
+        }
+
+        // Pick a candidate in proportion to its probability
+        int chosenIdx = -1;
+        if( 0.0f < probabilitiesSum )
+        {
+            float[] probabilities = candidates.getProbabilities();
+            int candidateCount = candidates.size();
+            float randomDecision = agent.getRNG().nextFloat() * probabilitiesSum;
+            for( int i = 0; (i < candidateCount) && (0 > chosenIdx); i++ )
+            {
+                if( probabilities[i] > randomDecision )
+                {
+                    chosenIdx = i;
+                }
+                else
+                {
+                    randomDecision -= probabilities[i];
+                }
+            }
+
+            // Guard against rounding leaving nothing picked
+            for( int i = candidateCount - 1; (0 <= i) && (0 > chosenIdx); i-- )
+            {
+                if( 0.0f < probabilities[i] )
+                {
+                    chosenIdx = i;
+                }
+            }
+        }
+
+        // Reconsider next step
+        agent.scheduleNextDecision( 1, 0.0f );
 
+        return chosenIdx;
+    }
+    
     /**
-     * Builds a list of all possible navigation decisions for a given agent
+     * Adds all the possible navigation decisions for a given agent to the
+     * candidates
      *
      * @param agent The agent associated with the decisions
-     * @return The navigate decisions
+     * @param containingPatches The patches the agent is currently in
+     * @param candidates The candidate decisions
      */
-    private List<Decision> buildAllNavigateDecisions( Agent agent )
+    private void addNavigateCandidates( Agent agent,
+            List<Patch> containingPatches,
+            DecisionCandidates candidates )
     {
-//        _LOG.warn( "Building navigate decisions for agent [" + agent.getID() + "]" );
-      
-        List<Decision> navDecisions = new LinkedList<Decision>();
+        int startCount = candidates.size();
 
         // See if the agent is already currently moving toward a patch
         Decision currentDecision = agent.getDecision();
@@ -209,7 +436,7 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
             
             // If the agent is already in the patch, skip it as the agent
             // can forage here now
-            if( patch.isInPatch( agent ) )
+            if( containingPatches.contains( patch ) )
             {
                 continue;
             }
@@ -221,93 +448,72 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
                 continue;
             }
             
-            // Calculate the probability of navigating to this patch
-            float probability = _probDecisionCalc.calculateNavigateProbability( patch, agent );
-            
-            // Build the decision
-            Decision decision = _decisionBuilder.buildPatchNavigateDecision(
-                    agent,
-                    patch,
-                    probability );
-            
-            // Add it to the list
-            navDecisions.add( decision );
+            // Add it to the candidates
+            candidates.addNavigate( patch );
         }
         
         _LOG.debug( "Known patches=["
                 + patches.size()
                 + "] navDecisions=["
-                + navDecisions.size()
+                + (candidates.size() - startCount)
                 + "]" );
-        
-        return navDecisions;
     }
     
     /**
-     * Builds a list of all possible follow decisions for a given agent
+     * Adds all the possible follow decisions for a given agent to the
+     * candidates
      *
      * @param agent The agent associated with the decisions
-     * @return The follow decisions
+     * @param candidates The candidate decisions
      */
-    private List<Decision> buildAllFollowDecisions( Agent agent )
+    private void addFollowCandidates( Agent agent,
+            DecisionCandidates candidates )
     {
-        List<Decision> followDecisions = new LinkedList<Decision>();
+        int startCount = candidates.size();
         
         // The agent follow any known team leader
-        Map<String,Agent> teamLeaders = agent.getSensedTeamLeaders();
-        Iterator<Agent> leaderIter = teamLeaders.values().iterator();
+        int agentTeamIdx = agent.getTeamIndex();
+        List<Agent> teamLeaders = agent.getSensedTeamLeaders();
+        Iterator<Agent> leaderIter = teamLeaders.iterator();
         while( leaderIter.hasNext() )
         {
             Agent leader = leaderIter.next();
             
             // Skip it if the agent already belongs to this team
-            if( agent.getTeam().equals( leader.getTeam() ) )
+            if( agentTeamIdx == leader.getTeamIndex() )
             {
                 continue;
             }
-            if( agent.getID().equals( leader.getID() ) )
+            if( agent.getSlot() == leader.getSlot() )
             {
                 _LOG.warn( "Attempted to build a decision where an agent follows itself" );
                 continue;
             }
             
-            // Calculate the probability of following this leader
-            float probability = _probDecisionCalc.calculateFollowProbability(
-                    leader,
-                    agent );
-            
-            // Build the decision
-            Decision decision = _decisionBuilder.buildFollowDecision(
-                    agent,
-                    leader,
-                    probability );
-            
-            // Add it to the list
-            followDecisions.add( decision );
+            // Add it to the candidates
+            candidates.addFollow( leader );
         }
         
         _LOG.debug( "Known leaders=["
                 + teamLeaders.size()
                 + "] followDecisions=["
-                + followDecisions.size()
+                + (candidates.size() - startCount)
                 + "]" );
-
-        return followDecisions;
     }
     
     /**
-     * Builds all the possible foraging decisions for a given agent
+     * Adds all the possible foraging decisions for a given agent to the
+     * candidates
      *
      * @param agent The agent associated with the decisions
-     * @return The foraging decisions
+     * @param containingPatches The patches the agent is currently in
+     * @param candidates The candidate decisions
      */
-    private List<Decision> buildAllForageDecisions( Agent agent )
+    private void addForageCandidates( Agent agent,
+            List<Patch> containingPatches,
+            DecisionCandidates candidates )
     {
-//        _LOG.warn( "Building foraging decisions for agent [" + agent.getID() + "]" );
-        
-        List<Decision> forageDecisions = new LinkedList<Decision>();
-        
-        // Get the probabilities
+        // The agent can forage in any patch it is in
         Iterator<Patch> patchIter = agent.getSensedPatches().iterator();
         while( patchIter.hasNext() )
         {
@@ -315,25 +521,12 @@ public class ForagingDecisionMaker extends AbstractAgentDecisionMaker
             Patch patch = patchIter.next();
             
             // is the agent in the patch?
-            if( patch.isInPatch( agent ) )
+            if( containingPatches.contains( patch ) )
             {
-                // Yup, get the probability of foraging there
-                float probability = _probDecisionCalc.calculateForageProbability(
-                        patch,
-                        agent );
-
-                // Build the decision
-                Decision decision = _decisionBuilder.buildForageDecision(
-                        agent,
-                        patch,
-                        probability );
-
-                // Add it to the list of decisions
-                forageDecisions.add( decision );
+                // Yup, add it to the candidates
+                candidates.addForage( patch );
             }
         }
-        
-        return forageDecisions;
     }
     
     public void setProbabilityDecisionCalculator(
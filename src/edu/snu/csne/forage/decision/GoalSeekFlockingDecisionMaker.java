@@ -20,14 +20,13 @@
 package edu.snu.csne.forage.decision;
 
 // Imports
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.jme3.math.Vector3f;
-import ec.util.MersenneTwisterFast;
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.Patch;
 import edu.snu.csne.forage.SimulationState;
@@ -44,9 +43,6 @@ public class GoalSeekFlockingDecisionMaker extends AbstractAgentDecisionMaker
     private static final Logger _LOG = LogManager.getLogger(
             GoalSeekFlockingDecisionMaker.class.getName() );
     
-    /** Random number generator */
-    private MersenneTwisterFast _rng = null;
-    
     /** The minimum distance to the goal destination before we pick a new one */
     private float _minDistanceToGoal = 0.0f;
     
@@ -69,9 +65,6 @@ public class GoalSeekFlockingDecisionMaker extends AbstractAgentDecisionMaker
         // Call the superclass implementation
         super.initialize( simState, props );
         
-        // Get the random number generator
-        _rng = simState.getRNG();
-        
         // Just hard code the minimum 
         _minDistanceToGoal = 1.0f;
         
@@ -112,18 +105,26 @@ public class GoalSeekFlockingDecisionMaker extends AbstractAgentDecisionMaker
             if( 0 < nonTeammates.size() )
             {
                 // Get all the sensed team leaders
-                Map<String,Agent> sensedLeaders = agent.getSensedTeamLeaders();
+                List<Agent> sensedLeaders = agent.getSensedTeamLeaders();
                 
                 // Remove the agent's current team
-                sensedLeaders.remove( agent.getTeam().getID() );
+                int teamIdx = agent.getTeamIndex();
+                Iterator<Agent> leaderIter = sensedLeaders.iterator();
+                while( leaderIter.hasNext() )
+                {
+                    if( teamIdx == leaderIter.next().getTeamIndex() )
+                    {
+                        leaderIter.remove();
+                    }
+                }
                 
                 // Randomly choose a team
-                Object[] teamIDs = sensedLeaders.keySet().toArray();
-                String teamID = (String) teamIDs[ _rng.nextInt( teamIDs.length ) ];
-                Agent leader = sensedLeaders.get( teamID );
+                Agent leader = sensedLeaders.get(
+                        agent.getRNG().nextInt( sensedLeaders.size() ) );
                 decision = Decision.buildFollowDecision(
                         _simState.getCurrentSimulationStep(),
                         leader,
+                        leader.getDecision().getPatch(),
                         2.0f,
                         1.0f,
                         1.0f,
@@ -139,7 +140,6 @@ public class GoalSeekFlockingDecisionMaker extends AbstractAgentDecisionMaker
                 _LOG.debug( "Agent [" + agent.getID() + "] is navigating to patch [" + patchID + "] at [" + patch.getPosition() + "]" );
                 decision = Decision.buildNavigateDecision(
                         _simState.getCurrentSimulationStep(),
-                        _simState.createNewTeam(),
                         patch,
                         1.5f,
                         1.0f,
@@ -165,7 +165,6 @@ public class GoalSeekFlockingDecisionMaker extends AbstractAgentDecisionMaker
                 _LOG.debug( "Navigating to NEW  patch [" + patchID + "] at [" + patch.getPosition() + "]" );
                 decision = Decision.buildNavigateDecision(
                         _simState.getCurrentSimulationStep(),
-                        agent.getTeam(),
                         patch,
                         1.5f,
                         1.0f,
@@ -27,7 +27,6 @@ import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import ec.util.MersenneTwisterFast;
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.AgentTeam;
 import edu.snu.csne.forage.Patch;
@@ -35,8 +34,6 @@ import edu.snu.csne.forage.SimulationState;
 import edu.snu.csne.forage.util.PatchValue;
 import edu.snu.csne.mates.math.NavigationalVector;
 import edu.snu.csne.util.MiscUtils;
-import edu.snu.jyperneat.core.Network;
-import edu.snu.jyperneat.core.NodeType;
 
 /**
  * TODO Class description
@@ -44,7 +41,7 @@ import edu.snu.jyperneat.core.NodeType;
  * @author Brent Eskridge
  */
 public class NeatProbabilityDecisionCalculator
-        implements ProbabilityDecisionCalculator
+        extends AbstractProbabilityDecisionCalculator
 {
     /** Our logger */
     private static final Logger _LOG = LogManager.getLogger(
@@ -121,8 +118,51 @@ public class NeatProbabilityDecisionCalculator
     /** The current state of the simulation */
     private SimulationState _simState = null;
     
-    /** The network evolved by NEAT */
-    private Network _network = null;
+    /** The compiled network evolved by NEAT */
+    private CompiledNeatNetwork _network = null;
+
+    /** The network's batch of node values for each thread */
+    private ThreadLocal<CompiledNeatNetwork.Batch> _networkBatch = null;
+
+    /** The network's batch of node values for the candidates planned by
+     *  every agent during a synchronous step */
+    private CompiledNeatNetwork.Batch _stepBatch = null;
+
+    /** The bias node's slot */
+    private int _biasSlot = 0;
+
+    /** The initiation active node's slot */
+    private int _initiationActiveSlot = 0;
+
+    /** The initiation's relative position in the group node's slot */
+    private int _initiationRelPositionSlot = 0;
+
+    /** The initiation's patch relative direction difference node's slot */
+    private int _initiationPatchRelDirDiffSlot = 0;
+
+    /** The initiation's patch value node's slot */
+    private int _initiationPatchValueSlot = 0;
+
+    /** The following's active node's slot */
+    private int _followingActiveSlot = 0;
+
+    /** The following's leader relative direction difference node's slot */
+    private int _followingLeaderRelDirDiffSlot = 0;
+
+    /** The following's patch contribution node's slot */
+    private int _followingPatchContributionSlot = 0;
+
+    /** The following's size requirements met node's slot */
+    private int _followingSizeRequirementsMetSlot = 0;
+
+    /** The foraging's active node's slot */
+    private int _foragingActiveSlot = 0;
+
+    /** The foraging's patch value node's slot */
+    private int _foragingPatchValueSlot = 0;
+
+    /** The output node's slot */
+    private int _outputSlot = 0;
     
     /** The base initiation rate */
     private float _inititationRate = 0.0f;
@@ -136,18 +176,49 @@ public class NeatProbabilityDecisionCalculator
     /** Forage base rate */
     private float _forageBaseRate = 0.0f;
     
-    /** The random number generator */
-    public MersenneTwisterFast _rng = null;
-    
     /** Flag denoting individual patch values should be used */
     private boolean _usePatchValueIndivdiual = false;
 
 
     
-    public NeatProbabilityDecisionCalculator( Network network )
+    /**
+     * Builds this calculator
+     *
+     * @param network The compiled network evolved by NEAT
+     */
+    public NeatProbabilityDecisionCalculator( final CompiledNeatNetwork network )
     {
         Validate.notNull( network, "NEAT network may not be null" );
         _network = network;
+        _networkBatch = new ThreadLocal<CompiledNeatNetwork.Batch>() {
+            @Override
+            protected CompiledNeatNetwork.Batch initialValue()
+            {
+                return network.createBatch();
+            }
+        };
+        _stepBatch = network.createBatch();
+
+        // Look up the node slots once
+        _biasSlot = network.getSlot( _BIAS_NODE_NAME );
+        _initiationActiveSlot = network.getSlot( _INITIATION_ACTIVE_NODE_NAME );
+        _initiationRelPositionSlot = network.getSlot(
+                _INITIATION_REL_POSITION_NODE_NAME );
+        _initiationPatchRelDirDiffSlot = network.getSlot(
+                _INITIATION_PATCH_REL_DIR_DIFF_NODE_NAME );
+        _initiationPatchValueSlot = network.getSlot(
+                _INITIATION_PATCH_VALUE_NODE_NAME );
+        _followingActiveSlot = network.getSlot( _FOLLOWING_ACIVE_NODE_NAME );
+        _followingLeaderRelDirDiffSlot = network.getSlot(
+                _FOLLOWING_LEADER_REL_DIR_DIFF_NODE_NAME );
+        _followingPatchContributionSlot = network.getSlot(
+                _FOLLOWING_PATCH_CONTRIBUTION_NODE_NAME );
+        _followingSizeRequirementsMetSlot = network.getSlot(
+                _FOLLOWING_SIZE_REQUIREMENTS_MET_NODE_NAME );
+        _foragingActiveSlot = network.getSlot( _FORAGING_ACTIVE_NODE_NAME );
+        _foragingPatchValueSlot = network.getSlot(
+                _FORAGING_PATCH_VALUE_NODE_NAME );
+        _outputSlot = network.getSlot( _OUTPUT_NODE_NAME );
     }
     
     /**
@@ -172,12 +243,12 @@ public class NeatProbabilityDecisionCalculator
                 + _usePatchValueIndivdiual
                 + "]" );
 
-        // Get the random number generator
-        _rng = simState.getRNG();
-
-        // If there is a separate props file for calculations, use it
+        // If there is a separate props file for calculations, use it,
+        // preferring the simulation's own setting to the system-wide one
         Properties calcProps = props;
-        String calcPropsFilename = System.getProperty( PROB_DECISION_CALC_PROPS_FILE_KEY );
+        String calcPropsFilename = props.getProperty(
+                PROB_DECISION_CALC_PROPS_FILE_KEY,
+                System.getProperty( PROB_DECISION_CALC_PROPS_FILE_KEY ) );
         if( null != calcPropsFilename )
         {
             calcProps = MiscUtils.loadPropertiesFromFile( calcPropsFilename );
@@ -207,6 +278,174 @@ public class NeatProbabilityDecisionCalculator
         _LOG.trace( "Leaving initialize( simState )" );
     }
 
+    /**
+     * Calculate the probabilities of all the candidate decisions of a given
+     * agent.  The network is evaluated once for the whole batch of
+     * candidates instead of once per candidate.
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @see edu.snu.csne.forage.decision.AbstractProbabilityDecisionCalculator#calculateProbabilities(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public void calculateProbabilities( Agent agent,
+            DecisionCandidates candidates )
+    {
+        CompiledNeatNetwork.Batch network = _networkBatch.get();
+        network.reset( candidates.size() );
+
+        // Calculate k for all of them at once
+        setCandidateInputs( agent, candidates, network, 0 );
+        network.activate();
+        setCandidateProbabilities( agent, candidates, network, 0 );
+    }
+
+    /**
+     * Prepares the probabilities of all the candidate decisions an agent
+     * planned.  Nothing is done until every agent has planned, so the
+     * network can be evaluated once for the whole step.
+     *
+     * @param agent The agent planning the decision
+     * @param candidates The candidate decisions
+     * @see edu.snu.csne.forage.decision.AbstractProbabilityDecisionCalculator#prepareProbabilities(edu.snu.csne.forage.Agent, edu.snu.csne.forage.decision.DecisionCandidates)
+     */
+    @Override
+    public void prepareProbabilities( Agent agent,
+            DecisionCandidates candidates )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Calculates the probabilities of the candidate decisions planned by
+     * all the specified agents.  The candidates of every agent are stacked
+     * into a single batch so the network is evaluated once per step.
+     * Each agent's random number generator is used in the same order as
+     * when its candidates are evaluated on their own, so the results are
+     * identical.
+     *
+     * @param agents The agents that planned a decision
+     * @see edu.snu.csne.forage.decision.AbstractProbabilityDecisionCalculator#calculatePreparedProbabilities(java.util.List)
+     */
+    @Override
+    public void calculatePreparedProbabilities( List<Agent> agents )
+    {
+        // Size the batch for everyone's candidates
+        int total = 0;
+        Iterator<Agent> agentIter = agents.iterator();
+        while( agentIter.hasNext() )
+        {
+            total += agentIter.next().getPlannedCandidates().size();
+        }
+        CompiledNeatNetwork.Batch network = _stepBatch;
+        network.reset( total );
+
+        // Set the network inputs for every agent's candidates
+        int first = 0;
+        agentIter = agents.iterator();
+        while( agentIter.hasNext() )
+        {
+            Agent agent = agentIter.next();
+            DecisionCandidates candidates = agent.getPlannedCandidates();
+            setCandidateInputs( agent, candidates, network, first );
+            first += candidates.size();
+        }
+
+        // Calculate k for all of them at once
+        network.activate();
+
+        // Convert k to each agent's probabilities
+        first = 0;
+        agentIter = agents.iterator();
+        while( agentIter.hasNext() )
+        {
+            Agent agent = agentIter.next();
+            DecisionCandidates candidates = agent.getPlannedCandidates();
+            setCandidateProbabilities( agent, candidates, network, first );
+            first += candidates.size();
+        }
+    }
+
+    /**
+     * Sets the network inputs for all the candidate decisions of an agent,
+     * holding on to the rates in the probability array until k is known
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @param network The batch of network values
+     * @param first The index of the first candidate in the batch
+     */
+    private void setCandidateInputs( Agent agent,
+            DecisionCandidates candidates,
+            CompiledNeatNetwork.Batch network,
+            int first )
+    {
+        float[] probabilities = candidates.getProbabilities();
+        int size = candidates.size();
+        for( int i = 0; i < size; i++ )
+        {
+            DecisionType type = candidates.getType( i );
+            if( DecisionType.NAVIGATE.equals( type ) )
+            {
+                probabilities[i] = setNavigateInputs( candidates.getPatch( i ),
+                        agent,
+                        network,
+                        first + i );
+            }
+            else if( DecisionType.FOLLOW.equals( type ) )
+            {
+                probabilities[i] = setFollowInputs( candidates.getLeader( i ),
+                        agent,
+                        network,
+                        first + i );
+            }
+            else if( DecisionType.FORAGE.equals( type ) )
+            {
+                probabilities[i] = setForageInputs( candidates.getPatch( i ),
+                        agent,
+                        network,
+                        first + i );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unsupported candidate decision type ["
+                        + type
+                        + "]" );
+            }
+        }
+    }
+
+    /**
+     * Converts the activated network outputs of all the candidate
+     * decisions of an agent into their probabilities
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions holding their rates
+     * @param network The activated batch of network values
+     * @param first The index of the first candidate in the batch
+     */
+    private void setCandidateProbabilities( Agent agent,
+            DecisionCandidates candidates,
+            CompiledNeatNetwork.Batch network,
+            int first )
+    {
+        float[] probabilities = candidates.getProbabilities();
+        int size = candidates.size();
+        for( int i = 0; i < size; i++ )
+        {
+            float k = (float) network.getValue( first + i, _outputSlot );
+            float probability = calculateProbability( k, probabilities[i] );
+            if( DecisionType.FORAGE.equals( candidates.getType( i ) ) )
+            {
+                logForageProbability( k,
+                        probability,
+                        candidates.getPatch( i ),
+                        agent );
+            }
+            probabilities[i] = probability;
+        }
+    }
+
     /**
      * Calculate the probability of a given navigation decision
      *
@@ -217,15 +456,87 @@ public class NeatProbabilityDecisionCalculator
      */
     @Override
     public float calculateNavigateProbability( Patch patch, Agent agent )
+    {
+        CompiledNeatNetwork.Batch network = _networkBatch.get();
+        network.reset( 1 );
+        float rate = setNavigateInputs( patch, agent, network, 0 );
+
+        // Calculate k
+        network.activate();
+        float k = (float) network.getValue( 0, _outputSlot );
+
+        return calculateProbability( k, rate );
+    }
+
+    /**
+     * Calculate the probability of a given follow decision
+     *
+     * @param leader The leader which the agent would follow
+     * @param agent The agent making the decision
+     * @return The probability
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateFollowProbability(edu.snu.csne.forage.Agent, edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public float calculateFollowProbability( Agent leader, Agent agent )
+    {
+        CompiledNeatNetwork.Batch network = _networkBatch.get();
+        network.reset( 1 );
+        float rate = setFollowInputs( leader, agent, network, 0 );
+
+        // Calculate k
+        network.activate();
+        float k = (float) network.getValue( 0, _outputSlot );
+
+        return calculateProbability( k, rate );
+    }
+
+    /**
+     * Calculate the probability that a given agent forages in the
+     * current patch
+     * 
+     * @param agent The agent making the decision
+     * @return The probability
+     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateForageProbability(edu.snu.csne.forage.Patch, edu.snu.csne.forage.Agent)
+     */
+    @Override
+    public float calculateForageProbability( Patch patch, Agent agent )
+    {
+        CompiledNeatNetwork.Batch network = _networkBatch.get();
+        network.reset( 1 );
+        float rate = setForageInputs( patch, agent, network, 0 );
+
+        // Calculate k
+        network.activate();
+        float k = (float) network.getValue( 0, _outputSlot );
+        float probability = calculateProbability( k, rate );
+
+        logForageProbability( k, probability, patch, agent );
+
+        return probability;
+    }
+
+    /**
+     * Sets the network inputs for a navigation decision
+     *
+     * @param patch The patch to which the agent would navigate
+     * @param agent The agent making the decision
+     * @param network The batch of network values
+     * @param idx The decision's index in the batch
+     * @return The rate by which k is divided to get the probability
+     */
+    private float setNavigateInputs( Patch patch,
+            Agent agent,
+            CompiledNeatNetwork.Batch network,
+            int idx )
     {
         // Reset the network inputs
-        _network.reinitialize( _rng );
-        resetNetworkInputs();
+        network.reinitialize( idx, agent.getRNG() );
+        resetNetworkInputs( network, idx );
         
         // Get the mean resultant vector of the agent w.r.t. sensed teammates
-        NavigationalVector mrv = agent.getMRVForTeam( agent.getTeam().getID() );
+        NavigationalVector mrv = agent.getMRVForTeam( agent.getTeamIndex() );
         float mrvR = mrv.r;
-        if( 1 == agent.getTeam().getSize() )
+        if( 1 == agent.getTeamSize() )
         {
             mrvR = 1.0f;
         }
@@ -237,7 +548,7 @@ public class NeatProbabilityDecisionCalculator
         NavigationalVector toPatch = new NavigationalVector(
                 patch.getPosition().subtract( agent.getPosition() ) );
         float dirDiff = toPatch.theta - mrv.theta;
-        if( 1 == agent.getTeam().getSize() )
+        if( 1 == agent.getTeamSize() )
         {
             dirDiff = 0.0f;
         }
@@ -252,63 +563,49 @@ public class NeatProbabilityDecisionCalculator
         dirDiff = Math.abs( dirDiff / _PI );
 
         // Set the network inputs
-        _network.setValue( _INITIATION_ACTIVE_NODE_NAME, 1.0 );
-        _network.setValue( _INITIATION_PATCH_REL_DIR_DIFF_NODE_NAME, dirDiff );
-        _network.setValue( _INITIATION_REL_POSITION_NODE_NAME, mrvR );
-        _network.setValue( _INITIATION_PATCH_VALUE_NODE_NAME, patchValue );
+        network.setValue( idx, _initiationActiveSlot, 1.0 );
+        network.setValue( idx, _initiationPatchRelDirDiffSlot, dirDiff );
+        network.setValue( idx, _initiationRelPositionSlot, mrvR );
+        network.setValue( idx, _initiationPatchValueSlot, patchValue );
         // TODO
-        
-        // Calculate k
-        _network.update();
-        float k = (float) _network.getValue( _OUTPUT_NODE_NAME );
-
-        // Calculate the probability
-        float probability = 0.0f;
-        if( k > _MIN_K_VALUE )
-        {
-            probability = k / ( _inititationRate * agent.getSensedAgents().size() );
-        }
-
-        // Ensure it isn't too big
-        if( probability > _MAX_PROBABILITY )
-        {
-            probability = _MAX_PROBABILITY;
-        }
 
-        return probability;
+        return _inititationRate * agent.getSensedAgents().size();
     }
 
     /**
-     * Calculate the probability of a given follow decision
+     * Sets the network inputs for a follow decision
      *
      * @param leader The leader which the agent would follow
      * @param agent The agent making the decision
-     * @return The probability
-     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateFollowProbability(edu.snu.csne.forage.Agent, edu.snu.csne.forage.Agent)
+     * @param network The batch of network values
+     * @param idx The decision's index in the batch
+     * @return The rate by which k is divided to get the probability
      */
-    @Override
-    public float calculateFollowProbability( Agent leader, Agent agent )
+    private float setFollowInputs( Agent leader,
+            Agent agent,
+            CompiledNeatNetwork.Batch network,
+            int idx )
     {
-        if( leader.getTeam().equals( agent.getTeam() ) )
+        if( leader.getTeamIndex() == agent.getTeamIndex() )
         {
             _LOG.error( "Team IDs of potential leader ["
                     + leader.getID()
                     + "] and follower ["
                     + agent.getID()
                     + "] match ["
-                    + leader.getTeam().getID()
+                    + leader.getTeamIndex()
                     + "]" );
         }
 
         // Reset the network inputs
-        _network.reinitialize( _rng );
-        resetNetworkInputs();
+        network.reinitialize( idx, agent.getRNG() );
+        resetNetworkInputs( network, idx );
         
         // Get the leader team's MRV
-        NavigationalVector leaderMRV = agent.getMRVForTeam( leader.getTeam().getID() );
+        NavigationalVector leaderMRV = agent.getMRVForTeam( leader.getTeamIndex() );
         
         // Get the MRV for the agent's current team
-        NavigationalVector currentMRV = agent.getMRVForTeam( agent.getTeam().getID() );
+        NavigationalVector currentMRV = agent.getMRVForTeam( agent.getTeamIndex() );
         
         // Compute the difference in the MRV angles
         float mrvDirDiff = leaderMRV.theta - currentMRV.theta;
@@ -340,7 +637,7 @@ public class NeatProbabilityDecisionCalculator
         }
         float patchValue = getPatchValue( patch, agent );
         int minAgentsToForage = patch.getMinAgentForageCount();
-        int leaderTeamSize = agent.getSensedAgentsOnTeam( leader.getTeam() ).size();
+        int leaderTeamSize = agent.getSensedAgentsOnTeam( leader.getTeamIndex() ).size();
         float sizeRequirementMet = leaderTeamSize / (float) minAgentsToForage;
         if( sizeRequirementMet > 1.0f )
         {
@@ -348,72 +645,82 @@ public class NeatProbabilityDecisionCalculator
         }
 
         // Set the network inputs
-        _network.setValue( _FOLLOWING_ACIVE_NODE_NAME, 1.0 );
-        _network.setValue( _FOLLOWING_LEADER_REL_DIR_DIFF_NODE_NAME, mrvDirDiff );
-        _network.setValue( _FOLLOWING_PATCH_CONTRIBUTION_NODE_NAME, patchValue );
-        _network.setValue( _FOLLOWING_SIZE_REQUIREMENTS_MET_NODE_NAME, sizeRequirementMet );
-
-        // Calculate k
-        _network.update();
-        float k = (float) _network.getValue( _OUTPUT_NODE_NAME );
+        network.setValue( idx, _followingActiveSlot, 1.0 );
+        network.setValue( idx, _followingLeaderRelDirDiffSlot, mrvDirDiff );
+        network.setValue( idx, _followingPatchContributionSlot, patchValue );
+        network.setValue( idx, _followingSizeRequirementsMetSlot, sizeRequirementMet );
 
-        // Compute the probability
         float sensedAgentCount = agent.getSensedAgents().size();
-        float probability = 0.0f;
-        if( k > _MIN_K_VALUE )
-        {
-            probability = k / (_followAlpha + ( ( _followBeta
-                    * (sensedAgentCount - leaderTeamSize) / leaderTeamSize ) ) );
-        }
-
-        // Ensure it isn't too big
-        if( probability > _MAX_PROBABILITY )
-        {
-            probability = _MAX_PROBABILITY;
-        }
-
-        return probability;
+        return _followAlpha + ( ( _followBeta
+                * (sensedAgentCount - leaderTeamSize) / leaderTeamSize ) );
     }
 
     /**
-     * Calculate the probability that a given agent forages in the
-     * current patch
-     * 
+     * Sets the network inputs for a forage decision
+     *
+     * @param patch The patch in which the agent would forage
      * @param agent The agent making the decision
-     * @return The probability
-     * @see edu.snu.csne.forage.decision.ProbabilityDecisionCalculator#calculateForageProbability(edu.snu.csne.forage.Patch, edu.snu.csne.forage.Agent)
+     * @param network The batch of network values
+     * @param idx The decision's index in the batch
+     * @return The rate by which k is divided to get the probability
      */
-    @Override
-    public float calculateForageProbability( Patch patch, Agent agent )
+    private float setForageInputs( Patch patch,
+            Agent agent,
+            CompiledNeatNetwork.Batch network,
+            int idx )
     {
         // Reinitialize the network inputs
-        _network.reinitialize( _rng );
-        resetNetworkInputs();
+        network.reinitialize( idx, agent.getRNG() );
+        resetNetworkInputs( network, idx );
         
         // Get the value of the patch
         float patchValue = getPatchValue( patch, agent );
 
         // Set the network inputs
-        _network.setValue( _FORAGING_ACTIVE_NODE_NAME, 1.0 );
-        _network.setValue( _FORAGING_PATCH_VALUE_NODE_NAME, patchValue );
+        network.setValue( idx, _foragingActiveSlot, 1.0 );
+        network.setValue( idx, _foragingPatchValueSlot, patchValue );
 
-        // Calculate k
-        _network.update();
-        float k = (float) _network.getValue( _OUTPUT_NODE_NAME );
-        
+        return _forageBaseRate;
+    }
+
+    /**
+     * Converts a network output into a probability
+     *
+     * @param k The network output
+     * @param rate The rate by which k is divided
+     * @return The probability
+     */
+    private float calculateProbability( float k, float rate )
+    {
         // Calculate the probability
         float probability = 0.0f;
         if( k > _MIN_K_VALUE )
         {
-            probability = k / ( _forageBaseRate);
+            probability = k / rate;
         }
-        
+
         // Ensure it isn't too big
         if( probability > _MAX_PROBABILITY )
         {
             probability = _MAX_PROBABILITY;
         }
 
+        return probability;
+    }
+
+    /**
+     * Logs the calculated probability of a forage decision
+     *
+     * @param k The network output
+     * @param probability The probability
+     * @param patch The patch in which the agent would forage
+     * @param agent The agent making the decision
+     */
+    private void logForageProbability( float k,
+            float probability,
+            Patch patch,
+            Agent agent )
+    {
         if( _LOG.isDebugEnabled() )
         {
             _LOG.debug( "Forage: k=["
@@ -426,27 +733,24 @@ public class NeatProbabilityDecisionCalculator
                     + patch.getPosition().distance( agent.getPosition() )
                     + "]" );
         }
-
-        return probability;
     }
 
     /**
      * Reset all the input nodes to 0 and the bias to 1 (just in case)
+     *
+     * @param network The batch of network values
+     * @param idx The decision's index in the batch
      */
-    private void resetNetworkInputs()
+    private void resetNetworkInputs( CompiledNeatNetwork.Batch network,
+            int idx )
     {
-        // Get all the input node names
-        List<Object> inputNodeNames = _network.getNodeNamesOfType( NodeType.INPUT );
-        Iterator<Object> iter = inputNodeNames.iterator();
-        while( iter.hasNext() )
-        {
-            _network.setValue( iter.next(), 0.0 );
-        }
-        
+        // Reset all the input nodes
+        network.resetInputs( idx );
+
         // Set the bias to 1
-        _network.setValue( _BIAS_NODE_NAME, 1.0 );
+        network.setValue( idx, _biasSlot, 1.0 );
     }
-    
+
     /**
      * Calculates the value of a givent patch for a given agent
      *
@@ -459,7 +763,7 @@ public class NeatProbabilityDecisionCalculator
         float patchValue = 0.0f;
         if( null != patch )
         {
-            PatchValue patchValueData = agent.getPachValue( patch.getID() );
+            PatchValue patchValueData = agent.getPachValue( patch.getIndex() );
             float patchValueIndMax = agent.getPatchValueIndMax();
             float patchValueGroupMax = agent.getPatchValueGroupMax();
             patchValue = patchValueData.getGiveUpSlopeGroup() / patchValueGroupMax;
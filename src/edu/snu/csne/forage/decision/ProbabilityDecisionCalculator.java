@@ -19,6 +19,7 @@
  */
 package edu.snu.csne.forage.decision;
 
+import java.util.List;
 import java.util.Map;
 
 // Imports
@@ -67,6 +68,53 @@ public interface ProbabilityDecisionCalculator
      */
     public float calculateForageProbability( Patch patch, Agent agent );
     
+    /**
+     * Calculate the probabilities of all the candidate decisions of a given
+     * agent, storing them in the candidates' probability array
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     */
+    public void calculateProbabilities( Agent agent,
+            DecisionCandidates candidates );
+    
+    /**
+     * Prepares the probabilities of all the candidate decisions an agent
+     * planned.  Calculators that don't evaluate the candidates of many
+     * agents at once calculate the probabilities now, otherwise they are
+     * calculated by {@link #calculatePreparedProbabilities(List)}.  Agents
+     * may prepare concurrently.
+     *
+     * @param agent The agent planning the decision
+     * @param candidates The candidate decisions
+     */
+    public void prepareProbabilities( Agent agent,
+            DecisionCandidates candidates );
+    
+    /**
+     * Finishes calculating the probabilities of the candidate decisions
+     * planned by all the specified agents, storing them in each agent's
+     * planned candidates.  This is called by a single thread once every
+     * agent has prepared.
+     *
+     * @param agents The agents that planned a decision
+     */
+    public void calculatePreparedProbabilities( List<Agent> agents );
+    
+    /**
+     * Calculates an upper bound on the sum of the probabilities of all the
+     * candidate decisions of a given agent.  The bound may only depend on
+     * the candidates, the number of agents sensed by the agent and the
+     * sizes of the teams involved, so it holds for as long as those don't
+     * change, no matter how the other inputs drift.
+     *
+     * @param agent The agent making the decision
+     * @param candidates The candidate decisions
+     * @return The bound
+     */
+    public float calculateMaxProbabilitySum( Agent agent,
+            DecisionCandidates candidates );
+    
     /**
      * Calculate all the probabilities that a given agent forages in the
      * patches it currently is in
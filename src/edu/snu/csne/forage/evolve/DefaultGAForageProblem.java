@@ -41,6 +41,7 @@ import ec.vector.BitVectorIndividual;
 import edu.snu.csne.forage.SimulationState;
 import edu.snu.csne.forage.Simulator;
 import edu.snu.csne.forage.decision.DefaultProbabilityDecisionCalculator;
+import edu.snu.csne.forage.decision.DecisionCalculatorParams;
 import edu.snu.csne.forage.event.PatchDepletionListener;
 import edu.snu.csne.forage.evolve.FoldProperties.FoldType;
 import edu.snu.csne.forage.evolve.FoldProperties.PropertyType;
@@ -162,6 +163,24 @@ public class DefaultGAForageProblem extends Problem
     /** Parameter key for flag to force re-evaluation of individuals */
     private static final String _P_FORCE_REEVALUATION = "force-reevaluation";
 
+    /** Parameter key for the number of threads used to run the folds */
+    protected static final String _P_FOLD_THREAD_COUNT = "fold-thread-count";
+
+    /** Parameter key for the maximum number of cached genome fitnesses */
+    private static final String _P_FITNESS_CACHE_SIZE = "fitness-cache-size";
+
+    /** Parameter key for the fitness cache eviction policy */
+    private static final String _P_FITNESS_CACHE_EVICTION = "fitness-cache-eviction";
+
+    /** Default maximum number of cached genome fitnesses */
+    private static final int _DEFAULT_FITNESS_CACHE_SIZE = 1024;
+
+    /** Evict the least recently used cached fitness */
+    private static final String _LRU_EVICTION = "lru";
+
+    /** Evict the oldest cached fitness */
+    private static final String _FIFO_EVICTION = "fifo";
+
     
     /** Initiation base rate: codon size */
     private int _initiateBaseRateCodonSize = 0;
@@ -305,6 +324,15 @@ public class DefaultGAForageProblem extends Problem
     /** Flag indicating that individuals should be re-evaluated every generation */
     private boolean _forceReevaluation = false;
     
+    /** The number of threads used to run the folds */
+    private int _foldThreadCount = 1;
+    
+    /** Runs the folds of an individual's evaluation */
+    private transient FoldEvaluator _foldEvaluator = null;
+
+    /** Fold results of previously evaluated genomes (null if disabled) */
+    protected FitnessCache _fitnessCache = null;
+    
     /** Minimum value for k exponent multipliers */
     private float _minKExpMultValue = 0.0f;
     
@@ -586,6 +614,19 @@ public class DefaultGAForageProblem extends Problem
         // Load the default simulator properties
         _defaultSimProperties = MiscUtils.loadProperties( Simulator.PROPS_FILE_KEY );
         
+        // Resolve the system-wide calculator properties file once so the
+        // simulations only depend on their own properties
+        String calcPropsFilename = System.getProperty(
+                DefaultProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY );
+        if( (null != calcPropsFilename)
+                && !_defaultSimProperties.containsKey(
+                        DefaultProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY ) )
+        {
+            _defaultSimProperties.setProperty(
+                    DefaultProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY,
+                    calcPropsFilename );
+        }
+        
         // Load the fold properties
         Validate.isTrue( state.parameters.exists(
                 base.push( _P_FOLD_PROPERTIES ), null ),
@@ -623,9 +664,64 @@ public class DefaultGAForageProblem extends Problem
                  false );
         _LOG.info( "Using _forceReevaluation=[" + _forceReevaluation + "]" );
 
+        // How many threads do we use for the folds?
+        _foldThreadCount = state.parameters.getIntWithDefault(
+                base.push( _P_FOLD_THREAD_COUNT ),
+                null,
+                Runtime.getRuntime().availableProcessors() );
+        Validate.isTrue( 0 < _foldThreadCount,
+                "Fold thread count must be positive" );
+        _LOG.info( "Using _foldThreadCount=[" + _foldThreadCount + "]" );
+        _foldEvaluator = new FoldEvaluator( _foldThreadCount );
+
+        // How many genome fitnesses do we remember?
+        int fitnessCacheSize = state.parameters.getIntWithDefault(
+                base.push( _P_FITNESS_CACHE_SIZE ),
+                null,
+                _DEFAULT_FITNESS_CACHE_SIZE );
+        Validate.isTrue( 0 <= fitnessCacheSize,
+                "Fitness cache size may not be negative" );
+        _LOG.info( "Using fitnessCacheSize=[" + fitnessCacheSize + "]" );
+        if( 0 < fitnessCacheSize )
+        {
+            // Which cached fitness do we evict first?
+            String eviction = state.parameters.getStringWithDefault(
+                    base.push( _P_FITNESS_CACHE_EVICTION ),
+                    null,
+                    _LRU_EVICTION ).trim();
+            Validate.isTrue( _LRU_EVICTION.equalsIgnoreCase( eviction )
+                    || _FIFO_EVICTION.equalsIgnoreCase( eviction ),
+                    "Unknown fitness cache eviction policy ["
+                    + eviction
+                    + "]" );
+            _LOG.info( "Using fitness cache eviction=[" + eviction + "]" );
+            _fitnessCache = new FitnessCache( fitnessCacheSize,
+                    _LRU_EVICTION.equalsIgnoreCase( eviction ) );
+        }
+
         _LOG.trace( "Leaving setup( state, base )" );
     }
 
+    /**
+     * Creates a copy of this problem for another evaluation thread.  Each
+     * copy gets its own default simulator properties so no mutable state
+     * is shared between threads.
+     *
+     * @return The copy
+     * @see ec.Problem#clone()
+     */
+    @Override
+    public Object clone()
+    {
+        DefaultGAForageProblem myobj = (DefaultGAForageProblem) super.clone();
+        if( null != _defaultSimProperties )
+        {
+            myobj._defaultSimProperties = new Properties();
+            myobj._defaultSimProperties.putAll( _defaultSimProperties );
+        }
+        return myobj;
+    }
+
     /**
      * Evaluates the individual in ind, if necessary (perhaps not
      * evaluating them if their evaluated flags are true), and sets
@@ -678,7 +774,8 @@ public class DefaultGAForageProblem extends Problem
         BitVectorIndividual bitInd = (BitVectorIndividual) ind;
 
         // Decode the genome
-        Properties genomeProps = decodeGenome( bitInd.genome );
+        final DecisionCalculatorParams calcParams = decodeGenomeParams(
+                bitInd.genome );
         
         // Get fold training properties
         String[] foldAgentProperties = _foldProps.getProperties(
@@ -698,48 +795,31 @@ public class DefaultGAForageProblem extends Problem
                 + foldPatchProperties.length
                 + "]" );
 
-        // Iterate through all the training properties
+        // Run all the folds using the decoded parameters, unless we have
+        // already seen this genome
+        float[] fitnessValues = getCachedFitnessValues( bitInd.genome,
+                foldType );
+        if( null == fitnessValues )
+        {
+            fitnessValues = getFoldEvaluator().evaluate(
+                    _defaultSimProperties,
+                    null,
+                    foldAgentProperties,
+                    foldPatchProperties,
+                    new FoldEvaluator.FoldSimulation() {
+                        @Override
+                        public float run( Properties simProps )
+                        {
+                            return runResourcesForagedSimulation( simProps,
+                                    calcParams );
+                        }
+                    } );
+            cacheFitnessValues( bitInd.genome, foldType, fitnessValues );
+        }
         float totalResourcesForaged = 0.0f;
-        float[] fitnessValues = new float[foldAgentProperties.length];
-        for( int i = 0; i < foldAgentProperties.length; i++ )
+        for( int i = 0; i < fitnessValues.length; i++ )
         {
-//            _LOG.info( "Running sim [" + i + "]" );
-            
-            // Get the default properties
-            Properties simProps = new Properties();
-            simProps.putAll( _defaultSimProperties );
-            
-            // Override the fold specific properties
-            simProps.setProperty( SimulationState._AGENT_PROPS_FILE_KEY,
-                    foldAgentProperties[i] );
-            simProps.setProperty( SimulationState._PATCH_PROPS_FILE_KEY,
-                    foldPatchProperties[i] );
-            
-            // Override the genome specific properties
-            simProps.putAll( genomeProps );
-            
-            // Create the simulator
-            Simulator sim = new Simulator();
-            sim.initialize( simProps );
-            
-            // Add our own patch depletion listener
-            PatchDepletionListener patchListener = new PatchDepletionListener();
-            SimulationState simState = sim.getSimState();
-            simState.addEventListener( patchListener );
-            
-            // Run it
-            sim.run();
-            
-            // Get the resources foraged
-            float resourcesForaged = patchListener.getTotalResourcesForaged();
-            totalResourcesForaged += resourcesForaged;
-            fitnessValues[i] = resourcesForaged;
-
-//            _LOG.debug( "Run ["
-//                    + i
-//                    + "] resourcesForaged=["
-//                    + resourcesForaged
-//                    + "]" );
+            totalResourcesForaged += fitnessValues[i];
         }
         
         // Compute the mean resources foraged
@@ -895,9 +975,17 @@ public class DefaultGAForageProblem extends Problem
      */
     protected Properties decodeGenome( boolean[] genome )
     {
-        // Build the properties object
-        Properties props = new Properties();
-        
+        return decodeGenomeParams( genome ).toProperties();
+    }
+
+    /**
+     * Decode the genome into typed decision calculator parameters
+     *
+     * @param genome The genome
+     * @return The decision calculator parameters
+     */
+    protected DecisionCalculatorParams decodeGenomeParams( boolean[] genome )
+    {
         int codonIdx = 0;
 
         /* Decode each codon in the genome, starting with the base
@@ -907,8 +995,6 @@ public class DefaultGAForageProblem extends Problem
                 _initiateBaseRateScaling,
                 codonIdx );
         codonIdx += _initiateBaseRateCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_RATE_KEY,
-                Float.toString( initiateBaseRate ) );
 
         // Initiation K exponent multiplier
         float initiateKExpMult = decodeFloatCodon( genome,
@@ -917,8 +1003,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpMultValue;
         codonIdx += _initiateKExpMultCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_MULT_KEY,
-                Float.toString( initiateKExpMult ) );
 
         // Initiation K exponent offset
         float initiateKExpOffset = decodeFloatCodon( genome,
@@ -927,8 +1011,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpOffsetValue;
         codonIdx += _initiateKExpOffsetCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_K_EXP_OFFSET_KEY,
-                Float.toString( initiateKExpOffset ) );
 
         // Initiation MRV length sigma
         float initiateMRVLenSigma = decodeFloatCodon( genome,
@@ -937,11 +1019,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _initiateMRVLenSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_MRV_SIGMA_KEY,
-                Float.toString( initiateMRVLenSigma ) );
         boolean initiateMRVFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_MRV_FLAG_KEY,
-                Boolean.toString( initiateMRVFlag ) );
 
         // Initiation patch value sigma
         float initiatePatchValueSigma = decodeFloatCodon( genome,
@@ -950,11 +1028,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _initiatePatchValueSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_SIGMA_KEY,
-                Float.toString( initiatePatchValueSigma ) );
         boolean initiatePatchValueFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_PATCH_VALUE_FLAG_KEY,
-                Boolean.toString( initiatePatchValueFlag ) );
 
         // Initiation direction difference sigma
         float initiateDirDiffSigma = decodeFloatCodon( genome,
@@ -963,11 +1037,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _initiateDirDiffSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_SIGMA_KEY,
-                Float.toString( initiateDirDiffSigma ) );
         boolean initiateDirDiffFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._INITIATE_DIR_DIFF_FLAG_KEY,
-                Boolean.toString( initiateDirDiffFlag ) );
 
         // Follow alpha
         float followAlpha = decodeFloatCodon( genome,
@@ -975,8 +1045,6 @@ public class DefaultGAForageProblem extends Problem
                 _followAlphaScaling,
                 codonIdx );
         codonIdx += _followAlphaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_ALPHA_KEY,
-                Float.toString( followAlpha ) );
 
         // Follow beta
         float followBeta = decodeFloatCodon( genome,
@@ -984,8 +1052,6 @@ public class DefaultGAForageProblem extends Problem
                 _followBetaScaling,
                 codonIdx );
         codonIdx += _followBetaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_BETA_KEY,
-                Float.toString( followBeta ) );
 
         // Follow k exponent multiplier
         float followkExpMult = decodeFloatCodon( genome,
@@ -994,8 +1060,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpMultValue;
         codonIdx += _followKExpMultCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_MULT_KEY,
-                Float.toString( followkExpMult ) );
 
         // Follow k exponent offset
         float followKExpOffset = decodeFloatCodon( genome,
@@ -1004,8 +1068,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpOffsetValue;
         codonIdx += _followKExpOffsetCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_K_EXP_OFFSET_KEY,
-                Float.toString( followKExpOffset ) );
 
 //        // Follow MRV difference sigma
 //        float followMRVDiffSigma = decodeCodon( genome,
@@ -1024,11 +1086,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _followMeanPosRelDistSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_SIGMA_KEY,
-                Float.toString( followMeanPosRelDistSigma ) );
         boolean followMeanPosRelDistFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MEAN_POS_REL_DIST_FLAG_KEY,
-                Boolean.toString( followMeanPosRelDistFlag ) );
 
         // Follow MRV direction difference sigma
         float followMRVDirDiffSigma = decodeFloatCodon( genome,
@@ -1037,11 +1095,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _followMRVDirDiffSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_SIGMA_KEY,
-                Float.toString( followMRVDirDiffSigma ) );
         boolean followMRVDirDiffFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MRV_DIR_DIFF_FLAG_KEY,
-                Boolean.toString( followMRVDirDiffFlag ) );
 
         // Follow MRV magnitude difference sigma
         float followMRVMagDiffSigma = decodeFloatCodon( genome,
@@ -1050,11 +1104,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _followMRVMagDiffSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_SIGMA_KEY,
-                Float.toString( followMRVMagDiffSigma ) );
         boolean followMRVMagDiffFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._FOLLOW_MRV_MAG_DIFF_FLAG_KEY,
-                Boolean.toString( followMRVMagDiffFlag ) );
 
         // Forage base rate
         float forageBaseRate = decodeFloatCodon( genome,
@@ -1062,8 +1112,6 @@ public class DefaultGAForageProblem extends Problem
                 _forageBaseRateScaling,
                 codonIdx );
         codonIdx += _forageBaseRateCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FORAGE_RATE_KEY,
-                Float.toString( forageBaseRate ) );
 
         // Forage k exponent multiplier
         float forageKExpMult = decodeFloatCodon( genome,
@@ -1072,8 +1120,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpMultValue;
         codonIdx += _forageKExpMultCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_MULT_KEY,
-                Float.toString( forageKExpMult ) );
 
         // Forage k exponent offset
         float forageKExpOffset = decodeFloatCodon( genome,
@@ -1082,8 +1128,6 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minKExpOffsetValue;
         codonIdx += _forageKExpOffsetCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FORAGE_K_EXP_OFFSET_KEY,
-                Float.toString( forageKExpOffset ) );
 
         // Forage patch value sigma
         float foragePatchValueSigma = decodeFloatCodon( genome,
@@ -1092,11 +1136,7 @@ public class DefaultGAForageProblem extends Problem
                 codonIdx )
                 + _minSigmaValue;
         codonIdx += _foragePatchValueSigmaCodonSize;
-        props.setProperty( DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_SIGMA_KEY,
-                Float.toString( foragePatchValueSigma ) );
         boolean foragePatchValueFlag = genome[ codonIdx++ ];
-        props.setProperty( DefaultProbabilityDecisionCalculator._FORAGE_PATCH_VALUE_FLAG_KEY,
-                Boolean.toString( foragePatchValueFlag ) );
 
 //        // 
 //        float  = decodeCodon( genome,
@@ -1159,7 +1199,30 @@ public class DefaultGAForageProblem extends Problem
 //        }
 
         // Return them
-        return props;
+        return new DecisionCalculatorParams( initiateBaseRate,
+                initiateKExpMult,
+                initiateKExpOffset,
+                initiateMRVLenSigma,
+                initiateMRVFlag,
+                initiatePatchValueSigma,
+                initiatePatchValueFlag,
+                initiateDirDiffSigma,
+                initiateDirDiffFlag,
+                followAlpha,
+                followBeta,
+                followkExpMult,
+                followKExpOffset,
+                followMeanPosRelDistSigma,
+                followMeanPosRelDistFlag,
+                followMRVDirDiffSigma,
+                followMRVDirDiffFlag,
+                followMRVMagDiffSigma,
+                followMRVMagDiffFlag,
+                forageBaseRate,
+                forageKExpMult,
+                forageKExpOffset,
+                foragePatchValueSigma,
+                foragePatchValueFlag );
     }
 
     protected int loadIntParameter( String key,
@@ -1241,4 +1304,89 @@ public class DefaultGAForageProblem extends Problem
         return _defaultSimProperties;
     }
 
+    /**
+     * Runs a single fold simulation and returns the resources foraged
+     *
+     * @param simProps The fold's simulation properties
+     * @param calcParams The decision calculator parameters
+     * @return The total resources foraged
+     */
+    protected float runResourcesForagedSimulation( Properties simProps,
+            DecisionCalculatorParams calcParams )
+    {
+        // Create the simulator
+        Simulator sim = new Simulator();
+        sim.initialize( simProps, calcParams );
+        
+        // Add our own patch depletion listener
+        PatchDepletionListener patchListener = new PatchDepletionListener();
+        SimulationState simState = sim.getSimState();
+        simState.addEventListener( patchListener );
+        
+        // Run it
+        sim.run();
+        
+        // Get the resources foraged
+        return patchListener.getTotalResourcesForaged();
+    }
+
+    /**
+     * Returns the fitness cache
+     *
+     * @return The fitness cache, or <code>null</code> if it is disabled
+     */
+    public FitnessCache getFitnessCache()
+    {
+        return _fitnessCache;
+    }
+
+    /**
+     * Returns the cached fold results of the specified genome
+     *
+     * @param genome The genome
+     * @param foldType The fold type
+     * @return The fold results, or <code>null</code> if they aren't cached
+     */
+    protected float[] getCachedFitnessValues( boolean[] genome,
+            FoldType foldType )
+    {
+        if( null == _fitnessCache )
+        {
+            return null;
+        }
+        return _fitnessCache.get( genome, foldType );
+    }
+
+    /**
+     * Caches the fold results of the specified genome
+     *
+     * @param genome The genome
+     * @param foldType The fold type
+     * @param fitnessValues The fold results
+     */
+    protected void cacheFitnessValues( boolean[] genome,
+            FoldType foldType,
+            float[] fitnessValues )
+    {
+        if( null != _fitnessCache )
+        {
+            _fitnessCache.put( genome, foldType, fitnessValues );
+        }
+    }
+
+    /**
+     * Returns the evaluator used to run the folds, building it if this
+     * problem was deserialized from a checkpoint
+     *
+     * @return The fold evaluator
+     */
+    protected synchronized FoldEvaluator getFoldEvaluator()
+    {
+        if( null == _foldEvaluator )
+        {
+            _foldEvaluator = new FoldEvaluator( _foldThreadCount );
+        }
+        return _foldEvaluator;
+    }
+
 }
@@ -33,6 +33,7 @@ import ec.simple.SimpleProblemForm;
 import ec.util.Parameter;
 import edu.snu.csne.forage.SimulationState;
 import edu.snu.csne.forage.Simulator;
+import edu.snu.csne.forage.decision.CompiledNeatNetwork;
 import edu.snu.csne.forage.decision.ForagingDecisionMaker;
 import edu.snu.csne.forage.decision.NeatProbabilityDecisionCalculator;
 import edu.snu.csne.forage.event.PatchDepletionListener;
@@ -40,7 +41,6 @@ import edu.snu.csne.forage.evolve.FoldProperties.FoldType;
 import edu.snu.csne.forage.evolve.FoldProperties.PropertyType;
 import edu.snu.csne.util.MiscUtils;
 import edu.snu.jyperneat.core.NeatIndividual;
-import edu.snu.jyperneat.core.Network;
 
 /**
  * TODO Class description
@@ -63,6 +63,9 @@ implements SimpleProblemForm, IndividualDescriber
     /** Parameter key for flag to force re-evaluation of individuals */
     private static final String _P_FORCE_REEVALUATION = "force-reevaluation";
 
+    /** Parameter key for the number of threads used to run the folds */
+    private static final String _P_FOLD_THREAD_COUNT = "fold-thread-count";
+
     
     /** Default simulator properties */
     protected Properties _defaultSimProperties = null;
@@ -72,6 +75,12 @@ implements SimpleProblemForm, IndividualDescriber
     
     /** Flag indicating that individuals should be re-evaluated every generation */
     private boolean _forceReevaluation = false;
+    
+    /** The number of threads used to run the folds */
+    private int _foldThreadCount = 1;
+    
+    /** Runs the folds of an individual's evaluation */
+    private transient FoldEvaluator _foldEvaluator = null;
 
     /**
      * Sets up the object by reading it from the parameters stored in
@@ -91,6 +100,19 @@ implements SimpleProblemForm, IndividualDescriber
 
         // Load the default simulator properties
         _defaultSimProperties = MiscUtils.loadProperties( Simulator.PROPS_FILE_KEY );
+        
+        // Resolve the system-wide calculator properties file once so the
+        // simulations only depend on their own properties
+        String calcPropsFilename = System.getProperty(
+                NeatProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY );
+        if( (null != calcPropsFilename)
+                && !_defaultSimProperties.containsKey(
+                        NeatProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY ) )
+        {
+            _defaultSimProperties.setProperty(
+                    NeatProbabilityDecisionCalculator.PROB_DECISION_CALC_PROPS_FILE_KEY,
+                    calcPropsFilename );
+        }
 
         // Load the fold properties
         Validate.isTrue( state.parameters.exists(
@@ -112,9 +134,39 @@ implements SimpleProblemForm, IndividualDescriber
                  false );
         _LOG.info( "Using _forceReevaluation=[" + _forceReevaluation + "]" );
 
+        // How many threads do we use for the folds?
+        _foldThreadCount = state.parameters.getIntWithDefault(
+                base.push( _P_FOLD_THREAD_COUNT ),
+                null,
+                Runtime.getRuntime().availableProcessors() );
+        Validate.isTrue( 0 < _foldThreadCount,
+                "Fold thread count must be positive" );
+        _LOG.info( "Using _foldThreadCount=[" + _foldThreadCount + "]" );
+        _foldEvaluator = new FoldEvaluator( _foldThreadCount );
+
         _LOG.trace( "Leaving setup( state, base )" );
     }
 
+    /**
+     * Creates a copy of this problem for another evaluation thread.  Each
+     * copy gets its own default simulator properties so no mutable state
+     * is shared between threads.
+     *
+     * @return The copy
+     * @see ec.Problem#clone()
+     */
+    @Override
+    public Object clone()
+    {
+        DefaultNeatForageProblem myobj = (DefaultNeatForageProblem) super.clone();
+        if( null != _defaultSimProperties )
+        {
+            myobj._defaultSimProperties = new Properties();
+            myobj._defaultSimProperties.putAll( _defaultSimProperties );
+        }
+        return myobj;
+    }
+
     /**
      * Evaluates the individual in ind, if necessary (perhaps not
      * evaluating them if their evaluated flags are true), and sets
@@ -170,8 +222,9 @@ implements SimpleProblemForm, IndividualDescriber
         // Cast it to the proper type
         NeatIndividual neatInd = (NeatIndividual) ind;
 
-        // Build the network
-        Network network = neatInd.createPhenotype();
+        // Build the network and compile it once for all the simulations
+        final CompiledNeatNetwork network = new CompiledNeatNetwork(
+                neatInd.createPhenotype() );
         
         // Get fold training properties
         String[] foldAgentProperties = _foldProps.getProperties(
@@ -191,53 +244,23 @@ implements SimpleProblemForm, IndividualDescriber
                 + foldPatchProperties.length
                 + "]" );
 
-        // Iterate through all the training properties
+        // Run all the folds, sharing the compiled network
+        float[] fitnessValues = getFoldEvaluator().evaluate(
+                _defaultSimProperties,
+                null,
+                foldAgentProperties,
+                foldPatchProperties,
+                new FoldEvaluator.FoldSimulation() {
+                    @Override
+                    public float run( Properties simProps )
+                    {
+                        return runSimulation( simProps, network );
+                    }
+                } );
         float totalResourcesForaged = 0.0f;
-        float[] fitnessValues = new float[foldAgentProperties.length];
-        for( int i = 0; i < foldAgentProperties.length; i++ )
+        for( int i = 0; i < fitnessValues.length; i++ )
         {
-//            _LOG.info( "Running sim [" + i + "]" );
-            
-            // Get the default properties
-            Properties simProps = new Properties();
-            simProps.putAll( _defaultSimProperties );
-            
-            // Override the fold specific properties
-            simProps.setProperty( SimulationState._AGENT_PROPS_FILE_KEY,
-                    foldAgentProperties[i] );
-            simProps.setProperty( SimulationState._PATCH_PROPS_FILE_KEY,
-                    foldPatchProperties[i] );
-            
-            // Create the simulator
-            Simulator sim = new Simulator();
-            sim.initialize( simProps );
-            
-            // Change the probability decision calculator
-            SimulationState simState = sim.getSimState();
-            NeatProbabilityDecisionCalculator probDecisionCalculator =
-                    new NeatProbabilityDecisionCalculator( network );
-            probDecisionCalculator.initialize( simState );
-            ForagingDecisionMaker decisionMaker = (ForagingDecisionMaker)
-                    simState.getAgentDecisionMaker();
-            decisionMaker.setProbabilityDecisionCalculator( probDecisionCalculator );
-
-            // Add our own patch depletion listener
-            PatchDepletionListener patchListener = new PatchDepletionListener();
-            simState.addEventListener( patchListener );
-            
-            // Run it
-            sim.run();
-            
-            // Get the resources foraged
-            float resourcesForaged = patchListener.getTotalResourcesForaged();
-            totalResourcesForaged += resourcesForaged;
-            fitnessValues[i] = resourcesForaged;
-
-//            _LOG.debug( "Run ["
-//                    + i
-//                    + "] resourcesForaged=["
-//                    + resourcesForaged
-//                    + "]" );
+            totalResourcesForaged += fitnessValues[i];
         }
         
         // Compute the mean resources foraged
@@ -281,6 +304,56 @@ implements SimpleProblemForm, IndividualDescriber
         ind.evaluated = true;
     }
     
+    /**
+     * Runs a single fold simulation using the specified network and returns
+     * the resources foraged
+     *
+     * @param simProps The fold's simulation properties
+     * @param network The compiled network of the individual
+     * @return The total resources foraged
+     */
+    private float runSimulation( Properties simProps,
+            CompiledNeatNetwork network )
+    {
+        // Create the simulator
+        Simulator sim = new Simulator();
+        sim.initialize( simProps );
+        
+        // Change the probability decision calculator
+        SimulationState simState = sim.getSimState();
+        NeatProbabilityDecisionCalculator probDecisionCalculator =
+                new NeatProbabilityDecisionCalculator( network );
+        probDecisionCalculator.initialize( simState );
+        ForagingDecisionMaker decisionMaker = (ForagingDecisionMaker)
+                simState.getAgentDecisionMaker();
+        decisionMaker.setProbabilityDecisionCalculator( probDecisionCalculator );
+
+        // Add our own patch depletion listener
+        PatchDepletionListener patchListener = new PatchDepletionListener();
+        simState.addEventListener( patchListener );
+        
+        // Run it
+        sim.run();
+        
+        // Get the resources foraged
+        return patchListener.getTotalResourcesForaged();
+    }
+
+    /**
+     * Returns the evaluator used to run the folds, building it if this
+     * problem was deserialized from a checkpoint
+     *
+     * @return The fold evaluator
+     */
+    private synchronized FoldEvaluator getFoldEvaluator()
+    {
+        if( null == _foldEvaluator )
+        {
+            _foldEvaluator = new FoldEvaluator( _foldThreadCount );
+        }
+        return _foldEvaluator;
+    }
+    
     /**
      * Returns a description of the specified individual using the specified
      * line prefix.
@@ -0,0 +1,290 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.evolve;
+
+// Imports
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.snu.csne.forage.evolve.FoldProperties.FoldType;
+
+
+/**
+ * Remembers the fold results of bit vector genomes so duplicate
+ * individuals don't have to be simulated again.  The simulations are
+ * seeded by their properties, so a genome always gets the same results
+ * for a fold type.  Entries are evicted in least-recently-used or
+ * insertion order once the cache is full.  The cache is shared by all
+ * the evaluation threads.
+ *
+ * @author Brent Eskridge
+ */
+public class FitnessCache implements Serializable
+{
+    /** Default serial version UID */
+    private static final long serialVersionUID = 1L;
+
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            FitnessCache.class.getName() );
+
+
+    /**
+     * Key identifying a genome and fold type
+     */
+    private static class GenomeKey implements Serializable
+    {
+        /** Default serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** The genome's bits, packed into words */
+        private final long[] _packedGenome;
+
+        /** The number of bits in the genome */
+        private final int _genomeLength;
+
+        /** The fold type */
+        private final FoldType _foldType;
+
+        /** The precomputed hash code */
+        private final int _hashCode;
+
+        /**
+         * Builds this key
+         *
+         * @param genome The genome
+         * @param foldType The fold type
+         */
+        public GenomeKey( boolean[] genome, FoldType foldType )
+        {
+            // Pack the genome's bits
+            _packedGenome = new long[ (genome.length + 63) >>> 6 ];
+            for( int i = 0; i < genome.length; i++ )
+            {
+                if( genome[i] )
+                {
+                    _packedGenome[i >>> 6] |= (1L << (i & 63));
+                }
+            }
+            _genomeLength = genome.length;
+            _foldType = foldType;
+
+            // Compute the hash code once
+            int hashCode = Arrays.hashCode( _packedGenome );
+            hashCode = (31 * hashCode) + _genomeLength;
+            hashCode = (31 * hashCode) + _foldType.ordinal();
+            _hashCode = hashCode;
+        }
+
+        /**
+         * Returns the hash code of this key
+         *
+         * @return The hash code
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode()
+        {
+            return _hashCode;
+        }
+
+        /**
+         * Determines if the specified object is an equal key
+         *
+         * @param obj The object
+         * @return <code>true</code> if they are equal
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals( Object obj )
+        {
+            if( this == obj )
+            {
+                return true;
+            }
+            if( !(obj instanceof GenomeKey) )
+            {
+                return false;
+            }
+            GenomeKey other = (GenomeKey) obj;
+            return (_hashCode == other._hashCode)
+                    && (_genomeLength == other._genomeLength)
+                    && (_foldType == other._foldType)
+                    && Arrays.equals( _packedGenome, other._packedGenome );
+        }
+    }
+
+    /**
+     * Map evicting its eldest entry once it is full
+     */
+    private static class BoundedMap extends LinkedHashMap<GenomeKey,float[]>
+    {
+        /** Default serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** The maximum number of entries */
+        private final int _maxSize;
+
+        /** The number of entries evicted */
+        private long _evictionCount = 0L;
+
+        /**
+         * Builds this map
+         *
+         * @param maxSize The maximum number of entries
+         * @param accessOrder Flag indicating that entries are ordered by
+         *            access instead of insertion
+         */
+        public BoundedMap( int maxSize, boolean accessOrder )
+        {
+            super( 16, 0.75f, accessOrder );
+            _maxSize = maxSize;
+        }
+
+        /**
+         * Determines if the eldest entry should be evicted
+         *
+         * @param eldest The eldest entry
+         * @return <code>true</code> if the map is too large
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<GenomeKey,float[]> eldest )
+        {
+            boolean evict = size() > _maxSize;
+            if( evict )
+            {
+                _evictionCount++;
+            }
+            return evict;
+        }
+    }
+
+
+    /** The cached fold results */
+    private final BoundedMap _results;
+
+    /** The number of lookups that found results */
+    private long _hitCount = 0L;
+
+    /** The number of lookups that didn't find results */
+    private long _missCount = 0L;
+
+
+    /**
+     * Builds this cache
+     *
+     * @param maxSize The maximum number of entries
+     * @param lruEviction Flag indicating that the least recently used
+     *            entry is evicted instead of the oldest one
+     */
+    public FitnessCache( int maxSize, boolean lruEviction )
+    {
+        Validate.isTrue( 0 < maxSize, "Maximum size must be positive" );
+        _LOG.debug( "maxSize=["
+                + maxSize
+                + "] lruEviction=["
+                + lruEviction
+                + "]" );
+
+        _results = new BoundedMap( maxSize, lruEviction );
+    }
+
+    /**
+     * Returns the cached fold results of the specified genome
+     *
+     * @param genome The genome
+     * @param foldType The fold type
+     * @return A copy of the fold results, or <code>null</code> if they
+     *         aren't cached
+     */
+    public synchronized float[] get( boolean[] genome, FoldType foldType )
+    {
+        float[] results = _results.get( new GenomeKey( genome, foldType ) );
+        if( null == results )
+        {
+            _missCount++;
+            return null;
+        }
+
+        _hitCount++;
+        return results.clone();
+    }
+
+    /**
+     * Caches the fold results of the specified genome
+     *
+     * @param genome The genome
+     * @param foldType The fold type
+     * @param results The fold results
+     */
+    public synchronized void put( boolean[] genome,
+            FoldType foldType,
+            float[] results )
+    {
+        _results.put( new GenomeKey( genome, foldType ), results.clone() );
+    }
+
+    /**
+     * Returns the number of lookups that found results
+     *
+     * @return The hit count
+     */
+    public synchronized long getHitCount()
+    {
+        return _hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find results
+     *
+     * @return The miss count
+     */
+    public synchronized long getMissCount()
+    {
+        return _missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted
+     *
+     * @return The eviction count
+     */
+    public synchronized long getEvictionCount()
+    {
+        return _results._evictionCount;
+    }
+
+    /**
+     * Returns the number of cached entries
+     *
+     * @return The size
+     */
+    public synchronized int getSize()
+    {
+        return _results.size();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.evolve;
+
+// Imports
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.snu.csne.forage.SimulationState;
+
+
+/**
+ * Runs the simulations for all the folds of a fold type, in parallel if
+ * more than one thread is used.  Every fold gets its own simulation
+ * properties, backed by the read-only defaults, and its own simulator, so
+ * no mutable state is shared between folds and the results don't depend
+ * on the number of threads.
+ *
+ * @author Brent Eskridge
+ */
+public class FoldEvaluator
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            FoldEvaluator.class.getName() );
+
+
+    /**
+     * A single fold simulation
+     */
+    public interface FoldSimulation
+    {
+        /**
+         * Builds and runs a simulation using the specified properties
+         *
+         * @param simProps The fold's simulation properties
+         * @return The fitness value of the fold
+         */
+        public float run( Properties simProps );
+    }
+
+    /**
+     * Runs a range of folds, splitting the range across the pool's threads
+     */
+    private static class FoldAction extends RecursiveAction
+    {
+        /** Default serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** The simulation properties of every fold */
+        private final Properties[] _foldSimProps;
+
+        /** The fold simulation */
+        private final FoldSimulation _foldSim;
+
+        /** The fitness values of every fold */
+        private final float[] _fitnessValues;
+
+        /** The first index of the range */
+        private final int _start;
+
+        /** One past the last index of the range */
+        private final int _end;
+
+        /**
+         * Builds this action
+         *
+         * @param foldSimProps The simulation properties of every fold
+         * @param foldSim The fold simulation
+         * @param fitnessValues The fitness values of every fold
+         * @param start The first index of the range
+         * @param end One past the last index of the range
+         */
+        public FoldAction( Properties[] foldSimProps,
+                FoldSimulation foldSim,
+                float[] fitnessValues,
+                int start,
+                int end )
+        {
+            _foldSimProps = foldSimProps;
+            _foldSim = foldSim;
+            _fitnessValues = fitnessValues;
+            _start = start;
+            _end = end;
+        }
+
+        /**
+         * Runs the folds in the range
+         *
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute()
+        {
+            // Split ranges with more than one fold
+            if( (_end - _start) > 1 )
+            {
+                int mid = (_start + _end) >>> 1;
+                invokeAll( new FoldAction( _foldSimProps,
+                                _foldSim,
+                                _fitnessValues,
+                                _start,
+                                mid ),
+                        new FoldAction( _foldSimProps,
+                                _foldSim,
+                                _fitnessValues,
+                                mid,
+                                _end ) );
+                return;
+            }
+
+            for( int i = _start; i < _end; i++ )
+            {
+                _fitnessValues[i] = _foldSim.run( _foldSimProps[i] );
+            }
+        }
+    }
+
+
+    /** The thread pool used for the folds (null if they run sequentially) */
+    private final ForkJoinPool _foldPool;
+
+
+    /**
+     * Builds this fold evaluator
+     *
+     * @param threadCount The number of threads used to run the folds
+     */
+    public FoldEvaluator( int threadCount )
+    {
+        Validate.isTrue( 0 < threadCount, "Thread count must be positive" );
+        _LOG.debug( "threadCount=[" + threadCount + "]" );
+
+        // Only build a pool if we will use it
+        if( 1 < threadCount )
+        {
+            _foldPool = new ForkJoinPool( threadCount );
+        }
+        else
+        {
+            _foldPool = null;
+        }
+    }
+
+    /**
+     * Runs the simulations for all the folds.  Each fold's properties are
+     * the default properties, followed by its agent and patch files, and
+     * then the override properties.
+     *
+     * @param defaultSimProps The default simulation properties
+     * @param overrideProps Properties overriding the fold's properties
+     *            (may be <code>null</code>)
+     * @param foldAgentProperties The agent properties file of every fold
+     * @param foldPatchProperties The patch properties file of every fold
+     * @param foldSim The fold simulation
+     * @return The fitness values of every fold
+     */
+    public float[] evaluate( Properties defaultSimProps,
+            Properties overrideProps,
+            String[] foldAgentProperties,
+            String[] foldPatchProperties,
+            FoldSimulation foldSim )
+    {
+        Validate.notNull( defaultSimProps,
+                "Default simulation properties may not be null" );
+        Validate.notNull( foldSim, "Fold simulation may not be null" );
+        Validate.isTrue(
+                foldAgentProperties.length == foldPatchProperties.length,
+                "Agent and patch fold counts must match" );
+
+        // Build the isolated properties of every fold
+        int foldCount = foldAgentProperties.length;
+        Properties[] foldSimProps = new Properties[foldCount];
+        for( int i = 0; i < foldCount; i++ )
+        {
+            // Fall back on the default properties instead of copying them
+            Properties simProps = new Properties( defaultSimProps );
+
+            // Override the fold specific properties
+            simProps.setProperty( SimulationState._AGENT_PROPS_FILE_KEY,
+                    foldAgentProperties[i] );
+            simProps.setProperty( SimulationState._PATCH_PROPS_FILE_KEY,
+                    foldPatchProperties[i] );
+
+            // Override anything else
+            if( null != overrideProps )
+            {
+                simProps.putAll( overrideProps );
+            }
+            foldSimProps[i] = simProps;
+        }
+
+        // Run them all
+        float[] fitnessValues = new float[foldCount];
+        if( (null != _foldPool) && (1 < foldCount) )
+        {
+            _foldPool.invoke( new FoldAction( foldSimProps,
+                    foldSim,
+                    fitnessValues,
+                    0,
+                    foldCount ) );
+        }
+        else
+        {
+            for( int i = 0; i < foldCount; i++ )
+            {
+                fitnessValues[i] = foldSim.run( foldSimProps[i] );
+            }
+        }
+
+        return fitnessValues;
+    }
+}
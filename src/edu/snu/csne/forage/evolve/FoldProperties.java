@@ -130,7 +130,8 @@ public class FoldProperties
     public String[] getProperties( FoldType foldType,
             PropertyType propType )
     {
+        // Return a copy so callers on other threads can't change ours
         Map<PropertyType,String[]> foldProps = _props.get( foldType );
-        return foldProps.get( propType );
+        return foldProps.get( propType ).clone();
     }
 }
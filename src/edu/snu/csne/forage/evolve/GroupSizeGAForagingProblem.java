@@ -28,6 +28,7 @@ import ec.Individual;
 import ec.vector.BitVectorIndividual;
 import edu.snu.csne.forage.SimulationState;
 import edu.snu.csne.forage.Simulator;
+import edu.snu.csne.forage.decision.DecisionCalculatorParams;
 import edu.snu.csne.forage.event.PatchDepletionListener;
 import edu.snu.csne.forage.event.TeamSizeEventListener;
 import edu.snu.csne.forage.evolve.FoldProperties.FoldType;
@@ -61,7 +62,8 @@ public class GroupSizeGAForagingProblem extends DefaultGAForageProblem
         BitVectorIndividual bitInd = (BitVectorIndividual) ind;
 
         // Decode the genome
-        Properties genomeProps = decodeGenome( bitInd.genome );
+        final DecisionCalculatorParams calcParams = decodeGenomeParams(
+                bitInd.genome );
         
         // Get fold training properties
         String[] foldAgentProperties = _foldProps.getProperties(
@@ -81,65 +83,31 @@ public class GroupSizeGAForagingProblem extends DefaultGAForageProblem
                 + foldPatchProperties.length
                 + "]" );
 
-        // Iterate through all the training properties
+        // Run all the folds using the decoded parameters, unless we have
+        // already seen this genome
+        float[] meanGroupSizeSums = getCachedFitnessValues( bitInd.genome,
+                foldType );
+        if( null == meanGroupSizeSums )
+        {
+            meanGroupSizeSums = getFoldEvaluator().evaluate(
+                    _defaultSimProperties,
+                    null,
+                    foldAgentProperties,
+                    foldPatchProperties,
+                    new FoldEvaluator.FoldSimulation() {
+                        @Override
+                        public float run( Properties simProps )
+                        {
+                            return runGroupSizeSimulation( simProps,
+                                    calcParams );
+                        }
+                    } );
+            cacheFitnessValues( bitInd.genome, foldType, meanGroupSizeSums );
+        }
         float allMeanGroupSizesSum = 0.0f;
-        float[] meanGroupSizeSums = new float[foldAgentProperties.length];
-        for( int i = 0; i < foldAgentProperties.length; i++ )
+        for( int i = 0; i < meanGroupSizeSums.length; i++ )
         {
-//            _LOG.info( "Running sim [" + i + "]" );
-            
-            // Get the default properties
-            Properties simProps = new Properties();
-            simProps.putAll( _defaultSimProperties );
-            
-            // Override the fold specific properties
-            simProps.setProperty( SimulationState._AGENT_PROPS_FILE_KEY,
-                    foldAgentProperties[i] );
-            simProps.setProperty( SimulationState._PATCH_PROPS_FILE_KEY,
-                    foldPatchProperties[i] );
-            
-            // Override the genome specific properties
-            simProps.putAll( genomeProps );
-            
-            // Create the simulator
-            Simulator sim = new Simulator();
-            sim.initialize( simProps );
-            
-            // Add our own patch depletion listener
-            PatchDepletionListener patchListener = new PatchDepletionListener();
-            SimulationState simState = sim.getSimState();
-            simState.addEventListener( patchListener );
-            
-            // Add our own team size event listener
-            TeamSizeEventListener teamSizeListener = new TeamSizeEventListener();
-            simState.addEventListener( teamSizeListener );
-
-            // Run it
-            sim.run();
-            
-            // Get the group size history
-            List<int[]> teamSizeHistory = teamSizeListener.getTeamSizeHistory();
-            float meanTeamSizeSum = 0.0f;
-            Iterator<int[]> iter = teamSizeHistory.iterator();
-            while( iter.hasNext() )
-            {
-                // Compute the mean team size
-                int[] teamSizes = iter.next();
-                int teamSizeSum = 0;
-                for( int j = 0; j < teamSizes.length; j++ )
-                {
-                    teamSizeSum += teamSizes[j];
-                }
-                meanTeamSizeSum += teamSizeSum / (float) teamSizes.length;
-            }
-            allMeanGroupSizesSum += meanTeamSizeSum;
-            meanGroupSizeSums[i] = meanTeamSizeSum;
-
-//            _LOG.debug( "Run ["
-//                    + i
-//                    + "] resourcesForaged=["
-//                    + resourcesForaged
-//                    + "]" );
+            allMeanGroupSizesSum += meanGroupSizeSums[i];
         }
         
         // Compute the mean resources foraged
@@ -183,4 +151,50 @@ public class GroupSizeGAForagingProblem extends DefaultGAForageProblem
         bitInd.evaluated = true;
     }
 
+    /**
+     * Runs a single fold simulation and returns the sum of the mean team
+     * sizes over every step
+     *
+     * @param simProps The fold's simulation properties
+     * @param calcParams The decision calculator parameters
+     * @return The sum of the mean team sizes
+     */
+    private float runGroupSizeSimulation( Properties simProps,
+            DecisionCalculatorParams calcParams )
+    {
+        // Create the simulator
+        Simulator sim = new Simulator();
+        sim.initialize( simProps, calcParams );
+        
+        // Add our own patch depletion listener
+        PatchDepletionListener patchListener = new PatchDepletionListener();
+        SimulationState simState = sim.getSimState();
+        simState.addEventListener( patchListener );
+        
+        // Add our own team size event listener
+        TeamSizeEventListener teamSizeListener = new TeamSizeEventListener();
+        simState.addEventListener( teamSizeListener );
+
+        // Run it
+        sim.run();
+        
+        // Get the group size history
+        List<int[]> teamSizeHistory = teamSizeListener.getTeamSizeHistory();
+        float meanTeamSizeSum = 0.0f;
+        Iterator<int[]> iter = teamSizeHistory.iterator();
+        while( iter.hasNext() )
+        {
+            // Compute the mean team size
+            int[] teamSizes = iter.next();
+            int teamSizeSum = 0;
+            for( int j = 0; j < teamSizes.length; j++ )
+            {
+                teamSizeSum += teamSizes[j];
+            }
+            meanTeamSizeSum += teamSizeSum / (float) teamSizes.length;
+        }
+        
+        return meanTeamSizeSum;
+    }
+
 }
@@ -338,6 +338,9 @@ public class ParseableStatistics extends Statistics
                 state );
         _evalTotalTime += evalTime;
 
+        // Display how many evaluations were avoided
+        printFitnessCacheStats( state, true );
+
         // Call the superclass impl
         super.postEvaluationStatistics( state );
         
@@ -475,6 +478,7 @@ public class ParseableStatistics extends Statistics
         println( "eval-time = " + _evalTotalTime,
                 state,
                 false );
+        printFitnessCacheStats( state, false );
 
         // Display the end time
         println( "end-time = " + (new Date()), state, false );
@@ -650,6 +654,45 @@ public class ParseableStatistics extends Statistics
         }
     }
 
+    /**
+     * Prints the fitness cache statistics, if the problem has a cache
+     *
+     * @param state The current state of evolution
+     * @param useGen Flag indicating that the generation should be used
+     */
+    protected void printFitnessCacheStats( EvolutionState state,
+            boolean useGen )
+    {
+        if( !(state.evaluator.p_problem instanceof DefaultGAForageProblem) )
+        {
+            return;
+        }
+        FitnessCache cache =
+                ((DefaultGAForageProblem) state.evaluator.p_problem).getFitnessCache();
+        if( null == cache )
+        {
+            return;
+        }
+
+        // Display the cumulative counts
+        long hitCount = cache.getHitCount();
+        long missCount = cache.getMissCount();
+        println( "fitness-cache-hits = " + hitCount, state, useGen );
+        println( "fitness-cache-misses = " + missCount, state, useGen );
+        println( "fitness-cache-evictions = " + cache.getEvictionCount(),
+                state,
+                useGen );
+        println( "fitness-cache-size = " + cache.getSize(), state, useGen );
+        long lookupCount = hitCount + missCount;
+        if( 0 < lookupCount )
+        {
+            println( "fitness-cache-hit-rate = "
+                    + ( hitCount / (double) lookupCount ),
+                    state,
+                    useGen );
+        }
+    }
+
     /**
      * Builds the prefix used for output
      *
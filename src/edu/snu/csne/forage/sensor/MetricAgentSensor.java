@@ -19,7 +19,6 @@
  */
 package edu.snu.csne.forage.sensor;
 
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -27,10 +26,9 @@ import java.util.Properties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.jme3.math.Vector3f;
-
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.SimulationState;
+import edu.snu.csne.forage.util.AgentStateStore;
 
 /**
  * TODO Class description
@@ -76,34 +74,44 @@ public class MetricAgentSensor extends AbstractAgentSensor
     @Override
     public List<Agent> sense( Agent agent )
     {
-        List<Agent> sensedAgents = new LinkedList<Agent>();
+        // Use the spatial index if the agent is in it
+        List<Agent> sensedAgents = _simState.getAgentGrid().findNeighbors( agent );
+        if( null == sensedAgents )
+        {
+            sensedAgents = senseAllAgents( agent );
+        }
+        
+//        _LOG.debug( "Sensed ["
+//                + sensedAgents.size()
+//                + "] agents" );
         
-        Vector3f position = agent.getPosition();
+        return sensedAgents;
+    }
+
+    /**
+     * Senses agents by checking every agent in the state store
+     *
+     * @param agent The sensing agent
+     * @return The sensed agents
+     */
+    private List<Agent> senseAllAgents( Agent agent )
+    {
+        List<Agent> sensedAgents = new LinkedList<Agent>();
         
         // Get all the agents within sensing range
-        Iterator<Agent> agentIter = _simState.getAllAgents().values().iterator();
-        while( agentIter.hasNext() )
+        AgentStateStore store = _simState.getAgentStateStore();
+        int slot = agent.getSlot();
+        for( int i = 0; i < store.size(); i++ )
         {
-            Agent current = agentIter.next();
-            
             // Exclude ourselves and check range
-            if( !current.getID().equals(agent.getID())
-                    && (_sensingDistanceSquared > position.distanceSquared( current.getPosition() )) )
+            if( (i != slot)
+                    && (_sensingDistanceSquared > store.distanceSquared( slot, i )) )
             {
                 // It is in range
-                sensedAgents.add( current );
-//                _LOG.debug( "Agent ["
-//                        + agent.getID()
-//                        + "] sensed agent ["
-//                        + current.getID()
-//                        + "]" );
+                sensedAgents.add( store.getAgent( i ) );
             }
         }
         
-//        _LOG.debug( "Sensed ["
-//                + sensedAgents.size()
-//                + "] agents" );
-        
         return sensedAgents;
     }
 
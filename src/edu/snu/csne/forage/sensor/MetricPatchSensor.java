@@ -20,16 +20,12 @@
 package edu.snu.csne.forage.sensor;
 
 // Imports
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.jme3.math.Vector3f;
-
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.Patch;
 import edu.snu.csne.forage.SimulationState;
@@ -77,23 +73,10 @@ public class MetricPatchSensor extends AbstractPatchSensor
     @Override
     public List<Patch> sense( Agent agent )
     {
-        List<Patch> sensedPatches = new LinkedList<Patch>();
-        
-        Vector3f position = agent.getPosition();
-        
-        // Get all the agents within sensing range
-        Iterator<Patch> patchIter = _simState.getAllPatches().values().iterator();
-        while( patchIter.hasNext() )
-        {
-            Patch current = patchIter.next();
-            
-            // Is it within range?
-            if( _sensingDistanceSquared > position.distanceSquared( current.getPosition() ) )
-            {
-                // Yes
-                sensedPatches.add( current );
-            }
-        }
+        // Get all the patches within sensing range
+        List<Patch> sensedPatches = _simState.getPatchIndex().findPatchesInRange(
+                agent.getPosition(),
+                _sensingDistanceSquared );
         
         return sensedPatches;
     }
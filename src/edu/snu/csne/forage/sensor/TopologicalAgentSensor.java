@@ -19,22 +19,20 @@
  */
 package edu.snu.csne.forage.sensor;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
-import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.jme3.math.Vector3f;
-
 import edu.snu.csne.forage.Agent;
 import edu.snu.csne.forage.SimulationState;
+import edu.snu.csne.forage.util.AgentStateStore;
+import edu.snu.csne.util.MiscUtils;
 
 /**
  * TODO Class description
@@ -49,56 +47,14 @@ public class TopologicalAgentSensor extends AbstractAgentSensor
             TopologicalAgentSensor.class.getName() );
     
     
-    /**
-     * TODO Class description
-     */
-    private class AgentDistanceComparator implements Comparator
-    {
-        /** The central sensing agent */
-        private Agent _sensingAgent = null;
-        
-        /**
-         * Builds this TopologicalAgentSensor.AgentDistanceComparator object
-         *
-         * @param sensingAgent The central agent that sensed the other agents
-         */
-        public AgentDistanceComparator( Agent sensingAgent )
-        {
-            Validate.notNull( sensingAgent, "Sensing agent may not be null" );
-            _sensingAgent = sensingAgent;
-        }
-        
-        /**
-         * Compares two agents by virtue of their distance from the sensing
-         * agent.
-         *
-         * @param o1
-         * @param o2
-         * @return
-         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-         */
-        @Override
-        public int compare( Object o1, Object o2 )
-        {
-            Agent agent1 = (Agent) o1;
-            float distance1 = agent1.getPosition().distance( _sensingAgent.getPosition() );
-            Agent agent2 = (Agent) o2;
-            float distance2 = agent2.getPosition().distance( _sensingAgent.getPosition() );
-            
-            int result = 0;
-            if( distance1 < distance2 )
-            {
-                result = -1;
-            }
-            else if( distance1 > distance2 )
-            {
-                result = 1;
-            }
-            
-            return result;
-        }
-        
-    }
+    /** Property key for the number of nearest neighbors sensed */
+    private static final String _NEIGHBOR_COUNT_KEY = "topological-neighbor-count";
+    
+    
+    /** The number of nearest neighbors sensed */
+    private int _neighborCount = Integer.MAX_VALUE;
+    
+    
     /**
      * Initialize this agent sensor
      *
@@ -114,6 +70,18 @@ public class TopologicalAgentSensor extends AbstractAgentSensor
         // Call the superclass implementation
         super.initialize( simState, props );
         
+        // Get the number of neighbors, where a non-positive value means all
+        _neighborCount = MiscUtils.loadOptionalIntegerProperty( props,
+                _NEIGHBOR_COUNT_KEY,
+                -1 );
+        if( 0 >= _neighborCount )
+        {
+            _neighborCount = Integer.MAX_VALUE;
+        }
+        _LOG.debug( "_neighborCount=["
+                + _neighborCount
+                + "]" );
+        
         _LOG.trace( "Leaving initialize( simState, props )" );
     }
 
@@ -127,27 +95,58 @@ public class TopologicalAgentSensor extends AbstractAgentSensor
     @Override
     public List<Agent> sense( Agent agent )
     {
-        SortedSet<Agent> sortedAgents = new TreeSet<Agent>(
-                new AgentDistanceComparator( agent ) );
-        
-        Vector3f position = agent.getPosition();
-        
+        // Use the spatial index if the agent is in it
+        List<Agent> sensedAgents = _simState.getAgentGrid().findNearestNeighbors(
+                agent,
+                _neighborCount );
+        if( null == sensedAgents )
+        {
+            sensedAgents = senseAllAgents( agent );
+        }
+
+        return sensedAgents;
+    }
+
+    /**
+     * Senses the nearest agents by checking every agent in the state store
+     *
+     * @param agent The sensing agent
+     * @return The sensed agents sorted by increasing distance
+     */
+    private List<Agent> senseAllAgents( Agent agent )
+    {
         // Get all the agents within sensing range
-        Iterator<Agent> agentIter = _simState.getAllAgents().values().iterator();
-        while( agentIter.hasNext() )
+        final AgentStateStore store = _simState.getAgentStateStore();
+        final int slot = agent.getSlot();
+        List<Integer> sensedSlots = new ArrayList<Integer>();
+        for( int i = 0; i < store.size(); i++ )
         {
-            Agent current = agentIter.next();
-            
-            // Is it within range?
-            if( _sensingDistanceSquared > position.distanceSquared( current.getPosition() ) )
+            // Exclude ourselves and check range
+            if( (i != slot)
+                    && (_sensingDistanceSquared > store.distanceSquared( slot, i )) )
             {
-                // Yes
-                sortedAgents.add( current );
+                sensedSlots.add( Integer.valueOf( i ) );
             }
         }
         
-        List<Agent> sensedAgents = new LinkedList<Agent>( sortedAgents );
-
+        // Sort them by distance (the sort is stable, so ties are kept in order)
+        Collections.sort( sensedSlots, new Comparator<Integer>() {
+            @Override
+            public int compare( Integer slot1, Integer slot2 )
+            {
+                return Float.compare( store.distanceSquared( slot, slot1 ),
+                        store.distanceSquared( slot, slot2 ) );
+            }
+        } );
+        
+        // Keep only the nearest
+        List<Agent> sensedAgents = new LinkedList<Agent>();
+        int count = Math.min( _neighborCount, sensedSlots.size() );
+        for( int i = 0; i < count; i++ )
+        {
+            sensedAgents.add( store.getAgent( sensedSlots.get( i ) ) );
+        }
+        
         return sensedAgents;
     }
 
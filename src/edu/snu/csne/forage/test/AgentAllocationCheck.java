@@ -0,0 +1,147 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.test;
+
+// Imports
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Properties;
+
+import edu.snu.csne.forage.Agent;
+import edu.snu.csne.forage.SimulationState;
+import edu.snu.csne.forage.Simulator;
+import edu.snu.csne.util.MiscUtils;
+
+
+/**
+ * Checks that acting doesn't allocate once the JVM has warmed up.  A
+ * simulation is run one sequential step at a time.  The first half of the
+ * steps warm up the JIT compiler, and in the second half the bytes the
+ * thread allocates are measured around every agent's
+ * {@link Agent#act()}.  The simulation properties are loaded the same way
+ * as the simulator's, and any <code>key=value</code> arguments override
+ * them.  The exit status is non-zero if any call allocated.
+ *
+ * @author Brent Eskridge
+ */
+public class AgentAllocationCheck
+{
+    /**
+     * Runs the check
+     *
+     * @param args Property overrides of the form <code>key=value</code>
+     */
+    public static void main( String[] args )
+    {
+        // Get the properties and apply the overrides
+        Properties props = MiscUtils.loadProperties( Simulator.PROPS_FILE_KEY );
+        for( int i = 0; i < args.length; i++ )
+        {
+            int split = args[i].indexOf( '=' );
+            if( 0 > split )
+            {
+                throw new IllegalArgumentException( "Override must be of the form key=value - given ["
+                        + args[i]
+                        + "]" );
+            }
+            props.setProperty( args[i].substring( 0, split ).trim(),
+                    args[i].substring( split + 1 ).trim() );
+        }
+
+        // We need the thread allocation counter
+        java.lang.management.ThreadMXBean baseThreadBean =
+                ManagementFactory.getThreadMXBean();
+        if( !(baseThreadBean instanceof com.sun.management.ThreadMXBean) )
+        {
+            throw new UnsupportedOperationException( "Thread allocation counting isn't supported by this JVM" );
+        }
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) baseThreadBean;
+        threadBean.setThreadAllocatedMemoryEnabled( true );
+        long threadID = Thread.currentThread().getId();
+
+        // Build the simulator, stepping sequentially ourselves
+        props.setProperty( "synchronous-step", "false" );
+        Simulator sim = new Simulator();
+        sim.initialize( props );
+        SimulationState simState = sim.getSimState();
+        simState.signalSimRunSetup();
+
+        // Warm up and then measure
+        long stepCount = MiscUtils.loadNonEmptyLongProperty( props,
+                "simulation-step-count",
+                "Simulation step count" );
+        long warmupSteps = stepCount / 2;
+        long calls = 0;
+        long allocatingCalls = 0;
+        long totalBytes = 0;
+        long maxBytes = 0;
+        while( !simState.isRunFinished() )
+        {
+            simState.signalSimStepSetup();
+            boolean measure = (simState.getCurrentSimulationStep() >= warmupSteps);
+            Iterator<Agent> agentIter = simState.getAllAgents().values().iterator();
+            while( agentIter.hasNext() )
+            {
+                Agent current = agentIter.next();
+                if( !current.isActive() )
+                {
+                    continue;
+                }
+                current.sense();
+                current.plan();
+
+                // Measure acting
+                long before = threadBean.getThreadAllocatedBytes( threadID );
+                current.act();
+                long bytes = threadBean.getThreadAllocatedBytes( threadID ) - before;
+                if( measure )
+                {
+                    calls++;
+                    if( 0 < bytes )
+                    {
+                        allocatingCalls++;
+                        totalBytes += bytes;
+                        maxBytes = Math.max( maxBytes, bytes );
+                    }
+                }
+            }
+            simState.signalSimStepTeardown();
+        }
+        simState.signalSimRunTeardown();
+
+        // Report it
+        System.out.println( "warmupSteps=["
+                + warmupSteps
+                + "] measuredCalls=["
+                + calls
+                + "] allocatingCalls=["
+                + allocatingCalls
+                + "] totalBytes=["
+                + totalBytes
+                + "] maxBytes=["
+                + maxBytes
+                + "]" );
+        if( 0 < allocatingCalls )
+        {
+            System.exit( 1 );
+        }
+    }
+}
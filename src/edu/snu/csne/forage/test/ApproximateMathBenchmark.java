@@ -0,0 +1,221 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.test;
+
+// Imports
+import java.util.Arrays;
+
+import ec.util.MersenneTwisterFast;
+import edu.snu.csne.util.ApproximateMath;
+
+
+/**
+ * Reports the accuracy and speed of the fast math approximations against
+ * the exact functions.  The optional arguments are the max error, the
+ * number of random samples and the random seed.  Each function is timed
+ * over several rounds after a few warm-up rounds, and the fastest and
+ * median times are reported.
+ *
+ * @author Brent Eskridge
+ */
+public class ApproximateMathBenchmark
+{
+    /** The number of rounds run before timing starts */
+    private static final int _WARMUP_ROUNDS = 5;
+
+    /** The number of timed rounds */
+    private static final int _TIMED_ROUNDS = 15;
+
+    /** The functions being timed */
+    private static final String[] _FUNCTIONS = {
+            "exact logistic",
+            "approx logistic",
+            "exact atan2",
+            "approx atan2" };
+
+
+    /** The random inputs */
+    private final float[] _xs;
+
+    /** The random ordinates used for atan2 */
+    private final float[] _ys;
+
+    /** The approximations */
+    private final ApproximateMath _approx;
+
+    /** Sum of all the results so they can't be optimized away */
+    private float _sink = 0.0f;
+
+
+    /**
+     * Builds this benchmark
+     *
+     * @param maxError The max error of the approximations
+     * @param sampleCount The number of random samples
+     * @param seed The random seed
+     */
+    public ApproximateMathBenchmark( float maxError, int sampleCount, long seed )
+    {
+        _approx = new ApproximateMath( maxError );
+
+        // Build the samples
+        MersenneTwisterFast rng = new MersenneTwisterFast( seed );
+        _xs = new float[sampleCount];
+        _ys = new float[sampleCount];
+        for( int i = 0; i < sampleCount; i++ )
+        {
+            _xs[i] = (float) (rng.nextGaussian() * 10.0);
+            _ys[i] = (float) (rng.nextGaussian() * 10.0);
+        }
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The max error, sample count and random seed (all optional)
+     */
+    public static void main( String[] args )
+    {
+        // Get the arguments
+        float maxError = 0.0001f;
+        if( 0 < args.length )
+        {
+            maxError = Float.parseFloat( args[0] );
+        }
+        int sampleCount = 1000000;
+        if( 1 < args.length )
+        {
+            sampleCount = Integer.parseInt( args[1] );
+        }
+        long seed = 0;
+        if( 2 < args.length )
+        {
+            seed = Long.parseLong( args[2] );
+        }
+
+        ApproximateMathBenchmark benchmark = new ApproximateMathBenchmark(
+                maxError,
+                sampleCount,
+                seed );
+        System.out.println( "maxError=["
+                + maxError
+                + "] logisticTableSize=["
+                + benchmark._approx.getLogisticTableSize()
+                + "] samples=["
+                + sampleCount
+                + "]" );
+        benchmark.reportAccuracy();
+        benchmark.reportSpeed();
+    }
+
+    /**
+     * Reports the max absolute error of each approximation over the samples
+     */
+    public void reportAccuracy()
+    {
+        double logisticError = 0.0;
+        double atan2Error = 0.0;
+        for( int i = 0; i < _xs.length; i++ )
+        {
+            float exactLogistic = (float) (1.0 / (1.0 + Math.exp( -_xs[i] )));
+            logisticError = Math.max( logisticError,
+                    Math.abs( _approx.logistic( _xs[i] ) - exactLogistic ) );
+            float exactAtan2 = (float) Math.atan2( _ys[i], _xs[i] );
+            atan2Error = Math.max( atan2Error,
+                    Math.abs( _approx.atan2( _ys[i], _xs[i] ) - exactAtan2 ) );
+        }
+        System.out.println( "logistic maxAbsError=[" + logisticError + "]" );
+        System.out.println( "atan2 maxAbsError=[" + atan2Error + "]" );
+    }
+
+    /**
+     * Reports the time per call of each function.  The functions are
+     * interleaved within each round so drifts in the machine's speed affect
+     * them all alike.
+     */
+    public void reportSpeed()
+    {
+        long[][] times = new long[_FUNCTIONS.length][_TIMED_ROUNDS];
+        for( int round = 0; round < _WARMUP_ROUNDS + _TIMED_ROUNDS; round++ )
+        {
+            for( int function = 0; function < _FUNCTIONS.length; function++ )
+            {
+                long start = System.nanoTime();
+                run( function );
+                long time = System.nanoTime() - start;
+                if( round >= _WARMUP_ROUNDS )
+                {
+                    times[function][round - _WARMUP_ROUNDS] = time;
+                }
+            }
+        }
+
+        // Report the fastest and median rounds
+        for( int function = 0; function < _FUNCTIONS.length; function++ )
+        {
+            Arrays.sort( times[function] );
+            System.out.println( String.format( "%-16s ns/call min=[%6.2f] median=[%6.2f]",
+                    _FUNCTIONS[function],
+                    times[function][0] / (double) _xs.length,
+                    times[function][_TIMED_ROUNDS / 2] / (double) _xs.length ) );
+        }
+
+        // Keep the results alive
+        System.out.println( "checksum=[" + _sink + "]" );
+    }
+
+    /**
+     * Runs a single function over all the samples
+     *
+     * @param function The index of the function
+     */
+    private void run( int function )
+    {
+        float sum = 0.0f;
+        switch( function )
+        {
+            case 0:
+                for( int i = 0; i < _xs.length; i++ )
+                {
+                    sum += (float) (1.0 / (1.0 + Math.exp( -_xs[i] )));
+                }
+                break;
+            case 1:
+                for( int i = 0; i < _xs.length; i++ )
+                {
+                    sum += _approx.logistic( _xs[i] );
+                }
+                break;
+            case 2:
+                for( int i = 0; i < _xs.length; i++ )
+                {
+                    sum += (float) Math.atan2( _ys[i], _xs[i] );
+                }
+                break;
+            default:
+                for( int i = 0; i < _xs.length; i++ )
+                {
+                    sum += _approx.atan2( _ys[i], _xs[i] );
+                }
+                break;
+        }
+        _sink += sum;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.test;
+
+// Imports
+import java.util.List;
+import java.util.Properties;
+
+import edu.snu.csne.forage.Agent;
+import edu.snu.csne.forage.Patch;
+import edu.snu.csne.forage.SimulationState;
+import edu.snu.csne.forage.Simulator;
+import edu.snu.csne.forage.decision.AbstractProbabilityDecisionCalculator;
+import edu.snu.csne.forage.decision.DecisionCandidates;
+import edu.snu.csne.forage.decision.DecisionType;
+import edu.snu.csne.forage.decision.DefaultProbabilityDecisionCalculator;
+import edu.snu.csne.forage.decision.ForagingDecisionMaker;
+import edu.snu.csne.util.MiscUtils;
+
+
+/**
+ * Reports how far the decision probabilities calculated with the fast math
+ * approximations stray from the exact ones.  A simulation is run with the
+ * exact calculations, and every time an agent evaluates its candidate
+ * decisions, they are also evaluated with fast math on the same state.
+ * The max difference for each candidate type is then compared to the
+ * <code>fast-math-max-error</code>, along with the max difference relative
+ * to the exact probability.  The simulation properties are loaded
+ * the same way as the simulator's, and any <code>key=value</code>
+ * arguments override them.  The exit status is non-zero if any difference
+ * exceeds the max error.
+ *
+ * @author Brent Eskridge
+ */
+public class FastMathReport
+{
+    /**
+     * Evaluates every batch of candidates both ways, keeping the exact
+     * probabilities and recording how far the fast ones differ
+     */
+    private static class ComparingCalculator
+            extends AbstractProbabilityDecisionCalculator
+    {
+        /** The calculator using exact math */
+        private final DefaultProbabilityDecisionCalculator _exact;
+
+        /** The calculator using the fast math approximations */
+        private final DefaultProbabilityDecisionCalculator _fast;
+
+        /** The max absolute difference for each decision type */
+        private final double[] _maxDiffs = new double[DecisionType.values().length];
+
+        /** The max difference relative to the exact probability for each decision type */
+        private final double[] _maxRelDiffs = new double[DecisionType.values().length];
+
+        /** The number of candidates compared for each decision type */
+        private final long[] _counts = new long[DecisionType.values().length];
+
+        /**
+         * Builds this calculator
+         *
+         * @param exact The calculator using exact math
+         * @param fast The calculator using the fast math approximations
+         */
+        public ComparingCalculator( DefaultProbabilityDecisionCalculator exact,
+                DefaultProbabilityDecisionCalculator fast )
+        {
+            _exact = exact;
+            _fast = fast;
+        }
+
+        @Override
+        public void initialize( SimulationState simState )
+        {
+            // Both calculators are already initialized
+        }
+
+        @Override
+        public float calculateNavigateProbability( Patch patch, Agent agent )
+        {
+            return _exact.calculateNavigateProbability( patch, agent );
+        }
+
+        @Override
+        public float calculateFollowProbability( Agent leader, Agent agent )
+        {
+            return _exact.calculateFollowProbability( leader, agent );
+        }
+
+        @Override
+        public float calculateForageProbability( Patch patch, Agent agent )
+        {
+            return _exact.calculateForageProbability( patch, agent );
+        }
+
+        @Override
+        public float calculateMaxProbabilitySum( Agent agent,
+                DecisionCandidates candidates )
+        {
+            return _exact.calculateMaxProbabilitySum( agent, candidates );
+        }
+
+        @Override
+        public void calculateProbabilities( Agent agent,
+                DecisionCandidates candidates )
+        {
+            // Calculate them the fast way first and keep a copy
+            _fast.calculateProbabilities( agent, candidates );
+            int size = candidates.size();
+            float[] fastProbabilities = new float[size];
+            System.arraycopy( candidates.getProbabilities(),
+                    0,
+                    fastProbabilities,
+                    0,
+                    size );
+
+            // The exact ones are the ones the agent uses
+            _exact.calculateProbabilities( agent, candidates );
+            record( candidates, fastProbabilities );
+        }
+
+        /**
+         * Records the differences between the exact and fast probabilities
+         *
+         * @param candidates The candidates holding the exact probabilities
+         * @param fastProbabilities The fast probabilities
+         */
+        private synchronized void record( DecisionCandidates candidates,
+                float[] fastProbabilities )
+        {
+            for( int i = 0; i < fastProbabilities.length; i++ )
+            {
+                int type = candidates.getType( i ).ordinal();
+                double diff = Math.abs( (double) fastProbabilities[i]
+                        - candidates.getProbability( i ) );
+                _maxDiffs[type] = Math.max( _maxDiffs[type], diff );
+                if( 0.0f < candidates.getProbability( i ) )
+                {
+                    _maxRelDiffs[type] = Math.max( _maxRelDiffs[type],
+                            diff / candidates.getProbability( i ) );
+                }
+                _counts[type]++;
+            }
+        }
+    }
+
+
+    /**
+     * Runs the report
+     *
+     * @param args Property overrides of the form <code>key=value</code>
+     */
+    public static void main( String[] args )
+    {
+        // Get the properties and apply the overrides
+        Properties props = MiscUtils.loadProperties( Simulator.PROPS_FILE_KEY );
+        for( int i = 0; i < args.length; i++ )
+        {
+            int split = args[i].indexOf( '=' );
+            if( 0 > split )
+            {
+                throw new IllegalArgumentException( "Override must be of the form key=value - given ["
+                        + args[i]
+                        + "]" );
+            }
+            props.setProperty( args[i].substring( 0, split ).trim(),
+                    args[i].substring( split + 1 ).trim() );
+        }
+
+        // Build the simulator
+        Simulator sim = new Simulator();
+        sim.initialize( props );
+        SimulationState simState = sim.getSimState();
+        if( !(simState.getAgentDecisionMaker() instanceof ForagingDecisionMaker) )
+        {
+            throw new IllegalArgumentException( "Decision maker must be a ForagingDecisionMaker - given ["
+                    + simState.getAgentDecisionMaker().getClass().getName()
+                    + "]" );
+        }
+        ForagingDecisionMaker decisionMaker =
+                (ForagingDecisionMaker) simState.getAgentDecisionMaker();
+
+        // Build one calculator each way from the same parameters
+        Properties simProps = simState.getProps();
+        String fastMath = simProps.getProperty(
+                DefaultProbabilityDecisionCalculator._FAST_MATH_KEY );
+        float maxError = MiscUtils.loadOptionalFloatProperty( simProps,
+                DefaultProbabilityDecisionCalculator._FAST_MATH_MAX_ERROR_KEY,
+                DefaultProbabilityDecisionCalculator._DEFAULT_FAST_MATH_MAX_ERROR );
+        simProps.setProperty( DefaultProbabilityDecisionCalculator._FAST_MATH_KEY,
+                "false" );
+        DefaultProbabilityDecisionCalculator exact =
+                new DefaultProbabilityDecisionCalculator();
+        exact.initialize( simState );
+        simProps.setProperty( DefaultProbabilityDecisionCalculator._FAST_MATH_KEY,
+                "true" );
+        DefaultProbabilityDecisionCalculator fast =
+                new DefaultProbabilityDecisionCalculator();
+        fast.initialize( simState );
+        if( null == fastMath )
+        {
+            simProps.remove( DefaultProbabilityDecisionCalculator._FAST_MATH_KEY );
+        }
+        else
+        {
+            simProps.setProperty( DefaultProbabilityDecisionCalculator._FAST_MATH_KEY,
+                    fastMath );
+        }
+        ComparingCalculator calculator = new ComparingCalculator( exact, fast );
+        decisionMaker.setProbabilityDecisionCalculator( calculator );
+
+        // Run it
+        sim.run();
+
+        // Report the differences
+        System.out.println( "fast-math-max-error=[" + maxError + "]" );
+        boolean exceeded = false;
+        DecisionType[] types = DecisionType.values();
+        for( int i = 0; i < types.length; i++ )
+        {
+            if( 0 == calculator._counts[i] )
+            {
+                continue;
+            }
+            boolean typeExceeded = (calculator._maxDiffs[i] > maxError);
+            exceeded |= typeExceeded;
+            System.out.println( String.format( "%-8s candidates=[%d] maxAbsDiff=[%.3e] ratioToMaxError=[%.3f] maxRelDiff=[%.3e]%s",
+                    types[i],
+                    calculator._counts[i],
+                    calculator._maxDiffs[i],
+                    calculator._maxDiffs[i] / maxError,
+                    calculator._maxRelDiffs[i],
+                    (typeExceeded ? " EXCEEDED" : "") ) );
+        }
+
+        if( exceeded )
+        {
+            System.exit( 1 );
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.test;
+
+// Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.Individual;
+import ec.Subpopulation;
+import ec.util.Parameter;
+import ec.util.ParameterDatabase;
+import edu.snu.csne.forage.evolve.CrossValidationFitness;
+
+
+/**
+ * Checks that evaluating a population with several ECJ evaluation threads
+ * gives the same fitness as evaluating it with one.  The same evolution is
+ * run twice with fixed seeds, first with <code>evalthreads</code> threads
+ * (and as many fold threads) while all the process-wide caches are still
+ * cold, and then with a single evaluation and fold thread.  Breeding always
+ * uses one thread, so both runs see the same individuals as long as their
+ * fitnesses agree.  Every individual's {@link CrossValidationFitness} is
+ * compared bit for bit in every generation.
+ * <p>
+ * The first argument is the ECJ parameter file, and any remaining
+ * <code>key=value</code> arguments override its parameters.  The simulation
+ * properties are loaded the same way as the simulator's.  The exit status
+ * is non-zero if any fitness differs.
+ *
+ * @author Brent Eskridge
+ */
+public class ParallelEvaluationCheck
+{
+    /** Seed of the first random number generator */
+    private static final int _BASE_SEED = 4357;
+
+    /** The maximum number of mismatches reported */
+    private static final int _MAX_REPORTED_MISMATCHES = 10;
+
+
+    /**
+     * Runs the check
+     *
+     * @param args The ECJ parameter file, followed by parameter overrides of
+     *            the form <code>key=value</code>
+     */
+    public static void main( String[] args )
+    {
+        if( 1 > args.length )
+        {
+            throw new IllegalArgumentException( "Usage: ParallelEvaluationCheck <ecj-params-file> [key=value ...]" );
+        }
+
+        // How many threads does the parallel run use?
+        ParameterDatabase params = loadParameters( args, 0 );
+        String threadValue = params.getStringWithDefault(
+                new Parameter( Evolve.P_EVALTHREADS ),
+                null,
+                Evolve.V_THREADS_AUTO ).trim();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        if( !Evolve.V_THREADS_AUTO.equalsIgnoreCase( threadValue ) )
+        {
+            threadCount = Integer.parseInt( threadValue );
+        }
+        threadCount = Math.max( 2, threadCount );
+        int generations = params.getInt( new Parameter( "generations" ), null, 1 );
+        if( 1 > generations )
+        {
+            throw new IllegalArgumentException( "At least one generation is required" );
+        }
+
+        // Run it in parallel first, so the caches are filled concurrently
+        long start = System.currentTimeMillis();
+        List<String[]> parallel = runEvolution( args,
+                threadCount,
+                generations );
+        long parallelTime = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        List<String[]> sequential = runEvolution( args, 1, generations );
+        long sequentialTime = System.currentTimeMillis() - start;
+
+        // Compare every individual of every generation
+        int individuals = 0;
+        int mismatches = 0;
+        for( int gen = 0; gen < generations; gen++ )
+        {
+            String[] expected = sequential.get( gen );
+            String[] actual = parallel.get( gen );
+            if( expected.length != actual.length )
+            {
+                throw new IllegalStateException( "Population sizes differ in generation ["
+                        + gen
+                        + "]" );
+            }
+            for( int i = 0; i < expected.length; i++ )
+            {
+                individuals++;
+                if( expected[i].equals( actual[i] ) )
+                {
+                    continue;
+                }
+                mismatches++;
+                if( _MAX_REPORTED_MISMATCHES >= mismatches )
+                {
+                    System.out.println( "Mismatch: gen=["
+                            + gen
+                            + "] ind=["
+                            + i
+                            + "]" );
+                    System.out.println( "  sequential: " + expected[i] );
+                    System.out.println( "  parallel:   " + actual[i] );
+                }
+            }
+        }
+
+        // Report it
+        System.out.println( "threads=["
+                + threadCount
+                + "] generations=["
+                + generations
+                + "] individuals=["
+                + individuals
+                + "] mismatches=["
+                + mismatches
+                + "] parallelMs=["
+                + parallelTime
+                + "] sequentialMs=["
+                + sequentialTime
+                + "]" );
+        System.exit( (0 < mismatches) ? 1 : 0 );
+    }
+
+    /**
+     * Runs an evolution, returning the evaluated individuals of every
+     * generation
+     *
+     * @param args The command line arguments
+     * @param threadCount The number of evaluation and fold threads
+     * @param generations The number of generations to evaluate
+     * @return A description of every individual's fitness, by generation
+     */
+    private static List<String[]> runEvolution( String[] args,
+            int threadCount,
+            int generations )
+    {
+        // Build the state
+        ParameterDatabase params = loadParameters( args, threadCount );
+        EvolutionState state = Evolve.initialize( params, 0 );
+        state.startFresh();
+
+        // Evaluate and breed ourselves
+        List<String[]> results = new ArrayList<String[]>( generations );
+        for( int gen = 0; gen < generations; gen++ )
+        {
+            state.evaluator.evaluatePopulation( state );
+            results.add( describeFitness( state ) );
+            if( gen + 1 < generations )
+            {
+                state.population = state.breeder.breedPopulation( state );
+                state.generation++;
+            }
+        }
+        Evolve.cleanup( state );
+
+        return results;
+    }
+
+    /**
+     * Loads the ECJ parameters with the overrides and fixed seeds
+     *
+     * @param args The command line arguments
+     * @param threadCount The number of evaluation and fold threads, or
+     *            <code>0</code> to leave them as given
+     * @return The parameters
+     */
+    private static ParameterDatabase loadParameters( String[] args,
+            int threadCount )
+    {
+        List<String> ecjArgs = new ArrayList<String>();
+        ecjArgs.add( Evolve.A_FILE );
+        ecjArgs.add( args[0] );
+        for( int i = 1; i < args.length; i++ )
+        {
+            if( 0 > args[i].indexOf( '=' ) )
+            {
+                throw new IllegalArgumentException( "Override must be of the form key=value - given ["
+                        + args[i]
+                        + "]" );
+            }
+            ecjArgs.add( "-p" );
+            ecjArgs.add( args[i] );
+        }
+
+        // Don't let the statistics write any files
+        ecjArgs.add( "-p" );
+        ecjArgs.add( "stat=ec.Statistics" );
+
+        // Fix the threads and seeds
+        if( 0 < threadCount )
+        {
+            ecjArgs.add( "-p" );
+            ecjArgs.add( Evolve.P_EVALTHREADS + "=" + threadCount );
+            ecjArgs.add( "-p" );
+            ecjArgs.add( Evolve.P_BREEDTHREADS + "=1" );
+            ecjArgs.add( "-p" );
+            ecjArgs.add( "eval.problem.fold-thread-count=" + threadCount );
+            for( int i = 0; i < threadCount; i++ )
+            {
+                ecjArgs.add( "-p" );
+                ecjArgs.add( Evolve.P_SEED + "." + i + "=" + (_BASE_SEED + i) );
+            }
+        }
+
+        return Evolve.loadParameterDatabase( ecjArgs.toArray(
+                new String[ecjArgs.size()] ) );
+    }
+
+    /**
+     * Describes the fitness of every individual in the population
+     *
+     * @param state The current state of evolution
+     * @return The descriptions
+     */
+    private static String[] describeFitness( EvolutionState state )
+    {
+        List<String> descriptions = new ArrayList<String>();
+        for( Subpopulation subpop : state.population.subpops )
+        {
+            for( Individual ind : subpop.individuals )
+            {
+                CrossValidationFitness fitness = (CrossValidationFitness) ind.fitness;
+                descriptions.add( ind.genotypeToStringForHumans()
+                        + " fitness=["
+                        + Double.doubleToLongBits( fitness.fitness() )
+                        + "] training="
+                        + describeResults( fitness.getTrainingResults() )
+                        + " testing="
+                        + describeResults( fitness.getTestingResults() )
+                        + " validation="
+                        + describeResults( fitness.getValidationResults() ) );
+            }
+        }
+
+        return descriptions.toArray( new String[descriptions.size()] );
+    }
+
+    /**
+     * Describes fold results by their exact bits
+     *
+     * @param results The fold results (may be <code>null</code>)
+     * @return The description
+     */
+    private static String describeResults( float[] results )
+    {
+        if( null == results )
+        {
+            return "null";
+        }
+        int[] bits = new int[results.length];
+        for( int i = 0; i < results.length; i++ )
+        {
+            bits[i] = Float.floatToIntBits( results[i] );
+        }
+        return Arrays.toString( bits );
+    }
+}
@@ -0,0 +1,825 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.snu.csne.forage.Agent;
+
+
+/**
+ * Uniform grid used to answer metric neighbor queries for agents.  The grid
+ * is rebuilt from a snapshot of the agent state store once per simulation
+ * step, so agents are identified by their store slot.  The cell size is the
+ * sensing distance, so every neighbor of an agent lies in its own cell or
+ * one of the adjacent cells.  All neighbor lists are calculated together
+ * the first time they are requested so that the distance between each pair
+ * of agents is only calculated once.  A k-d tree over the same snapshot is
+ * built on demand for k-nearest neighbor queries.  Queries may be made
+ * concurrently, but not while the grid is being rebuilt.
+ *
+ * @author Brent Eskridge
+ */
+public class AgentSpatialGrid
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            AgentSpatialGrid.class.getName() );
+
+    /** Cell offsets that visit each pair of adjacent cells exactly once */
+    private static final int[][] _FORWARD_CELL_OFFSETS = buildForwardCellOffsets();
+
+    /** Mask used to pack a cell coordinate into a cell key */
+    private static final long _CELL_COORD_MASK = 0x1FFFFFL;
+
+    /** Number of bits used for each cell coordinate in a cell key */
+    private static final int _CELL_COORD_BITS = 21;
+
+    /** Initial capacity of each agent's neighbor array */
+    private static final int _INITIAL_NEIGHBOR_CAPACITY = 8;
+
+    /** Maximum number of agents in a k-d tree node that is scanned directly */
+    private static final int _TREE_LEAF_SIZE = 8;
+
+
+    /** The size of each cell */
+    private float _cellSize = Float.POSITIVE_INFINITY;
+
+    /** The square of the sensing distance */
+    private float _sensingDistanceSquared = Float.POSITIVE_INFINITY;
+
+    /** The agents in the grid indexed by their slot */
+    private Agent[] _agents = new Agent[0];
+
+    /** The number of agents in the grid */
+    private int _agentCount = 0;
+
+    /** The snapshot x position of each agent */
+    private float[] _x = new float[0];
+
+    /** The snapshot y position of each agent */
+    private float[] _y = new float[0];
+
+    /** The snapshot z position of each agent */
+    private float[] _z = new float[0];
+
+    /** The slots of the agents in each occupied cell */
+    private Map<Long,List<Integer>> _cells = new HashMap<Long,List<Integer>>();
+
+    /** The slots of each agent's neighbors */
+    private int[][] _neighborSlots = new int[0][];
+
+    /** The number of neighbors of each agent */
+    private int[] _neighborCounts = new int[0];
+
+    /** Flag denoting whether the neighbor lists are current */
+    private volatile boolean _neighborsCalculated = false;
+
+    /** The agent slots arranged as an implicit k-d tree */
+    private int[] _treeSlots = new int[0];
+
+    /** The split axis of each k-d tree node */
+    private byte[] _treeAxes = new byte[0];
+
+    /** Flag denoting whether the k-d tree is current */
+    private volatile boolean _treeBuilt = false;
+
+
+    /**
+     * Builds this grid
+     *
+     * @param sensingDistance The sensing distance used for neighbor queries
+     */
+    public AgentSpatialGrid( float sensingDistance )
+    {
+        if( Float.isInfinite( sensingDistance ) || (0.0f > sensingDistance) )
+        {
+            // Everyone is in the same cell
+            _cellSize = Float.POSITIVE_INFINITY;
+            _sensingDistanceSquared = Float.POSITIVE_INFINITY;
+        }
+        else
+        {
+            // A zero sensing distance senses nothing, so any cell size works
+            _cellSize = (0.0f < sensingDistance) ? sensingDistance : 1.0f;
+            _sensingDistanceSquared = sensingDistance * sensingDistance;
+        }
+        _LOG.debug( "_cellSize=["
+                + _cellSize
+                + "]" );
+    }
+
+    /**
+     * Rebuilds the grid using the current positions of the agents in the
+     * state store
+     *
+     * @param store The agent state store
+     */
+    public void rebuild( AgentStateStore store )
+    {
+        // Make sure we have enough room
+        _agentCount = store.size();
+        if( _agents.length < _agentCount )
+        {
+            _agents = new Agent[_agentCount];
+            _x = new float[_agentCount];
+            _y = new float[_agentCount];
+            _z = new float[_agentCount];
+            _neighborSlots = new int[_agentCount][];
+            _neighborCounts = new int[_agentCount];
+            _treeSlots = new int[_agentCount];
+            _treeAxes = new byte[_agentCount];
+        }
+        _cells.clear();
+
+        // Snapshot the agents and their positions
+        store.copyAgents( _agents );
+        store.copyPositions( _x, _y, _z );
+
+        // Clear out any stale references
+        Arrays.fill( _agents, _agentCount, _agents.length, null );
+
+        // Put each agent in its cell
+        for( int slot = 0; slot < _agentCount; slot++ )
+        {
+            long key = buildCellKey( toCell( _x[slot] ),
+                    toCell( _y[slot] ),
+                    toCell( _z[slot] ) );
+            List<Integer> cell = _cells.get( key );
+            if( null == cell )
+            {
+                cell = new ArrayList<Integer>();
+                _cells.put( key, cell );
+            }
+            cell.add( Integer.valueOf( slot ) );
+        }
+
+        _neighborsCalculated = false;
+        _treeBuilt = false;
+    }
+
+    /**
+     * Returns all the agents within sensing distance of the specified agent
+     * at the time the grid was last rebuilt.  The agents are returned in the
+     * order in which they were added to the grid.
+     *
+     * @param agent The agent
+     * @return The agent's neighbors, or <code>null</code> if the agent isn't
+     * in the grid
+     */
+    public List<Agent> findNeighbors( Agent agent )
+    {
+        int slot = findSlot( agent );
+        if( 0 > slot )
+        {
+            return null;
+        }
+
+        // Calculate all the neighbor lists if we haven't already
+        if( !_neighborsCalculated )
+        {
+            calculateAllNeighbors();
+        }
+
+        // Build the list
+        int idx = slot;
+        List<Agent> neighbors = new LinkedList<Agent>();
+        int[] neighborSlots = _neighborSlots[idx];
+        for( int i = 0; i < _neighborCounts[idx]; i++ )
+        {
+            neighbors.add( _agents[neighborSlots[i]] );
+        }
+
+        return neighbors;
+    }
+
+    /**
+     * Returns the agents within sensing distance that are nearest to the
+     * specified agent at the time the grid was last rebuilt.  Exactly the
+     * smaller of k and the number of agents in range are returned, not
+     * counting the agent itself, sorted by increasing distance.  Agents at
+     * the same distance are ordered by slot, so when they tie at the k-th
+     * distance, the ones with the lowest slots are kept and the rest are
+     * dropped.
+     *
+     * @param agent The agent
+     * @param k The maximum number of neighbors to return
+     * @return The agent's nearest neighbors, or <code>null</code> if the agent
+     * isn't in the grid
+     */
+    public List<Agent> findNearestNeighbors( Agent agent, int k )
+    {
+        int slot = findSlot( agent );
+        if( 0 > slot )
+        {
+            return null;
+        }
+
+        // Build the tree if we haven't already
+        if( !_treeBuilt )
+        {
+            buildTree();
+        }
+
+        // Search the tree using a bounded max-heap
+        NeighborHeap heap = new NeighborHeap( Math.min( k, _agentCount - 1 ) );
+        if( 0 < heap.capacity() )
+        {
+            searchTree( slot, 0, _agentCount, heap );
+        }
+
+        // Pull them out of the heap, furthest first
+        LinkedList<Agent> neighbors = new LinkedList<Agent>();
+        while( 0 < heap.size() )
+        {
+            neighbors.addFirst( _agents[heap.removeWorst()] );
+        }
+
+        return neighbors;
+    }
+
+    /**
+     * Returns the slot of an agent in the grid
+     *
+     * @param agent The agent
+     * @return The agent's slot, or -1 if it isn't in the grid
+     */
+    private int findSlot( Agent agent )
+    {
+        int slot = agent.getSlot();
+        if( (0 > slot) || (slot >= _agentCount) || (_agents[slot] != agent) )
+        {
+            slot = -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Calculates the neighbors of every agent in the grid
+     */
+    private synchronized void calculateAllNeighbors()
+    {
+        // Another thread may have beaten us to it
+        if( _neighborsCalculated )
+        {
+            return;
+        }
+
+        // Reset the neighbor counts
+        Arrays.fill( _neighborCounts, 0, _agentCount, 0 );
+
+        // Check every cell against itself and the adjacent cells
+        Iterator<Map.Entry<Long,List<Integer>>> cellIter =
+                _cells.entrySet().iterator();
+        while( cellIter.hasNext() )
+        {
+            Map.Entry<Long,List<Integer>> entry = cellIter.next();
+            long key = entry.getKey().longValue();
+            List<Integer> cell = entry.getValue();
+
+            // Check all the pairs in this cell
+            int cellSize = cell.size();
+            for( int i = 0; i < cellSize; i++ )
+            {
+                int first = cell.get( i ).intValue();
+                for( int j = i + 1; j < cellSize; j++ )
+                {
+                    checkPair( first, cell.get( j ).intValue() );
+                }
+            }
+
+            // Everyone is in one cell if the range is infinite
+            if( Float.isInfinite( _cellSize ) )
+            {
+                continue;
+            }
+
+            // Check all the pairs with the adjacent cells
+            int cx = unpackCellCoord( key, 2 );
+            int cy = unpackCellCoord( key, 1 );
+            int cz = unpackCellCoord( key, 0 );
+            for( int i = 0; i < _FORWARD_CELL_OFFSETS.length; i++ )
+            {
+                int[] offset = _FORWARD_CELL_OFFSETS[i];
+                List<Integer> adjacent = _cells.get( buildCellKey( cx + offset[0],
+                        cy + offset[1],
+                        cz + offset[2] ) );
+                if( null == adjacent )
+                {
+                    continue;
+                }
+                for( int j = 0; j < cellSize; j++ )
+                {
+                    int first = cell.get( j ).intValue();
+                    for( int k = 0; k < adjacent.size(); k++ )
+                    {
+                        checkPair( first, adjacent.get( k ).intValue() );
+                    }
+                }
+            }
+        }
+
+        // Put each neighbor list back in the order the agents were added
+        for( int i = 0; i < _agentCount; i++ )
+        {
+            if( 0 < _neighborCounts[i] )
+            {
+                Arrays.sort( _neighborSlots[i], 0, _neighborCounts[i] );
+            }
+        }
+
+        _neighborsCalculated = true;
+    }
+
+    /**
+     * Checks to see if two agents are within sensing distance of each other
+     * and, if so, makes them neighbors
+     *
+     * @param first The slot of the first agent
+     * @param second The slot of the second agent
+     */
+    private void checkPair( int first, int second )
+    {
+        if( _sensingDistanceSquared > distanceSquared( first, second ) )
+        {
+            addNeighbor( first, second );
+            addNeighbor( second, first );
+        }
+    }
+
+    /**
+     * Calculates the squared distance between two agents
+     *
+     * @param first The slot of the first agent
+     * @param second The slot of the second agent
+     * @return The squared distance
+     */
+    private float distanceSquared( int first, int second )
+    {
+        // Use the same precision as Vector3f.distanceSquared
+        double dx = _x[first] - _x[second];
+        double dy = _y[first] - _y[second];
+        double dz = _z[first] - _z[second];
+        return (float) (dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Returns a single coordinate of an agent's snapshot position
+     *
+     * @param slot The slot of the agent
+     * @param axis The axis (0 is x, 1 is y and 2 is z)
+     * @return The coordinate
+     */
+    private float coord( int slot, int axis )
+    {
+        float value = _z[slot];
+        if( 0 == axis )
+        {
+            value = _x[slot];
+        }
+        else if( 1 == axis )
+        {
+            value = _y[slot];
+        }
+        return value;
+    }
+
+    /**
+     * Builds the k-d tree over all the agents in the grid
+     */
+    private synchronized void buildTree()
+    {
+        // Another thread may have beaten us to it
+        if( _treeBuilt )
+        {
+            return;
+        }
+
+        for( int i = 0; i < _agentCount; i++ )
+        {
+            _treeSlots[i] = i;
+        }
+        buildTree( 0, _agentCount, 0 );
+        _treeBuilt = true;
+    }
+
+    /**
+     * Arranges a range of the tree slots into a k-d tree
+     *
+     * @param lo The first index of the range
+     * @param hi One past the last index of the range
+     * @param depth The depth of the node in the tree
+     */
+    private void buildTree( int lo, int hi, int depth )
+    {
+        if( _TREE_LEAF_SIZE >= (hi - lo) )
+        {
+            return;
+        }
+
+        // Put the median along this node's axis in the middle
+        int axis = depth % 3;
+        int mid = (lo + hi) >>> 1;
+        selectMedian( lo, hi - 1, mid, axis );
+        _treeAxes[mid] = (byte) axis;
+
+        // Build the children
+        buildTree( lo, mid, depth + 1 );
+        buildTree( mid + 1, hi, depth + 1 );
+    }
+
+    /**
+     * Partially sorts a range of the tree slots so the specified index holds
+     * the value it would have if the range were sorted along an axis
+     *
+     * @param lo The first index of the range
+     * @param hi The last index of the range
+     * @param target The index to select
+     * @param axis The axis
+     */
+    private void selectMedian( int lo, int hi, int target, int axis )
+    {
+        while( lo < hi )
+        {
+            // Partition around the middle value
+            float pivot = coord( _treeSlots[(lo + hi) >>> 1], axis );
+            int i = lo;
+            int j = hi;
+            while( i <= j )
+            {
+                while( coord( _treeSlots[i], axis ) < pivot )
+                {
+                    i++;
+                }
+                while( coord( _treeSlots[j], axis ) > pivot )
+                {
+                    j--;
+                }
+                if( i <= j )
+                {
+                    int tmp = _treeSlots[i];
+                    _treeSlots[i] = _treeSlots[j];
+                    _treeSlots[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            // Keep going on the side with the target
+            if( target <= j )
+            {
+                hi = j;
+            }
+            else if( target >= i )
+            {
+                lo = i;
+            }
+            else
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Searches a range of the k-d tree for the nearest neighbors of an agent
+     *
+     * @param slot The slot of the agent
+     * @param lo The first index of the range
+     * @param hi One past the last index of the range
+     * @param heap The nearest neighbors found so far
+     */
+    private void searchTree( int slot, int lo, int hi, NeighborHeap heap )
+    {
+        // Scan small nodes directly
+        if( _TREE_LEAF_SIZE >= (hi - lo) )
+        {
+            for( int i = lo; i < hi; i++ )
+            {
+                checkNearestCandidate( slot, _treeSlots[i], heap );
+            }
+            return;
+        }
+
+        // Check the node itself
+        int mid = (lo + hi) >>> 1;
+        int nodeSlot = _treeSlots[mid];
+        checkNearestCandidate( slot, nodeSlot, heap );
+
+        // Search the near side first
+        int axis = _treeAxes[mid];
+        float diff = coord( slot, axis ) - coord( nodeSlot, axis );
+        if( 0.0f > diff )
+        {
+            searchTree( slot, lo, mid, heap );
+        }
+        else
+        {
+            searchTree( slot, mid + 1, hi, heap );
+        }
+
+        // Only search the far side if it could hold something closer
+        float diffSquared = diff * diff;
+        if( (_sensingDistanceSquared > diffSquared)
+                && (!heap.isFull() || (heap.worstDistanceSquared() >= diffSquared)) )
+        {
+            if( 0.0f > diff )
+            {
+                searchTree( slot, mid + 1, hi, heap );
+            }
+            else
+            {
+                searchTree( slot, lo, mid, heap );
+            }
+        }
+    }
+
+    /**
+     * Offers an agent to the heap of nearest neighbors
+     *
+     * @param slot The slot of the sensing agent
+     * @param candidate The slot of the candidate neighbor
+     * @param heap The nearest neighbors found so far
+     */
+    private void checkNearestCandidate( int slot, int candidate, NeighborHeap heap )
+    {
+        if( slot != candidate )
+        {
+            float distanceSquared = distanceSquared( slot, candidate );
+            if( _sensingDistanceSquared > distanceSquared )
+            {
+                heap.offer( candidate, distanceSquared );
+            }
+        }
+    }
+
+    /**
+     * Adds a neighbor to an agent's neighbor array
+     *
+     * @param slot The slot of the agent
+     * @param neighbor The slot of the neighbor
+     */
+    private void addNeighbor( int slot, int neighbor )
+    {
+        int[] neighbors = _neighborSlots[slot];
+        int count = _neighborCounts[slot];
+        if( null == neighbors )
+        {
+            neighbors = new int[_INITIAL_NEIGHBOR_CAPACITY];
+            _neighborSlots[slot] = neighbors;
+        }
+        else if( neighbors.length == count )
+        {
+            neighbors = Arrays.copyOf( neighbors, count * 2 );
+            _neighborSlots[slot] = neighbors;
+        }
+        neighbors[count] = neighbor;
+        _neighborCounts[slot] = count + 1;
+    }
+
+    /**
+     * Returns the cell coordinate of a position coordinate
+     *
+     * @param coord The position coordinate
+     * @return The cell coordinate
+     */
+    private int toCell( float coord )
+    {
+        if( Float.isInfinite( _cellSize ) )
+        {
+            return 0;
+        }
+        return (int) Math.floor( coord / _cellSize );
+    }
+
+    /**
+     * Packs cell coordinates into a single key
+     *
+     * @param cx The x cell coordinate
+     * @param cy The y cell coordinate
+     * @param cz The z cell coordinate
+     * @return The cell key
+     */
+    private static long buildCellKey( int cx, int cy, int cz )
+    {
+        return ((cx & _CELL_COORD_MASK) << (2 * _CELL_COORD_BITS))
+                | ((cy & _CELL_COORD_MASK) << _CELL_COORD_BITS)
+                | (cz & _CELL_COORD_MASK);
+    }
+
+    /**
+     * Unpacks a single cell coordinate from a key
+     *
+     * @param key The cell key
+     * @param position The position of the coordinate in the key (0 is z)
+     * @return The cell coordinate
+     */
+    private static int unpackCellCoord( long key, int position )
+    {
+        long coord = (key >>> (position * _CELL_COORD_BITS)) & _CELL_COORD_MASK;
+
+        // Sign extend it
+        return (int) (coord << (64 - _CELL_COORD_BITS) >> (64 - _CELL_COORD_BITS));
+    }
+
+    /**
+     * Builds the half of the 26 adjacent cell offsets that are "after" the
+     * center cell
+     *
+     * @return The cell offsets
+     */
+    private static int[][] buildForwardCellOffsets()
+    {
+        List<int[]> offsets = new ArrayList<int[]>();
+        for( int dx = -1; dx <= 1; dx++ )
+        {
+            for( int dy = -1; dy <= 1; dy++ )
+            {
+                for( int dz = -1; dz <= 1; dz++ )
+                {
+                    if( (0 < dx)
+                            || ((0 == dx) && (0 < dy))
+                            || ((0 == dx) && (0 == dy) && (0 < dz)) )
+                    {
+                        offsets.add( new int[] { dx, dy, dz } );
+                    }
+                }
+            }
+        }
+        return offsets.toArray( new int[offsets.size()][] );
+    }
+
+
+    /**
+     * Bounded max-heap of the nearest neighbors found so far.  The root is
+     * the furthest neighbor.  Equal distances are ordered by slot.
+     */
+    private static class NeighborHeap
+    {
+        /** The slots of the neighbors */
+        private int[] _slots = null;
+
+        /** The squared distances of the neighbors */
+        private float[] _distances = null;
+
+        /** The number of neighbors in the heap */
+        private int _size = 0;
+
+        /**
+         * Builds this heap
+         *
+         * @param capacity The maximum number of neighbors
+         */
+        public NeighborHeap( int capacity )
+        {
+            int safeCapacity = Math.max( 0, capacity );
+            _slots = new int[safeCapacity];
+            _distances = new float[safeCapacity];
+        }
+
+        public int capacity()
+        {
+            return _slots.length;
+        }
+
+        public int size()
+        {
+            return _size;
+        }
+
+        public boolean isFull()
+        {
+            return _slots.length == _size;
+        }
+
+        public float worstDistanceSquared()
+        {
+            return _distances[0];
+        }
+
+        /**
+         * Adds a neighbor if there is room or it is closer than the furthest
+         * neighbor
+         *
+         * @param slot The slot of the neighbor
+         * @param distanceSquared The squared distance to the neighbor
+         */
+        public void offer( int slot, float distanceSquared )
+        {
+            if( !isFull() )
+            {
+                // Add it to the end and sift it up
+                int idx = _size++;
+                while( 0 < idx )
+                {
+                    int parent = (idx - 1) >>> 1;
+                    if( !isWorse( slot, distanceSquared,
+                            _slots[parent], _distances[parent] ) )
+                    {
+                        break;
+                    }
+                    _slots[idx] = _slots[parent];
+                    _distances[idx] = _distances[parent];
+                    idx = parent;
+                }
+                _slots[idx] = slot;
+                _distances[idx] = distanceSquared;
+            }
+            else if( isWorse( _slots[0], _distances[0], slot, distanceSquared ) )
+            {
+                // Replace the furthest neighbor
+                siftDown( slot, distanceSquared );
+            }
+        }
+
+        /**
+         * Removes the furthest neighbor
+         *
+         * @return The slot of the furthest neighbor
+         */
+        public int removeWorst()
+        {
+            int worst = _slots[0];
+            _size--;
+            if( 0 < _size )
+            {
+                siftDown( _slots[_size], _distances[_size] );
+            }
+            return worst;
+        }
+
+        /**
+         * Puts a neighbor at the root and sifts it down
+         *
+         * @param slot The slot of the neighbor
+         * @param distanceSquared The squared distance to the neighbor
+         */
+        private void siftDown( int slot, float distanceSquared )
+        {
+            int idx = 0;
+            while( true )
+            {
+                int child = 2 * idx + 1;
+                if( child >= _size )
+                {
+                    break;
+                }
+                if( (child + 1 < _size)
+                        && isWorse( _slots[child + 1], _distances[child + 1],
+                                _slots[child], _distances[child] ) )
+                {
+                    child++;
+                }
+                if( !isWorse( _slots[child], _distances[child],
+                        slot, distanceSquared ) )
+                {
+                    break;
+                }
+                _slots[idx] = _slots[child];
+                _distances[idx] = _distances[child];
+                idx = child;
+            }
+            _slots[idx] = slot;
+            _distances[idx] = distanceSquared;
+        }
+
+        /**
+         * Determines if the first neighbor is further than the second
+         */
+        private static boolean isWorse( int slot1,
+                float distance1,
+                int slot2,
+                float distance2 )
+        {
+            return (distance1 > distance2)
+                    || ((distance1 == distance2) && (slot1 > slot2));
+        }
+    }
+}
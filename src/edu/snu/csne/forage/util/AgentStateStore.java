@@ -0,0 +1,291 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+import com.jme3.math.Vector3f;
+
+import edu.snu.csne.forage.Agent;
+
+
+/**
+ * Dense structure-of-arrays store for the motion state of all the agents.
+ * Each agent is assigned an integer slot when it is added and its
+ * position, velocity and acceleration components live at that index in
+ * separate float arrays.  Loops over many agents can then scan the arrays
+ * linearly instead of chasing references to individual vectors.
+ *
+ * @author Brent Eskridge
+ */
+public class AgentStateStore
+{
+    /** The default initial capacity */
+    private static final int _DEFAULT_CAPACITY = 16;
+
+
+    /** The agents indexed by slot */
+    private Agent[] _agents = null;
+
+    /** The number of agents in the store */
+    private int _size = 0;
+
+    /** Position x components */
+    private float[] _posX = null;
+
+    /** Position y components */
+    private float[] _posY = null;
+
+    /** Position z components */
+    private float[] _posZ = null;
+
+    /** Velocity x components */
+    private float[] _velX = null;
+
+    /** Velocity y components */
+    private float[] _velY = null;
+
+    /** Velocity z components */
+    private float[] _velZ = null;
+
+    /** Acceleration x components */
+    private float[] _accX = null;
+
+    /** Acceleration y components */
+    private float[] _accY = null;
+
+    /** Acceleration z components */
+    private float[] _accZ = null;
+
+
+    /**
+     * Builds this store with a default capacity
+     */
+    public AgentStateStore()
+    {
+        this( _DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Builds this store
+     *
+     * @param capacity The initial number of agents the store can hold
+     */
+    public AgentStateStore( int capacity )
+    {
+        Validate.isTrue( 0 <= capacity, "Capacity may not be negative" );
+        _agents = new Agent[capacity];
+        _posX = new float[capacity];
+        _posY = new float[capacity];
+        _posZ = new float[capacity];
+        _velX = new float[capacity];
+        _velY = new float[capacity];
+        _velZ = new float[capacity];
+        _accX = new float[capacity];
+        _accY = new float[capacity];
+        _accZ = new float[capacity];
+    }
+
+    /**
+     * Adds an agent to the store
+     *
+     * @param agent The agent
+     * @param position The agent's initial position
+     * @param velocity The agent's initial velocity
+     * @return The agent's slot
+     */
+    public int add( Agent agent, Vector3f position, Vector3f velocity )
+    {
+        Validate.notNull( agent, "Agent may not be null" );
+        Validate.notNull( position, "Position may not be null" );
+        Validate.notNull( velocity, "Velocity may not be null" );
+
+        // Make sure we have room
+        if( _agents.length == _size )
+        {
+            grow();
+        }
+
+        // Store it
+        int slot = _size++;
+        _agents[slot] = agent;
+        setPosition( slot, position );
+        setVelocity( slot, velocity );
+
+        return slot;
+    }
+
+    /**
+     * Returns the number of agents in the store
+     *
+     * @return The number of agents
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the agent in the specified slot
+     *
+     * @param slot The slot
+     * @return The agent
+     */
+    public Agent getAgent( int slot )
+    {
+        return _agents[slot];
+    }
+
+    /**
+     * Copies an agent's position into the specified vector
+     *
+     * @param slot The agent's slot
+     * @param result The vector in which to store the position
+     * @return The result vector
+     */
+    public Vector3f loadPosition( int slot, Vector3f result )
+    {
+        return result.set( _posX[slot], _posY[slot], _posZ[slot] );
+    }
+
+    /**
+     * Sets an agent's position
+     *
+     * @param slot The agent's slot
+     * @param position The position
+     */
+    public void setPosition( int slot, Vector3f position )
+    {
+        _posX[slot] = position.x;
+        _posY[slot] = position.y;
+        _posZ[slot] = position.z;
+    }
+
+    /**
+     * Copies an agent's velocity into the specified vector
+     *
+     * @param slot The agent's slot
+     * @param result The vector in which to store the velocity
+     * @return The result vector
+     */
+    public Vector3f loadVelocity( int slot, Vector3f result )
+    {
+        return result.set( _velX[slot], _velY[slot], _velZ[slot] );
+    }
+
+    /**
+     * Sets an agent's velocity
+     *
+     * @param slot The agent's slot
+     * @param velocity The velocity
+     */
+    public void setVelocity( int slot, Vector3f velocity )
+    {
+        _velX[slot] = velocity.x;
+        _velY[slot] = velocity.y;
+        _velZ[slot] = velocity.z;
+    }
+
+    /**
+     * Copies an agent's acceleration into the specified vector
+     *
+     * @param slot The agent's slot
+     * @param result The vector in which to store the acceleration
+     * @return The result vector
+     */
+    public Vector3f loadAcceleration( int slot, Vector3f result )
+    {
+        return result.set( _accX[slot], _accY[slot], _accZ[slot] );
+    }
+
+    /**
+     * Sets an agent's acceleration
+     *
+     * @param slot The agent's slot
+     * @param acceleration The acceleration
+     */
+    public void setAcceleration( int slot, Vector3f acceleration )
+    {
+        _accX[slot] = acceleration.x;
+        _accY[slot] = acceleration.y;
+        _accZ[slot] = acceleration.z;
+    }
+
+    /**
+     * Calculates the squared distance between two agents using the same
+     * precision as <code>Vector3f.distanceSquared</code>
+     *
+     * @param first The first agent's slot
+     * @param second The second agent's slot
+     * @return The squared distance
+     */
+    public float distanceSquared( int first, int second )
+    {
+        double dx = _posX[first] - _posX[second];
+        double dy = _posY[first] - _posY[second];
+        double dz = _posZ[first] - _posZ[second];
+        return (float) (dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Copies the positions of all the agents into the specified arrays
+     *
+     * @param x The array for the x components
+     * @param y The array for the y components
+     * @param z The array for the z components
+     */
+    public void copyPositions( float[] x, float[] y, float[] z )
+    {
+        System.arraycopy( _posX, 0, x, 0, _size );
+        System.arraycopy( _posY, 0, y, 0, _size );
+        System.arraycopy( _posZ, 0, z, 0, _size );
+    }
+
+    /**
+     * Copies all the agents into the specified array in slot order
+     *
+     * @param agents The array for the agents
+     */
+    public void copyAgents( Agent[] agents )
+    {
+        System.arraycopy( _agents, 0, agents, 0, _size );
+    }
+
+    /**
+     * Doubles the capacity of the store
+     */
+    private void grow()
+    {
+        int capacity = Math.max( _DEFAULT_CAPACITY, 2 * _agents.length );
+        _agents = Arrays.copyOf( _agents, capacity );
+        _posX = Arrays.copyOf( _posX, capacity );
+        _posY = Arrays.copyOf( _posY, capacity );
+        _posZ = Arrays.copyOf( _posZ, capacity );
+        _velX = Arrays.copyOf( _velX, capacity );
+        _velY = Arrays.copyOf( _velY, capacity );
+        _velZ = Arrays.copyOf( _velZ, capacity );
+        _accX = Arrays.copyOf( _accX, capacity );
+        _accY = Arrays.copyOf( _accY, capacity );
+        _accZ = Arrays.copyOf( _accZ, capacity );
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+
+import com.jme3.math.Vector3f;
+
+import edu.snu.csne.forage.Agent;
+
+
+/**
+ * Fused kernel that calculates all the neighbor sums an agent needs in a
+ * single pass over its sensed neighbors.  Each neighbor's position is
+ * loaded once and the vector to it is used for the separation, cohesion
+ * and alignment sums as well as the per-team mean resultant vector and
+ * mean position sums.  The kernel only calculates sums and counts; the
+ * agent turns them into forces and means.
+ *
+ * @author Brent Eskridge
+ */
+public class NeighborKernel
+{
+    /** The default initial team capacity */
+    private static final int _DEFAULT_TEAM_CAPACITY = 4;
+
+
+    /** The min separation distance */
+    private final float _minSeparation;
+
+    /** The desired separation distance */
+    private final float _desiredSeparation;
+
+    /** The separation strength used for neighbors closer than the min */
+    private final float _maxSeparationStrength;
+
+    /** Sum of the separation vectors */
+    private final Vector3f _separationSum = new Vector3f();
+
+    /** The number of neighbors within the desired separation */
+    private int _separationCount = 0;
+
+    /** Sum of the vectors to all the teammates */
+    private final Vector3f _cohesionSum = new Vector3f();
+
+    /** Sum of the velocities of all the teammates */
+    private final Vector3f _alignmentSum = new Vector3f();
+
+    /** The number of teammates */
+    private int _teammateCount = 0;
+
+    /** The number of teams */
+    private int _teamCount = 0;
+
+    /** The number of members of each team */
+    private int[] _teamSizes = new int[_DEFAULT_TEAM_CAPACITY];
+
+    /** Sums of the normalized vectors to the members of each team */
+    private Vector3f[] _mrvSums = new Vector3f[0];
+
+    /** Sums of the positions of the members of each team */
+    private Vector3f[] _positionSums = new Vector3f[0];
+
+    /** The position of the agent running the kernel */
+    private final Vector3f _position = new Vector3f();
+
+    /** The position of the current neighbor */
+    private final Vector3f _neighborPosition = new Vector3f();
+
+    /** The vector to the current neighbor */
+    private final Vector3f _toNeighbor = new Vector3f();
+
+    /** Scratch vector for the derived quantities */
+    private final Vector3f _scratch = new Vector3f();
+
+
+    /**
+     * Builds this kernel
+     *
+     * @param minSeparation The min separation distance
+     * @param desiredSeparation The desired separation distance
+     * @param maxSeparationStrength The separation strength used for
+     *            neighbors closer than the min
+     */
+    public NeighborKernel( float minSeparation,
+            float desiredSeparation,
+            float maxSeparationStrength )
+    {
+        _minSeparation = minSeparation;
+        _desiredSeparation = desiredSeparation;
+        _maxSeparationStrength = maxSeparationStrength;
+        ensureTeamCapacity( _DEFAULT_TEAM_CAPACITY );
+    }
+
+    /**
+     * Calculates all the neighbor sums for an agent
+     *
+     * @param store The store holding the motion state of the agents
+     * @param slot The agent's slot
+     * @param teams The handles of the sensed teams
+     * @param teamMemberships The sensed neighbors of each team
+     * @param teamCount The number of sensed teams
+     * @param teamIdx The agent's team handle
+     */
+    public void calculate( AgentStateStore store,
+            int slot,
+            int[] teams,
+            List<List<Agent>> teamMemberships,
+            int teamCount,
+            int teamIdx )
+    {
+        Validate.notNull( store, "State store may not be null" );
+        Validate.notNull( teams, "Teams may not be null" );
+        Validate.notNull( teamMemberships, "Team memberships may not be null" );
+
+        // Reset the sums
+        _separationSum.set( 0.0f, 0.0f, 0.0f );
+        _separationCount = 0;
+        _cohesionSum.set( 0.0f, 0.0f, 0.0f );
+        _alignmentSum.set( 0.0f, 0.0f, 0.0f );
+        _teammateCount = 0;
+        _teamCount = 0;
+        ensureTeamCapacity( teamCount );
+
+        store.loadPosition( slot, _position );
+        float minMaxSeparationDiff = _desiredSeparation - _minSeparation;
+
+        // Process every team
+        for( int i = 0; i < teamCount; i++ )
+        {
+            List<Agent> members = teamMemberships.get( i );
+            boolean teammates = (teamIdx == teams[i]);
+
+            _teamCount++;
+            _teamSizes[i] = members.size();
+            Vector3f mrvSum = _mrvSums[i].set( 0.0f, 0.0f, 0.0f );
+            Vector3f positionSum = _positionSums[i].set( 0.0f, 0.0f, 0.0f );
+
+            // Process every member of the team
+            Iterator<Agent> memberIter = members.iterator();
+            while( memberIter.hasNext() )
+            {
+                int neighborSlot = memberIter.next().getSlot();
+                store.loadPosition( neighborSlot, _neighborPosition );
+                positionSum.addLocal( _neighborPosition );
+                if( slot == neighborSlot )
+                {
+                    continue;
+                }
+
+                // Get the vector to the neighbor and its length
+                _toNeighbor.set( _neighborPosition ).subtractLocal( _position );
+                float distance = _toNeighbor.length();
+
+                // Add the direction to the team's resultant vector
+                mrvSum.addLocal( _scratch.set( _toNeighbor ).normalizeLocal() );
+
+                // Is the distance within the desired separation?
+                if( _desiredSeparation > distance )
+                {
+                    /* There is a separation force that uses the distance to
+                     * the agent.  Since we don't want to be closer than the
+                     * minimum, anything closer is at maximum strength.
+                     */
+                    float separationStrength = (distance - _minSeparation)
+                            / minMaxSeparationDiff;
+                    if( separationStrength <= 0.0f )
+                    {
+                        separationStrength = _maxSeparationStrength;
+                    }
+                    _scratch.set( _toNeighbor ).negateLocal().normalizeLocal();
+                    _scratch.divideLocal( separationStrength );
+                    _separationSum.addLocal( _scratch );
+                    _separationCount++;
+                }
+
+                // Teammates add to the cohesion and alignment
+                if( teammates )
+                {
+                    _cohesionSum.addLocal( _toNeighbor );
+                    _alignmentSum.addLocal( store.loadVelocity( neighborSlot,
+                            _scratch ) );
+                    _teammateCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the separation vectors
+     *
+     * @param result The vector in which to store the sum
+     * @return The result vector
+     */
+    public Vector3f loadSeparationSum( Vector3f result )
+    {
+        return result.set( _separationSum );
+    }
+
+    /**
+     * Returns the number of neighbors within the desired separation
+     *
+     * @return The number of neighbors
+     */
+    public int getSeparationCount()
+    {
+        return _separationCount;
+    }
+
+    /**
+     * Returns the sum of the vectors to all the teammates
+     *
+     * @param result The vector in which to store the sum
+     * @return The result vector
+     */
+    public Vector3f loadCohesionSum( Vector3f result )
+    {
+        return result.set( _cohesionSum );
+    }
+
+    /**
+     * Returns the sum of the velocities of all the teammates
+     *
+     * @param result The vector in which to store the sum
+     * @return The result vector
+     */
+    public Vector3f loadAlignmentSum( Vector3f result )
+    {
+        return result.set( _alignmentSum );
+    }
+
+    /**
+     * Returns the number of teammates
+     *
+     * @return The number of teammates
+     */
+    public int getTeammateCount()
+    {
+        return _teammateCount;
+    }
+
+    /**
+     * Returns the number of teams processed
+     *
+     * @return The number of teams
+     */
+    public int getTeamCount()
+    {
+        return _teamCount;
+    }
+
+    /**
+     * Returns the number of members of the specified team
+     *
+     * @param teamIdx The position of the team in the processed teams
+     * @return The number of members
+     */
+    public int getTeamSize( int teamIdx )
+    {
+        return _teamSizes[teamIdx];
+    }
+
+    /**
+     * Returns the sum of the normalized vectors to the members of the
+     * specified team
+     *
+     * @param teamIdx The position of the team in the processed teams
+     * @param result The vector in which to store the sum
+     * @return The result vector
+     */
+    public Vector3f loadMRVSum( int teamIdx, Vector3f result )
+    {
+        return result.set( _mrvSums[teamIdx] );
+    }
+
+    /**
+     * Returns the sum of the positions of the members of the specified team
+     *
+     * @param teamIdx The position of the team in the processed teams
+     * @param result The vector in which to store the sum
+     * @return The result vector
+     */
+    public Vector3f loadPositionSum( int teamIdx, Vector3f result )
+    {
+        return result.set( _positionSums[teamIdx] );
+    }
+
+    /**
+     * Makes sure there is room for the specified number of teams
+     *
+     * @param capacity The number of teams
+     */
+    private void ensureTeamCapacity( int capacity )
+    {
+        if( _mrvSums.length >= capacity )
+        {
+            return;
+        }
+
+        int oldCapacity = _mrvSums.length;
+        int newCapacity = Math.max( capacity, 2 * oldCapacity );
+        _teamSizes = Arrays.copyOf( _teamSizes, newCapacity );
+        _mrvSums = Arrays.copyOf( _mrvSums, newCapacity );
+        _positionSums = Arrays.copyOf( _positionSums, newCapacity );
+        for( int i = oldCapacity; i < newCapacity; i++ )
+        {
+            _mrvSums[i] = new Vector3f();
+            _positionSums[i] = new Vector3f();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+
+/**
+ * Step-scoped schedule of the teams headed towards each patch.  For every
+ * patch, the projected team arrival times are kept in ascending order
+ * along with the cumulative number of agents that will have arrived by
+ * each of those times.
+ *
+ * @author Brent Eskridge
+ */
+public class PatchArrivalSchedule
+{
+    /** The default initial number of arrivals per patch */
+    private static final int _DEFAULT_ARRIVAL_CAPACITY = 4;
+
+
+    /** The number of patches in the schedule */
+    private int _patchCount = 0;
+
+    /** The number of team arrivals at each patch */
+    private int[] _arrivalCounts = new int[0];
+
+    /** The team arrival times at each patch */
+    private int[][] _arrivalTimes = new int[0][];
+
+    /** The team sizes at each patch, cumulative once the schedule is sorted */
+    private int[][] _cumulativeTeamSizes = new int[0][];
+
+
+    /**
+     * Clears the schedule and makes room for the specified number of patches
+     *
+     * @param patchCount The number of patches
+     */
+    public void reset( int patchCount )
+    {
+        Validate.isTrue( 0 <= patchCount, "Patch count may not be negative" );
+
+        // Make sure we have room
+        if( _arrivalCounts.length < patchCount )
+        {
+            int oldCapacity = _arrivalCounts.length;
+            _arrivalCounts = Arrays.copyOf( _arrivalCounts, patchCount );
+            _arrivalTimes = Arrays.copyOf( _arrivalTimes, patchCount );
+            _cumulativeTeamSizes = Arrays.copyOf( _cumulativeTeamSizes,
+                    patchCount );
+            for( int i = oldCapacity; i < patchCount; i++ )
+            {
+                _arrivalTimes[i] = new int[_DEFAULT_ARRIVAL_CAPACITY];
+                _cumulativeTeamSizes[i] = new int[_DEFAULT_ARRIVAL_CAPACITY];
+            }
+        }
+
+        _patchCount = patchCount;
+        Arrays.fill( _arrivalCounts, 0, patchCount, 0 );
+    }
+
+    /**
+     * Adds a team arrival at a patch
+     *
+     * @param patchIdx The patch's index
+     * @param arrivalTime The team's projected arrival time
+     * @param teamSize The number of agents on the team
+     */
+    public void addArrival( int patchIdx, int arrivalTime, int teamSize )
+    {
+        Validate.isTrue( (0 <= patchIdx) && (patchIdx < _patchCount),
+                "Invalid patch index [" + patchIdx + "]" );
+
+        // Make sure we have room
+        int count = _arrivalCounts[patchIdx];
+        if( _arrivalTimes[patchIdx].length == count )
+        {
+            _arrivalTimes[patchIdx] = Arrays.copyOf( _arrivalTimes[patchIdx],
+                    2 * count );
+            _cumulativeTeamSizes[patchIdx] = Arrays.copyOf(
+                    _cumulativeTeamSizes[patchIdx],
+                    2 * count );
+        }
+
+        // Insert it so the arrival times stay sorted
+        int[] times = _arrivalTimes[patchIdx];
+        int[] sizes = _cumulativeTeamSizes[patchIdx];
+        int i = count;
+        while( (0 < i) && (times[i - 1] > arrivalTime) )
+        {
+            times[i] = times[i - 1];
+            sizes[i] = sizes[i - 1];
+            i--;
+        }
+        times[i] = arrivalTime;
+        sizes[i] = teamSize;
+        _arrivalCounts[patchIdx] = count + 1;
+    }
+
+    /**
+     * Converts the team sizes into cumulative agent counts once all the
+     * arrivals have been added
+     */
+    public void finish()
+    {
+        for( int i = 0; i < _patchCount; i++ )
+        {
+            int[] sizes = _cumulativeTeamSizes[i];
+            for( int j = 1; j < _arrivalCounts[i]; j++ )
+            {
+                sizes[j] += sizes[j - 1];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of team arrivals at a patch
+     *
+     * @param patchIdx The patch's index
+     * @return The number of team arrivals
+     */
+    public int getArrivalCount( int patchIdx )
+    {
+        if( patchIdx >= _patchCount )
+        {
+            return 0;
+        }
+        return _arrivalCounts[patchIdx];
+    }
+
+    /**
+     * Returns the specified team arrival time at a patch
+     *
+     * @param patchIdx The patch's index
+     * @param arrivalIdx The position of the arrival in the sorted schedule
+     * @return The arrival time
+     */
+    public int getArrivalTime( int patchIdx, int arrivalIdx )
+    {
+        return _arrivalTimes[patchIdx][arrivalIdx];
+    }
+
+    /**
+     * Returns the number of agents that will have arrived at a patch once
+     * the specified team arrives
+     *
+     * @param patchIdx The patch's index
+     * @param arrivalIdx The position of the arrival in the sorted schedule
+     * @return The cumulative number of agents
+     */
+    public int getCumulativeTeamSize( int patchIdx, int arrivalIdx )
+    {
+        return _cumulativeTeamSizes[patchIdx][arrivalIdx];
+    }
+}
@@ -20,10 +20,12 @@
 package edu.snu.csne.forage.util;
 
 // Imports
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
@@ -32,10 +34,8 @@ import org.apache.logging.log4j.Logger;
 import com.jme3.math.Vector3f;
 
 import edu.snu.csne.forage.Agent;
-import edu.snu.csne.forage.AgentTeam;
 import edu.snu.csne.forage.Patch;
 import edu.snu.csne.forage.SimulationState;
-import edu.snu.csne.forage.decision.Decision;
 import edu.snu.csne.util.MiscUtils;
 
 
@@ -46,43 +46,65 @@ import edu.snu.csne.util.MiscUtils;
  */
 public class PatchDepletionCalculator
 {
-    public static class PatchDepletionData
+    /**
+     * Key for the patch values calculated during a single simulation step.
+     * The only agent-specific inputs to a patch value are the agent's
+     * arrival time and consumption parameters, so agents that share them
+     * share the value.
+     */
+    private static final class PatchValueKey
     {
-        public final float resourcesGatheredAgent;
-        public final float totalResourcesGatheredAgent;
-        public final float resourcesGatheredGroup;
-        public final float totalResourcesGatheredGroup;
-        public final int timesteps;
-        public final int agentsPresent;
-        
-        public PatchDepletionData( float resourcesGatheredAgent,
-                float totalResourcesGatheredAgent,
-                float resourcesGatheredGroup,
-                float totalResourcesGatheredGroup,
-                int timesteps,
-                int agentsPresent)
+        private final int _patchIdx;
+        private final int _arrivalTime;
+        private final int _consumptionRateBits;
+        private final int _foragingAreaBits;
+
+        PatchValueKey( int patchIdx,
+                int arrivalTime,
+                float consumptionRate,
+                float foragingArea )
         {
-            this.resourcesGatheredAgent = resourcesGatheredAgent;
-            this.totalResourcesGatheredAgent = totalResourcesGatheredAgent;
-            this.resourcesGatheredGroup = resourcesGatheredGroup;
-            this.totalResourcesGatheredGroup = totalResourcesGatheredGroup;
-            this.timesteps = timesteps;
-            this.agentsPresent = agentsPresent;
+            _patchIdx = patchIdx;
+            _arrivalTime = arrivalTime;
+            _consumptionRateBits = Float.floatToIntBits( consumptionRate );
+            _foragingAreaBits = Float.floatToIntBits( foragingArea );
         }
-    }
-    
-    public static class PatchArrivalTime
-    {
-        public final String teamID;
-        public final int arrivalTime;
-        
-        public PatchArrivalTime( String teamID, int arrivalTime )
+
+        @Override
+        public int hashCode()
         {
-            this.teamID = teamID;
-            this.arrivalTime = arrivalTime;
+            int hash = _patchIdx;
+            hash = 31 * hash + _arrivalTime;
+            hash = 31 * hash + _consumptionRateBits;
+            hash = 31 * hash + _foragingAreaBits;
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if( this == obj )
+            {
+                return true;
+            }
+            if( !(obj instanceof PatchValueKey) )
+            {
+                return false;
+            }
+            PatchValueKey other = (PatchValueKey) obj;
+            return (_patchIdx == other._patchIdx)
+                    && (_arrivalTime == other._arrivalTime)
+                    && (_consumptionRateBits == other._consumptionRateBits)
+                    && (_foragingAreaBits == other._foragingAreaBits);
         }
     }
     
+    /** Index of the per-agent resources in a depletion result */
+    static final int _PER_AGENT_IDX = 0;
+    
+    /** Index of the total resources in a depletion result */
+    static final int _TOTAL_IDX = 1;
+    
     /** Our logger */
     private static final Logger _LOG = LogManager.getLogger(
             PatchDepletionCalculator.class.getName() );
@@ -94,6 +116,31 @@ public class PatchDepletionCalculator
     /** Property key for the flag to enforce patch minimums */
     private static final String _ENFORCE_PATCH_MIN_AGENTS_KEY =
             "enforce-patch-minimum-agents";
+    
+    /** Property key for the flag to stop depletion projections early */
+    private static final String _EARLY_EXIT_KEY =
+            "patch-depletion-early-exit";
+    
+    /** Safety factor on the bound of the resources foraged in later timesteps */
+    private static final double _TAIL_BOUND_SCALE = 2.0;
+    
+    /** Property key for the flag to use tabulated patch depletion */
+    private static final String _TABULATE_DEPLETION_KEY =
+            "tabulate-patch-depletion";
+    
+    /** Property key for the initial resource steps in a depletion table */
+    private static final String _DEPLETION_TABLE_STEPS_KEY =
+            "depletion-table-resource-steps";
+    
+    /** Property key for the max relative error of a depletion table */
+    private static final String _DEPLETION_TABLE_MAX_ERROR_KEY =
+            "depletion-table-max-error";
+    
+    /** The default initial resource steps in a depletion table */
+    private static final int _DEFAULT_DEPLETION_TABLE_STEPS = 256;
+    
+    /** The default max relative error of a depletion table */
+    private static final float _DEFAULT_DEPLETION_TABLE_MAX_ERROR = 0.001f;
 
     
     /** The simulation state */
@@ -108,6 +155,38 @@ public class PatchDepletionCalculator
     /** Flag to enforce patch minimum agent counts */
     private boolean _enforcePatchMinimumAgents = false;
     
+    /** Flag to stop depletion projections once they can't change */
+    private boolean _earlyExit = true;
+    
+    /** Flag to use tabulated patch depletion */
+    private boolean _tabulateDepletion = false;
+    
+    /** The initial resource steps in a depletion table */
+    private int _depletionTableSteps = _DEFAULT_DEPLETION_TABLE_STEPS;
+    
+    /** The max relative error of a depletion table */
+    private float _depletionTableMaxError = _DEFAULT_DEPLETION_TABLE_MAX_ERROR;
+    
+    /** The depletion tables indexed by patch index */
+    private PatchDepletionTable[] _depletionTables = new PatchDepletionTable[0];
+    
+    /** Patch values calculated during the current simulation step */
+    private final ConcurrentMap<PatchValueKey, PatchValue> _stepPatchValues =
+            new ConcurrentHashMap<PatchValueKey, PatchValue>();
+    
+    /** The team arrivals at each patch during the current simulation step */
+    private final PatchArrivalSchedule _arrivalSchedule =
+            new PatchArrivalSchedule();
+    
+    /** The number of patch values found in the step cache */
+    private final AtomicLong _valueCacheHits = new AtomicLong();
+    
+    /** The number of patch values that had to be calculated */
+    private final AtomicLong _valueCacheMisses = new AtomicLong();
+    
+    /** The number of timesteps projected while calculating patch values */
+    private final AtomicLong _projectedTimesteps = new AtomicLong();
+    
     
     /**
      * Initializes this patch value calculator
@@ -119,9 +198,19 @@ public class PatchDepletionCalculator
         // Save the simulation state
         _simState = simState;
         
-        // Get the properties
-        Properties props = simState.getProps();
+        // Load the settings
+        initialize( simState.getProps() );
+    }
 
+    /**
+     * Initializes the settings of this patch value calculator without a
+     * simulation.  Only patch values for an explicit arrival schedule can be
+     * calculated.
+     *
+     * @param props The configuration properties
+     */
+    void initialize( Properties props )
+    {
         // Load the max timesteps that patch depletion is calculated
         _maxDepletionTimesteps = MiscUtils.loadNonEmptyIntegerProperty( props,
                 _MAX_DEPLETION_TIMESTEPS_KEY,
@@ -134,6 +223,104 @@ public class PatchDepletionCalculator
         _LOG.debug( "Enforcing patch minimum agent count ["
                 + _enforcePatchMinimumAgents
                 + "]" );
+
+        // Load the flag that signals if projections may stop early
+        _earlyExit = MiscUtils.loadOptionalBooleanProperty( props,
+                _EARLY_EXIT_KEY,
+                true );
+
+        // Load the settings for tabulated patch depletion
+        _tabulateDepletion = MiscUtils.loadOptionalBooleanProperty( props,
+                _TABULATE_DEPLETION_KEY,
+                false );
+        _depletionTableSteps = MiscUtils.loadOptionalIntegerProperty( props,
+                _DEPLETION_TABLE_STEPS_KEY,
+                _DEFAULT_DEPLETION_TABLE_STEPS );
+        Validate.isTrue( 0 < _depletionTableSteps,
+                "Depletion table resource steps must be positive" );
+        _depletionTableMaxError = MiscUtils.loadOptionalFloatProperty( props,
+                _DEPLETION_TABLE_MAX_ERROR_KEY,
+                _DEFAULT_DEPLETION_TABLE_MAX_ERROR );
+        Validate.isTrue( 0.0f <= _depletionTableMaxError,
+                "Depletion table max error may not be negative" );
+        _LOG.debug( "Tabulating patch depletion ["
+                + _tabulateDepletion
+                + "] steps=["
+                + _depletionTableSteps
+                + "] maxError=["
+                + _depletionTableMaxError
+                + "]" );
+        _depletionTables = new PatchDepletionTable[0];
+    }
+
+    /**
+     * Gets the depletion tables for all the patches if tabulated depletion
+     * is enabled.  The patches and agents must already exist.  The tables
+     * are built for the foraging parameters shared by all the agents, so
+     * nothing is tabulated if the agents differ.  Tables are shared through
+     * the {@link PatchDepletionTableCache}, so they are only tabulated once
+     * per patch and agent configuration.
+     */
+    public void buildDepletionTables()
+    {
+        _depletionTables = new PatchDepletionTable[0];
+        if( !_tabulateDepletion )
+        {
+            return;
+        }
+
+        // Make sure all the agents forage the same way
+        Collection<Agent> agents = _simState.getAllAgents().values();
+        if( agents.isEmpty() )
+        {
+            return;
+        }
+        Iterator<Agent> agentIter = agents.iterator();
+        Agent first = agentIter.next();
+        float foragingAreaMax = first.getMaxForagingArea();
+        float consumptionRateMax = first.getResourceConsumptionRate();
+        while( agentIter.hasNext() )
+        {
+            Agent agent = agentIter.next();
+            if( (foragingAreaMax != agent.getMaxForagingArea())
+                    || (consumptionRateMax != agent.getResourceConsumptionRate()) )
+            {
+                _LOG.warn( "Agents have different foraging parameters, "
+                        + "patch depletion will not be tabulated" );
+                return;
+            }
+        }
+
+        /* Get a table for each patch, only tabulating the ones whose
+         * configuration hasn't been seen yet */
+        Collection<Patch> patches = _simState.getAllPatches().values();
+        _depletionTables = new PatchDepletionTable[patches.size()];
+        Iterator<Patch> patchIter = patches.iterator();
+        while( patchIter.hasNext() )
+        {
+            Patch patch = patchIter.next();
+            _depletionTables[patch.getIndex()] = PatchDepletionTableCache.getTable(
+                    this,
+                    patch.getArea(),
+                    patch.getMinAgentForageCount(),
+                    foragingAreaMax,
+                    consumptionRateMax,
+                    patch.getRemainingResources(),
+                    agents.size(),
+                    _depletionTableSteps,
+                    _depletionTableMaxError );
+        }
+    }
+
+    /**
+     * Determines if patch minimum agent counts are enforced
+     *
+     * @return <code>true</code> if they are enforced, otherwise
+     *         <code>false</code>
+     */
+    public boolean isEnforcingPatchMinimumAgents()
+    {
+        return _enforcePatchMinimumAgents;
     }
 
     /**
@@ -144,6 +331,137 @@ public class PatchDepletionCalculator
      * @return The value of the patch
      */
     public PatchValue calculatePatchValue( Patch patch, Agent agent )
+    {
+        // Calculate the agent's arrival time at the patch
+        Vector3f toPatch = patch.getPosition().subtract( agent.getPosition() );
+        float distance = toPatch.length() - patch.getRadius();
+        int agentArrivalTime = (int) Math.ceil( distance /
+                (agent.getMaxSpeed() * _avgSpeedPercentage ) );
+        float consumptionRateMax = agent.getResourceConsumptionRate();
+        float foragingAreaMax = agent.getMaxForagingArea();
+
+        // Has it already been calculated this step?
+        PatchValueKey key = new PatchValueKey( patch.getIndex(),
+                agentArrivalTime,
+                consumptionRateMax,
+                foragingAreaMax );
+        PatchValue patchValue = _stepPatchValues.get( key );
+        if( null != patchValue )
+        {
+            _valueCacheHits.incrementAndGet();
+            return patchValue;
+        }
+
+        // Nope, calculate it
+        _valueCacheMisses.incrementAndGet();
+        patchValue = calculatePatchValue( patch,
+                agentArrivalTime,
+                consumptionRateMax,
+                foragingAreaMax );
+        PatchValue existing = _stepPatchValues.putIfAbsent( key, patchValue );
+        if( null != existing )
+        {
+            // Another agent beat us to it, so share theirs
+            patchValue = existing;
+        }
+        
+        return patchValue;
+    }
+
+    /**
+     * Prepares for a new simulation step by clearing the patch values
+     * calculated during the previous step and building the schedule of team
+     * arrivals at each patch.  Patch resources are only foraged at the end
+     * of a step, so everything calculated here stays valid for the step.
+     */
+    public void prepareStep()
+    {
+        _stepPatchValues.clear();
+        buildArrivalSchedule();
+    }
+
+    /**
+     * Resets the step cache hit and miss counts so they only cover the
+     * current simulation run
+     */
+    public void resetValueCacheStats()
+    {
+        _valueCacheHits.set( 0L );
+        _valueCacheMisses.set( 0L );
+        _projectedTimesteps.set( 0L );
+    }
+
+    /**
+     * Returns the number of patch values found in the step cache
+     *
+     * @return The number of cache hits
+     */
+    public long getValueCacheHits()
+    {
+        return _valueCacheHits.get();
+    }
+
+    /**
+     * Returns the number of patch values that had to be calculated
+     *
+     * @return The number of cache misses
+     */
+    public long getValueCacheMisses()
+    {
+        return _valueCacheMisses.get();
+    }
+
+    /**
+     * Returns the number of timesteps projected while calculating patch
+     * values
+     *
+     * @return The number of projected timesteps
+     */
+    public long getProjectedTimesteps()
+    {
+        return _projectedTimesteps.get();
+    }
+
+    /**
+     * Returns the schedule of team arrivals at each patch
+     *
+     * @return The arrival schedule
+     */
+    PatchArrivalSchedule getArrivalSchedule()
+    {
+        return _arrivalSchedule;
+    }
+
+    /**
+     * Returns the fraction of patch value requests found in the step cache
+     *
+     * @return The cache hit rate
+     */
+    public float getValueCacheHitRate()
+    {
+        long hits = _valueCacheHits.get();
+        long total = hits + _valueCacheMisses.get();
+        if( 0 == total )
+        {
+            return 0.0f;
+        }
+        return hits / (float) total;
+    }
+
+    /**
+     * Calculate the value of a patch for an agent with the given arrival
+     * time and consumption parameters
+     *
+     * @param patch The patch
+     * @param agentArrivalTime The agent's arrival time at the patch
+     * @param consumptionRateMax The agent's resource consumption rate
+     * @param foragingAreaMax The agent's max foraging area
+     * @return The value of the patch
+     */
+    PatchValue calculatePatchValue( Patch patch,
+            int agentArrivalTime,
+            float consumptionRateMax,
+            float foragingAreaMax )
     {
         // Create some handy variables
         int giveUpTimeInd = 0;
@@ -153,60 +471,74 @@ public class PatchDepletionCalculator
         float indResources = 0.0f;
         float groupResources = 0.0f;
         
-        // Calculate the agent's arrival time at the patch
-        Vector3f toPatch = patch.getPosition().subtract( agent.getPosition() );
-        float distance = toPatch.length() - patch.getRadius();
-        int agentArrivalTime = (int) Math.ceil( distance /
-                (agent.getMaxSpeed() * _avgSpeedPercentage ) );
-        
         // Get the arrival times of teams
-        List<PatchArrivalTime> arrivalTimes = findTeamArrivalsAtPatch( patch );
+        int patchIdx = patch.getIndex();
+        int arrivalCount = _arrivalSchedule.getArrivalCount( patchIdx );
         
-        // Build an array of the number of agents at the patch at each timestep
-        int[] agentCounts = new int[_maxDepletionTimesteps];
-        for( int i = 0; i < agentCounts.length; i++ )
+        // Project the patch depletion
+        float remainingResources = patch.getRemainingResources();
+        float totalResourcesForaged = 0.0f;
+        float patchArea = patch.getArea();
+        int minAgentCount = patch.getMinAgentForageCount();
+        float[] depletion = new float[2];
+        PatchDepletionTable table = null;
+        if( patchIdx < _depletionTables.length )
+        {
+            table = _depletionTables[patchIdx];
+        }
+        int arrivedTeams = 0;
+        int arrivedTeamAgents = 0;
+        int projectedTimesteps = 0;
+        for( int i = 0; i < _maxDepletionTimesteps; i++ )
         {
-            // Is the agent projected to arrive now?
+            projectedTimesteps++;
+            
+            /* The number of agents at the patch is a prefix sum of the
+             * arrivals, so advance past every team that has arrived by now */
+            while( (arrivedTeams < arrivalCount)
+                    && (_arrivalSchedule.getArrivalTime( patchIdx,
+                            arrivedTeams ) <= i) )
+            {
+                arrivedTeamAgents = _arrivalSchedule.getCumulativeTeamSize(
+                        patchIdx,
+                        arrivedTeams );
+                arrivedTeams++;
+            }
+            int agentCount = arrivedTeamAgents;
+            
+            // Is the agent projected to be there by now?
             if( agentArrivalTime <= i )
             {
-                agentCounts[i]++;
+                agentCount++;
             }
             
-            // Are any of the teams projected to arrive now?
-            for( int j = 0; j < arrivalTimes.size(); j++ )
+            // Use the depletion table if it covers this timestep
+            if( (null != table)
+                    && table.covers( remainingResources,
+                            agentCount,
+                            foragingAreaMax,
+                            consumptionRateMax ) )
             {
-                PatchArrivalTime current = arrivalTimes.get( j );
-                if( current.arrivalTime <= i )
-                {
-                    // Yup
-                    AgentTeam team = _simState.getTeam( current.teamID, false );
-                    agentCounts[i] += team.getSize();
-                }
+                table.lookup( remainingResources, agentCount, depletion );
             }
-        }
-        
-        // Project the patch depletion
-        PatchDepletionData[] depletionData = new PatchDepletionData[ _maxDepletionTimesteps ];
-        float startResources = patch.getRemainingResources();
-        float remainingResources = startResources;
-        float totalResourcesForaged = 0.0f;
-        float patchArea = patch.getArea();
-        float consumptionRateMax = agent.getResourceConsumptionRate();
-        float foragingAreaMax = agent.getMaxForagingArea();
-        for( int i = 0; i < _maxDepletionTimesteps; i++ )
-        {
-            PatchDepletion tempData = calculatePatchDepletion( patchArea,
-                    remainingResources,
-                    agentCounts[i],
-                    patch.getMinAgentForageCount(),
-                    foragingAreaMax,
-                    consumptionRateMax );
+            else
+            {
+                calculatePatchDepletion( patchArea,
+                        remainingResources,
+                        agentCount,
+                        minAgentCount,
+                        foragingAreaMax,
+                        consumptionRateMax,
+                        depletion );
+            }
+            float perAgentResources = depletion[_PER_AGENT_IDX];
+            float totalResources = depletion[_TOTAL_IDX];
             
             // Update the totals
-            remainingResources -= tempData.getTotalResources();
-            totalResourcesForaged += tempData.getTotalResources();
-            indResources += tempData.getPerAgentResources();
-            groupResources += tempData.getTotalResources();
+            remainingResources -= totalResources;
+            totalResourcesForaged += totalResources;
+            indResources += perAgentResources;
+            groupResources += totalResources;
             
             // Compute the slope, but only if we are past the first timestep
             if( i > 0 )
@@ -231,53 +563,197 @@ public class PatchDepletionCalculator
                     giveUpSlopeGroup = currentSlopeGroup;
                     giveUpTimeGroup = i;
                 }
+                
+                /* Once nobody else can arrive, stop if nothing was foraged
+                 * (every later timestep repeats this one) or if nothing
+                 * foraged later can change the totals.  Either way the
+                 * slopes can only shrink, so neither give up time can
+                 * change either. */
+                if( _earlyExit
+                        && isAgentCountSaturated( i,
+                                agentArrivalTime,
+                                patchIdx,
+                                arrivedTeams,
+                                arrivalCount ) )
+                {
+                    if( (0.0f == totalResources) && (0.0f == perAgentResources) )
+                    {
+                        break;
+                    }
+                    if( (null == table)
+                            && isDepletionNegligible( patchArea,
+                                    remainingResources,
+                                    agentCount,
+                                    foragingAreaMax,
+                                    indResources,
+                                    groupResources,
+                                    totalResourcesForaged ) )
+                    {
+                        break;
+                    }
+                }
             }
         }
+        _projectedTimesteps.addAndGet( projectedTimesteps );
         
         PatchValue patchValue = new PatchValue( giveUpTimeInd,
                 giveUpSlopeInd,
                 giveUpTimeGroup,
                 giveUpSlopeGroup,
                 indResources,
-                groupResources,
-                depletionData );
+                groupResources );
         
 //        _LOG.warn( "Patch [" + patch.getID() + "] resources=[" + patch.getRemainingResources() + "] - " + patchValue );
         
         return patchValue;
     }
 
+    /**
+     * Determines if the number of agents at a patch can no longer change
+     * during the projection
+     *
+     * @param timestep The current timestep of the projection
+     * @param agentArrivalTime The agent's arrival time at the patch
+     * @param patchIdx The patch's index
+     * @param arrivedTeams The number of teams that have already arrived
+     * @param arrivalCount The number of teams headed to the patch
+     * @return <code>true</code> if no more agents will arrive, otherwise
+     *         <code>false</code>
+     */
+    private boolean isAgentCountSaturated( int timestep,
+            int agentArrivalTime,
+            int patchIdx,
+            int arrivedTeams,
+            int arrivalCount )
+    {
+        // Is the agent still on its way?
+        if( (timestep < agentArrivalTime)
+                && (agentArrivalTime < _maxDepletionTimesteps) )
+        {
+            return false;
+        }
+        
+        // Are any teams still on their way?
+        return (arrivedTeams == arrivalCount)
+                || (_arrivalSchedule.getArrivalTime( patchIdx, arrivedTeams )
+                        >= _maxDepletionTimesteps);
+    }
+
+    /**
+     * Determines if the resources foraged in all the remaining timesteps of
+     * a projection are too small to change its totals.  The number of agents
+     * must no longer change and the resources must be calculated exactly.
+     * The remaining resources then never grow in magnitude, so every later
+     * timestep forages at most <code>min(a, A/n) * |R| / A</code> per agent,
+     * up to rounding.  Adding anything smaller than a quarter of a float's
+     * ulp leaves it unchanged, whichever way it rounds.
+     *
+     * @param patchArea The area of the patch
+     * @param remainingResources The resources remaining in the patch
+     * @param agentCount The number of agents foraging
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param indResources The total resources foraged by the agent
+     * @param groupResources The total resources foraged by the group
+     * @param totalResourcesForaged The total resources foraged at the patch
+     * @return <code>true</code> if the totals can no longer change,
+     *         otherwise <code>false</code>
+     */
+    private boolean isDepletionNegligible( float patchArea,
+            float remainingResources,
+            int agentCount,
+            float foragingAreaMax,
+            float indResources,
+            float groupResources,
+            float totalResourcesForaged )
+    {
+        // Only non-negative totals have slopes that can only shrink
+        if( (0.0f > indResources)
+                || (0.0f > groupResources)
+                || (0.0f > totalResourcesForaged) )
+        {
+            return false;
+        }
+        
+        // Nobody forages without agents
+        if( 0 == agentCount )
+        {
+            return true;
+        }
+        
+        // Bound the resources foraged in any later timestep
+        double foragingAreaEffective = Math.min( foragingAreaMax,
+                patchArea / (double) agentCount );
+        double perAgentBound = _TAIL_BOUND_SCALE
+                * foragingAreaEffective
+                * Math.abs( remainingResources )
+                / patchArea;
+        double totalBound = perAgentBound * agentCount;
+        
+        return (perAgentBound < Math.ulp( indResources ) / 4.0)
+                && (totalBound < Math.ulp( groupResources ) / 4.0)
+                && (totalBound < Math.ulp( totalResourcesForaged ) / 4.0);
+    }
+
+    /**
+     * Calculates the resources foraged at a patch during a single timestep
+     *
+     * @param patchArea The area of the patch
+     * @param resources The resources remaining in the patch
+     * @param currentAgentCount The number of agents foraging
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @return The patch depletion
+     */
     public PatchDepletion calculatePatchDepletion( float patchArea,
             float resources,
             int currentAgentCount,
             int minAgentCount,
             float foragingAreaMax,
             float consumptionRateMax )
+    {
+        float[] depletion = new float[2];
+        calculatePatchDepletion( patchArea,
+                resources,
+                currentAgentCount,
+                minAgentCount,
+                foragingAreaMax,
+                consumptionRateMax,
+                depletion );
+        
+        return new PatchDepletion( depletion[_PER_AGENT_IDX],
+                depletion[_TOTAL_IDX],
+                currentAgentCount );
+    }
+
+    /**
+     * Calculates the resources foraged at a patch during a single timestep
+     * without allocating anything.  The resources foraged per agent and in
+     * total are stored in the result array.
+     *
+     * @param patchArea The area of the patch
+     * @param resources The resources remaining in the patch
+     * @param currentAgentCount The number of agents foraging
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @param result The array in which to store the resources foraged per
+     *            agent and in total
+     */
+    public void calculatePatchDepletion( float patchArea,
+            float resources,
+            int currentAgentCount,
+            int minAgentCount,
+            float foragingAreaMax,
+            float consumptionRateMax,
+            float[] result )
     {
         // Assume no resources are foraged
         float resourcesForagedPerAgent = 0.0f;
         float totalResourcesForaged = 0.0f;
         
-//        // Check to ensure that we have sufficient agents
-//        if( (0 < currentAgentCount)
-//                && (!_enforcePatchMinimumAgents
-//                        || (currentAgentCount >= minAgentCount)) )
-//        {
-//            // Compute the resource density and effective area per agent
-//            float resourceDensity = resources / patchArea;
-//            float foragingAreaEffective = (float) Math.min( foragingAreaMax,
-//                    patchArea / currentAgentCount );
-//
-//            // Compute how many resources are foraged
-//            resourcesForagedPerAgent = (float) Math.min( consumptionRateMax,
-//                    foragingAreaEffective * resourceDensity );
-//            totalResourcesForaged = resourcesForagedPerAgent * currentAgentCount;
-//        }
-
         // Check to ensure that we have sufficient agents
         if( 0 < currentAgentCount )
-//                && (!_enforcePatchMinimumAgents
-//                        || (currentAgentCount >= minAgentCount)) )
         {
             // Compute the resource density and effective area per agent
             float resourceDensity = resources / patchArea;
@@ -298,46 +774,42 @@ public class PatchDepletionCalculator
             }
         }
         
-        return new PatchDepletion( resourcesForagedPerAgent,
-                totalResourcesForaged,
-                currentAgentCount );
+        result[_PER_AGENT_IDX] = resourcesForagedPerAgent;
+        result[_TOTAL_IDX] = totalResourcesForaged;
     }
     
     /**
-     * Calculate the arrival times of all the teams headed towards the patch
-     *
-     * @param patch The patch
-     * @return The team arrival times
+     * Builds the schedule of team arrivals at each patch from the current
+     * decisions of the root leaders
      */
-    public List<PatchArrivalTime> findTeamArrivalsAtPatch( Patch patch )
+    private void buildArrivalSchedule()
     {
-        List<PatchArrivalTime> arrivalTimes = new ArrayList<PatchArrivalTime>();
+        _arrivalSchedule.reset( _simState.getAllPatches().size() );
         
-        // Iterate through all the teams
-        Iterator<AgentTeam> teamIter = _simState.getAllActiveTeams().values().iterator();
-        while( teamIter.hasNext() )
+        // Iterate through all the teams by their root leaders
+        Iterator<Agent> leaderIter = _simState.getRootLeaders().iterator();
+        while( leaderIter.hasNext() )
         {
-            AgentTeam team = teamIter.next();
+            Agent leader = leaderIter.next();
             
-            // Is the team leader headed to this patch?
-            List<Agent> members = team.getMembers();
-            Validate.isTrue( members.size() > 0, "An active team must have members" );
-            Decision leaderDecision = members.get(0).getDecision();
-            Patch teamPatch = leaderDecision.getPatch();
-            if( (null != teamPatch) && patch.getID().equals( teamPatch.getID() ) )
+            // Is the team leader headed to a patch?
+            Patch teamPatch = leader.getDecision().getPatch();
+            if( null != teamPatch )
             {
                 // Yup.  What is its arrival time?
-                Agent leader = members.get( 0 );
-                Vector3f toPatch = patch.getPosition().subtract( leader.getPosition() );
-                float distance = toPatch.length() - patch.getRadius();
+                Vector3f toPatch = teamPatch.getPosition().subtract(
+                        leader.getPosition() );
+                float distance = toPatch.length() - teamPatch.getRadius();
                 int leaderArrivalTime = (int) Math.ceil( distance /
                         (leader.getMaxSpeed() * _avgSpeedPercentage ) );
                 
                 // Add the team's arrival time
-                arrivalTimes.add( new PatchArrivalTime( team.getID(), leaderArrivalTime ) );
+                _arrivalSchedule.addArrival( teamPatch.getIndex(),
+                        leaderArrivalTime,
+                        _simState.getTeamSize( leader.getSlot() ) );
             }
         }
         
-        return arrivalTimes;
+        _arrivalSchedule.finish();
     }
 }
@@ -0,0 +1,438 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.jme3.math.Vector3f;
+
+import ec.util.MersenneTwisterFast;
+import edu.snu.csne.forage.Patch;
+
+
+/**
+ * Differential check of the early exit from patch depletion projections.
+ * Every configuration is valued by a calculator that projects every
+ * timestep and by one that stops early, and all the fields of the two
+ * patch values must match bit for bit.  The configurations come from the
+ * scenarios in <code>misc/patch-depletion</code> and from random patches
+ * and arrival schedules.  The arguments are the scenario directory, the
+ * number of random configurations and the random seed (all optional).  The
+ * exit status is non-zero if any values differ.
+ *
+ * @author Brent Eskridge
+ */
+public class PatchDepletionCheck
+{
+    /** The default directory holding the depletion scenarios */
+    private static final String _DEFAULT_SCENARIO_DIR = "misc/patch-depletion";
+
+    /** The number of mismatches that are described in detail */
+    private static final int _MAX_REPORTED_MISMATCHES = 10;
+
+    /** Projections this short count as finishing in a few dozen timesteps */
+    private static final int _SHORT_PROJECTION_TIMESTEPS = 50;
+
+
+    /** The number of configurations checked */
+    private long _configCount = 0;
+
+    /** The number of configurations whose values differ */
+    private long _mismatchCount = 0;
+
+    /** The timesteps projected by the full projections */
+    private long _fullTimesteps = 0;
+
+    /** The timesteps projected by the projections that stop early */
+    private long _earlyTimesteps = 0;
+
+    /** The number of early projections that were short */
+    private long _shortCount = 0;
+
+
+    /**
+     * Runs the check
+     *
+     * @param args The scenario directory, the number of random
+     *            configurations and the random seed (all optional)
+     */
+    public static void main( String[] args ) throws IOException
+    {
+        // Get the arguments
+        String scenarioDir = _DEFAULT_SCENARIO_DIR;
+        if( 0 < args.length )
+        {
+            scenarioDir = args[0];
+        }
+        int randomCount = 200000;
+        if( 1 < args.length )
+        {
+            randomCount = Integer.parseInt( args[1] );
+        }
+        long seed = 0;
+        if( 2 < args.length )
+        {
+            seed = Long.parseLong( args[2] );
+        }
+
+        // Check the scenarios
+        PatchDepletionCheck scenarioCheck = new PatchDepletionCheck();
+        scenarioCheck.checkScenarios( new File( scenarioDir ) );
+        scenarioCheck.report( "scenarios" );
+
+        // Check the random configurations
+        PatchDepletionCheck randomCheck = new PatchDepletionCheck();
+        randomCheck.checkRandom( randomCount, new MersenneTwisterFast( seed ) );
+        randomCheck.report( "random" );
+
+        if( (0 < scenarioCheck._mismatchCount)
+                || (0 < randomCheck._mismatchCount) )
+        {
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Checks every scenario in a directory.  The scenario parameters are
+     * read from the header of each data file.  The agents in a scenario
+     * forage together, but the check also staggers their arrivals, delays
+     * the valuing agent and enforces patch minimums.
+     *
+     * @param scenarioDir The directory holding the scenario data files
+     * @throws IOException If a scenario can't be read
+     */
+    public void checkScenarios( File scenarioDir ) throws IOException
+    {
+        File[] files = scenarioDir.listFiles();
+        if( null == files )
+        {
+            throw new IOException( "Unable to list scenario directory ["
+                    + scenarioDir
+                    + "]" );
+        }
+        int scenarioCount = 0;
+        for( int i = 0; i < files.length; i++ )
+        {
+            if( !files[i].getName().endsWith( ".dat" ) )
+            {
+                continue;
+            }
+            Map<String,String> header = readHeader( files[i] );
+            float resources = Float.parseFloat( header.get( "resourcesInitial" ) );
+            float area = Float.parseFloat( header.get( "areaPatch" ) );
+            int agentCount = Integer.parseInt( header.get( "agentCount" ) );
+            float consumptionRate = Float.parseFloat( header.get( "consumptionRateMax" ) );
+            float foragingArea = Float.parseFloat( header.get( "areaForaging" ) );
+            int maxTimesteps = Integer.parseInt( header.get( "maxTimesteps" ) );
+            scenarioCount++;
+
+            float radius = (float) Math.sqrt( area / Math.PI );
+            int[] agentArrivalTimes = { 0, 10, maxTimesteps / 2, maxTimesteps };
+            int[] minAgentCounts = { 0, agentCount, agentCount + 2 };
+            for( int a = 0; a < agentArrivalTimes.length; a++ )
+            {
+                for( int m = 0; m < minAgentCounts.length; m++ )
+                {
+                    for( int stagger = 0; stagger < 3; stagger++ )
+                    {
+                        // The rest of the agents arrive as a team or one at a time
+                        List<int[]> arrivals = new LinkedList<int[]>();
+                        if( 0 == stagger )
+                        {
+                            arrivals.add( new int[] { 0, agentCount - 1 } );
+                        }
+                        else
+                        {
+                            for( int j = 1; j < agentCount; j++ )
+                            {
+                                arrivals.add( new int[] { j * stagger * 5, 1 } );
+                            }
+                        }
+                        Patch patch = new Patch( "scenario",
+                                0,
+                                new Vector3f(),
+                                radius,
+                                resources,
+                                0.0f,
+                                minAgentCounts[m] );
+                        check( files[i].getName(),
+                                patch,
+                                arrivals,
+                                agentArrivalTimes[a],
+                                consumptionRate,
+                                foragingArea,
+                                maxTimesteps,
+                                (0 < minAgentCounts[m]) );
+                    }
+                }
+            }
+        }
+        if( 0 == scenarioCount )
+        {
+            throw new IOException( "No scenarios found in ["
+                    + scenarioDir
+                    + "]" );
+        }
+    }
+
+    /**
+     * Checks random patches and arrival schedules
+     *
+     * @param count The number of configurations to check
+     * @param rng The random number generator
+     */
+    public void checkRandom( int count, MersenneTwisterFast rng )
+    {
+        for( int i = 0; i < count; i++ )
+        {
+            int maxTimesteps = 1 + rng.nextInt( 600 );
+            float radius = 0.25f + rng.nextFloat() * 10.0f;
+            float resources = 0.001f + rng.nextFloat() * 500.0f;
+            float consumptionRate = 0.01f + rng.nextFloat() * 60.0f;
+            float foragingArea = 0.01f + rng.nextFloat() * 10.0f;
+            int minAgentCount = rng.nextInt( 12 );
+            boolean enforceMinimum = rng.nextBoolean();
+
+            // Arrivals may be in the past or after the projection ends
+            int agentArrivalTime = rng.nextInt( maxTimesteps + 60 ) - 10;
+            List<int[]> arrivals = new LinkedList<int[]>();
+            int teamCount = rng.nextInt( 7 );
+            for( int j = 0; j < teamCount; j++ )
+            {
+                arrivals.add( new int[] {
+                        rng.nextInt( maxTimesteps + 60 ) - 10,
+                        1 + rng.nextInt( 10 ) } );
+            }
+
+            Patch patch = new Patch( "random",
+                    0,
+                    new Vector3f(),
+                    radius,
+                    resources,
+                    0.0f,
+                    minAgentCount );
+            check( "random-" + i,
+                    patch,
+                    arrivals,
+                    agentArrivalTime,
+                    consumptionRate,
+                    foragingArea,
+                    maxTimesteps,
+                    enforceMinimum );
+        }
+    }
+
+    /**
+     * Values a single configuration both ways and compares the values
+     *
+     * @param name The name of the configuration
+     * @param patch The patch
+     * @param arrivals The arrival time and size of each team
+     * @param agentArrivalTime The valuing agent's arrival time
+     * @param consumptionRate The agent's resource consumption rate
+     * @param foragingArea The agent's max foraging area
+     * @param maxTimesteps The max timesteps of the projection
+     * @param enforceMinimum Flag denoting patch minimums are enforced
+     */
+    private void check( String name,
+            Patch patch,
+            List<int[]> arrivals,
+            int agentArrivalTime,
+            float consumptionRate,
+            float foragingArea,
+            int maxTimesteps,
+            boolean enforceMinimum )
+    {
+        PatchDepletionCalculator full = buildCalculator( arrivals,
+                maxTimesteps,
+                enforceMinimum,
+                false );
+        PatchDepletionCalculator early = buildCalculator( arrivals,
+                maxTimesteps,
+                enforceMinimum,
+                true );
+        PatchValue fullValue = full.calculatePatchValue( patch,
+                agentArrivalTime,
+                consumptionRate,
+                foragingArea );
+        PatchValue earlyValue = early.calculatePatchValue( patch,
+                agentArrivalTime,
+                consumptionRate,
+                foragingArea );
+
+        // Update the statistics
+        _configCount++;
+        _fullTimesteps += full.getProjectedTimesteps();
+        _earlyTimesteps += early.getProjectedTimesteps();
+        if( _SHORT_PROJECTION_TIMESTEPS >= early.getProjectedTimesteps() )
+        {
+            _shortCount++;
+        }
+
+        // Compare them
+        if( !isIdentical( fullValue, earlyValue ) )
+        {
+            _mismatchCount++;
+            if( _MAX_REPORTED_MISMATCHES >= _mismatchCount )
+            {
+                System.out.println( "MISMATCH ["
+                        + name
+                        + "] full=["
+                        + fullValue
+                        + "] early=["
+                        + earlyValue
+                        + "]" );
+            }
+        }
+    }
+
+    /**
+     * Builds a calculator with the specified arrival schedule for a single
+     * patch
+     *
+     * @param arrivals The arrival time and size of each team
+     * @param maxTimesteps The max timesteps of the projection
+     * @param enforceMinimum Flag denoting patch minimums are enforced
+     * @param earlyExit Flag denoting projections may stop early
+     * @return The calculator
+     */
+    private PatchDepletionCalculator buildCalculator( List<int[]> arrivals,
+            int maxTimesteps,
+            boolean enforceMinimum,
+            boolean earlyExit )
+    {
+        Properties props = new Properties();
+        props.setProperty( "max-depletion-timesteps",
+                Integer.toString( maxTimesteps ) );
+        props.setProperty( "enforce-patch-minimum-agents",
+                Boolean.toString( enforceMinimum ) );
+        props.setProperty( "patch-depletion-early-exit",
+                Boolean.toString( earlyExit ) );
+        PatchDepletionCalculator calc = new PatchDepletionCalculator();
+        calc.initialize( props );
+
+        PatchArrivalSchedule schedule = calc.getArrivalSchedule();
+        schedule.reset( 1 );
+        for( int[] arrival : arrivals )
+        {
+            if( 0 < arrival[1] )
+            {
+                schedule.addArrival( 0, arrival[0], arrival[1] );
+            }
+        }
+        schedule.finish();
+
+        return calc;
+    }
+
+    /**
+     * Determines if two patch values are identical bit for bit
+     *
+     * @param first The first value
+     * @param second The second value
+     * @return <code>true</code> if they are identical, otherwise
+     *         <code>false</code>
+     */
+    private static boolean isIdentical( PatchValue first, PatchValue second )
+    {
+        return (first.getGiveUpTimeInd() == second.getGiveUpTimeInd())
+                && (first.getGiveUpTimeGroup() == second.getGiveUpTimeGroup())
+                && isIdentical( first.getGiveUpSlopeInd(), second.getGiveUpSlopeInd() )
+                && isIdentical( first.getGiveUpSlopeGroup(), second.getGiveUpSlopeGroup() )
+                && isIdentical( first.getIndResources(), second.getIndResources() )
+                && isIdentical( first.getGroupResources(), second.getGroupResources() );
+    }
+
+    /**
+     * Determines if two floats are identical bit for bit
+     *
+     * @param first The first float
+     * @param second The second float
+     * @return <code>true</code> if they are identical, otherwise
+     *         <code>false</code>
+     */
+    private static boolean isIdentical( float first, float second )
+    {
+        return Float.floatToRawIntBits( first ) == Float.floatToRawIntBits( second );
+    }
+
+    /**
+     * Reads the parameters in the header of a scenario data file.  Header
+     * lines look like <code># name ..... [value]</code>.
+     *
+     * @param file The data file
+     * @return The parameters indexed by name
+     * @throws IOException If the file can't be read
+     */
+    private static Map<String,String> readHeader( File file ) throws IOException
+    {
+        Map<String,String> header = new HashMap<String,String>();
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            String line = null;
+            while( (null != (line = reader.readLine())) && line.startsWith( "#" ) )
+            {
+                int open = line.indexOf( '[' );
+                int close = line.lastIndexOf( ']' );
+                if( (0 > open) || (close < open) )
+                {
+                    continue;
+                }
+                String name = line.substring( 1, open ).replace( '.', ' ' ).trim();
+                header.put( name, line.substring( open + 1, close ).trim() );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return header;
+    }
+
+    /**
+     * Reports the results of the check
+     *
+     * @param title The title of the configurations checked
+     */
+    private void report( String title )
+    {
+        System.out.println( String.format( "%-9s configs=[%d] mismatches=[%d] "
+                + "timesteps full=[%.1f] early=[%.1f] per config, "
+                + "skipped=[%.1f%%] early<=%d=[%.1f%%]",
+                title,
+                _configCount,
+                _mismatchCount,
+                _fullTimesteps / (double) _configCount,
+                _earlyTimesteps / (double) _configCount,
+                100.0 * (_fullTimesteps - _earlyTimesteps) / _fullTimesteps,
+                _SHORT_PROJECTION_TIMESTEPS,
+                100.0 * _shortCount / _configCount ) );
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import org.apache.commons.lang3.Validate;
+
+
+/**
+ * Precomputed depletion curves for a single patch.  The resources foraged
+ * per agent and in total are tabulated on a grid of remaining resources
+ * and agent counts for one set of agent foraging parameters, and looked up
+ * with linear interpolation along the resources axis.
+ *
+ * @author Brent Eskridge
+ */
+public class PatchDepletionTable
+{
+    /** The number of interior points per cell checked for the error */
+    private static final int _ERROR_SAMPLES_PER_CELL = 3;
+
+
+    /** The max foraging area of an agent used to build the table */
+    private final float _foragingAreaMax;
+
+    /** The max resource consumption rate of an agent used to build the table */
+    private final float _consumptionRateMax;
+
+    /** The max resources covered by the table */
+    private final float _maxResources;
+
+    /** The max number of agents covered by the table */
+    private final int _maxAgentCount;
+
+    /** The number of cells along the resources axis */
+    private final int _resourceSteps;
+
+    /** The resources covered by a single cell */
+    private final float _resourceStep;
+
+    /** The resources foraged per agent indexed by agent count and step */
+    private final float[][] _perAgentResources;
+
+    /** The total resources foraged indexed by agent count and step */
+    private final float[][] _totalResources;
+
+
+    /**
+     * Builds this table
+     *
+     * @param calc The calculator used to fill the table
+     * @param patchArea The area of the patch
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @param maxResources The max resources covered by the table
+     * @param maxAgentCount The max number of agents covered by the table
+     * @param resourceSteps The number of cells along the resources axis
+     */
+    public PatchDepletionTable( PatchDepletionCalculator calc,
+            float patchArea,
+            int minAgentCount,
+            float foragingAreaMax,
+            float consumptionRateMax,
+            float maxResources,
+            int maxAgentCount,
+            int resourceSteps )
+    {
+        Validate.notNull( calc, "Calculator may not be null" );
+        Validate.isTrue( 0.0f <= maxResources,
+                "Max resources may not be negative" );
+        Validate.isTrue( 0 <= maxAgentCount,
+                "Max agent count may not be negative" );
+        Validate.isTrue( 0 < resourceSteps,
+                "Resource steps must be positive" );
+
+        _foragingAreaMax = foragingAreaMax;
+        _consumptionRateMax = consumptionRateMax;
+        _maxResources = maxResources;
+        _maxAgentCount = maxAgentCount;
+        _resourceSteps = resourceSteps;
+        _resourceStep = maxResources / resourceSteps;
+
+        // Fill in the table
+        _perAgentResources = new float[maxAgentCount + 1][resourceSteps + 1];
+        _totalResources = new float[maxAgentCount + 1][resourceSteps + 1];
+        float[] depletion = new float[2];
+        for( int count = 0; count <= maxAgentCount; count++ )
+        {
+            for( int step = 0; step <= resourceSteps; step++ )
+            {
+                calc.calculatePatchDepletion( patchArea,
+                        resourcesAtStep( step ),
+                        count,
+                        minAgentCount,
+                        foragingAreaMax,
+                        consumptionRateMax,
+                        depletion );
+                _perAgentResources[count][step] =
+                        depletion[PatchDepletionCalculator._PER_AGENT_IDX];
+                _totalResources[count][step] =
+                        depletion[PatchDepletionCalculator._TOTAL_IDX];
+            }
+        }
+    }
+
+    /**
+     * Determines if the table covers the specified inputs
+     *
+     * @param resources The resources remaining in the patch
+     * @param agentCount The number of agents foraging
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @return <code>true</code> if the table covers them, otherwise
+     *         <code>false</code>
+     */
+    public boolean covers( float resources,
+            int agentCount,
+            float foragingAreaMax,
+            float consumptionRateMax )
+    {
+        return (0.0f <= resources)
+                && (resources <= _maxResources)
+                && (0 <= agentCount)
+                && (agentCount <= _maxAgentCount)
+                && (Float.floatToIntBits( foragingAreaMax )
+                        == Float.floatToIntBits( _foragingAreaMax ))
+                && (Float.floatToIntBits( consumptionRateMax )
+                        == Float.floatToIntBits( _consumptionRateMax ));
+    }
+
+    /**
+     * Looks up the resources foraged during a single timestep.  The
+     * resources foraged per agent and in total are stored in the result
+     * array.
+     *
+     * @param resources The resources remaining in the patch
+     * @param agentCount The number of agents foraging
+     * @param result The array in which to store the resources foraged per
+     *            agent and in total
+     */
+    public void lookup( float resources, int agentCount, float[] result )
+    {
+        result[PatchDepletionCalculator._PER_AGENT_IDX] = interpolate(
+                _perAgentResources[agentCount],
+                resources );
+        result[PatchDepletionCalculator._TOTAL_IDX] = interpolate(
+                _totalResources[agentCount],
+                resources );
+    }
+
+    /**
+     * Calculates the max error of the table relative to the consumption
+     * rate of the agents foraging
+     *
+     * @param calc The calculator used to fill the table
+     * @param patchArea The area of the patch
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @return The max relative error
+     */
+    public float calculateMaxError( PatchDepletionCalculator calc,
+            float patchArea,
+            int minAgentCount )
+    {
+        float maxError = 0.0f;
+        float[] exact = new float[2];
+        float[] approx = new float[2];
+        for( int count = 1; count <= _maxAgentCount; count++ )
+        {
+            float perAgentScale = Math.max( _consumptionRateMax,
+                    Float.MIN_NORMAL );
+            float totalScale = perAgentScale * count;
+            for( int step = 0; step < _resourceSteps; step++ )
+            {
+                // Check some points inside the cell
+                for( int i = 1; i <= _ERROR_SAMPLES_PER_CELL; i++ )
+                {
+                    float resources = resourcesAtStep( step )
+                            + (_resourceStep * i / (_ERROR_SAMPLES_PER_CELL + 1));
+                    calc.calculatePatchDepletion( patchArea,
+                            resources,
+                            count,
+                            minAgentCount,
+                            _foragingAreaMax,
+                            _consumptionRateMax,
+                            exact );
+                    lookup( resources, count, approx );
+                    int perAgentIdx = PatchDepletionCalculator._PER_AGENT_IDX;
+                    int totalIdx = PatchDepletionCalculator._TOTAL_IDX;
+                    maxError = Math.max( maxError,
+                            Math.abs( approx[perAgentIdx] - exact[perAgentIdx] )
+                            / perAgentScale );
+                    maxError = Math.max( maxError,
+                            Math.abs( approx[totalIdx] - exact[totalIdx] )
+                            / totalScale );
+                }
+            }
+        }
+
+        return maxError;
+    }
+
+    /**
+     * Returns the number of cells along the resources axis
+     *
+     * @return The number of cells
+     */
+    public int getResourceSteps()
+    {
+        return _resourceSteps;
+    }
+
+    /**
+     * Returns the resources at the specified grid point
+     *
+     * @param step The grid point
+     * @return The resources
+     */
+    private float resourcesAtStep( int step )
+    {
+        // Use the max directly so the last point is exact
+        if( step == _resourceSteps )
+        {
+            return _maxResources;
+        }
+        return step * _resourceStep;
+    }
+
+    /**
+     * Linearly interpolates a depletion curve along the resources axis
+     *
+     * @param curve The depletion curve
+     * @param resources The resources remaining in the patch
+     * @return The interpolated value
+     */
+    private float interpolate( float[] curve, float resources )
+    {
+        // Handle an empty range
+        if( 0.0f >= _resourceStep )
+        {
+            return curve[0];
+        }
+
+        // Find the cell
+        float position = resources / _resourceStep;
+        int step = (int) position;
+        if( step >= _resourceSteps )
+        {
+            return curve[_resourceSteps];
+        }
+        float fraction = position - step;
+
+        return curve[step] + fraction * (curve[step + 1] - curve[step]);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Process-wide cache of patch depletion tables.  A table only depends on
+ * the patch and agent configuration, so every simulation built from the
+ * same scenario shares one table per patch instead of tabulating and
+ * refining it again for every run.  The tables are never modified once
+ * built, so the cache is safe to use from multiple threads.
+ *
+ * @author Brent Eskridge
+ */
+public class PatchDepletionTableCache
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            PatchDepletionTableCache.class.getName() );
+
+
+    /**
+     * Key identifying everything a depletion table depends on
+     */
+    private static final class TableKey
+    {
+        private final int _patchAreaBits;
+        private final int _minAgentCount;
+        private final int _foragingAreaBits;
+        private final int _consumptionRateBits;
+        private final int _maxResourcesBits;
+        private final int _maxAgentCount;
+        private final int _resourceSteps;
+        private final int _maxErrorBits;
+        private final boolean _enforcePatchMinimumAgents;
+
+        TableKey( float patchArea,
+                int minAgentCount,
+                float foragingAreaMax,
+                float consumptionRateMax,
+                float maxResources,
+                int maxAgentCount,
+                int resourceSteps,
+                float maxError,
+                boolean enforcePatchMinimumAgents )
+        {
+            _patchAreaBits = Float.floatToIntBits( patchArea );
+            _minAgentCount = minAgentCount;
+            _foragingAreaBits = Float.floatToIntBits( foragingAreaMax );
+            _consumptionRateBits = Float.floatToIntBits( consumptionRateMax );
+            _maxResourcesBits = Float.floatToIntBits( maxResources );
+            _maxAgentCount = maxAgentCount;
+            _resourceSteps = resourceSteps;
+            _maxErrorBits = Float.floatToIntBits( maxError );
+            _enforcePatchMinimumAgents = enforcePatchMinimumAgents;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = _patchAreaBits;
+            hash = 31 * hash + _minAgentCount;
+            hash = 31 * hash + _foragingAreaBits;
+            hash = 31 * hash + _consumptionRateBits;
+            hash = 31 * hash + _maxResourcesBits;
+            hash = 31 * hash + _maxAgentCount;
+            hash = 31 * hash + _resourceSteps;
+            hash = 31 * hash + _maxErrorBits;
+            hash = 31 * hash + (_enforcePatchMinimumAgents ? 1 : 0);
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if( this == obj )
+            {
+                return true;
+            }
+            if( !(obj instanceof TableKey) )
+            {
+                return false;
+            }
+            TableKey other = (TableKey) obj;
+            return (_patchAreaBits == other._patchAreaBits)
+                    && (_minAgentCount == other._minAgentCount)
+                    && (_foragingAreaBits == other._foragingAreaBits)
+                    && (_consumptionRateBits == other._consumptionRateBits)
+                    && (_maxResourcesBits == other._maxResourcesBits)
+                    && (_maxAgentCount == other._maxAgentCount)
+                    && (_resourceSteps == other._resourceSteps)
+                    && (_maxErrorBits == other._maxErrorBits)
+                    && (_enforcePatchMinimumAgents
+                            == other._enforcePatchMinimumAgents);
+        }
+    }
+
+    /**
+     * The result of tabulating a patch, which may not have a table if it
+     * couldn't be made accurate enough
+     */
+    private static final class CachedTable
+    {
+        /** The table (may be <code>null</code>) */
+        private final PatchDepletionTable _table;
+
+        CachedTable( PatchDepletionTable table )
+        {
+            _table = table;
+        }
+    }
+
+    /** The max resource steps in a depletion table */
+    private static final int _MAX_DEPLETION_TABLE_STEPS = 4096;
+
+    /** The depletion tables by configuration */
+    private static final ConcurrentMap<TableKey,CachedTable> _tables =
+            new ConcurrentHashMap<TableKey,CachedTable>();
+
+
+    /**
+     * Returns the depletion table for a patch, tabulating it if the
+     * configuration hasn't been used yet.  The table starts with the
+     * specified resource steps and is refined until it is accurate enough.
+     *
+     * @param calc The calculator used to fill the table
+     * @param patchArea The area of the patch
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @param maxResources The max resources covered by the table
+     * @param maxAgentCount The max number of agents covered by the table
+     * @param resourceSteps The initial number of cells along the resources
+     *            axis
+     * @param maxError The max relative error of the table
+     * @return The table, or <code>null</code> if it couldn't be made
+     *         accurate enough
+     */
+    public static PatchDepletionTable getTable( PatchDepletionCalculator calc,
+            float patchArea,
+            int minAgentCount,
+            float foragingAreaMax,
+            float consumptionRateMax,
+            float maxResources,
+            int maxAgentCount,
+            int resourceSteps,
+            float maxError )
+    {
+        Validate.notNull( calc, "Calculator may not be null" );
+
+        // Tabulate it if we haven't already
+        TableKey key = new TableKey( patchArea,
+                minAgentCount,
+                foragingAreaMax,
+                consumptionRateMax,
+                maxResources,
+                maxAgentCount,
+                resourceSteps,
+                maxError,
+                calc.isEnforcingPatchMinimumAgents() );
+        CachedTable cached = _tables.get( key );
+        if( null == cached )
+        {
+            cached = new CachedTable( buildTable( calc,
+                    patchArea,
+                    minAgentCount,
+                    foragingAreaMax,
+                    consumptionRateMax,
+                    maxResources,
+                    maxAgentCount,
+                    resourceSteps,
+                    maxError ) );
+            CachedTable existing = _tables.putIfAbsent( key, cached );
+            if( null != existing )
+            {
+                cached = existing;
+            }
+        }
+
+        return cached._table;
+    }
+
+    /**
+     * Removes all the cached tables so they are tabulated again
+     */
+    public static void clear()
+    {
+        _tables.clear();
+    }
+
+    /**
+     * Tabulates the depletion of a patch, refining the table until it is
+     * accurate enough
+     *
+     * @param calc The calculator used to fill the table
+     * @param patchArea The area of the patch
+     * @param minAgentCount The minimum number of agents needed to forage
+     * @param foragingAreaMax The max foraging area of an agent
+     * @param consumptionRateMax The max resource consumption rate of an agent
+     * @param maxResources The max resources covered by the table
+     * @param maxAgentCount The max number of agents covered by the table
+     * @param resourceSteps The initial number of cells along the resources
+     *            axis
+     * @param maxError The max relative error of the table
+     * @return The table, or <code>null</code> if it couldn't be made
+     *         accurate enough
+     */
+    private static PatchDepletionTable buildTable( PatchDepletionCalculator calc,
+            float patchArea,
+            int minAgentCount,
+            float foragingAreaMax,
+            float consumptionRateMax,
+            float maxResources,
+            int maxAgentCount,
+            int resourceSteps,
+            float maxError )
+    {
+        int steps = resourceSteps;
+        while( true )
+        {
+            PatchDepletionTable candidate = new PatchDepletionTable( calc,
+                    patchArea,
+                    minAgentCount,
+                    foragingAreaMax,
+                    consumptionRateMax,
+                    maxResources,
+                    maxAgentCount,
+                    steps );
+            float error = candidate.calculateMaxError( calc,
+                    patchArea,
+                    minAgentCount );
+            if( error <= maxError )
+            {
+                _LOG.debug( "Tabulated depletion steps=["
+                        + steps
+                        + "] error=["
+                        + error
+                        + "]" );
+                return candidate;
+            }
+            else if( steps >= _MAX_DEPLETION_TABLE_STEPS )
+            {
+                _LOG.warn( "Unable to tabulate depletion for patch area=["
+                        + patchArea
+                        + "] error=["
+                        + error
+                        + "] maxError=["
+                        + maxError
+                        + "]" );
+                return null;
+            }
+            steps *= 2;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.jme3.math.Vector3f;
+
+import edu.snu.csne.forage.Agent;
+import edu.snu.csne.forage.Patch;
+
+
+/**
+ * Immutable spatial index of the food patches.  Patches never move, so the
+ * index is built once when the patches are created.  The patches are
+ * bucketed in a uniform grid covering their bounding box, so a query only
+ * checks the patches in the cells that overlap the query window.  The cells
+ * are at least as wide as the largest patch, so a containment query checks
+ * at most two cells along each axis.  Results are always returned in the
+ * order in which the patches were given to the index.  Queries may be made
+ * concurrently.
+ *
+ * @author Brent Eskridge
+ */
+public class PatchSpatialIndex
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            PatchSpatialIndex.class.getName() );
+
+    /** Padding used to guard the query windows against rounding */
+    private static final float _RADIUS_PADDING_SCALE = 1.001f;
+
+    /** Maximum number of cells per patch before the cells are enlarged */
+    private static final int _MAX_CELLS_PER_PATCH = 4;
+
+    /** Initial capacity of the hits found by a query */
+    private static final int _INITIAL_HIT_CAPACITY = 8;
+
+
+    /** The patches in their original order */
+    private final Patch[] _patches;
+
+    /** The largest patch radius */
+    private final float _maxRadius;
+
+    /** The size of each cell */
+    private final float _cellSize;
+
+    /** The minimum corner of the grid */
+    private final float[] _origin = new float[3];
+
+    /** The number of cells along each axis */
+    private final int[] _cellCounts = new int[3];
+
+    /** The offset of each cell's patches in the cell patch array */
+    private final int[] _cellStarts;
+
+    /** The original indices of the patches grouped by cell */
+    private final int[] _cellPatches;
+
+
+    /**
+     * Builds this index
+     *
+     * @param patches The patches to index
+     */
+    public PatchSpatialIndex( Collection<Patch> patches )
+    {
+        Validate.notNull( patches, "Patches may not be null" );
+
+        // Copy the patches and find their bounding box and the largest radius
+        _patches = patches.toArray( new Patch[patches.size()] );
+        float maxRadius = 0.0f;
+        float[] max = new float[3];
+        Arrays.fill( _origin, Float.POSITIVE_INFINITY );
+        Arrays.fill( max, Float.NEGATIVE_INFINITY );
+        for( int i = 0; i < _patches.length; i++ )
+        {
+            maxRadius = Math.max( maxRadius, _patches[i].getRadius() );
+            Vector3f position = _patches[i].getPosition();
+            for( int axis = 0; axis < 3; axis++ )
+            {
+                _origin[axis] = Math.min( _origin[axis], position.get( axis ) );
+                max[axis] = Math.max( max[axis], position.get( axis ) );
+            }
+        }
+        _maxRadius = maxRadius;
+        if( 0 == _patches.length )
+        {
+            Arrays.fill( _origin, 0.0f );
+            Arrays.fill( max, 0.0f );
+        }
+
+        // Start with cells as wide as the largest patch and enlarge them
+        // until there aren't too many of them
+        float maxExtent = 0.0f;
+        for( int axis = 0; axis < 3; axis++ )
+        {
+            maxExtent = Math.max( maxExtent, max[axis] - _origin[axis] );
+        }
+        float cellSize = 2.0f * _maxRadius * _RADIUS_PADDING_SCALE;
+        if( !(0.0f < cellSize) )
+        {
+            cellSize = Math.max( maxExtent, 1.0f );
+        }
+        double maxCells = Math.max( 1, _MAX_CELLS_PER_PATCH * _patches.length );
+        while( maxCells < countTotalCells( max, cellSize ) )
+        {
+            cellSize *= 2.0f;
+        }
+        _cellSize = cellSize;
+        for( int axis = 0; axis < 3; axis++ )
+        {
+            _cellCounts[axis] = countCells( max[axis] - _origin[axis], _cellSize );
+        }
+
+        // Count the patches in each cell
+        int totalCells = _cellCounts[0] * _cellCounts[1] * _cellCounts[2];
+        int[] patchCells = new int[_patches.length];
+        _cellStarts = new int[totalCells + 1];
+        for( int i = 0; i < _patches.length; i++ )
+        {
+            Vector3f position = _patches[i].getPosition();
+            patchCells[i] = toCellIndex( toCell( position.x, 0 ),
+                    toCell( position.y, 1 ),
+                    toCell( position.z, 2 ) );
+            _cellStarts[patchCells[i] + 1]++;
+        }
+        for( int i = 0; i < totalCells; i++ )
+        {
+            _cellStarts[i + 1] += _cellStarts[i];
+        }
+
+        // Group the patches by cell, keeping their original order
+        _cellPatches = new int[_patches.length];
+        int[] next = Arrays.copyOf( _cellStarts, totalCells );
+        for( int i = 0; i < _patches.length; i++ )
+        {
+            _cellPatches[next[patchCells[i]]++] = i;
+        }
+
+        _LOG.debug( "Indexed ["
+                + _patches.length
+                + "] patches with max radius ["
+                + _maxRadius
+                + "] in ["
+                + totalCells
+                + "] cells of size ["
+                + _cellSize
+                + "]" );
+    }
+
+    /**
+     * Returns all the patches whose center is closer to a position than the
+     * specified distance
+     *
+     * @param position The position
+     * @param distanceSquared The square of the distance
+     * @return The patches in range
+     */
+    public List<Patch> findPatchesInRange( Vector3f position,
+            float distanceSquared )
+    {
+        float window = (float) Math.sqrt( distanceSquared ) * _RADIUS_PADDING_SCALE;
+        int[] hits = new int[_INITIAL_HIT_CAPACITY];
+        int hitCount = 0;
+
+        // Check the patches in every cell overlapping the window
+        int minX = toCell( position.x - window, 0 );
+        int maxX = toCell( position.x + window, 0 );
+        int minY = toCell( position.y - window, 1 );
+        int maxY = toCell( position.y + window, 1 );
+        int minZ = toCell( position.z - window, 2 );
+        int maxZ = toCell( position.z + window, 2 );
+        for( int cx = minX; cx <= maxX; cx++ )
+        {
+            for( int cy = minY; cy <= maxY; cy++ )
+            {
+                for( int cz = minZ; cz <= maxZ; cz++ )
+                {
+                    int cell = toCellIndex( cx, cy, cz );
+                    for( int i = _cellStarts[cell]; i < _cellStarts[cell + 1]; i++ )
+                    {
+                        int idx = _cellPatches[i];
+                        if( distanceSquared > position.distanceSquared(
+                                _patches[idx].getPosition() ) )
+                        {
+                            if( hits.length == hitCount )
+                            {
+                                hits = Arrays.copyOf( hits, 2 * hitCount );
+                            }
+                            hits[hitCount++] = idx;
+                        }
+                    }
+                }
+            }
+        }
+
+        return buildPatchList( hits, hitCount );
+    }
+
+    /**
+     * Returns all the patches that contain the specified agent
+     *
+     * @param agent The agent
+     * @return The patches containing the agent
+     * @see Patch#isInPatch(Agent)
+     */
+    public List<Patch> findPatchesContaining( Agent agent )
+    {
+        Vector3f position = agent.getPosition();
+        float window = _maxRadius * _RADIUS_PADDING_SCALE;
+        int[] hits = new int[_INITIAL_HIT_CAPACITY];
+        int hitCount = 0;
+
+        // Check the patches in every cell overlapping the window
+        int minX = toCell( position.x - window, 0 );
+        int maxX = toCell( position.x + window, 0 );
+        int minY = toCell( position.y - window, 1 );
+        int maxY = toCell( position.y + window, 1 );
+        int minZ = toCell( position.z - window, 2 );
+        int maxZ = toCell( position.z + window, 2 );
+        for( int cx = minX; cx <= maxX; cx++ )
+        {
+            for( int cy = minY; cy <= maxY; cy++ )
+            {
+                for( int cz = minZ; cz <= maxZ; cz++ )
+                {
+                    int cell = toCellIndex( cx, cy, cz );
+                    for( int i = _cellStarts[cell]; i < _cellStarts[cell + 1]; i++ )
+                    {
+                        int idx = _cellPatches[i];
+                        if( _patches[idx].isInPatch( agent ) )
+                        {
+                            if( hits.length == hitCount )
+                            {
+                                hits = Arrays.copyOf( hits, 2 * hitCount );
+                            }
+                            hits[hitCount++] = idx;
+                        }
+                    }
+                }
+            }
+        }
+
+        return buildPatchList( hits, hitCount );
+    }
+
+    /**
+     * Converts a coordinate to a cell coordinate, clamped to the grid
+     *
+     * @param coord The coordinate
+     * @param axis The axis (0 is x, 1 is y and 2 is z)
+     * @return The cell coordinate
+     */
+    private int toCell( float coord, int axis )
+    {
+        double cell = Math.floor( (coord - _origin[axis]) / _cellSize );
+        if( !(0.0 < cell) )
+        {
+            return 0;
+        }
+        return (int) Math.min( cell, _cellCounts[axis] - 1 );
+    }
+
+    /**
+     * Converts cell coordinates to the index of the cell
+     *
+     * @param cx The x cell coordinate
+     * @param cy The y cell coordinate
+     * @param cz The z cell coordinate
+     * @return The cell index
+     */
+    private int toCellIndex( int cx, int cy, int cz )
+    {
+        return (cx * _cellCounts[1] + cy) * _cellCounts[2] + cz;
+    }
+
+    /**
+     * Builds a list of the found patches in their original order
+     *
+     * @param hits The original indices of the found patches
+     * @param hitCount The number of found patches
+     * @return The found patches
+     */
+    private List<Patch> buildPatchList( int[] hits, int hitCount )
+    {
+        Arrays.sort( hits, 0, hitCount );
+        List<Patch> patches = new ArrayList<Patch>( hitCount );
+        for( int i = 0; i < hitCount; i++ )
+        {
+            patches.add( _patches[hits[i]] );
+        }
+        return patches;
+    }
+
+    /**
+     * Calculates the total number of cells needed to cover the bounding box
+     * of the patches
+     *
+     * @param max The maximum corner of the bounding box
+     * @param cellSize The size of each cell
+     * @return The number of cells
+     */
+    private double countTotalCells( float[] max, float cellSize )
+    {
+        double cells = 1.0;
+        for( int axis = 0; axis < 3; axis++ )
+        {
+            cells *= countCells( max[axis] - _origin[axis], cellSize );
+        }
+        return cells;
+    }
+
+    /**
+     * Calculates the number of cells needed to cover an extent along a
+     * single axis
+     *
+     * @param extent The extent
+     * @param cellSize The size of each cell
+     * @return The number of cells
+     */
+    private static int countCells( float extent, float cellSize )
+    {
+        return (int) Math.min( Integer.MAX_VALUE,
+                (long) Math.floor( extent / cellSize ) + 1 );
+    }
+
+}
@@ -19,8 +19,6 @@
  */
 package edu.snu.csne.forage.util;
 
-import edu.snu.csne.forage.util.PatchDepletionCalculator.PatchDepletionData;
-
 /**
  * TODO Class description
  * @author  Brent Eskridge
@@ -45,9 +43,6 @@ public class PatchValue
     /** The amount of group resources if leaving at give-up time */
     public float _groupResources;
 
-    /** All the raw patch depletion data */
-    public PatchDepletionData[] _allDepletionData;
-
     
     /**
      * Builds this PatchValue object
@@ -58,15 +53,13 @@ public class PatchValue
      * @param giveUpSlopeGroup
      * @param indResources
      * @param groupResources
-     * @param allDepletionData
      */
     public PatchValue( int giveUpTimeInd,
             float giveUpSlopeInd,
             int giveUpTimeGroup,
             float giveUpSlopeGroup,
             float indResources,
-            float groupResources,
-            PatchDepletionData[] allDepletionData )
+            float groupResources )
     {
         _giveUpTimeInd = giveUpTimeInd;
         _giveUpSlopeInd = giveUpSlopeInd;
@@ -74,7 +67,6 @@ public class PatchValue
         _giveUpSlopeGroup = giveUpSlopeGroup;
         _indResources = indResources;
         _groupResources = groupResources;
-        _allDepletionData = allDepletionData;
     }
     
     /**
@@ -138,16 +130,6 @@ public class PatchValue
         return _groupResources;
     }
     
-    /**
-     * Returns all the raw patch depletion data
-     *
-     * @return The patch depletion data
-     */
-    public PatchDepletionData[] getAllDepletionData()
-    {
-        return _allDepletionData;
-    }
-
     /**
      * TODO Method description
      *
@@ -0,0 +1,537 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.jme3.math.Vector3f;
+
+import edu.snu.csne.util.MiscUtils;
+
+
+/**
+ * Process-wide cache of the agent and patch scenario files.  Each file is
+ * parsed once into immutable arrays that every simulation using it builds
+ * its agents and patches from, instead of reloading and reparsing the
+ * file for every run.  The cache is safe to use from multiple threads.
+ *
+ * @author Brent Eskridge
+ */
+public class ScenarioCache
+{
+    /** Our logger */
+    private static final Logger _LOG = LogManager.getLogger(
+            ScenarioCache.class.getName() );
+
+    /** Key for the number of agents */
+    private static final String _AGENT_COUNT_KEY = "agent-count";
+
+    /** Key prefix for agents */
+    private static final String _AGENT_PREFIX_KEY = "agent";
+
+    /** Key for the number of patches */
+    private static final String _PATCH_COUNT_KEY = "patch-count";
+
+    /** Key prefix for patches */
+    private static final String _PATCH_PREFIX_KEY = "patch";
+
+    /** Key postfix for a position */
+    private static final String _POSITION_KEY = "position";
+
+    /** Key postfix for a velocity */
+    private static final String _VELOCITY_KEY = "velocity";
+
+    /** Key postfix for a radius value */
+    private static final String _RADIUS_KEY = "radius";
+
+    /** Key postfix for a resources value */
+    private static final String _RESOURCES_KEY = "resources";
+
+    /** Key postfix for a predation probability value */
+    private static final String _PREDATION_PROBABILITY_KEY = "predation-probability";
+
+    /** Key postfix for a minimum agent forage count value */
+    private static final String _MIN_AGENT_FORAGE_COUNT_KEY = "min-agent-forage-count";
+
+    /** Key format string for an agent index */
+    private static final String _AGENT_INDEX_FORMAT_STR = "%03d";
+
+    /** Key format string for a patch index */
+    private static final String _PATCH_INDEX_FORMAT_STR = "%02d";
+
+    /** Cache key postfix for agent scenarios that include velocities */
+    private static final String _WITH_VELOCITIES_POSTFIX = "#velocities";
+
+    /** The agent scenarios by filename */
+    private static final ConcurrentMap<String,AgentScenario> _agentScenarios =
+            new ConcurrentHashMap<String,AgentScenario>();
+
+    /** The patch scenarios by filename */
+    private static final ConcurrentMap<String,PatchScenario> _patchScenarios =
+            new ConcurrentHashMap<String,PatchScenario>();
+
+
+    /**
+     * The agents defined by an agent properties file
+     */
+    public static class AgentScenario
+    {
+        /** The agent IDs */
+        private final String[] _ids;
+
+        /** The agent positions stored as x, y and z triples */
+        private final float[] _positions;
+
+        /** The agent velocities stored as x, y and z triples (if loaded) */
+        private final float[] _velocities;
+
+        /**
+         * Builds this scenario
+         *
+         * @param ids The agent IDs
+         * @param positions The agent positions
+         * @param velocities The agent velocities (may be <code>null</code>)
+         */
+        private AgentScenario( String[] ids,
+                float[] positions,
+                float[] velocities )
+        {
+            _ids = ids;
+            _positions = positions;
+            _velocities = velocities;
+        }
+
+        /**
+         * Returns the number of agents
+         *
+         * @return The number of agents
+         */
+        public int getAgentCount()
+        {
+            return _ids.length;
+        }
+
+        /**
+         * Returns the ID of an agent
+         *
+         * @param idx The agent's index
+         * @return The ID
+         */
+        public String getID( int idx )
+        {
+            return _ids[idx];
+        }
+
+        /**
+         * Returns a new copy of the initial position of an agent
+         *
+         * @param idx The agent's index
+         * @return The position
+         */
+        public Vector3f getPosition( int idx )
+        {
+            return toVector( _positions, idx );
+        }
+
+        /**
+         * Returns a new copy of the initial velocity of an agent.  If the
+         * velocities weren't loaded, the velocity is zero.
+         *
+         * @param idx The agent's index
+         * @return The velocity
+         */
+        public Vector3f getVelocity( int idx )
+        {
+            if( null == _velocities )
+            {
+                return new Vector3f();
+            }
+            return toVector( _velocities, idx );
+        }
+    }
+
+    /**
+     * The patches defined by a patch properties file
+     */
+    public static class PatchScenario
+    {
+        /** The patch IDs */
+        private final String[] _ids;
+
+        /** The patch positions stored as x, y and z triples */
+        private final float[] _positions;
+
+        /** The patch radii */
+        private final float[] _radii;
+
+        /** The initial patch resources */
+        private final float[] _resources;
+
+        /** The patch predation probabilities */
+        private final float[] _predationProbabilities;
+
+        /** The minimum number of agents needed to forage in each patch */
+        private final int[] _minAgentForageCounts;
+
+        /**
+         * Builds this scenario
+         *
+         * @param ids The patch IDs
+         * @param positions The patch positions
+         * @param radii The patch radii
+         * @param resources The initial patch resources
+         * @param predationProbabilities The patch predation probabilities
+         * @param minAgentForageCounts The minimum agent forage counts
+         */
+        private PatchScenario( String[] ids,
+                float[] positions,
+                float[] radii,
+                float[] resources,
+                float[] predationProbabilities,
+                int[] minAgentForageCounts )
+        {
+            _ids = ids;
+            _positions = positions;
+            _radii = radii;
+            _resources = resources;
+            _predationProbabilities = predationProbabilities;
+            _minAgentForageCounts = minAgentForageCounts;
+        }
+
+        /**
+         * Returns the number of patches
+         *
+         * @return The number of patches
+         */
+        public int getPatchCount()
+        {
+            return _ids.length;
+        }
+
+        /**
+         * Returns the ID of a patch
+         *
+         * @param idx The patch's index
+         * @return The ID
+         */
+        public String getID( int idx )
+        {
+            return _ids[idx];
+        }
+
+        /**
+         * Returns a new copy of the position of a patch
+         *
+         * @param idx The patch's index
+         * @return The position
+         */
+        public Vector3f getPosition( int idx )
+        {
+            return toVector( _positions, idx );
+        }
+
+        /**
+         * Returns the radius of a patch
+         *
+         * @param idx The patch's index
+         * @return The radius
+         */
+        public float getRadius( int idx )
+        {
+            return _radii[idx];
+        }
+
+        /**
+         * Returns the initial resources of a patch
+         *
+         * @param idx The patch's index
+         * @return The resources
+         */
+        public float getResources( int idx )
+        {
+            return _resources[idx];
+        }
+
+        /**
+         * Returns the predation probability of a patch
+         *
+         * @param idx The patch's index
+         * @return The predation probability
+         */
+        public float getPredationProbability( int idx )
+        {
+            return _predationProbabilities[idx];
+        }
+
+        /**
+         * Returns the minimum number of agents needed to forage in a patch
+         *
+         * @param idx The patch's index
+         * @return The minimum agent forage count
+         */
+        public int getMinAgentForageCount( int idx )
+        {
+            return _minAgentForageCounts[idx];
+        }
+    }
+
+
+    /**
+     * Returns the agents defined by an agent properties file, parsing it
+     * if it hasn't been used yet
+     *
+     * @param filename The agent properties file
+     * @param loadVelocities Flag denoting whether the initial velocities
+     *            are required
+     * @return The agent scenario
+     */
+    public static AgentScenario getAgentScenario( String filename,
+            boolean loadVelocities )
+    {
+        Validate.notEmpty( filename,
+                "Agent properties file may not be empty ["
+                + filename
+                + "]" );
+
+        // Velocities are only required by some simulations
+        String key = filename;
+        if( loadVelocities )
+        {
+            key += _WITH_VELOCITIES_POSTFIX;
+        }
+
+        // Parse it if we haven't already
+        AgentScenario scenario = _agentScenarios.get( key );
+        if( null == scenario )
+        {
+            scenario = loadAgentScenario( filename, loadVelocities );
+            AgentScenario existing = _agentScenarios.putIfAbsent( key,
+                    scenario );
+            if( null != existing )
+            {
+                scenario = existing;
+            }
+        }
+
+        return scenario;
+    }
+
+    /**
+     * Returns the patches defined by a patch properties file, parsing it
+     * if it hasn't been used yet
+     *
+     * @param filename The patch properties file
+     * @return The patch scenario
+     */
+    public static PatchScenario getPatchScenario( String filename )
+    {
+        Validate.notEmpty( filename,
+                "Patch properties file may not be empty ["
+                + filename
+                + "]" );
+
+        // Parse it if we haven't already
+        PatchScenario scenario = _patchScenarios.get( filename );
+        if( null == scenario )
+        {
+            scenario = loadPatchScenario( filename );
+            PatchScenario existing = _patchScenarios.putIfAbsent( filename,
+                    scenario );
+            if( null != existing )
+            {
+                scenario = existing;
+            }
+        }
+
+        return scenario;
+    }
+
+    /**
+     * Removes all the cached scenarios so the files are parsed again
+     */
+    public static void clear()
+    {
+        _agentScenarios.clear();
+        _patchScenarios.clear();
+    }
+
+    /**
+     * Loads and parses an agent properties file
+     *
+     * @param filename The agent properties file
+     * @param loadVelocities Flag denoting whether the initial velocities
+     *            are required
+     * @return The agent scenario
+     */
+    private static AgentScenario loadAgentScenario( String filename,
+            boolean loadVelocities )
+    {
+        _LOG.debug( "Loading agent scenario [" + filename + "]" );
+
+        // Load the properties
+        Properties agentProps = MiscUtils.loadPropertiesFromFile( filename );
+
+        // Process them
+        int agentCount = MiscUtils.loadNonEmptyIntegerProperty( agentProps,
+                _AGENT_COUNT_KEY,
+                "Agent count " );
+        String[] ids = new String[agentCount];
+        float[] positions = new float[3 * agentCount];
+        float[] velocities = null;
+        if( loadVelocities )
+        {
+            velocities = new float[3 * agentCount];
+        }
+        for( int i = 0; i < agentCount; i++ )
+        {
+            // Build the id
+            String formattedIdx = String.format( _AGENT_INDEX_FORMAT_STR, i );
+            ids[i] = "Agent" + formattedIdx;
+
+            // Build the properties prefix
+            String prefix = _AGENT_PREFIX_KEY
+                    + "."
+                    + formattedIdx
+                    + ".";
+
+            // Get the position
+            Vector3f position = MiscUtils.loadNonEmptyVector3fProperty( agentProps,
+                    prefix + _POSITION_KEY,
+                    "Agent [" + formattedIdx + "] position " );
+            store( positions, i, position );
+
+            // Get the velocity
+            if( loadVelocities )
+            {
+                Vector3f velocity = MiscUtils.loadNonEmptyVector3fProperty( agentProps,
+                        prefix + _VELOCITY_KEY,
+                        "Agent [" + formattedIdx + "] velocity " );
+                store( velocities, i, velocity );
+            }
+        }
+
+        return new AgentScenario( ids, positions, velocities );
+    }
+
+    /**
+     * Loads and parses a patch properties file
+     *
+     * @param filename The patch properties file
+     * @return The patch scenario
+     */
+    private static PatchScenario loadPatchScenario( String filename )
+    {
+        _LOG.debug( "Loading patch scenario [" + filename + "]" );
+
+        // Load the properties
+        Properties patchProps = MiscUtils.loadPropertiesFromFile( filename );
+
+        // Get the number of patches
+        int patchCount = MiscUtils.loadNonEmptyIntegerProperty( patchProps,
+                _PATCH_COUNT_KEY,
+                "Patch count " );
+        String[] ids = new String[patchCount];
+        float[] positions = new float[3 * patchCount];
+        float[] radii = new float[patchCount];
+        float[] resources = new float[patchCount];
+        float[] predationProbabilities = new float[patchCount];
+        int[] minAgentForageCounts = new int[patchCount];
+        for( int i = 0; i < patchCount; i++ )
+        {
+            // Build the id
+            String formattedIdx = String.format( _PATCH_INDEX_FORMAT_STR, i );
+            ids[i] = "Patch" + formattedIdx;
+
+            // Build the properties prefix
+            String prefix = _PATCH_PREFIX_KEY
+                    + "."
+                    + formattedIdx
+                    + ".";
+
+            // Get the position
+            Vector3f position = MiscUtils.loadNonEmptyVector3fProperty( patchProps,
+                    prefix + _POSITION_KEY,
+                    "Patch [" + formattedIdx + "] position " );
+            store( positions, i, position );
+
+            // Get the radius
+            radii[i] = MiscUtils.loadNonEmptyFloatProperty( patchProps,
+                    prefix + _RADIUS_KEY,
+                    "Patch [" + formattedIdx + "] radius" );
+
+            // Get the amount of resources
+            resources[i] = MiscUtils.loadNonEmptyFloatProperty( patchProps,
+                    prefix + _RESOURCES_KEY,
+                    "Patch [" + formattedIdx + "] resources" );
+
+            // Get the predation probability
+            predationProbabilities[i] = MiscUtils.loadNonEmptyFloatProperty( patchProps,
+                    prefix + _PREDATION_PROBABILITY_KEY,
+                    "Patch [" + formattedIdx + "] predation probability " );
+
+            // Get the min agent forage count
+            minAgentForageCounts[i] = MiscUtils.loadNonEmptyIntegerProperty( patchProps,
+                    prefix + _MIN_AGENT_FORAGE_COUNT_KEY,
+                    "Patch [" + formattedIdx + "] min agent forage count " );
+        }
+
+        return new PatchScenario( ids,
+                positions,
+                radii,
+                resources,
+                predationProbabilities,
+                minAgentForageCounts );
+    }
+
+    /**
+     * Stores a vector as an x, y and z triple
+     *
+     * @param values The triples
+     * @param idx The index of the triple
+     * @param vector The vector
+     */
+    private static void store( float[] values, int idx, Vector3f vector )
+    {
+        values[3 * idx] = vector.x;
+        values[3 * idx + 1] = vector.y;
+        values[3 * idx + 2] = vector.z;
+    }
+
+    /**
+     * Builds a new vector from an x, y and z triple
+     *
+     * @param values The triples
+     * @param idx The index of the triple
+     * @return The vector
+     */
+    private static Vector3f toVector( float[] values, int idx )
+    {
+        return new Vector3f( values[3 * idx],
+                values[3 * idx + 1],
+                values[3 * idx + 2] );
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.forage.util;
+
+// Imports
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.snu.csne.forage.Agent;
+
+
+/**
+ * The sorted store slots of the agents an agent sensed this step and the
+ * previous step.  The two buffers are swapped and reused every step and
+ * the agents that entered or left are counted with a single merge walk,
+ * so tracking the changes doesn't allocate anything once the buffers are
+ * big enough.  Each agent has its own instance.
+ *
+ * @author Brent Eskridge
+ */
+public class SensedSlots
+{
+    /** The default initial capacity of the slot buffers */
+    private static final int _DEFAULT_CAPACITY = 16;
+
+    /** The sorted slots of the agents sensed this step */
+    private int[] _current = new int[_DEFAULT_CAPACITY];
+
+    /** The number of agents sensed this step */
+    private int _currentCount = 0;
+
+    /** The sorted slots of the agents sensed the previous step */
+    private int[] _previous = new int[_DEFAULT_CAPACITY];
+
+    /** The number of agents sensed the previous step */
+    private int _previousCount = 0;
+
+    /** The number of agents sensed this step but not the previous step */
+    private int _enteredCount = 0;
+
+    /** The number of agents sensed the previous step but not this step */
+    private int _leftCount = 0;
+
+
+    /**
+     * Records the agents sensed this step, making the current ones the
+     * previous ones
+     *
+     * @param sensedAgents The agents sensed this step
+     */
+    public void update( List<Agent> sensedAgents )
+    {
+        // Swap the buffers
+        int[] swap = _previous;
+        _previous = _current;
+        _previousCount = _currentCount;
+        _current = swap;
+
+        // Make sure we have room
+        int count = sensedAgents.size();
+        if( _current.length < count )
+        {
+            _current = new int[Math.max( count, 2 * _current.length )];
+        }
+
+        // Copy the slots, only sorting them if the sensor didn't
+        boolean sorted = true;
+        int idx = 0;
+        Iterator<Agent> agentIter = sensedAgents.iterator();
+        while( agentIter.hasNext() )
+        {
+            int slot = agentIter.next().getSlot();
+            if( (0 < idx) && (_current[idx - 1] > slot) )
+            {
+                sorted = false;
+            }
+            _current[idx++] = slot;
+        }
+        _currentCount = count;
+        if( !sorted )
+        {
+            Arrays.sort( _current, 0, _currentCount );
+        }
+
+        // Count the changes with a merge walk
+        _enteredCount = 0;
+        _leftCount = 0;
+        int i = 0;
+        int j = 0;
+        while( (i < _previousCount) && (j < _currentCount) )
+        {
+            if( _previous[i] < _current[j] )
+            {
+                _leftCount++;
+                i++;
+            }
+            else if( _previous[i] > _current[j] )
+            {
+                _enteredCount++;
+                j++;
+            }
+            else
+            {
+                i++;
+                j++;
+            }
+        }
+        _leftCount += _previousCount - i;
+        _enteredCount += _currentCount - j;
+    }
+
+    /**
+     * Determines if the agent in the specified slot was sensed this step
+     *
+     * @param slot The agent's slot
+     * @return <code>true</code> if it was sensed this step
+     */
+    public boolean isSensed( int slot )
+    {
+        return 0 <= Arrays.binarySearch( _current, 0, _currentCount, slot );
+    }
+
+    /**
+     * Determines if the agent in the specified slot was sensed the
+     * previous step
+     *
+     * @param slot The agent's slot
+     * @return <code>true</code> if it was sensed the previous step
+     */
+    public boolean wasSensed( int slot )
+    {
+        return 0 <= Arrays.binarySearch( _previous, 0, _previousCount, slot );
+    }
+
+    /**
+     * Returns the number of agents sensed this step but not the previous
+     * step
+     *
+     * @return The number of agents that entered
+     */
+    public int getEnteredCount()
+    {
+        return _enteredCount;
+    }
+
+    /**
+     * Returns the number of agents sensed the previous step but not this
+     * step
+     *
+     * @return The number of agents that left
+     */
+    public int getLeftCount()
+    {
+        return _leftCount;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *  The Fission-Fusion in Multi-Robot Systems Toolkit is open-source
+ *  software for for investigating fission-fusion processes in
+ *  multi-robot systems.
+ *  Copyright (C) 2017 Southern Nazarene University
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.snu.csne.util;
+
+// Imports
+import org.apache.commons.lang3.Validate;
+
+
+/**
+ * Fast approximations of the math functions used when calculating
+ * decision probabilities.  The logistic function is tabulated and linearly
+ * interpolated, and <code>atan2</code> uses a polynomial approximation.
+ * Both are built to stay within a given max absolute error of the exact
+ * functions.
+ *
+ * @author Brent Eskridge
+ */
+public class ApproximateMath
+{
+    /** The smallest supported max error */
+    public static final float MIN_MAX_ERROR = 0.0000001f;
+
+    /** Max absolute value of the second derivative of the logistic function */
+    private static final double _LOGISTIC_MAX_SECOND_DERIVATIVE =
+            1.0 / (6.0 * Math.sqrt( 3.0 ));
+
+    /** Coefficients of the short arctangent polynomial on [0,1] */
+    private static final float[] _SHORT_ATAN_COEFFICIENTS = {
+            0.9998660f,
+            -0.3302995f,
+            0.1801410f,
+            -0.0851330f,
+            0.0208351f };
+
+    /** Max error of the short arctangent polynomial in float arithmetic */
+    private static final float _SHORT_ATAN_MAX_ERROR = 0.000015f;
+
+    /** Coefficients of the long arctangent polynomial on [0,1] */
+    private static final float[] _LONG_ATAN_COEFFICIENTS = {
+            0.9999993329f,
+            -0.3332985605f,
+            0.1994653599f,
+            -0.1390853351f,
+            0.0964200441f,
+            -0.0559098861f,
+            0.0218612288f,
+            -0.0040540580f };
+
+    /** Max error of the long arctangent polynomial in float arithmetic */
+    private static final float _LONG_ATAN_MAX_ERROR = 0.0000005f;
+
+    /** Pi as a float */
+    private static final float _PI = (float) Math.PI;
+
+    /** Pi/2 as a float */
+    private static final float _HALF_PI = (float) (Math.PI / 2.0);
+
+
+    /** The max absolute error of the approximations */
+    private final float _maxError;
+
+    /** The tabulated logistic function */
+    private final float[] _logisticTable;
+
+    /** The smallest input covered by the logistic table */
+    private final float _logisticMin;
+
+    /** The largest input covered by the logistic table */
+    private final float _logisticMax;
+
+    /** The number of table entries per unit of input */
+    private final float _logisticScale;
+
+    /** The arctangent coefficients or <code>null</code> to use the exact one */
+    private final float[] _atanCoefficients;
+
+
+    /**
+     * Builds this set of approximations
+     *
+     * @param maxError The max absolute error of the approximations
+     */
+    public ApproximateMath( float maxError )
+    {
+        Validate.isTrue( MIN_MAX_ERROR <= maxError,
+                "Max error must be at least ["
+                + MIN_MAX_ERROR
+                + "] - given ["
+                + maxError
+                + "]" );
+        _maxError = maxError;
+
+        /* Beyond the table, the logistic function is within half the error
+         * of 0 or 1.  Inside, spend the other half on interpolation. */
+        double halfError = maxError / 2.0;
+        _logisticMax = (float) Math.log( 1.0 / halfError );
+        _logisticMin = -_logisticMax;
+        double step = Math.sqrt( 8.0 * (halfError / 2.0)
+                / _LOGISTIC_MAX_SECOND_DERIVATIVE );
+        int cells = (int) Math.ceil( (_logisticMax - _logisticMin) / step );
+        _logisticScale = cells / (_logisticMax - _logisticMin);
+        _logisticTable = new float[cells + 1];
+        for( int i = 0; i <= cells; i++ )
+        {
+            double x = _logisticMin + (i / (double) _logisticScale);
+            _logisticTable[i] = (float) (1.0 / (1.0 + Math.exp( -x )));
+        }
+
+        // Use the cheapest arctangent that is accurate enough
+        if( _SHORT_ATAN_MAX_ERROR <= maxError )
+        {
+            _atanCoefficients = _SHORT_ATAN_COEFFICIENTS;
+        }
+        else if( _LONG_ATAN_MAX_ERROR <= maxError )
+        {
+            _atanCoefficients = _LONG_ATAN_COEFFICIENTS;
+        }
+        else
+        {
+            _atanCoefficients = null;
+        }
+    }
+
+    /**
+     * Returns the max absolute error of the approximations
+     *
+     * @return The max error
+     */
+    public float getMaxError()
+    {
+        return _maxError;
+    }
+
+    /**
+     * Returns the number of entries in the logistic table
+     *
+     * @return The number of entries
+     */
+    public int getLogisticTableSize()
+    {
+        return _logisticTable.length;
+    }
+
+    /**
+     * Approximates the logistic function <code>1 / (1 + e^-x)</code>
+     *
+     * @param x The input
+     * @return The approximate value
+     */
+    public float logistic( float x )
+    {
+        // Handle the tails
+        if( x <= _logisticMin )
+        {
+            return 0.0f;
+        }
+        if( x >= _logisticMax )
+        {
+            return 1.0f;
+        }
+
+        // Interpolate within the cell
+        float position = (x - _logisticMin) * _logisticScale;
+        int idx = (int) position;
+        if( idx >= _logisticTable.length - 1 )
+        {
+            return _logisticTable[_logisticTable.length - 1];
+        }
+        float fraction = position - idx;
+
+        return _logisticTable[idx]
+                + fraction * (_logisticTable[idx + 1] - _logisticTable[idx]);
+    }
+
+    /**
+     * Approximates <code>Math.atan2( y, x )</code>
+     *
+     * @param y The ordinate
+     * @param x The abscissa
+     * @return The approximate angle in radians in the range [-pi,pi]
+     */
+    public float atan2( float y, float x )
+    {
+        // Is the polynomial accurate enough?
+        if( null == _atanCoefficients )
+        {
+            return (float) Math.atan2( y, x );
+        }
+
+        // Reduce it to the first octant
+        float absX = Math.abs( x );
+        float absY = Math.abs( y );
+        float max = Math.max( absX, absY );
+        if( 0.0f == max )
+        {
+            return 0.0f;
+        }
+        float ratio = Math.min( absX, absY ) / max;
+        float ratioSquared = ratio * ratio;
+
+        // Evaluate the polynomial
+        int last = _atanCoefficients.length - 1;
+        float poly = _atanCoefficients[last];
+        for( int i = last - 1; i >= 0; i-- )
+        {
+            poly = poly * ratioSquared + _atanCoefficients[i];
+        }
+        float angle = poly * ratio;
+
+        // Map it back to the right quadrant
+        if( absY > absX )
+        {
+            angle = _HALF_PI - angle;
+        }
+        if( 0.0f > x )
+        {
+            angle = _PI - angle;
+        }
+        if( 0.0f > y )
+        {
+            angle = -angle;
+        }
+
+        return angle;
+    }
+}
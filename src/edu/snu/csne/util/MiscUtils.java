@@ -25,6 +25,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
@@ -45,6 +47,10 @@ public class MiscUtils
     private static final Logger _LOG = LogManager.getLogger(
             MiscUtils.class.getName() );
     
+    /** Classes already loaded by name, shared by all threads */
+    private static final ConcurrentMap<String,Class<?>> _loadedClasses =
+            new ConcurrentHashMap<String,Class<?>>();
+    
     /**
      * Loads the properties file specified using the given key
      *
@@ -122,7 +128,9 @@ public class MiscUtils
     }
 
     /**
-     * Loads and instantiates the class with the specified filename
+     * Loads and instantiates the class with the specified filename.  Each
+     * class is only looked up once, so simulations built concurrently
+     * don't contend on the class loader.
      *
      * @param className The name of the class to load and instantiate
      * @param desc Description of the class for error logging
@@ -134,7 +142,12 @@ public class MiscUtils
         try
         {
             // Get the class
-            Class instantiatedClass = Class.forName( className );
+            Class<?> instantiatedClass = _loadedClasses.get( className );
+            if( null == instantiatedClass )
+            {
+                instantiatedClass = Class.forName( className );
+                _loadedClasses.putIfAbsent( className, instantiatedClass );
+            }
 
             // Instantiate it
             instantiated = instantiatedClass.newInstance();
@@ -281,6 +294,31 @@ public class MiscUtils
         return value;
     }
 
+    /**
+     * Loads an optional integer value from properties
+     *
+     * @param props All the properties
+     * @param key The key of the value
+     * @param defaultValue The default value to use if the property doesn't exist
+     * @return The integer value
+     */
+    public static int loadOptionalIntegerProperty( Properties props,
+            String key,
+            int defaultValue )
+    {
+        // Use the default
+        int value = defaultValue;
+        
+        // Was the value specified?
+        String valueStr = props.getProperty( key );
+        if( null != valueStr )
+        {
+            value = Integer.parseInt( valueStr );
+        }
+        
+        return value;
+    }
+
     /**
      * Loads a non-empty long value from properties
      *
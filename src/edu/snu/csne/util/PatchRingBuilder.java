@@ -202,6 +202,7 @@ public class PatchRingBuilder
                 
                 // Build the patch
                 patches[i] = new Patch( "id",
+                        i,
                         position,
                         radius,
                         resources,